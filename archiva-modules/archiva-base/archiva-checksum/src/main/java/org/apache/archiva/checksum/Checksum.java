@@ -28,12 +28,22 @@
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Checksum - simple checksum hashing routines.
@@ -41,8 +51,68 @@
 public class Checksum
 {
     private static final int BUFFER_SIZE = 32768;
+
+    /**
+     * Files of at least this size are digested in parallel, if more than one checksum is requested.
+     */
+    public static final long PARALLEL_THRESHOLD = 32 * 1024 * 1024;
+
+    /**
+     * The size of the mapped chunks, that are shared between the digest threads.
+     */
+    private static final int PARALLEL_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The number of chunks, a digest thread may lag behind the reader.
+     */
+    private static final int PARALLEL_PREFETCH = 4;
+
+    private static final ByteBuffer END_OF_FILE = ByteBuffer.allocate( 0 );
+
     private byte[] result = new byte[0];
 
+    /**
+     * Updates all checksums with the content of the given file. The file is read only once.
+     * For large files and more than one checksum, each checksum is calculated by a thread of the given executor.
+     *
+     * @param checksums the checksums to update
+     * @param file the file to read
+     * @param digestExecutor the executor for the digest threads, may be <code>null</code>
+     * @throws ChecksumValidationException if the file could not be read
+     */
+    public static void update( List<Checksum> checksums, Path file, ExecutorService digestExecutor )
+        throws ChecksumValidationException
+    {
+        if ( digestExecutor != null && checksums.size( ) > 1 && isLargeFile( file ) )
+        {
+            updateParallel( checksums, file, digestExecutor );
+        }
+        else
+        {
+            update( checksums, file );
+        }
+    }
+
+    private static boolean isLargeFile( Path file )
+    {
+        try
+        {
+            return Files.size( file ) >= PARALLEL_THRESHOLD;
+        }
+        catch ( IOException e )
+        {
+            // the error is reported by the update
+            return false;
+        }
+    }
+
+    /**
+     * Updates all checksums with the content of the given file. The file is read only once.
+     *
+     * @param checksums the checksums to update
+     * @param file the file to read
+     * @throws ChecksumValidationException if the file could not be read
+     */
     public static void update( List<Checksum> checksums, Path file )
         throws ChecksumValidationException
     {
@@ -73,6 +143,116 @@ public static void update( List<Checksum> checksums, Path file )
         }
     }
 
+    /**
+     * Updates each checksum by its own thread of the executor. The threads share the mapped chunks of the file,
+     * the reader maps at most {@value #PARALLEL_PREFETCH} chunks ahead of the slowest digest. If the executor
+     * has not enough free threads, the checksums are updated sequentially by the calling thread.
+     *
+     * @param checksums the checksums to update
+     * @param file the file to read
+     * @param digestExecutor the executor for the digest threads
+     * @throws ChecksumValidationException if the file could not be read
+     */
+    static void updateParallel( List<Checksum> checksums, Path file, ExecutorService digestExecutor )
+        throws ChecksumValidationException
+    {
+        List<BlockingQueue<ByteBuffer>> queues = new ArrayList<>( checksums.size( ) );
+        List<Future<?>> futures = new ArrayList<>( checksums.size( ) );
+        try (FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ))
+        {
+            for ( Checksum checksum : checksums )
+            {
+                BlockingQueue<ByteBuffer> queue = new ArrayBlockingQueue<>( PARALLEL_PREFETCH );
+                queues.add( queue );
+                try
+                {
+                    futures.add( digestExecutor.submit( ( ) -> {
+                        ByteBuffer chunk;
+                        while ( ( chunk = queue.take( ) ) != END_OF_FILE )
+                        {
+                            checksum.update( chunk );
+                        }
+                        checksum.finish( );
+                        return null;
+                    } ) );
+                }
+                catch ( RejectedExecutionException e )
+                {
+                    // the digests wait for each other, so all of them need a thread. No chunk was read yet.
+                    for ( Future<?> future : futures )
+                    {
+                        future.cancel( true );
+                    }
+                    futures.clear( );
+                    update( checksums, file );
+                    return;
+                }
+            }
+
+            long fileSize = channel.size( );
+            long pos = 0;
+            while ( pos < fileSize )
+            {
+                long chunkSize = Math.min( PARALLEL_CHUNK_SIZE, fileSize - pos );
+                MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, pos, chunkSize );
+                for ( int i = 0; i < queues.size( ); i++ )
+                {
+                    // each digest gets its own view with independent position
+                    offer( queues.get( i ), futures.get( i ), buffer.asReadOnlyBuffer( ) );
+                }
+                pos += chunkSize;
+            }
+            for ( int i = 0; i < queues.size( ); i++ )
+            {
+                offer( queues.get( i ), futures.get( i ), END_OF_FILE );
+            }
+            for ( Future<?> future : futures )
+            {
+                future.get( );
+            }
+        }
+        catch ( FileNotFoundException | NoSuchFileException e )
+        {
+            throw new ChecksumValidationException( ChecksumValidationException.ValidationError.FILE_NOT_FOUND, "File that should be parsed, not found: "+e.getMessage(), e );
+        }
+        catch ( IOException e )
+        {
+            throw new ChecksumValidationException( ChecksumValidationException.ValidationError.READ_ERROR, "Parsing of file failed: "+e.getMessage(), e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new ChecksumValidationException( ChecksumValidationException.ValidationError.DIGEST_ERROR, "Digest calculation failed: "+e.getCause().getMessage(), e.getCause() );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            throw new ChecksumValidationException( ChecksumValidationException.ValidationError.READ_ERROR, "Interrupted while parsing the file", e );
+        }
+        finally
+        {
+            for ( Future<?> future : futures )
+            {
+                future.cancel( true );
+            }
+        }
+    }
+
+    /**
+     * Hands the chunk to the digest thread and waits while its queue is full.
+     */
+    private static void offer( BlockingQueue<ByteBuffer> queue, Future<?> future, ByteBuffer chunk )
+        throws InterruptedException, ExecutionException
+    {
+        while ( !queue.offer( chunk, 100, TimeUnit.MILLISECONDS ) )
+        {
+            if ( future.isDone( ) )
+            {
+                // the digest thread failed, get() throws the cause
+                future.get( );
+            }
+        }
+    }
+
     private final MessageDigest md;
 
     private ChecksumAlgorithm checksumAlgorithm;
@@ -142,6 +322,15 @@ public Checksum finish() {
         return this;
     }
 
+    /**
+     * Sets a result that was calculated before, e.g. by the {@link ChecksumCache}.
+     */
+    Checksum setResult( byte[] result ) {
+        md.reset();
+        this.result = result;
+        return this;
+    }
+
     public void update( Path file )
         throws IOException
     {
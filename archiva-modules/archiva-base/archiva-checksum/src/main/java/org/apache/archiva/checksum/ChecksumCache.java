@@ -0,0 +1,349 @@
+package org.apache.archiva.checksum;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache for the checksums of files.
+ * <p>
+ * If a checksum of a file is requested, all configured algorithms are computed in one pass over the file content
+ * and kept for later requests. So consumers and the storage layer, that need checksums of the same file during
+ * one repository scan, read the file only once.
+ * </p>
+ * <p>
+ * The entries are keyed by the file path and are only valid as long as the size and the modification time of
+ * the file do not change. The number of entries is limited, the least recently used entries are dropped first.
+ * </p>
+ * <p>
+ * Large files are digested by one thread per algorithm. The digest threads are bounded by the number of
+ * processors, if no thread is free, the file is digested by the requesting thread.
+ * </p>
+ * <p>
+ * This class is thread safe. Concurrent requests for the same file wait for the computation of the first request.
+ * The cache, that is shared by the consumers, the proxy and the storage, is the bean
+ * <code>checksumCache#default</code>.
+ * </p>
+ * <p>
+ * The cache also owns the persistent {@link ChecksumValidationIndex} of each repository, so the scan consumers
+ * and the proxy share one index instance per repository.
+ * </p>
+ */
+@Service( "checksumCache#default" )
+public class ChecksumCache
+{
+    public static final List<ChecksumAlgorithm> DEFAULT_ALGORITHMS =
+        Collections.unmodifiableList( Arrays.asList( ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA1 ) );
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /**
+     * System property for the maximum number of threads, that digest large files. The default is the number of
+     * available processors.
+     */
+    public static final String DIGEST_THREADS_PROPERTY = "archiva.checksum.digestThreads";
+
+    private final Set<ChecksumAlgorithm> algorithms;
+
+    private final Map<Path, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong( 0 );
+
+    private final AtomicLong misses = new AtomicLong( 0 );
+
+    private final ThreadPoolExecutor digestExecutor = createDigestExecutor( );
+
+    private final Map<Path, ChecksumValidationIndex> validationIndexes = new ConcurrentHashMap<>( );
+
+    /**
+     * Creates a cache, that computes MD5 and SHA1 checksums.
+     */
+    public ChecksumCache( )
+    {
+        this( DEFAULT_ALGORITHMS, DEFAULT_MAX_ENTRIES );
+    }
+
+    public ChecksumCache( Collection<ChecksumAlgorithm> algorithms, final int maxEntries )
+    {
+        this.algorithms = EnumSet.noneOf( ChecksumAlgorithm.class );
+        this.algorithms.addAll( algorithms );
+        this.entries = new LinkedHashMap<Path, Entry>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<Path, Entry> eldest )
+            {
+                return size( ) > maxEntries;
+            }
+        };
+    }
+
+    private static ThreadPoolExecutor createDigestExecutor( )
+    {
+        int threads =
+            Math.max( 1, Integer.getInteger( DIGEST_THREADS_PROPERTY, Runtime.getRuntime( ).availableProcessors( ) ) );
+        ThreadPoolExecutor executor =
+            new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>( ), new ThreadFactory( )
+            {
+                private final AtomicInteger count = new AtomicInteger( 0 );
+
+                @Override
+                public Thread newThread( Runnable runnable )
+                {
+                    Thread thread = new Thread( runnable, "archiva-checksum-" + count.incrementAndGet( ) );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
+
+    /**
+     * Stops the digest threads. Later requests digest the files by the requesting thread.
+     */
+    @PreDestroy
+    public void shutdown( )
+    {
+        digestExecutor.shutdownNow( );
+    }
+
+    /**
+     * Opens the checksum validation index of the given repository. The index is loaded from disk, if it is not
+     * open yet. Each call must be followed by a call of {@link ChecksumValidationIndex#close()}.
+     *
+     * @param repositoryRoot the root directory of the repository
+     * @return the index of the repository
+     */
+    public ChecksumValidationIndex openValidationIndex( Path repositoryRoot )
+    {
+        return getValidationIndex( repositoryRoot ).open( );
+    }
+
+    /**
+     * Records the checksums of a file in the validation index of the repository, e.g. after the file was
+     * downloaded, so the next scan does not read the file again. If the index is not open, the checksums are
+     * appended to its journal.
+     *
+     * @param repositoryRoot the root directory of the repository
+     * @param file the file
+     * @param checksums the hex checksum for each algorithm
+     * @throws IOException if the attributes of the file could not be read or the journal could not be written
+     */
+    public void recordValidatedChecksums( Path repositoryRoot, Path file, Map<ChecksumAlgorithm, String> checksums )
+        throws IOException
+    {
+        getValidationIndex( repositoryRoot ).record( file, checksums );
+    }
+
+    private ChecksumValidationIndex getValidationIndex( Path repositoryRoot )
+    {
+        return validationIndexes.computeIfAbsent( repositoryRoot.toAbsolutePath( ).normalize( ),
+                                                  ChecksumValidationIndex::new );
+    }
+
+    /**
+     * Returns the checksum of the given file as hex string.
+     *
+     * @param file the file
+     * @param algorithm the checksum algorithm
+     * @return the checksum as hex string
+     * @throws IOException if the file could not be read
+     */
+    public String getChecksum( Path file, ChecksumAlgorithm algorithm )
+        throws IOException
+    {
+        return getChecksums( file, Collections.singletonList( algorithm ) ).get( algorithm );
+    }
+
+    /**
+     * Returns the checksums of the given file for each of the given algorithms. If any of the algorithms
+     * is not cached, the missing and all configured algorithms are computed in one pass.
+     *
+     * @param file the file
+     * @param requested the algorithms
+     * @return a map with the hex checksum for each of the requested algorithms
+     * @throws IOException if the file could not be read
+     */
+    public Map<ChecksumAlgorithm, String> getChecksums( Path file, Collection<ChecksumAlgorithm> requested )
+        throws IOException
+    {
+        BasicFileAttributes attrs = Files.readAttributes( file, BasicFileAttributes.class );
+        long size = attrs.size( );
+        long lastModified = attrs.lastModifiedTime( ).toMillis( );
+
+        Entry entry;
+        synchronized ( entries )
+        {
+            entry = entries.get( file );
+            if ( entry == null || entry.size != size || entry.lastModified != lastModified )
+            {
+                entry = new Entry( size, lastModified );
+                entries.put( file, entry );
+            }
+        }
+
+        Map<ChecksumAlgorithm, String> result = new EnumMap<>( ChecksumAlgorithm.class );
+        synchronized ( entry )
+        {
+            if ( !entry.checksums.keySet( ).containsAll( requested ) )
+            {
+                misses.incrementAndGet( );
+                List<Checksum> checksums = new ArrayList<>( );
+                Set<ChecksumAlgorithm> missing = EnumSet.noneOf( ChecksumAlgorithm.class );
+                missing.addAll( algorithms );
+                missing.addAll( requested );
+                missing.removeAll( entry.checksums.keySet( ) );
+                for ( ChecksumAlgorithm algorithm : missing )
+                {
+                    checksums.add( new Checksum( algorithm ) );
+                }
+                try
+                {
+                    Checksum.update( checksums, file, digestExecutor );
+                }
+                catch ( ChecksumValidationException e )
+                {
+                    synchronized ( entries )
+                    {
+                        entries.remove( file, entry );
+                    }
+                    throw new IOException( e.getMessage( ), e );
+                }
+                for ( Checksum checksum : checksums )
+                {
+                    entry.checksums.put( checksum.getAlgorithm( ), checksum.getChecksum( ) );
+                }
+            }
+            else
+            {
+                hits.incrementAndGet( );
+            }
+            for ( ChecksumAlgorithm algorithm : requested )
+            {
+                result.put( algorithm, entry.checksums.get( algorithm ) );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores checksums, that were computed without reading the file, e.g. while the content was written.
+     * The checksums are bound to the current size and modification time of the file.
+     *
+     * @param file the file
+     * @param checksums the hex checksum for each algorithm
+     * @throws IOException if the attributes of the file could not be read
+     */
+    public void putChecksums( Path file, Map<ChecksumAlgorithm, String> checksums )
+        throws IOException
+    {
+        BasicFileAttributes attrs = Files.readAttributes( file, BasicFileAttributes.class );
+        Entry entry = new Entry( attrs.size( ), attrs.lastModifiedTime( ).toMillis( ) );
+        entry.checksums.putAll( checksums );
+        synchronized ( entries )
+        {
+            entries.put( file, entry );
+        }
+    }
+
+    /**
+     * Removes the entry of the given file. Should be called, if the file is changed in a way, that does not
+     * change its size or modification time.
+     *
+     * @param file the file
+     */
+    public void invalidate( Path file )
+    {
+        synchronized ( entries )
+        {
+            entries.remove( file );
+        }
+    }
+
+    public void clear( )
+    {
+        synchronized ( entries )
+        {
+            entries.clear( );
+        }
+    }
+
+    public int size( )
+    {
+        synchronized ( entries )
+        {
+            return entries.size( );
+        }
+    }
+
+    /**
+     * Returns the number of requests, that were answered without reading the file.
+     */
+    public long getHitCount( )
+    {
+        return hits.get( );
+    }
+
+    /**
+     * Returns the number of requests, that needed to read the file.
+     */
+    public long getMissCount( )
+    {
+        return misses.get( );
+    }
+
+    private static class Entry
+    {
+        final long size;
+
+        final long lastModified;
+
+        final Map<ChecksumAlgorithm, String> checksums = new EnumMap<>( ChecksumAlgorithm.class );
+
+        Entry( long size, long lastModified )
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,571 @@
+package org.apache.archiva.checksum;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.common.FileTypeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent index of the checksums of the files of a repository.
+ * <p>
+ * For each file the index stores the size and modification time and the checksums that were calculated
+ * for this state of the file. As long as size and modification time do not change, {@link ChecksummedFile} takes
+ * the checksums from the index instead of reading the file again. The checksum files are still parsed on each
+ * validation, so changed checksum files are always detected.
+ * </p>
+ * <p>
+ * There is one instance per repository, owned by the {@link ChecksumCache} bean, see
+ * {@link ChecksumCache#openValidationIndex(Path)}. The entries are only held in memory while the index is open,
+ * e.g. during a repository scan, and are dropped, when the last user closes it. The digests are kept as raw bytes.
+ * </p>
+ * <p>
+ * Each change is written as a record to the journal next to the index file. A save only appends the changes since
+ * the last save, the index file is rewritten, when the journal gets larger than the index file. Files, that are added
+ * while the index is not open, e.g. by the proxy, are appended to the journal without loading the index. Entries of
+ * files, that do not exist anymore, are dropped while the index is used: each lookup checks a few of the entries,
+ * that were loaded.
+ * </p>
+ * <p>
+ * The index is stored in the Archiva data directory of the repository, next to the scan journal.
+ * The instance is thread safe, the index and journal files are guarded by the instance.
+ * </p>
+ */
+public class ChecksumValidationIndex
+    implements Closeable
+{
+    private static final Logger log = LoggerFactory.getLogger( ChecksumValidationIndex.class );
+
+    private static final String FILE_NAME = "checksums.dat";
+
+    private static final String JOURNAL_NAME = "checksums.log";
+
+    private static final int MAGIC = 0x41534332;
+
+    private static final int PUT_RECORD = 1;
+
+    private static final int REMOVE_RECORD = 2;
+
+    /**
+     * The journal is merged into the index file, if it is larger than the index file and this minimum size.
+     */
+    private static final long MIN_JOURNAL_MERGE_SIZE = 1024 * 1024;
+
+    /**
+     * Number of loaded entries, whose files are checked for existence on each lookup.
+     */
+    private static final int PRUNE_CHECKS_PER_LOOKUP = 2;
+
+    private static final ChecksumAlgorithm[] ALGORITHMS = ChecksumAlgorithm.values( );
+
+    private final Path indexFile;
+
+    private final Path journalFile;
+
+    private final Path root;
+
+    private final Map<String, Entry> entries = new HashMap<>( );
+
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream( );
+
+    private final DataOutputStream pendingOut = new DataOutputStream( pending );
+
+    private int users = 0;
+
+    private boolean rewrite = false;
+
+    private long indexSize = 0;
+
+    private long journalSize = 0;
+
+    /**
+     * The keys of the entries, that were loaded, in the order they are checked for stale entries.
+     */
+    private List<String> pruneKeys;
+
+    private int pruneCursor = 0;
+
+    /**
+     * @param repositoryRoot the root directory of the repository
+     */
+    ChecksumValidationIndex( Path repositoryRoot )
+    {
+        this.root = repositoryRoot.toAbsolutePath( ).normalize( );
+        this.indexFile = getDirectory( root ).resolve( FILE_NAME );
+        this.journalFile = indexFile.resolveSibling( JOURNAL_NAME );
+    }
+
+    /**
+     * Returns the directory of the index of the given repository.
+     *
+     * @param repositoryRoot the root directory of the repository
+     * @return the index directory
+     */
+    public static Path getDirectory( Path repositoryRoot )
+    {
+        return repositoryRoot.resolve( FileTypeUtils.DATA_DIRECTORY ).resolve( FileTypeUtils.SCAN_DIRECTORY );
+    }
+
+    /**
+     * Loads the index, if it is not open yet. Each call must be followed by a call of {@link #close()}.
+     *
+     * @return this index
+     */
+    synchronized ChecksumValidationIndex open( )
+    {
+        if ( users++ == 0 )
+        {
+            read( );
+            pruneKeys = new ArrayList<>( entries.keySet( ) );
+            pruneCursor = 0;
+        }
+        return this;
+    }
+
+    /**
+     * Records the checksums of a file, that were calculated by another component, e.g. while the file was
+     * downloaded. The checksums are bound to the current size and modification time of the file. If the index is
+     * not open, the checksums are appended to the journal, without loading the index. Nothing is recorded, if the
+     * repository has no index yet.
+     *
+     * @param file the file
+     * @param checksums the hex checksum for each algorithm
+     * @throws IOException if the attributes of the file could not be read or the journal could not be written
+     */
+    void record( Path file, Map<ChecksumAlgorithm, String> checksums )
+        throws IOException
+    {
+        BasicFileAttributes attrs = Files.readAttributes( file, BasicFileAttributes.class );
+        long size = attrs.size( );
+        long lastModified = attrs.lastModifiedTime( ).toMillis( );
+        synchronized ( this )
+        {
+            if ( users > 0 )
+            {
+                for ( Map.Entry<ChecksumAlgorithm, String> checksum : checksums.entrySet( ) )
+                {
+                    putChecksum( file, size, lastModified, checksum.getKey( ), checksum.getValue( ) );
+                }
+                return;
+            }
+            if ( !Files.isDirectory( indexFile.getParent( ) ) )
+            {
+                return;
+            }
+            Entry entry = new Entry( size, lastModified );
+            for ( Map.Entry<ChecksumAlgorithm, String> checksum : checksums.entrySet( ) )
+            {
+                entry.digests[checksum.getKey( ).ordinal( )] = Hex.decode( checksum.getValue( ) );
+            }
+            writePutRecord( getKey( file ), entry );
+            try
+            {
+                appendPending( );
+                if ( Files.size( journalFile ) > Math.max( MIN_JOURNAL_MERGE_SIZE, sizeIfExists( indexFile ) ) )
+                {
+                    read( );
+                    writeIndexFile( );
+                }
+            }
+            finally
+            {
+                pending.reset( );
+                entries.clear( );
+            }
+        }
+    }
+
+    /**
+     * Returns the stored checksum, if the size and modification time of the file match the stored state.
+     *
+     * @return the checksum as hex string, or <code>null</code>, if no valid checksum is stored
+     */
+    public String getChecksum( Path file, long size, long lastModified, ChecksumAlgorithm algorithm )
+    {
+        pruneStaleEntries( );
+        synchronized ( this )
+        {
+            Entry entry = entries.get( getKey( file ) );
+            if ( entry == null || entry.size != size || entry.lastModified != lastModified )
+            {
+                return null;
+            }
+            byte[] digest = entry.digests[algorithm.ordinal( )];
+            return digest == null ? null : Hex.encode( digest );
+        }
+    }
+
+    /**
+     * Stores the checksum for the given state of the file. Checksums of a former state are dropped.
+     */
+    public synchronized void putChecksum( Path file, long size, long lastModified, ChecksumAlgorithm algorithm,
+                                          String checksum )
+    {
+        String key = getKey( file );
+        Entry entry = entries.get( key );
+        if ( entry == null || entry.size != size || entry.lastModified != lastModified )
+        {
+            entry = new Entry( size, lastModified );
+            entries.put( key, entry );
+        }
+        entry.digests[algorithm.ordinal( )] = Hex.decode( checksum );
+        writePutRecord( key, entry );
+    }
+
+    public synchronized void remove( Path file )
+    {
+        removeKey( getKey( file ) );
+    }
+
+    public synchronized int size( )
+    {
+        return entries.size( );
+    }
+
+    /**
+     * Releases the index. If this was the last user, the changes are saved and the entries are dropped from memory.
+     *
+     * @throws IOException if the changes could not be written
+     */
+    @Override
+    public synchronized void close( )
+        throws IOException
+    {
+        if ( users == 0 || --users > 0 )
+        {
+            return;
+        }
+        try
+        {
+            save( );
+        }
+        finally
+        {
+            entries.clear( );
+            pending.reset( );
+            pruneKeys = null;
+        }
+    }
+
+    /**
+     * Appends the changes since the last save to the journal. The index file is rewritten instead, if the journal
+     * gets larger than the index file, or if the journal could not be read completely.
+     *
+     * @throws IOException if the index could not be written
+     */
+    synchronized void save( )
+        throws IOException
+    {
+        if ( rewrite || journalSize + pending.size( ) > Math.max( MIN_JOURNAL_MERGE_SIZE, indexSize ) )
+        {
+            writeIndexFile( );
+        }
+        else if ( pending.size( ) > 0 )
+        {
+            appendPending( );
+            pending.reset( );
+        }
+    }
+
+    private void appendPending( )
+        throws IOException
+    {
+        Files.createDirectories( journalFile.getParent( ) );
+        try ( OutputStream out = Files.newOutputStream( journalFile, StandardOpenOption.CREATE,
+                                                        StandardOpenOption.APPEND ) )
+        {
+            pending.writeTo( out );
+        }
+        journalSize += pending.size( );
+    }
+
+    private void writeIndexFile( )
+        throws IOException
+    {
+        Files.createDirectories( indexFile.getParent( ) );
+        Path tmpFile = indexFile.resolveSibling( FILE_NAME + ".tmp" );
+        try ( DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream( Files.newOutputStream( tmpFile ) ) ) )
+        {
+            out.writeInt( MAGIC );
+            for ( Map.Entry<String, Entry> e : entries.entrySet( ) )
+            {
+                writeEntry( out, e.getKey( ), e.getValue( ) );
+            }
+        }
+        Files.move( tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        Files.deleteIfExists( journalFile );
+        indexSize = Files.size( indexFile );
+        journalSize = 0;
+        rewrite = false;
+        pending.reset( );
+    }
+
+    /**
+     * Reads the index file and replays the journal. Starts with an empty index, if the files do not exist or
+     * cannot be read.
+     */
+    private void read( )
+    {
+        entries.clear( );
+        indexSize = 0;
+        journalSize = 0;
+        rewrite = false;
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream( Files.newInputStream( indexFile ) ) ) )
+        {
+            if ( in.readInt( ) != MAGIC )
+            {
+                log.warn( "Ignoring checksum index {} with unknown format", indexFile );
+                rewrite = true;
+            }
+            else
+            {
+                readEntries( in );
+                indexSize = Files.size( indexFile );
+            }
+        }
+        catch ( NoSuchFileException e )
+        {
+            // new index
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not read checksum index {}, starting with an empty index: {}", indexFile, e.getMessage( ) );
+            entries.clear( );
+            rewrite = true;
+        }
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream( Files.newInputStream( journalFile ) ) ) )
+        {
+            int type;
+            while ( ( type = in.read( ) ) >= 0 )
+            {
+                readRecord( type, in );
+            }
+            journalSize = Files.size( journalFile );
+        }
+        catch ( NoSuchFileException e )
+        {
+            // nothing recorded since the index file was written
+        }
+        catch ( EOFException e )
+        {
+            // the VM stopped while the journal was written, the next save must not append to the partial record
+            log.warn( "Ignoring the incomplete last record of the checksum journal {}", journalFile );
+            rewrite = true;
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not read checksum journal {}: {}", journalFile, e.getMessage( ) );
+            rewrite = true;
+        }
+    }
+
+    /**
+     * Reads the entries of the index file until the end of the stream.
+     */
+    private void readEntries( DataInputStream in )
+        throws IOException
+    {
+        while ( true )
+        {
+            String key;
+            try
+            {
+                key = in.readUTF( );
+            }
+            catch ( EOFException e )
+            {
+                return;
+            }
+            entries.put( key, readEntry( in ) );
+        }
+    }
+
+    private void readRecord( int type, DataInputStream in )
+        throws IOException
+    {
+        switch ( type )
+        {
+            case PUT_RECORD:
+                String key = in.readUTF( );
+                entries.put( key, readEntry( in ) );
+                break;
+            case REMOVE_RECORD:
+                entries.remove( in.readUTF( ) );
+                break;
+            default:
+                throw new IOException( "Unknown record type " + type );
+        }
+    }
+
+    private static Entry readEntry( DataInputStream in )
+        throws IOException
+    {
+        Entry entry = new Entry( in.readLong( ), in.readLong( ) );
+        int mask = in.readUnsignedShort( );
+        for ( int i = 0; i < ALGORITHMS.length; i++ )
+        {
+            if ( ( mask & ( 1 << i ) ) != 0 )
+            {
+                entry.digests[i] = new byte[in.readUnsignedByte( )];
+                in.readFully( entry.digests[i] );
+            }
+        }
+        return entry;
+    }
+
+    private void writePutRecord( String key, Entry entry )
+    {
+        try
+        {
+            pendingOut.writeByte( PUT_RECORD );
+            writeEntry( pendingOut, key, entry );
+        }
+        catch ( IOException e )
+        {
+            // not thrown by the in-memory stream
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static void writeEntry( DataOutputStream out, String key, Entry entry )
+        throws IOException
+    {
+        out.writeUTF( key );
+        out.writeLong( entry.size );
+        out.writeLong( entry.lastModified );
+        int mask = 0;
+        for ( int i = 0; i < ALGORITHMS.length; i++ )
+        {
+            if ( entry.digests[i] != null )
+            {
+                mask |= 1 << i;
+            }
+        }
+        out.writeShort( mask );
+        for ( byte[] digest : entry.digests )
+        {
+            if ( digest != null )
+            {
+                out.writeByte( digest.length );
+                out.write( digest );
+            }
+        }
+    }
+
+    private void removeKey( String key )
+    {
+        if ( entries.remove( key ) != null )
+        {
+            try
+            {
+                pendingOut.writeByte( REMOVE_RECORD );
+                pendingOut.writeUTF( key );
+            }
+            catch ( IOException e )
+            {
+                // not thrown by the in-memory stream
+                throw new IllegalStateException( e );
+            }
+        }
+    }
+
+    /**
+     * Drops the entries of files, that do not exist anymore. Each call checks the next few of the entries, that
+     * were loaded when the index was opened, so the stale entries are dropped in the course of a scan, without
+     * walking all entries at once. The file system is accessed without holding the lock of the index.
+     */
+    private void pruneStaleEntries( )
+    {
+        for ( int i = 0; i < PRUNE_CHECKS_PER_LOOKUP; i++ )
+        {
+            String key;
+            synchronized ( this )
+            {
+                if ( pruneKeys == null || pruneCursor >= pruneKeys.size( ) )
+                {
+                    return;
+                }
+                key = pruneKeys.get( pruneCursor++ );
+            }
+            if ( !Files.exists( root.resolve( key ) ) )
+            {
+                synchronized ( this )
+                {
+                    if ( users > 0 )
+                    {
+                        removeKey( key );
+                    }
+                }
+            }
+        }
+    }
+
+    private static long sizeIfExists( Path file )
+        throws IOException
+    {
+        return Files.exists( file ) ? Files.size( file ) : 0;
+    }
+
+    private String getKey( Path file )
+    {
+        Path absolute = file.toAbsolutePath( ).normalize( );
+        Path key = absolute.startsWith( root ) ? root.relativize( absolute ) : absolute;
+        return key.toString( ).replace( '\\', '/' );
+    }
+
+    private static class Entry
+    {
+        final long size;
+
+        final long lastModified;
+
+        /**
+         * The raw digests by the ordinal of the algorithm.
+         */
+        final byte[][] digests = new byte[ALGORITHMS.length][];
+
+        Entry( long size, long lastModified )
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -27,11 +27,15 @@
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -62,21 +66,63 @@
 
     private final Path referenceFile;
 
+    private final ChecksumCache checksumCache;
+
+    private final ChecksumValidationIndex validationIndex;
+
     /**
      * Construct a ChecksummedFile object.
      *
      * @param referenceFile
      */
     public ChecksummedFile( final Path referenceFile )
+    {
+        this( referenceFile, null, null );
+    }
+
+    /**
+     * Construct a ChecksummedFile object, that takes the checksums of the reference file from the given cache.
+     *
+     * @param referenceFile
+     * @param checksumCache the cache, or <code>null</code> if the checksums should always be calculated
+     */
+    public ChecksummedFile( final Path referenceFile, final ChecksumCache checksumCache )
+    {
+        this( referenceFile, checksumCache, null );
+    }
+
+    /**
+     * Construct a ChecksummedFile object, that takes the checksums of the reference file from the given index,
+     * if the file did not change since they were stored. Checksums that are calculated are stored in the index.
+     *
+     * @param referenceFile
+     * @param checksumCache the cache, or <code>null</code> if the checksums should always be calculated
+     * @param validationIndex the index, or <code>null</code>
+     */
+    public ChecksummedFile( final Path referenceFile, final ChecksumCache checksumCache,
+                            final ChecksumValidationIndex validationIndex )
     {
         this.referenceFile = referenceFile;
+        this.checksumCache = checksumCache;
+        this.validationIndex = validationIndex;
     }
 
 
     public static ChecksumReference getFromChecksumFile( Path checksumFile )
+    {
+        return getFromChecksumFile( checksumFile, null );
+    }
+
+    public static ChecksumReference getFromChecksumFile( Path checksumFile, ChecksumCache checksumCache )
+    {
+        return getFromChecksumFile( checksumFile, checksumCache, null );
+    }
+
+    public static ChecksumReference getFromChecksumFile( Path checksumFile, ChecksumCache checksumCache,
+                                                         ChecksumValidationIndex validationIndex )
     {
         ChecksumAlgorithm alg = ChecksumAlgorithm.getByExtension( checksumFile );
-        ChecksummedFile file = new ChecksummedFile( getReferenceFile( checksumFile ) );
+        ChecksummedFile file = new ChecksummedFile( getReferenceFile( checksumFile ), checksumCache, validationIndex );
         return new ChecksumReference( file, alg, checksumFile );
     }
 
@@ -96,7 +142,23 @@ private static Path getReferenceFile( Path checksumFile )
     public String calculateChecksum( ChecksumAlgorithm checksumAlgorithm )
         throws IOException
     {
-
+        if ( validationIndex != null )
+        {
+            Checksum checksum = new Checksum( checksumAlgorithm );
+            try
+            {
+                update( Collections.singletonList( checksum ) );
+            }
+            catch ( ChecksumValidationException e )
+            {
+                throw new IOException( e.getMessage( ), e );
+            }
+            return checksum.getChecksum( );
+        }
+        if ( checksumCache != null )
+        {
+            return checksumCache.getChecksum( referenceFile, checksumAlgorithm );
+        }
         Checksum checksum = new Checksum( checksumAlgorithm );
         checksum.update( referenceFile );
         return checksum.getChecksum( );
@@ -208,7 +270,7 @@ public boolean isValidChecksums( List<ChecksumAlgorithm> algorithms, boolean thr
         // Parse file once, for all checksums.
         try
         {
-            Checksum.update( checksums, referenceFile );
+            update( checksums );
         }
         catch ( ChecksumValidationException e )
         {
@@ -257,6 +319,91 @@ public Path getReferenceFile( )
         return referenceFile;
     }
 
+    /**
+     * Takes the checksums from the validation index, if set and up to date. The missing checksums are
+     * calculated by reading the reference file once, or are taken from the cache, if set.
+     */
+    private void update( List<Checksum> checksums )
+        throws ChecksumValidationException
+    {
+        if ( validationIndex == null )
+        {
+            calculate( checksums );
+            return;
+        }
+        BasicFileAttributes attrs;
+        try
+        {
+            attrs = Files.readAttributes( referenceFile, BasicFileAttributes.class );
+        }
+        catch ( NoSuchFileException e )
+        {
+            throw new ChecksumValidationException( ChecksumValidationException.ValidationError.FILE_NOT_FOUND, "File that should be parsed, not found: " + e.getMessage( ), e );
+        }
+        catch ( IOException e )
+        {
+            throw new ChecksumValidationException( ChecksumValidationException.ValidationError.READ_ERROR, "Parsing of file failed: " + e.getMessage( ), e );
+        }
+        long size = attrs.size( );
+        long lastModified = attrs.lastModifiedTime( ).toMillis( );
+        List<Checksum> missing = new ArrayList<>( checksums.size( ) );
+        for ( Checksum checksum : checksums )
+        {
+            String value = validationIndex.getChecksum( referenceFile, size, lastModified, checksum.getAlgorithm( ) );
+            if ( value == null )
+            {
+                missing.add( checksum );
+            }
+            else
+            {
+                checksum.setResult( Hex.decode( value ) );
+            }
+        }
+        if ( !missing.isEmpty( ) )
+        {
+            calculate( missing );
+            for ( Checksum checksum : missing )
+            {
+                validationIndex.putChecksum( referenceFile, size, lastModified, checksum.getAlgorithm( ), checksum.getChecksum( ) );
+            }
+        }
+    }
+
+    /**
+     * Reads the reference file once for all checksums, or takes the results from the cache, if set.
+     */
+    private void calculate( List<Checksum> checksums )
+        throws ChecksumValidationException
+    {
+        if ( checksumCache == null )
+        {
+            Checksum.update( checksums, referenceFile );
+            return;
+        }
+        List<ChecksumAlgorithm> algorithms = new ArrayList<>( checksums.size( ) );
+        for ( Checksum checksum : checksums )
+        {
+            algorithms.add( checksum.getAlgorithm( ) );
+        }
+        Map<ChecksumAlgorithm, String> values;
+        try
+        {
+            values = checksumCache.getChecksums( referenceFile, algorithms );
+        }
+        catch ( NoSuchFileException e )
+        {
+            throw new ChecksumValidationException( ChecksumValidationException.ValidationError.FILE_NOT_FOUND, "File that should be parsed, not found: " + e.getMessage( ), e );
+        }
+        catch ( IOException e )
+        {
+            throw new ChecksumValidationException( ChecksumValidationException.ValidationError.READ_ERROR, "Parsing of file failed: " + e.getMessage( ), e );
+        }
+        for ( Checksum checksum : checksums )
+        {
+            checksum.setResult( Hex.decode( values.get( checksum.getAlgorithm( ) ) ) );
+        }
+    }
+
 
 
     public boolean fixChecksum(ChecksumAlgorithm algorithm) {
@@ -287,7 +434,7 @@ public boolean fixChecksums( List<ChecksumAlgorithm> algorithms )
         try
         {
             // Parse file once, for all checksums.
-            Checksum.update( checksums, referenceFile );
+            update( checksums );
         }
         catch ( ChecksumValidationException e )
         {
@@ -0,0 +1,138 @@
+package org.apache.archiva.checksum;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the sequential and the parallel digest calculation of {@link Checksum#update(List, Path)} and
+ * {@link Checksum#updateParallel(List, Path, ExecutorService)} for MD5, SHA-1, SHA-256 and SHA-512.
+ * <p>
+ * This is not a unit test, run it with the <code>main</code> method from the test classpath. The test files are
+ * created in the temp directory, the largest needs 4 GB of free space. The file is read from the page cache after
+ * the first iteration, so the numbers show the digest throughput, not the disk throughput.
+ * </p>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class ChecksumBenchmark
+{
+    private static final ChecksumAlgorithm[] ALGORITHMS =
+        { ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA1, ChecksumAlgorithm.SHA256, ChecksumAlgorithm.SHA512 };
+
+    @Param( { "10485760", "524288000", "4294967296" } )
+    public long fileSize;
+
+    @Param( { "false", "true" } )
+    public boolean parallel;
+
+    private Path file;
+
+    private ExecutorService executor;
+
+    @Setup( Level.Trial )
+    public void createFile( )
+        throws IOException
+    {
+        executor = Executors.newFixedThreadPool( ALGORITHMS.length );
+        file = Files.createTempFile( "checksum-benchmark", ".bin" );
+        byte[] block = new byte[1024 * 1024];
+        new Random( 42 ).nextBytes( block );
+        try (OutputStream out = Files.newOutputStream( file ))
+        {
+            long written = 0;
+            while ( written < fileSize )
+            {
+                int len = (int) Math.min( block.length, fileSize - written );
+                // vary the content between the blocks
+                block[0]++;
+                out.write( block, 0, len );
+                written += len;
+            }
+        }
+    }
+
+    @TearDown( Level.Trial )
+    public void deleteFile( )
+        throws IOException
+    {
+        executor.shutdownNow( );
+        Files.deleteIfExists( file );
+    }
+
+    @Benchmark
+    public List<Checksum> update( )
+    {
+        List<Checksum> checksums = new ArrayList<>( ALGORITHMS.length );
+        for ( ChecksumAlgorithm algorithm : ALGORITHMS )
+        {
+            checksums.add( new Checksum( algorithm ) );
+        }
+        if ( parallel )
+        {
+            Checksum.updateParallel( checksums, file, executor );
+        }
+        else
+        {
+            Checksum.update( checksums, file );
+        }
+        return checksums;
+    }
+
+    public static void main( String[] args )
+        throws RunnerException
+    {
+        Options options = new OptionsBuilder( )
+            .include( ChecksumBenchmark.class.getSimpleName( ) )
+            .build( );
+        new Runner( options ).run( );
+    }
+}
@@ -0,0 +1,158 @@
+package org.apache.archiva.checksum;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * ChecksumCacheTest
+ */
+public class ChecksumCacheTest
+    extends AbstractChecksumTestCase
+{
+    private static final String JAR_MD5 = "f42047fe2e177ac04d0df7aa44d408be";
+
+    private static final String JAR_SHA1 = "2bb14b388973351b0a4dfe11d171965f59cc61a1";
+
+    private Path createTestableJar()
+        throws IOException
+    {
+        Path srcFile = getTestResource( "examples/redback-authz-open.jar" );
+        Path destFile = getTestOutputDir( ).resolve( srcFile.getFileName( ) );
+        Files.copy( srcFile, destFile, StandardCopyOption.REPLACE_EXISTING );
+        return destFile;
+    }
+
+    @Test
+    public void testAllAlgorithmsInOnePass()
+        throws IOException
+    {
+        Path jar = createTestableJar( );
+        ChecksumCache cache = new ChecksumCache( ChecksumCache.DEFAULT_ALGORITHMS, 10 );
+
+        assertEquals( JAR_SHA1, cache.getChecksum( jar, ChecksumAlgorithm.SHA1 ) );
+        assertEquals( 1, cache.getMissCount( ) );
+        assertEquals( JAR_MD5, cache.getChecksum( jar, ChecksumAlgorithm.MD5 ) );
+        assertEquals( 1, cache.getMissCount( ) );
+        assertEquals( 1, cache.getHitCount( ) );
+
+        // not configured algorithms are calculated on demand
+        String sha256 = cache.getChecksum( jar, ChecksumAlgorithm.SHA256 );
+        assertEquals( new ChecksummedFile( jar ).calculateChecksum( ChecksumAlgorithm.SHA256 ), sha256 );
+        assertEquals( 2, cache.getMissCount( ) );
+
+        Map<ChecksumAlgorithm, String> checksums =
+            cache.getChecksums( jar, Arrays.asList( ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA256 ) );
+        assertEquals( 2, checksums.size( ) );
+        assertEquals( JAR_MD5, checksums.get( ChecksumAlgorithm.MD5 ) );
+        assertEquals( sha256, checksums.get( ChecksumAlgorithm.SHA256 ) );
+        assertEquals( 2, cache.getMissCount( ) );
+    }
+
+    @Test
+    public void testModifiedFileIsRecalculated()
+        throws IOException
+    {
+        Path jar = createTestableJar( );
+        ChecksumCache cache = new ChecksumCache( ChecksumCache.DEFAULT_ALGORITHMS, 10 );
+        assertEquals( JAR_SHA1, cache.getChecksum( jar, ChecksumAlgorithm.SHA1 ) );
+
+        Files.write( jar, new byte[0] );
+        Files.setLastModifiedTime( jar, FileTime.fromMillis( System.currentTimeMillis( ) - 60000 ) );
+        assertEquals( "da39a3ee5e6b4b0d3255bfef95601890afd80709", cache.getChecksum( jar, ChecksumAlgorithm.SHA1 ) );
+        assertEquals( 2, cache.getMissCount( ) );
+    }
+
+    @Test
+    public void testMaxEntries()
+        throws IOException
+    {
+        Path jar = createTestableJar( );
+        Path copy = Files.copy( jar, jar.resolveSibling( "copy.jar" ), StandardCopyOption.REPLACE_EXISTING );
+        ChecksumCache cache = new ChecksumCache( ChecksumCache.DEFAULT_ALGORITHMS, 1 );
+
+        cache.getChecksum( jar, ChecksumAlgorithm.SHA1 );
+        cache.getChecksum( copy, ChecksumAlgorithm.SHA1 );
+        assertEquals( 1, cache.size( ) );
+        cache.getChecksum( jar, ChecksumAlgorithm.SHA1 );
+        assertEquals( 3, cache.getMissCount( ) );
+    }
+
+    @Test
+    public void testChecksummedFileWithCache()
+        throws IOException
+    {
+        Path jar = createTestableJar( );
+        Path srcSha1 = getTestResource( "examples/redback-authz-open.jar.sha1" );
+        Files.copy( srcSha1, jar.resolveSibling( jar.getFileName( ) + ".sha1" ), StandardCopyOption.REPLACE_EXISTING );
+        ChecksumCache cache = new ChecksumCache( ChecksumCache.DEFAULT_ALGORITHMS, 10 );
+
+        ChecksummedFile checksummedFile = new ChecksummedFile( jar, cache );
+        assertTrue( checksummedFile.isValidChecksum( ChecksumAlgorithm.SHA1 ) );
+        assertEquals( JAR_MD5, checksummedFile.calculateChecksum( ChecksumAlgorithm.MD5 ) );
+        assertEquals( 1, cache.getMissCount( ) );
+    }
+
+    @Test
+    public void testPutChecksums()
+        throws IOException
+    {
+        Path jar = createTestableJar( );
+        ChecksumCache cache = new ChecksumCache( ChecksumCache.DEFAULT_ALGORITHMS, 10 );
+        Map<ChecksumAlgorithm, String> checksums = new EnumMap<>( ChecksumAlgorithm.class );
+        checksums.put( ChecksumAlgorithm.SHA1, JAR_SHA1 );
+        checksums.put( ChecksumAlgorithm.MD5, JAR_MD5 );
+        cache.putChecksums( jar, checksums );
+
+        assertEquals( JAR_SHA1, cache.getChecksum( jar, ChecksumAlgorithm.SHA1 ) );
+        assertEquals( JAR_MD5, cache.getChecksum( jar, ChecksumAlgorithm.MD5 ) );
+        assertEquals( 0, cache.getMissCount( ) );
+
+        // the stored checksums are dropped, if the file changes afterwards
+        Files.setLastModifiedTime( jar, FileTime.fromMillis( System.currentTimeMillis( ) - 60000 ) );
+        assertEquals( JAR_SHA1, cache.getChecksum( jar, ChecksumAlgorithm.SHA1 ) );
+        assertEquals( 1, cache.getMissCount( ) );
+    }
+
+    @Test
+    public void testMissingFile()
+    {
+        ChecksumCache cache = new ChecksumCache( ChecksumCache.DEFAULT_ALGORITHMS, 10 );
+        try
+        {
+            cache.getChecksum( getTestOutputDir( ).resolve( "missing.jar" ), ChecksumAlgorithm.SHA1 );
+            fail( "IOException expected" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+        assertEquals( 0, cache.size( ) );
+    }
+}
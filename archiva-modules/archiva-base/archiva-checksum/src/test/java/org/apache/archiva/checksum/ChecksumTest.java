@@ -29,9 +29,16 @@
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ChecksumTest
@@ -91,6 +98,100 @@ public void testUpdateMany()
         assertEquals( "Checksum MD5", "21c2c5ca87ec018adacb2e2fb3432219", checksumMd5.getChecksum() );
     }
 
+    @Test
+    public void testUpdateManyParallel()
+        throws IOException, ChecksumValidationException
+    {
+        // more than one chunk and not a multiple of the chunk size
+        byte[] content = new byte[9 * 1024 * 1024 + 17];
+        new Random( 42 ).nextBytes( content );
+        Path checkFile = getTestOutputDir().resolve( "test-file-parallel.bin" );
+        Files.write( checkFile, content );
+
+        List<Checksum> sequential = new ArrayList<>();
+        List<Checksum> parallel = new ArrayList<>();
+        for ( ChecksumAlgorithm algorithm : ChecksumAlgorithm.values() )
+        {
+            sequential.add( new Checksum( algorithm ) );
+            parallel.add( new Checksum( algorithm ) );
+        }
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try
+        {
+            Checksum.update( sequential, checkFile );
+            Checksum.updateParallel( parallel, checkFile, executor );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        for ( int i = 0; i < sequential.size(); i++ )
+        {
+            assertEquals( "Checksum " + sequential.get( i ).getAlgorithm(), sequential.get( i ).getChecksum(),
+                          parallel.get( i ).getChecksum() );
+        }
+    }
+
+    @Test
+    public void testUpdateParallelWithoutFreeThreads()
+        throws IOException, ChecksumValidationException
+    {
+        byte[] content = new byte[5 * 1024 * 1024];
+        new Random( 42 ).nextBytes( content );
+        Path checkFile = getTestOutputDir().resolve( "test-file-bounded.bin" );
+        Files.write( checkFile, content );
+
+        List<Checksum> sequential = new ArrayList<>();
+        List<Checksum> parallel = new ArrayList<>();
+        for ( ChecksumAlgorithm algorithm : ChecksumAlgorithm.values() )
+        {
+            sequential.add( new Checksum( algorithm ) );
+            parallel.add( new Checksum( algorithm ) );
+        }
+
+        // one thread for more than one digest, the file is digested by the calling thread
+        ExecutorService executor = new ThreadPoolExecutor( 1, 1, 1, TimeUnit.SECONDS, new SynchronousQueue<>() );
+        try
+        {
+            Checksum.update( sequential, checkFile );
+            Checksum.updateParallel( parallel, checkFile, executor );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        for ( int i = 0; i < sequential.size(); i++ )
+        {
+            assertEquals( "Checksum " + sequential.get( i ).getAlgorithm(), sequential.get( i ).getChecksum(),
+                          parallel.get( i ).getChecksum() );
+        }
+    }
+
+    @Test
+    public void testUpdateParallelMissingFile()
+    {
+        List<Checksum> checksums = new ArrayList<>();
+        checksums.add( new Checksum( ChecksumAlgorithm.SHA1 ) );
+        checksums.add( new Checksum( ChecksumAlgorithm.MD5 ) );
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try
+        {
+            Checksum.updateParallel( checksums, getTestOutputDir().resolve( "missing.bin" ), executor );
+            fail( "ChecksumValidationException expected" );
+        }
+        catch ( ChecksumValidationException e )
+        {
+            assertEquals( ChecksumValidationException.ValidationError.FILE_NOT_FOUND, e.getErrorType() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void testUpdateWholeUpdatePartial()
     {
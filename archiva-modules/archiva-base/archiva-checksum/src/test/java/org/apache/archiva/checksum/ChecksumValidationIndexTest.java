@@ -0,0 +1,167 @@
+package org.apache.archiva.checksum;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.common.utils.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * ChecksumValidationIndexTest
+ */
+public class ChecksumValidationIndexTest
+    extends AbstractChecksumTestCase
+{
+    private static final String JAR_SHA1 = "2bb14b388973351b0a4dfe11d171965f59cc61a1";
+
+    private Path repoDir;
+
+    private Path jar;
+
+    private ChecksumCache checksumCache;
+
+    @Before
+    public void createRepository()
+        throws IOException
+    {
+        checksumCache = new ChecksumCache();
+        repoDir = getTestOutputDir().resolve( "repo" );
+        FileUtils.deleteDirectory( repoDir );
+        Path dir = repoDir.resolve( "org/codehaus/redback/redback-authz-open/1.0" );
+        Files.createDirectories( dir );
+        Files.createDirectories( ChecksumValidationIndex.getDirectory( repoDir ) );
+        Path srcFile = getTestResource( "examples/redback-authz-open.jar" );
+        jar = Files.copy( srcFile, dir.resolve( srcFile.getFileName() ), StandardCopyOption.REPLACE_EXISTING );
+        Files.copy( srcFile.resolveSibling( srcFile.getFileName() + ".sha1" ),
+                    dir.resolve( srcFile.getFileName() + ".sha1" ), StandardCopyOption.REPLACE_EXISTING );
+    }
+
+    @Test
+    public void testChecksumsAreTakenFromIndex()
+        throws IOException
+    {
+        ChecksumValidationIndex index = checksumCache.openValidationIndex( repoDir );
+        try
+        {
+            assertSame( index, checksumCache.openValidationIndex( repoDir ) );
+            index.close();
+
+            ChecksummedFile checksummedFile = new ChecksummedFile( jar, null, index );
+            assertTrue( checksummedFile.isValidChecksum( ChecksumAlgorithm.SHA1 ) );
+            long size = Files.size( jar );
+            long lastModified = Files.getLastModifiedTime( jar ).toMillis();
+            assertEquals( JAR_SHA1, index.getChecksum( jar, size, lastModified, ChecksumAlgorithm.SHA1 ) );
+
+            // Same size and modification time: the content is not read again
+            Files.write( jar, new byte[(int) size] );
+            Files.setLastModifiedTime( jar, FileTime.fromMillis( lastModified ) );
+            assertTrue( new ChecksummedFile( jar, null, index ).isValidChecksum( ChecksumAlgorithm.SHA1 ) );
+
+            // Changed modification time: the content is read again
+            Files.setLastModifiedTime( jar, FileTime.fromMillis( lastModified - 60000 ) );
+            assertFalse( new ChecksummedFile( jar, null, index ).isValidChecksum( ChecksumAlgorithm.SHA1 ) );
+            assertNull( index.getChecksum( jar, size, lastModified, ChecksumAlgorithm.SHA1 ) );
+        }
+        finally
+        {
+            index.close();
+        }
+    }
+
+    @Test
+    public void testSaveAndLoad()
+        throws IOException
+    {
+        ChecksumValidationIndex index = checksumCache.openValidationIndex( repoDir );
+        long size = Files.size( jar );
+        long lastModified = Files.getLastModifiedTime( jar ).toMillis();
+        String md5 = new ChecksummedFile( jar, null, index ).calculateChecksum( ChecksumAlgorithm.MD5 );
+        index.putChecksum( repoDir.resolve( "removed.jar" ), 1, 1, ChecksumAlgorithm.SHA1, JAR_SHA1 );
+        index.close();
+
+        // the changes are appended to the journal
+        Path journalFile = ChecksumValidationIndex.getDirectory( repoDir ).resolve( "checksums.log" );
+        assertTrue( Files.exists( journalFile ) );
+
+        // the entries of the closed index are dropped from memory and loaded again
+        ChecksumValidationIndex loaded = checksumCache.openValidationIndex( repoDir );
+        try
+        {
+            assertSame( index, loaded );
+            assertEquals( 2, loaded.size() );
+            // entries of missing files are dropped by the lookups
+            assertEquals( md5, loaded.getChecksum( jar, size, lastModified, ChecksumAlgorithm.MD5 ) );
+            assertEquals( 1, loaded.size() );
+        }
+        finally
+        {
+            loaded.close();
+        }
+
+        // the removal was appended to the journal
+        loaded = checksumCache.openValidationIndex( repoDir );
+        try
+        {
+            assertEquals( 1, loaded.size() );
+        }
+        finally
+        {
+            loaded.close();
+        }
+    }
+
+    @Test
+    public void testRecordWithoutOpenIndex()
+        throws IOException
+    {
+        Map<ChecksumAlgorithm, String> checksums = new EnumMap<>( ChecksumAlgorithm.class );
+        checksums.put( ChecksumAlgorithm.SHA1, JAR_SHA1 );
+        checksumCache.recordValidatedChecksums( repoDir, jar, checksums );
+
+        Path journalFile = ChecksumValidationIndex.getDirectory( repoDir ).resolve( "checksums.log" );
+        assertTrue( Files.exists( journalFile ) );
+
+        ChecksumValidationIndex index = checksumCache.openValidationIndex( repoDir );
+        long size = Files.size( jar );
+        long lastModified = Files.getLastModifiedTime( jar ).toMillis();
+        assertEquals( JAR_SHA1, index.getChecksum( jar, size, lastModified, ChecksumAlgorithm.SHA1 ) );
+        index.close();
+
+        // a small journal is kept, the index file is only rewritten, when the journal gets large
+        assertTrue( Files.exists( journalFile ) );
+        index = checksumCache.openValidationIndex( repoDir );
+        try
+        {
+            assertEquals( JAR_SHA1, index.getChecksum( jar, size, lastModified, ChecksumAlgorithm.SHA1 ) );
+        }
+        finally
+        {
+            index.close();
+        }
+    }
+}
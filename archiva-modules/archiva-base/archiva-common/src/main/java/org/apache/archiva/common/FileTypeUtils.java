@@ -36,4 +36,23 @@
     public static final List<String> DEFAULT_EXCLUSIONS =
         Arrays.asList( "**/maven-metadata.xml", "**/maven-metadata-*.xml", "**/*.sha1", "**/*.asc", "**/*.md5",
                        "**/*.pgp", "**/.index/**", "**/.indexer/**" );
+
+    /**
+     * Directory relative to the repository root, where proxied files are stored until the download is complete.
+     * It is on the same file system as the repository, so completed downloads can be moved into place atomically.
+     * Repository scans skip this directory.
+     */
+    public static final String STAGING_DIRECTORY = ".staging";
+
+    /**
+     * Directory relative to the repository root, where Archiva keeps its own data of the repository, e.g. the
+     * file metadata store and the scan journal. Repository scans skip this directory.
+     */
+    public static final String DATA_DIRECTORY = ".archiva";
+
+    /**
+     * Directory relative to the {@link #DATA_DIRECTORY}, where the scan journal and the checksum index of the
+     * repository are stored.
+     */
+    public static final String SCAN_DIRECTORY = "scan";
 }
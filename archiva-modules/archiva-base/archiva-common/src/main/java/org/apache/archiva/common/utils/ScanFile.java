@@ -0,0 +1,92 @@
+package org.apache.archiva.common.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.nio.file.Path;
+
+/**
+ * ScanFile - lightweight view of a file found during a repository scan.
+ * <p>
+ * Unlike {@link BaseFile} the relative path and the modification time are computed only once by the
+ * scanner, from the path and the attributes the file walk already provides. The instance is mutable,
+ * so a single-threaded scan can reuse one instance for all files. Use {@link #copy()} if the file has
+ * to be handed over to another thread.
+ * </p>
+ */
+public class ScanFile
+{
+    private Path path;
+
+    private String relativePath;
+
+    private long lastModified;
+
+    public ScanFile()
+    {
+        // no-op
+    }
+
+    public ScanFile( Path path, String relativePath, long lastModified )
+    {
+        set( path, relativePath, lastModified );
+    }
+
+    /**
+     * Points this view to another file.
+     *
+     * @param path the absolute path of the file
+     * @param relativePath the path relative to the repository root
+     * @param lastModified the modification time in milliseconds
+     * @return this instance
+     */
+    public ScanFile set( Path path, String relativePath, long lastModified )
+    {
+        this.path = path;
+        this.relativePath = relativePath;
+        this.lastModified = lastModified;
+        return this;
+    }
+
+    public ScanFile copy()
+    {
+        return new ScanFile( path, relativePath, lastModified );
+    }
+
+    public Path getPath()
+    {
+        return path;
+    }
+
+    public String getRelativePath()
+    {
+        return relativePath;
+    }
+
+    public long getLastModified()
+    {
+        return lastModified;
+    }
+
+    @Override
+    public String toString()
+    {
+        return relativePath;
+    }
+}
@@ -125,4 +125,21 @@ void processFile( String path, boolean executeOnEntireRepo )
      * @return whether to process the unmodified files
      */
     boolean isProcessUnmodified();
+
+    /**
+     * <p>
+     * Whether {@link #processFile(String, boolean)} may be called concurrently from different threads.
+     * </p>
+     * <p>
+     * If the repository is scanned in parallel, consumers that are not thread safe are fed through a single
+     * serialized lane in the order the files are found. {@link #beginScan(ManagedRepository, Date, boolean)} and
+     * {@link #completeScan(boolean)} are always called exactly once per scan, regardless of this flag.
+     * </p>
+     *
+     * @return <code>true</code>, if the consumer can process files concurrently, otherwise <code>false</code>
+     */
+    default boolean isThreadSafe()
+    {
+        return false;
+    }
 }
@@ -20,6 +20,7 @@
  */
 
 import org.apache.archiva.common.utils.BaseFile;
+import org.apache.archiva.common.utils.ScanFile;
 import org.apache.archiva.consumers.RepositoryContentConsumer;
 import org.apache.archiva.repository.ManagedRepository;
 import org.apache.archiva.repository.features.IndexCreationFeature;
@@ -41,6 +42,12 @@
 {
     private BaseFile basefile;
 
+    private String relativePath;
+
+    private long lastModified;
+
+    private String indexDirectory;
+
     private boolean isCaseSensitive = true;
 
     private int wantedFileCount = 0;
@@ -62,6 +69,7 @@ public ConsumerWantsFilePredicate( )
     public ConsumerWantsFilePredicate( ManagedRepository managedRepository )
     {
         this.managedRepository = managedRepository;
+        this.indexDirectory = getIndexDirectory( managedRepository );
     }
 
     @Override
@@ -70,7 +78,7 @@ public boolean evaluate( RepositoryContentConsumer object )
         boolean satisfies = false;
 
         RepositoryContentConsumer consumer = (RepositoryContentConsumer) object;
-        if ( wantsFile( consumer, FilenameUtils.separatorsToUnix( basefile.getRelativePath( ) ) ) )
+        if ( wantsFile( consumer, relativePath ) )
         {
             satisfies = true;
 
@@ -80,7 +88,7 @@ public boolean evaluate( RepositoryContentConsumer object )
             if ( !consumer.isProcessUnmodified( ) )
             {
                 // Timestamp finished points to the last successful scan, not this current one.
-                if ( basefile.lastModified( ) < changesSince )
+                if ( lastModified < changesSince )
                 {
                     // Skip file as no change has occurred.
                     satisfies = false;
@@ -109,6 +117,22 @@ public boolean isCaseSensitive( )
     public void setBasefile( BaseFile basefile )
     {
         this.basefile = basefile;
+        this.relativePath = FilenameUtils.separatorsToUnix( basefile.getRelativePath( ) );
+        this.lastModified = basefile.lastModified( );
+        this.wantedFileCount = 0;
+    }
+
+    /**
+     * Sets the file to evaluate. The relative path and modification time are taken as they are
+     * provided by the view, no further file system access is done.
+     *
+     * @param file the file found by the scanner
+     */
+    public void setScanFile( ScanFile file )
+    {
+        this.basefile = null;
+        this.relativePath = FilenameUtils.separatorsToUnix( file.getRelativePath( ) );
+        this.lastModified = file.getLastModified( );
         this.wantedFileCount = 0;
     }
 
@@ -133,34 +157,10 @@ private boolean wantsFile( RepositoryContentConsumer consumer, String relativePa
             }
         }
 
-        if ( managedRepository != null )
+        if ( indexDirectory != null && StringUtils.startsWith( relativePath, indexDirectory ) )
         {
-            String indexDirectory;
-            if ( managedRepository.supportsFeature( IndexCreationFeature.class ) )
-            {
-                IndexCreationFeature icf = managedRepository.getFeature( IndexCreationFeature.class ).get( );
-                if ( icf.getIndexPath( ) == null )
-                {
-                    indexDirectory = ".index";
-                }
-                else
-                {
-                    indexDirectory = ( icf.getIndexPath( ).getScheme( ) == null ? Paths.get( icf.getIndexPath( ).getPath( ) ) : Paths.get( icf.getIndexPath( ) ) ).toString( );
-                }
-            }
-            else
-            {
-                indexDirectory = ".index";
-            }
-            if ( StringUtils.isEmpty( indexDirectory ) )
-            {
-                indexDirectory = ".index";
-            }
-            if ( StringUtils.startsWith( relativePath, indexDirectory ) )
-            {
-                logger.debug( "ignore file {} part of the index directory {}", relativePath, indexDirectory );
-                return false;
-            }
+            logger.debug( "ignore file {} part of the index directory {}", relativePath, indexDirectory );
+            return false;
         }
 
         // Now test includes.
@@ -177,6 +177,36 @@ private boolean wantsFile( RepositoryContentConsumer consumer, String relativePa
         return false;
     }
 
+    private static String getIndexDirectory( ManagedRepository managedRepository )
+    {
+        if ( managedRepository == null )
+        {
+            return null;
+        }
+        String indexDirectory;
+        if ( managedRepository.supportsFeature( IndexCreationFeature.class ) )
+        {
+            IndexCreationFeature icf = managedRepository.getFeature( IndexCreationFeature.class ).get( );
+            if ( icf.getIndexPath( ) == null )
+            {
+                indexDirectory = ".index";
+            }
+            else
+            {
+                indexDirectory = ( icf.getIndexPath( ).getScheme( ) == null ? Paths.get( icf.getIndexPath( ).getPath( ) ) : Paths.get( icf.getIndexPath( ) ) ).toString( );
+            }
+        }
+        else
+        {
+            indexDirectory = ".index";
+        }
+        if ( StringUtils.isEmpty( indexDirectory ) )
+        {
+            indexDirectory = ".index";
+        }
+        return indexDirectory;
+    }
+
     public void setChangesSince( long changesSince )
     {
         this.changesSince = changesSince;
@@ -20,6 +20,8 @@
  */
 
 import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumCache;
+import org.apache.archiva.checksum.ChecksumValidationIndex;
 import org.apache.archiva.checksum.ChecksummedFile;
 import org.apache.archiva.configuration.ArchivaConfiguration;
 import org.apache.archiva.configuration.FileTypes;
@@ -34,6 +36,7 @@
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -64,16 +67,20 @@
 
     private FileTypes filetypes;
 
-    private ChecksummedFile checksum;
-
     private static final String TYPE_CHECKSUM_NOT_FILE = "checksum-bad-not-file";
 
     private static final String TYPE_CHECKSUM_CANNOT_CALC = "checksum-calc-failure";
 
     private static final String TYPE_CHECKSUM_CANNOT_CREATE = "checksum-create-failure";
 
+    @Inject
+    @Named( "checksumCache#default" )
+    private ChecksumCache checksumCache;
+
     private Path repositoryDir;
 
+    private ChecksumValidationIndex validationIndex;
+
     private List<String> includes = new ArrayList<>( 0 );
 
     @Inject
@@ -104,6 +111,7 @@ public void beginScan( ManagedRepository repo, Date whenGathered )
         throws ConsumerException
     {
         this.repositoryDir = Paths.get( repo.getLocation( ) );
+        this.validationIndex = checksumCache.openValidationIndex( repositoryDir );
     }
 
     @Override
@@ -116,7 +124,14 @@ public void beginScan( ManagedRepository repo, Date whenGathered, boolean execut
     @Override
     public void completeScan( )
     {
-        /* do nothing */
+        try
+        {
+            validationIndex.close( );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not save the checksum index of {}: {}", repositoryDir, e.getMessage( ) );
+        }
     }
 
     @Override
@@ -152,6 +167,13 @@ public void processFile( String path, boolean executeOnEntireRepo )
         processFile( path );
     }
 
+    @Override
+    public boolean isThreadSafe( )
+    {
+        // no per file state is kept between calls
+        return true;
+    }
+
     private void createFixChecksum( String path, ChecksumAlgorithm checksumAlgorithm )
     {
         Path artifactFile = repositoryDir.resolve(path);
@@ -159,7 +181,7 @@ private void createFixChecksum( String path, ChecksumAlgorithm checksumAlgorithm
 
         if ( Files.exists(checksumFile) )
         {
-            checksum = new ChecksummedFile( artifactFile);
+            ChecksummedFile checksum = new ChecksummedFile( artifactFile, checksumCache, validationIndex );
             if ( !checksum.isValidChecksum( checksumAlgorithm ) )
             {
                 checksum.fixChecksum( checksumAlgorithm );
@@ -169,7 +191,7 @@ private void createFixChecksum( String path, ChecksumAlgorithm checksumAlgorithm
         }
         else if ( !Files.exists(checksumFile) )
         {
-            checksum = new ChecksummedFile( artifactFile);
+            ChecksummedFile checksum = new ChecksummedFile( artifactFile, checksumCache, validationIndex );
             try
             {
                 checksum.createChecksum( checksumAlgorithm );
@@ -20,8 +20,10 @@
  */
 
 import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumCache;
 import org.apache.archiva.checksum.ChecksumReference;
 import org.apache.archiva.checksum.ChecksumValidationException;
+import org.apache.archiva.checksum.ChecksumValidationIndex;
 import org.apache.archiva.checksum.ChecksummedFile;
 import org.apache.archiva.consumers.AbstractMonitoredConsumer;
 import org.apache.archiva.consumers.ConsumerException;
@@ -33,6 +35,9 @@
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -65,8 +70,14 @@
 
     private String description = "Validate checksums against file.";
 
+    @Inject
+    @Named( "checksumCache#default" )
+    private ChecksumCache checksumCache;
+
     private Path repositoryDir;
 
+    private ChecksumValidationIndex validationIndex;
+
     private List<String> includes;
 
     @Override
@@ -86,6 +97,7 @@ public void beginScan( ManagedRepository repository, Date whenGathered )
         throws ConsumerException
     {
         this.repositoryDir = Paths.get( repository.getLocation( ) );
+        this.validationIndex = checksumCache.openValidationIndex( repositoryDir );
     }
 
     @Override
@@ -98,7 +110,14 @@ public void beginScan( ManagedRepository repository, Date whenGathered, boolean
     @Override
     public void completeScan( )
     {
-        /* nothing to do */
+        try
+        {
+            validationIndex.close( );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not save the checksum index of {}: {}", repositoryDir, e.getMessage( ) );
+        }
     }
 
     @Override
@@ -126,7 +145,7 @@ public void processFile( String path )
         Path checksumFile = this.repositoryDir.resolve( path );
         try
         {
-            ChecksumReference cf = ChecksummedFile.getFromChecksumFile( checksumFile );
+            ChecksumReference cf = ChecksummedFile.getFromChecksumFile( checksumFile, checksumCache, validationIndex );
             if ( !cf.getFile().isValidChecksum( cf.getAlgorithm(), true )  )
             {
                 log.warn( "The checksum for {} is invalid.", checksumFile );
@@ -156,6 +175,12 @@ public void processFile( String path, boolean executeOnEntireReDpo )
         processFile( path );
     }
 
+    @Override
+    public boolean isThreadSafe( )
+    {
+        return true;
+    }
+
     @PostConstruct
     public void initialize( )
     {
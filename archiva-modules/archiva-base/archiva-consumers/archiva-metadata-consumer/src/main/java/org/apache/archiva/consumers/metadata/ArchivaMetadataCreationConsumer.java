@@ -94,6 +94,15 @@
 
     private String repoId;
 
+    /**
+     * The session of the version directory, whose files are currently processed.
+     */
+    private RepositorySession batchSession;
+
+    private String batchDirectory;
+
+    private final List<String> batchPaths = new ArrayList<>();
+
     @Override
     public String getId()
     {
@@ -122,6 +131,7 @@ public List<String> getIncludes()
     public void beginScan( ManagedRepository repo, Date whenGathered )
         throws ConsumerException
     {
+        saveBatch();
         repoId = repo.getId();
         this.whenGathered = whenGathered;
     }
@@ -137,82 +147,157 @@ public void beginScan( ManagedRepository repository, Date whenGathered, boolean
     public void processFile( String path )
         throws ConsumerException
     {
-
-        RepositorySession repositorySession = repositorySessionFactory.createSession();
+        // the scan walks the files of a version directory one after another, their changes are saved together
+        int separator = Math.max( path.lastIndexOf( '/' ), path.lastIndexOf( '\\' ) );
+        String directory = separator > 0 ? path.substring( 0, separator ) : "";
+        if ( batchSession != null && !directory.equals( batchDirectory ) )
+        {
+            saveBatch();
+        }
+        if ( batchSession == null )
+        {
+            batchSession = repositorySessionFactory.createSession();
+            batchDirectory = directory;
+        }
         try
         {
-            // note that we do minimal processing including checksums and POM information for performance of
-            // the initial scan. Any request for this information will be intercepted and populated on-demand
-            // or picked up by subsequent scans
-
-            ArtifactMetadata artifact = repositoryStorage.readArtifactMetadataFromPath( repoId, path );
-
-            ProjectMetadata project = new ProjectMetadata();
-            project.setNamespace( artifact.getNamespace() );
-            project.setId( artifact.getProject() );
-
-            String projectVersion = VersionUtil.getBaseVersion( artifact.getVersion() );
-
-            MetadataRepository metadataRepository = repositorySession.getRepository();
+            updateMetadata( batchSession, path );
+            batchPaths.add( path );
+        }
+        catch ( MetadataRepositoryException e )
+        {
+            log.warn(
+                "Error occurred persisting metadata for artifact:{} (repository:{}); message: {}" ,
+                path, repoId, e.getMessage(), e );
+            revertBatch();
+        }
+        catch ( RepositoryStorageRuntimeException e )
+        {
+            log.warn(
+                "Error occurred persisting metadata for artifact:{} (repository:{}); message: {}",
+                path, repoId, e.getMessage(), e );
+        }
+    }
 
-            boolean createVersionMetadata = false;
+    /**
+     * Saves the changes of the files of the current version directory in one session.
+     */
+    private void saveBatch()
+    {
+        if ( batchSession == null )
+        {
+            return;
+        }
+        try
+        {
+            batchSession.save();
+            batchSession.close();
+        }
+        catch ( RuntimeException e )
+        {
+            log.warn( "Error occurred persisting metadata for {} (repository:{}); message: {}", batchDirectory,
+                      repoId, e.getMessage(), e );
+            revertBatch();
+            return;
+        }
+        batchSession = null;
+        batchPaths.clear();
+    }
 
-            // FIXME: maybe not too efficient since it may have already been read and stored for this artifact
-            ProjectVersionMetadata versionMetadata = null;
+    /**
+     * Reverts the changes of the current version directory, because a change failed. The files processed before
+     * are processed again, each one saved in its own session, so their metadata is not lost.
+     */
+    private void revertBatch()
+    {
+        List<String> paths = new ArrayList<>( batchPaths );
+        batchPaths.clear();
+        try
+        {
+            batchSession.revert();
+        }
+        finally
+        {
+            batchSession.closeQuietly();
+            batchSession = null;
+        }
+        for ( String path : paths )
+        {
+            RepositorySession repositorySession = repositorySessionFactory.createSession();
             try
             {
-                ReadMetadataRequest readMetadataRequest =
-                    new ReadMetadataRequest().repositoryId( repoId ).namespace( artifact.getNamespace() ).projectId(
-                        artifact.getProject() ).projectVersion( projectVersion );
-                versionMetadata = repositoryStorage.readProjectVersionMetadata( readMetadataRequest );
-                createVersionMetadata = true;
+                updateMetadata( repositorySession, path );
+                repositorySession.save();
             }
-            catch ( RepositoryStorageMetadataNotFoundException e )
+            catch ( MetadataRepositoryException | RepositoryStorageRuntimeException e )
             {
-                log.warn( "Missing or invalid POM for artifact:{} (repository:{}); creating empty metadata", path,
-                          repoId );
-
-                versionMetadata = new ProjectVersionMetadata();
-                versionMetadata.setId( projectVersion );
-                versionMetadata.setIncomplete( true );
-                createVersionMetadata = true;
+                log.warn(
+                    "Error occurred persisting metadata for artifact:{} (repository:{}); message: {}",
+                    path, repoId, e.getMessage(), e );
+                repositorySession.revert();
             }
-            catch ( RepositoryStorageMetadataInvalidException e )
+            finally
             {
-                log.warn( "Error occurred resolving POM for artifact:{} (repository:{}); message: {}",
-                          new Object[]{ path, repoId, e.getMessage() } );
+                repositorySession.close();
             }
+        }
+    }
 
-            // read the metadata and update it if it is newer or doesn't exist
-            artifact.setWhenGathered( whenGathered );
-            metadataRepository.updateArtifact( repoId, project.getNamespace(), project.getId(), projectVersion,
-                                               artifact );
-            if ( createVersionMetadata )
-            {
-                metadataRepository.updateProjectVersion( repoId, project.getNamespace(), project.getId(),
-                                                         versionMetadata );
-            }
-            metadataRepository.updateProject( repoId, project );
-            repositorySession.save();
+    private void updateMetadata( RepositorySession repositorySession, String path )
+        throws MetadataRepositoryException
+    {
+        // note that we do minimal processing including checksums and POM information for performance of
+        // the initial scan. Any request for this information will be intercepted and populated on-demand
+        // or picked up by subsequent scans
+
+        ArtifactMetadata artifact = repositoryStorage.readArtifactMetadataFromPath( repoId, path );
+
+        ProjectMetadata project = new ProjectMetadata();
+        project.setNamespace( artifact.getNamespace() );
+        project.setId( artifact.getProject() );
+
+        String projectVersion = VersionUtil.getBaseVersion( artifact.getVersion() );
+
+        MetadataRepository metadataRepository = repositorySession.getRepository();
+
+        boolean createVersionMetadata = false;
+
+        // FIXME: maybe not too efficient since it may have already been read and stored for this artifact
+        ProjectVersionMetadata versionMetadata = null;
+        try
+        {
+            ReadMetadataRequest readMetadataRequest =
+                new ReadMetadataRequest().repositoryId( repoId ).namespace( artifact.getNamespace() ).projectId(
+                    artifact.getProject() ).projectVersion( projectVersion );
+            versionMetadata = repositoryStorage.readProjectVersionMetadata( readMetadataRequest );
+            createVersionMetadata = true;
         }
-        catch ( MetadataRepositoryException e )
+        catch ( RepositoryStorageMetadataNotFoundException e )
         {
-            log.warn(
-                "Error occurred persisting metadata for artifact:{} (repository:{}); message: {}" ,
-                path, repoId, e.getMessage(), e );
-            repositorySession.revert();
+            log.warn( "Missing or invalid POM for artifact:{} (repository:{}); creating empty metadata", path,
+                      repoId );
+
+            versionMetadata = new ProjectVersionMetadata();
+            versionMetadata.setId( projectVersion );
+            versionMetadata.setIncomplete( true );
+            createVersionMetadata = true;
         }
-        catch ( RepositoryStorageRuntimeException e )
+        catch ( RepositoryStorageMetadataInvalidException e )
         {
-            log.warn(
-                "Error occurred persisting metadata for artifact:{} (repository:{}); message: {}",
-                path, repoId, e.getMessage(), e );
-            repositorySession.revert();
+            log.warn( "Error occurred resolving POM for artifact:{} (repository:{}); message: {}",
+                      new Object[]{ path, repoId, e.getMessage() } );
         }
-        finally
+
+        // read the metadata and update it if it is newer or doesn't exist
+        artifact.setWhenGathered( whenGathered );
+        metadataRepository.updateArtifact( repoId, project.getNamespace(), project.getId(), projectVersion,
+                                           artifact );
+        if ( createVersionMetadata )
         {
-            repositorySession.close();
+            metadataRepository.updateProjectVersion( repoId, project.getNamespace(), project.getId(),
+                                                     versionMetadata );
         }
+        metadataRepository.updateProject( repoId, project );
     }
 
     @Override
@@ -225,7 +310,7 @@ public void processFile( String path, boolean executeOnEntireRepo )
     @Override
     public void completeScan()
     {
-        /* do nothing */
+        saveBatch();
     }
 
     @Override
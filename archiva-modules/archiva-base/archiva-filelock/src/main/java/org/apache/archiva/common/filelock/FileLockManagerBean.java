@@ -0,0 +1,73 @@
+package org.apache.archiva.common.filelock;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.AbstractFactoryBean;
+
+/**
+ * Provides the lock manager used by Archiva, selected by its id: <code>default</code> or <code>striped</code>.
+ * The id configured in the context can be overridden with the system property
+ * <code>archiva.fileLockManager.id</code>. The runtime lock settings are applied to the selected manager.
+ *
+ * @since 3.0.0
+ */
+public class FileLockManagerBean
+    extends AbstractFactoryBean<FileLockManager>
+{
+    private Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private static final String BEAN_ID_SYS_PROPS = "archiva.fileLockManager.id";
+
+    private String id;
+
+    public FileLockManagerBean( String id )
+    {
+        // we can override with system props
+        String value = System.getProperty( BEAN_ID_SYS_PROPS );
+        this.id = value != null ? value : id;
+    }
+
+    @Override
+    public Class<FileLockManager> getObjectType()
+    {
+        return FileLockManager.class;
+    }
+
+    @Override
+    protected FileLockManager createInstance()
+        throws Exception
+    {
+        FileLockManager fileLockManager = getBeanFactory().getBean( "fileLockManager#" + id, FileLockManager.class );
+        logger.info( "create FileLockManager with id {} instance of {}", id, fileLockManager.getClass().getName() );
+        return fileLockManager;
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public void setId( String id )
+    {
+        this.id = id;
+    }
+}
@@ -0,0 +1,571 @@
+package org.apache.archiva.common.filelock;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock manager with shared read and exclusive write locks.
+ * <p>
+ * Any number of readers may hold a lock on the same path, a writer waits until all readers have released
+ * their locks and blocks new readers while it is waiting. The state of the locked paths is kept in a fixed
+ * number of stripes, each guarded by its own mutex, so threads working on different paths rarely contend
+ * for the same stripe. Waiting threads are parked on the condition of the stripe and woken up on release,
+ * instead of polling the lock state.
+ * </p>
+ * <p>
+ * The locks coordinate the threads of this VM only, no locks of the file system are used. The locks are not
+ * reentrant: a thread that requests a lock on a path it already holds a write lock for, waits for the timeout.
+ * </p>
+ * <p>
+ * The manager counts the acquired locks, the acquisitions that had to wait, the timeouts and the time spent
+ * waiting, so lock contention can be monitored.
+ * </p>
+ *
+ * @since 3.0.0
+ */
+@Service( "fileLockManager#striped" )
+public class StripedFileLockManager
+    implements FileLockManager
+{
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final Logger log = LoggerFactory.getLogger( getClass() );
+
+    private final Stripe[] stripes;
+
+    private boolean skipLocking = true;
+
+    private int timeout = 0;
+
+    private final AtomicLong readLocks = new AtomicLong( 0 );
+
+    private final AtomicLong writeLocks = new AtomicLong( 0 );
+
+    private final AtomicLong contendedLocks = new AtomicLong( 0 );
+
+    private final AtomicLong timeouts = new AtomicLong( 0 );
+
+    private final AtomicLong totalWaitNanos = new AtomicLong( 0 );
+
+    private final AtomicLong maxWaitNanos = new AtomicLong( 0 );
+
+    public StripedFileLockManager()
+    {
+        this( DEFAULT_STRIPES );
+    }
+
+    public StripedFileLockManager( int stripeCount )
+    {
+        if ( stripeCount < 1 )
+        {
+            throw new IllegalArgumentException( "The number of stripes must be greater than 0" );
+        }
+        this.stripes = new Stripe[stripeCount];
+        for ( int i = 0; i < stripeCount; i++ )
+        {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    @Override
+    public Lock readFileLock( Path file )
+        throws FileLockException, FileLockTimeoutException
+    {
+        return acquire( file, false );
+    }
+
+    @Override
+    public Lock writeFileLock( Path file )
+        throws FileLockException, FileLockTimeoutException
+    {
+        return acquire( file, true );
+    }
+
+    private Lock acquire( Path file, boolean write )
+        throws FileLockException, FileLockTimeoutException
+    {
+        if ( skipLocking )
+        {
+            return new Lock( file );
+        }
+        try
+        {
+            Files.createDirectories( file.getParent() );
+        }
+        catch ( IOException e )
+        {
+            throw new FileLockException( "Could not create directories " + file.getParent(), e );
+        }
+
+        Path key = file.toAbsolutePath().normalize();
+        Stripe stripe = getStripe( key );
+        long waitStart = 0;
+        PathState state;
+        stripe.mutex.lock();
+        try
+        {
+            state = stripe.states.get( key );
+            if ( state == null )
+            {
+                state = new PathState();
+                stripe.states.put( key, state );
+            }
+            if ( !state.canAcquire( write ) )
+            {
+                waitStart = System.nanoTime();
+                contendedLocks.incrementAndGet();
+                log.debug( "Waiting for {} lock on {}", write ? "write" : "read", file );
+                if ( !await( stripe, state, write ) )
+                {
+                    timeouts.incrementAndGet();
+                    stripe.removeIfUnused( key, state );
+                    // readers, that waited for this writer, may proceed now
+                    stripe.released.signalAll();
+                    log.warn( "Cannot acquire {} lock within {} millis: {}", write ? "write" : "read", timeout, file );
+                    throw new FileLockTimeoutException();
+                }
+            }
+            if ( write )
+            {
+                state.writer = true;
+                writeLocks.incrementAndGet();
+            }
+            else
+            {
+                state.readers++;
+                readLocks.incrementAndGet();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new FileLockException( "Interrupted while waiting for the lock on " + file, e );
+        }
+        finally
+        {
+            stripe.mutex.unlock();
+            if ( waitStart > 0 )
+            {
+                recordWait( System.nanoTime() - waitStart );
+            }
+        }
+
+        createNewFileQuietly( file );
+        return new StripedLock( this, file, key, state, write );
+    }
+
+    /**
+     * Parks the current thread on the stripe condition until the lock can be acquired or the timeout elapsed.
+     * Must be called with the stripe mutex held.
+     *
+     * @return <code>true</code>, if the lock can be acquired, <code>false</code> on timeout
+     */
+    private boolean await( Stripe stripe, PathState state, boolean write )
+        throws InterruptedException
+    {
+        long remaining = TimeUnit.MILLISECONDS.toNanos( timeout );
+        if ( write )
+        {
+            state.waitingWriters++;
+        }
+        else
+        {
+            state.waitingReaders++;
+        }
+        try
+        {
+            while ( !state.canAcquire( write ) )
+            {
+                if ( timeout <= 0 )
+                {
+                    stripe.released.await();
+                }
+                else
+                {
+                    if ( remaining <= 0 )
+                    {
+                        return false;
+                    }
+                    remaining = stripe.released.awaitNanos( remaining );
+                }
+            }
+            return true;
+        }
+        finally
+        {
+            if ( write )
+            {
+                state.waitingWriters--;
+            }
+            else
+            {
+                state.waitingReaders--;
+            }
+        }
+    }
+
+    private void recordWait( long nanos )
+    {
+        totalWaitNanos.addAndGet( nanos );
+        long max = maxWaitNanos.get();
+        while ( nanos > max && !maxWaitNanos.compareAndSet( max, nanos ) )
+        {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    private void createNewFileQuietly( Path file )
+    {
+        try
+        {
+            Files.createFile( file );
+        }
+        catch ( IOException e )
+        {
+            // skip that
+        }
+    }
+
+    @Override
+    public void release( Lock lock )
+        throws FileLockException
+    {
+        if ( lock == null )
+        {
+            log.debug( "skip releasing null" );
+            return;
+        }
+        if ( !( lock instanceof StripedLock ) )
+        {
+            // locks returned while locking was skipped
+            return;
+        }
+        StripedLock stripedLock = (StripedLock) lock;
+        if ( !stripedLock.released.compareAndSet( false, true ) )
+        {
+            log.debug( "Lock already released: {}", lock.getFile() );
+            return;
+        }
+        Stripe stripe = getStripe( stripedLock.key );
+        stripe.mutex.lock();
+        try
+        {
+            PathState state = stripedLock.state;
+            if ( stripe.states.get( stripedLock.key ) != state )
+            {
+                // the locks were cleared
+                return;
+            }
+            if ( stripedLock.write.get() )
+            {
+                state.writer = false;
+            }
+            else if ( state.readers > 0 )
+            {
+                state.readers--;
+            }
+            stripe.removeIfUnused( stripedLock.key, state );
+            stripe.released.signalAll();
+        }
+        finally
+        {
+            stripe.mutex.unlock();
+        }
+    }
+
+    /**
+     * Changes the mode of a held lock. A write lock can always be changed to a read lock, a read lock only to a
+     * write lock, if no other thread holds a read lock on the path. Waiting for the other readers could dead lock,
+     * if two readers try to change their lock at the same time.
+     *
+     * @throws IllegalStateException if the lock was released or other readers hold the path
+     */
+    private void changeMode( StripedLock lock, boolean write )
+    {
+        Stripe stripe = getStripe( lock.key );
+        stripe.mutex.lock();
+        try
+        {
+            PathState state = lock.state;
+            if ( lock.released.get() || stripe.states.get( lock.key ) != state )
+            {
+                throw new IllegalStateException( "The lock on " + lock.getFile() + " was released" );
+            }
+            if ( lock.write.get() == write )
+            {
+                return;
+            }
+            if ( write )
+            {
+                if ( state.readers != 1 || state.writer )
+                {
+                    throw new IllegalStateException(
+                        "Cannot change to a write lock, other threads hold a read lock on " + lock.getFile() );
+                }
+                state.readers = 0;
+                state.writer = true;
+                writeLocks.incrementAndGet();
+            }
+            else
+            {
+                state.writer = false;
+                state.readers++;
+                readLocks.incrementAndGet();
+                stripe.released.signalAll();
+            }
+            lock.write.set( write );
+        }
+        finally
+        {
+            stripe.mutex.unlock();
+        }
+    }
+
+    @Override
+    public void clearLockFiles()
+    {
+        for ( Stripe stripe : stripes )
+        {
+            stripe.mutex.lock();
+            try
+            {
+                for ( PathState state : stripe.states.values() )
+                {
+                    state.readers = 0;
+                    state.writer = false;
+                }
+                stripe.states.clear();
+                stripe.released.signalAll();
+            }
+            finally
+            {
+                stripe.mutex.unlock();
+            }
+        }
+    }
+
+    private Stripe getStripe( Path key )
+    {
+        int hash = key.hashCode();
+        hash ^= ( hash >>> 16 );
+        return stripes[( hash & 0x7fffffff ) % stripes.length];
+    }
+
+    /**
+     * Returns the number of paths, that are currently locked or have waiting threads.
+     */
+    public int getLockedPathCount()
+    {
+        int count = 0;
+        for ( Stripe stripe : stripes )
+        {
+            stripe.mutex.lock();
+            try
+            {
+                count += stripe.states.size();
+            }
+            finally
+            {
+                stripe.mutex.unlock();
+            }
+        }
+        return count;
+    }
+
+    public long getReadLockCount()
+    {
+        return readLocks.get();
+    }
+
+    public long getWriteLockCount()
+    {
+        return writeLocks.get();
+    }
+
+    /**
+     * Returns the number of lock requests, that had to wait for another lock holder.
+     */
+    public long getContendedLockCount()
+    {
+        return contendedLocks.get();
+    }
+
+    /**
+     * Returns the number of lock requests, that failed with a timeout.
+     */
+    public long getTimeoutCount()
+    {
+        return timeouts.get();
+    }
+
+    /**
+     * Returns the summed up time in milliseconds, that lock requests had to wait.
+     */
+    public long getTotalWaitTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( totalWaitNanos.get() );
+    }
+
+    /**
+     * Returns the longest time in milliseconds, that a lock request had to wait.
+     */
+    public long getMaxWaitTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( maxWaitNanos.get() );
+    }
+
+    public void resetStatistics()
+    {
+        readLocks.set( 0 );
+        writeLocks.set( 0 );
+        contendedLocks.set( 0 );
+        timeouts.set( 0 );
+        totalWaitNanos.set( 0 );
+        maxWaitNanos.set( 0 );
+    }
+
+    @Override
+    public int getTimeout()
+    {
+        return timeout;
+    }
+
+    @Override
+    public void setTimeout( int timeout )
+    {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public boolean isSkipLocking()
+    {
+        return skipLocking;
+    }
+
+    @Override
+    public void setSkipLocking( boolean skipLocking )
+    {
+        this.skipLocking = skipLocking;
+    }
+
+    private static class Stripe
+    {
+        final ReentrantLock mutex = new ReentrantLock();
+
+        final Condition released = mutex.newCondition();
+
+        final Map<Path, PathState> states = new HashMap<>();
+
+        void removeIfUnused( Path key, PathState state )
+        {
+            if ( state.isUnused() && states.get( key ) == state )
+            {
+                states.remove( key );
+            }
+        }
+    }
+
+    private static class PathState
+    {
+        int readers = 0;
+
+        boolean writer = false;
+
+        int waitingReaders = 0;
+
+        int waitingWriters = 0;
+
+        boolean canAcquire( boolean write )
+        {
+            if ( write )
+            {
+                return !writer && readers == 0;
+            }
+            // waiting writers take precedence, so they are not starved by a steady flow of readers
+            return !writer && waitingWriters == 0;
+        }
+
+        boolean isUnused()
+        {
+            return readers == 0 && !writer && waitingReaders == 0 && waitingWriters == 0;
+        }
+    }
+
+    private static class StripedLock
+        extends Lock
+    {
+        final StripedFileLockManager manager;
+
+        final Path key;
+
+        final PathState state;
+
+        final AtomicBoolean write;
+
+        final AtomicBoolean released = new AtomicBoolean( false );
+
+        StripedLock( StripedFileLockManager manager, Path file, Path key, PathState state, boolean write )
+        {
+            super( file );
+            this.manager = manager;
+            this.key = key;
+            this.state = state;
+            this.write = new AtomicBoolean( write );
+        }
+
+        @Override
+        public AtomicBoolean isWrite()
+        {
+            return write;
+        }
+
+        @Override
+        public void setWrite( boolean write )
+        {
+            manager.changeMode( this, write );
+        }
+
+        @Override
+        public boolean isShared()
+        {
+            return !write.get();
+        }
+
+        @Override
+        public boolean isValid()
+        {
+            return !released.get();
+        }
+    }
+}
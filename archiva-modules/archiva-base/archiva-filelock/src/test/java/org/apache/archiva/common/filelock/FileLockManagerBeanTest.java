@@ -0,0 +1,62 @@
+package org.apache.archiva.common.filelock;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Tests that the configured lock manager is the one, that receives the runtime settings.
+ */
+@RunWith( SpringJUnit4ClassRunner.class )
+@ContextConfiguration( locations = { "classpath*:/META-INF/spring-context.xml" } )
+public class FileLockManagerBeanTest
+{
+    @Inject
+    @Named( value = "fileLockManager" )
+    FileLockManager fileLockManager;
+
+    @Inject
+    @Named( value = "fileLockManager#default" )
+    FileLockManager defaultFileLockManager;
+
+    @Test
+    public void testDefaultManagerIsActive()
+    {
+        Assert.assertSame( defaultFileLockManager, fileLockManager );
+
+        int timeout = defaultFileLockManager.getTimeout();
+        try
+        {
+            fileLockManager.setTimeout( 1234 );
+            Assert.assertEquals( 1234, defaultFileLockManager.getTimeout() );
+        }
+        finally
+        {
+            fileLockManager.setTimeout( timeout );
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.apache.archiva.common.filelock;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the shared read and exclusive write semantics of the striped lock manager.
+ */
+@RunWith( SpringJUnit4ClassRunner.class )
+@ContextConfiguration( locations = { "classpath*:/META-INF/spring-context.xml" } )
+public class StripedFileLockManagerTest
+{
+    @Inject
+    @Named( value = "fileLockManager#striped" )
+    FileLockManager fileLockManager;
+
+    StripedFileLockManager lockManager;
+
+    Path file = Paths.get( System.getProperty( "buildDirectory", "target" ), "striped.txt" );
+
+    @Before
+    public void initialize()
+    {
+        lockManager = (StripedFileLockManager) fileLockManager;
+        lockManager.setSkipLocking( false );
+        lockManager.setTimeout( 0 );
+        lockManager.clearLockFiles();
+        lockManager.resetStatistics();
+    }
+
+    @Test
+    public void testReadersShareLock()
+        throws Exception
+    {
+        lockManager.setTimeout( 1000 );
+        Lock first = lockManager.readFileLock( file );
+        Lock second = lockManager.readFileLock( file );
+        Assert.assertTrue( first.isShared() );
+        Assert.assertTrue( second.isValid() );
+        Assert.assertEquals( 0, lockManager.getContendedLockCount() );
+
+        lockManager.release( first );
+        lockManager.release( second );
+        Assert.assertFalse( first.isValid() );
+        Assert.assertEquals( 2, lockManager.getReadLockCount() );
+        Assert.assertEquals( 0, lockManager.getLockedPathCount() );
+    }
+
+    @Test( expected = FileLockTimeoutException.class )
+    public void testWriteLockIsExclusive()
+        throws Exception
+    {
+        lockManager.setTimeout( 200 );
+        lockManager.readFileLock( file );
+        try
+        {
+            lockManager.writeFileLock( file );
+        }
+        finally
+        {
+            Assert.assertEquals( 1, lockManager.getTimeoutCount() );
+        }
+    }
+
+    @Test
+    public void testWriterWaitsForReaders()
+        throws Exception
+    {
+        Lock readLock = lockManager.readFileLock( file );
+        CountDownLatch started = new CountDownLatch( 1 );
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<Lock> writeLock = executor.submit( () -> {
+                started.countDown();
+                return lockManager.writeFileLock( file );
+            } );
+            started.await();
+            Thread.sleep( 200 );
+            Assert.assertFalse( writeLock.isDone() );
+
+            lockManager.release( readLock );
+            Lock lock = writeLock.get( 5, TimeUnit.SECONDS );
+            Assert.assertFalse( lock.isShared() );
+            Assert.assertEquals( 1, lockManager.getContendedLockCount() );
+            Assert.assertTrue( lockManager.getMaxWaitTime() >= 100 );
+            lockManager.release( lock );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testChangeLockMode()
+        throws Exception
+    {
+        lockManager.setTimeout( 200 );
+        Lock lock = lockManager.readFileLock( file );
+        lock.setWrite( true );
+        Assert.assertFalse( lock.isShared() );
+
+        lock.setWrite( false );
+        Lock other = lockManager.readFileLock( file );
+        Assert.assertTrue( lock.isShared() );
+        try
+        {
+            lock.setWrite( true );
+            Assert.fail( "Another thread holds a read lock" );
+        }
+        catch ( IllegalStateException e )
+        {
+            Assert.assertTrue( lock.isShared() );
+        }
+        lockManager.release( other );
+        lockManager.release( lock );
+        Assert.assertEquals( 0, lockManager.getLockedPathCount() );
+    }
+
+    @Test
+    public void testDifferentPathsDoNotBlock()
+        throws Exception
+    {
+        lockManager.setTimeout( 200 );
+        Lock first = lockManager.writeFileLock( file );
+        Lock second = lockManager.writeFileLock( file.resolveSibling( "other.txt" ) );
+        Assert.assertEquals( 2, lockManager.getLockedPathCount() );
+        lockManager.release( first );
+        lockManager.release( second );
+        Assert.assertEquals( 0, lockManager.getContendedLockCount() );
+    }
+}
@@ -20,12 +20,15 @@
  */
 
 import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumCache;
 import org.apache.archiva.checksum.ChecksummedFile;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import javax.inject.Inject;
+import javax.inject.Named;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -67,6 +70,10 @@
      */
     public static final String FIX = "fix";
 
+    @Inject
+    @Named( "checksumCache#default" )
+    private ChecksumCache checksumCache;
+
     private List<ChecksumAlgorithm> algorithms = Arrays.asList( ChecksumAlgorithm.SHA256, ChecksumAlgorithm.SHA1, ChecksumAlgorithm.MD5 );
 
     private List<String> options = new ArrayList<>( 3 );
@@ -111,7 +118,7 @@ public void applyPolicy( String policySetting, Properties request, Path localFil
 
         if ( FAIL.equals( policySetting ) )
         {
-            ChecksummedFile checksum = new ChecksummedFile( localFile );
+            ChecksummedFile checksum = new ChecksummedFile( localFile, checksumCache );
             if ( checksum.isValidChecksums( algorithms ) )
             {
                 return;
@@ -145,7 +152,7 @@ public void applyPolicy( String policySetting, Properties request, Path localFil
 
         if ( FIX.equals( policySetting ) )
         {
-            ChecksummedFile checksum = new ChecksummedFile( localFile );
+            ChecksummedFile checksum = new ChecksummedFile( localFile, checksumCache );
             if ( checksum.fixChecksums( algorithms ) )
             {
                 log.debug( "Checksum policy set to FIX, checksum files have been updated." );
@@ -0,0 +1,97 @@
+package org.apache.archiva.policies;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * {@link PreDownloadPolicy} to choose, when proxied metadata is refreshed.
+ * <p>
+ * With the setting <code>stale-while-revalidate</code> a request for metadata, that is already present in the
+ * managed repository, is answered with the local copy. The metadata is refreshed from the remote repository in the
+ * background, so later requests get the refreshed copy. The refresh itself is done by the proxy connectors, the
+ * policy only validates the setting.
+ * </p>
+ */
+@Service( "preDownloadPolicy#metadata-refresh" )
+public class MetadataRefreshPolicy
+    implements PreDownloadPolicy
+{
+    /**
+     * The metadata is refreshed from the remote repository before the request is answered.
+     */
+    public static final String SYNCHRONOUS = "synchronous";
+
+    /**
+     * The local metadata is returned and refreshed from the remote repository in the background.
+     */
+    public static final String STALE_WHILE_REVALIDATE = "stale-while-revalidate";
+
+    private List<String> options = new ArrayList<>( 2 );
+
+    public MetadataRefreshPolicy()
+    {
+        options.add( SYNCHRONOUS );
+        options.add( STALE_WHILE_REVALIDATE );
+    }
+
+    @Override
+    public void applyPolicy( String policySetting, Properties request, Path localFile )
+        throws PolicyViolationException, PolicyConfigurationException
+    {
+        if ( !options.contains( policySetting ) )
+        {
+            // Not a valid code.
+            throw new PolicyConfigurationException(
+                "Unknown metadata-refresh policy setting [" + policySetting + "], valid settings are ["
+                    + StringUtils.join( options.iterator(), "," ) + "]" );
+        }
+    }
+
+    @Override
+    public String getDefaultOption()
+    {
+        return SYNCHRONOUS;
+    }
+
+    @Override
+    public String getId()
+    {
+        return "metadata-refresh";
+    }
+
+    @Override
+    public String getName()
+    {
+        return "Metadata refresh";
+    }
+
+    @Override
+    public List<String> getOptions()
+    {
+        return options;
+    }
+}
@@ -0,0 +1,56 @@
+package org.apache.archiva.proxy.model;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.nio.file.Path;
+
+/**
+ * Listener, that is notified while the content of an artifact is downloaded from a remote repository.
+ * <p>
+ * The file passed to the listener is the temporary download file. It grows while the transfer runs and
+ * can be read concurrently. The downloaded content is not validated yet: the file is moved into the
+ * managed repository after the download policies were applied, or removed if they failed.
+ * </p>
+ * <p>
+ * The methods are called by the thread running the transfer and should return quickly.
+ * </p>
+ *
+ * @since 3.0.0
+ */
+public interface ProxyTransferListener
+{
+    /**
+     * Called, when the remote repository starts sending the content. If the transfer is retried, e.g. from another
+     * remote repository, the method is called again.
+     *
+     * @param file the temporary file the content is written to
+     * @param contentLength the length reported by the remote repository, or a negative value, if unknown
+     * @param lastModified the modification time reported by the remote repository, or 0, if unknown
+     */
+    void transferStarted( Path file, long contentLength, long lastModified );
+
+    /**
+     * Called, after a chunk of the content was received.
+     *
+     * @param file the temporary file the content is written to
+     * @param bytes the number of bytes received so far
+     */
+    void transferProgress( Path file, long bytes );
+}
@@ -47,6 +47,24 @@
      */
     Path fetchFromProxies( ManagedRepositoryContent repository, ArtifactReference artifact )
         throws ProxyDownloadException;
+
+    /**
+     * Performs the artifact fetch operation like {@link #fetchFromProxies(ManagedRepositoryContent, ArtifactReference)}
+     * and notifies the given listener, while the artifact is downloaded. This allows to serve the content to a
+     * client, before the download is complete.
+     *
+     * @param repository the source repository to use. (must be a managed repository)
+     * @param artifact the artifact to fetch.
+     * @param transferListener the listener to notify
+     * @return the file that was obtained, or null if no content was obtained
+     * @throws ProxyDownloadException if there was a problem fetching the content from the target repositories.
+     */
+    default Path fetchFromProxies( ManagedRepositoryContent repository, ArtifactReference artifact,
+                                   ProxyTransferListener transferListener )
+        throws ProxyDownloadException
+    {
+        return fetchFromProxies( repository, artifact );
+    }
     
     /**
      * Performs the metadata fetch operation against the target repositories
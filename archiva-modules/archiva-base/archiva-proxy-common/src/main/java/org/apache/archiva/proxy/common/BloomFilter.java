@@ -0,0 +1,93 @@
+package org.apache.archiva.proxy.common;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Simple bloom filter for strings. The bit positions are derived from one 64 bit hash, that is split into two
+ * 32 bit hashes and combined as proposed by Kirsch and Mitzenmacher.
+ */
+class BloomFilter
+{
+    private final long[] bits;
+
+    private final long numBits;
+
+    private final int numHashes;
+
+    /**
+     * @param expectedInsertions the number of elements, the filter is sized for
+     * @param falsePositiveProbability the probability of false positives with the expected number of elements
+     */
+    BloomFilter( int expectedInsertions, double falsePositiveProbability )
+    {
+        int n = Math.max( 1, expectedInsertions );
+        long m = (long) Math.ceil( -n * Math.log( falsePositiveProbability ) / ( Math.log( 2 ) * Math.log( 2 ) ) );
+        this.bits = new long[(int) Math.max( 1, ( m + 63 ) / 64 )];
+        this.numBits = bits.length * 64L;
+        this.numHashes = Math.max( 1, (int) Math.round( (double) numBits / n * Math.log( 2 ) ) );
+    }
+
+    void put( String value )
+    {
+        long hash = hash( value );
+        int h1 = (int) hash;
+        int h2 = (int) ( hash >>> 32 );
+        for ( int i = 1; i <= numHashes; i++ )
+        {
+            long index = ( ( h1 + (long) i * h2 ) & Long.MAX_VALUE ) % numBits;
+            bits[(int) ( index >>> 6 )] |= 1L << index;
+        }
+    }
+
+    boolean mightContain( String value )
+    {
+        long hash = hash( value );
+        int h1 = (int) hash;
+        int h2 = (int) ( hash >>> 32 );
+        for ( int i = 1; i <= numHashes; i++ )
+        {
+            long index = ( ( h1 + (long) i * h2 ) & Long.MAX_VALUE ) % numBits;
+            if ( ( bits[(int) ( index >>> 6 )] & ( 1L << index ) ) == 0 )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a over the characters, followed by the finalizer of MurmurHash3 to spread the bits.
+     */
+    private static long hash( String value )
+    {
+        long hash = 0xcbf29ce484222325L;
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            hash ^= value.charAt( i );
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,555 @@
+package org.apache.archiva.proxy.common;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Default implementation of the not found cache.
+ * <p>
+ * The entries of each remote repository are kept in a map, that is limited to <code>maxEntries</code> entries.
+ * If the limit is exceeded, the least recently used entries are dropped. Each map is fronted by a bloom filter,
+ * so lookups for resources, that were never missing, are answered without touching the map. A resource is only
+ * treated as missing, if the map contains it, so false positives of the filter cost a map lookup, but never hide
+ * an existing resource.
+ * </p>
+ * <p>
+ * If a directory is configured, the entries of each remote repository are written to the directory on shutdown
+ * and restored on startup. The restored entries are kept apart from the entries of the current run, fronted by their
+ * own bloom filter, and are dropped, when they expire. Entries of remote repositories, that are not configured yet,
+ * are kept until they expire, so they are written again on the next shutdown.
+ * </p>
+ * <p>
+ * The defaults can be changed with the system properties <code>archiva.notFoundCache.maxEntries</code> and
+ * <code>archiva.notFoundCache.directory</code>. Without a directory, the entries are stored in
+ * <code>${appserver.base}/tmp/notfound-cache</code>, if the property <code>appserver.base</code> is set.
+ * </p>
+ *
+ * @since 3.0.0
+ */
+@Service( "notFoundCache" )
+public class DefaultNotFoundCache
+    implements NotFoundCache
+{
+    public static final String MAX_ENTRIES_PROPERTY = "archiva.notFoundCache.maxEntries";
+
+    public static final String DIRECTORY_PROPERTY = "archiva.notFoundCache.directory";
+
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.001;
+
+    private static final String FILE_SUFFIX = ".dat";
+
+    private static final int MAGIC = 0x4e464332;
+
+    private Logger log = LoggerFactory.getLogger( getClass() );
+
+    private final ConcurrentMap<String, Region> regions = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, RestoredEntries> restoredEntries = new ConcurrentHashMap<>();
+
+    private int maxEntries = Integer.getInteger( MAX_ENTRIES_PROPERTY, 10000 );
+
+    private Path directory;
+
+    @PostConstruct
+    public void initialize()
+    {
+        if ( directory == null )
+        {
+            String dir = System.getProperty( DIRECTORY_PROPERTY );
+            String appServerBase = System.getProperty( "appserver.base" );
+            if ( dir != null && !dir.isEmpty() )
+            {
+                directory = Paths.get( dir );
+            }
+            else if ( appServerBase != null && !appServerBase.isEmpty() )
+            {
+                directory = Paths.get( appServerBase, "tmp", "notfound-cache" );
+            }
+        }
+        restore();
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        save();
+    }
+
+    @Override
+    public boolean isNotFound( String repositoryId, String path )
+    {
+        Region region = regions.get( repositoryId );
+        return region != null && region.lookup( path, System.currentTimeMillis() );
+    }
+
+    @Override
+    public void cacheNotFound( String repositoryId, String path )
+    {
+        Region region = regions.get( repositoryId );
+        if ( region != null )
+        {
+            region.put( path, System.currentTimeMillis() );
+        }
+    }
+
+    @Override
+    public void setTimeToLive( String repositoryId, long timeToLive )
+    {
+        if ( timeToLive <= 0 )
+        {
+            regions.remove( repositoryId );
+            restoredEntries.remove( repositoryId );
+            return;
+        }
+        Region region = regions.computeIfAbsent( repositoryId, id -> new Region( maxEntries ) );
+        RestoredEntries restored = restoredEntries.remove( repositoryId );
+        region.setTimeToLive( timeToLive, restored );
+    }
+
+    @Override
+    public void clear()
+    {
+        restoredEntries.clear();
+        for ( Region region : regions.values() )
+        {
+            region.clear();
+        }
+    }
+
+    @Override
+    public Map<String, NotFoundCacheStatistics> getStatistics()
+    {
+        Map<String, NotFoundCacheStatistics> statistics = new TreeMap<>();
+        for ( Map.Entry<String, Region> entry : regions.entrySet() )
+        {
+            statistics.put( entry.getKey(), entry.getValue().getStatistics() );
+        }
+        return statistics;
+    }
+
+    /**
+     * Writes the entries of the remote repositories to the directory. This includes the restored entries of
+     * remote repositories, that are not configured yet. Files of remote repositories without entries are removed.
+     */
+    public void save()
+    {
+        if ( directory == null )
+        {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try
+        {
+            Files.createDirectories( directory );
+            Set<Path> written = new HashSet<>();
+            for ( Map.Entry<String, Region> entry : regions.entrySet() )
+            {
+                Map<String, Long> snapshot = entry.getValue().snapshot( now );
+                if ( !snapshot.isEmpty() )
+                {
+                    written.add( write( getFile( entry.getKey() ), snapshot ) );
+                }
+            }
+            for ( Map.Entry<String, RestoredEntries> entry : restoredEntries.entrySet() )
+            {
+                Map<String, Long> snapshot = entry.getValue().snapshot( now );
+                if ( !snapshot.isEmpty() && !regions.containsKey( entry.getKey() ) )
+                {
+                    written.add( write( getFile( entry.getKey() ), snapshot ) );
+                }
+            }
+            try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory, "*" + FILE_SUFFIX ) )
+            {
+                for ( Path file : files )
+                {
+                    if ( !written.contains( file ) )
+                    {
+                        Files.deleteIfExists( file );
+                    }
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not save the not found cache to {}: {}", directory, e.getMessage() );
+        }
+    }
+
+    private void restore()
+    {
+        if ( directory == null || !Files.isDirectory( directory ) )
+        {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory, "*" + FILE_SUFFIX ) )
+        {
+            for ( Path file : files )
+            {
+                String fileName = file.getFileName().toString();
+                String repositoryId =
+                    URLDecoder.decode( fileName.substring( 0, fileName.length() - FILE_SUFFIX.length() ), "UTF-8" );
+                try
+                {
+                    RestoredEntries restored = read( file, now );
+                    if ( restored != null )
+                    {
+                        Region region = regions.get( repositoryId );
+                        if ( region != null )
+                        {
+                            region.setTimeToLive( region.timeToLive, restored );
+                        }
+                        else
+                        {
+                            restoredEntries.put( repositoryId, restored );
+                        }
+                    }
+                }
+                catch ( IOException e )
+                {
+                    log.warn( "Ignoring invalid not found cache file {}: {}", file, e.getMessage() );
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not restore the not found cache from {}: {}", directory, e.getMessage() );
+        }
+    }
+
+    private Path getFile( String repositoryId )
+        throws UnsupportedEncodingException
+    {
+        return directory.resolve( URLEncoder.encode( repositoryId, "UTF-8" ) + FILE_SUFFIX );
+    }
+
+    private static Path write( Path file, Map<String, Long> entries )
+        throws IOException
+    {
+        Path tmp = file.resolveSibling( file.getFileName() + ".tmp" );
+        try ( DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream( Files.newOutputStream( tmp ) ) ) )
+        {
+            out.writeInt( MAGIC );
+            out.writeInt( entries.size() );
+            for ( Map.Entry<String, Long> entry : entries.entrySet() )
+            {
+                out.writeUTF( entry.getKey() );
+                out.writeLong( entry.getValue() );
+            }
+        }
+        Files.move( tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        return file;
+    }
+
+    /**
+     * Reads the entries, that are not expired, or returns <code>null</code>, if all entries are expired.
+     */
+    private static RestoredEntries read( Path file, long now )
+        throws IOException
+    {
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream( Files.newInputStream( file ) ) ) )
+        {
+            if ( in.readInt() != MAGIC )
+            {
+                throw new IOException( "Unknown file format" );
+            }
+            int count = in.readInt();
+            Map<String, Long> entries = new HashMap<>();
+            for ( int i = 0; i < count; i++ )
+            {
+                String path = in.readUTF();
+                long expiry = in.readLong();
+                if ( expiry > now )
+                {
+                    entries.put( path, expiry );
+                }
+            }
+            return entries.isEmpty() ? null : new RestoredEntries( entries );
+        }
+    }
+
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the maximum number of entries per remote repository. Applies to remote repositories, that are
+     * configured afterwards.
+     */
+    public void setMaxEntries( int maxEntries )
+    {
+        this.maxEntries = maxEntries;
+    }
+
+    public Path getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Sets the directory, where the entries are stored. <code>null</code> disables the persistence.
+     */
+    public void setDirectory( Path directory )
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * The entries of one remote repository, that were restored from a previous run. The map is not changed after
+     * the entries are handed over to the region, except that expired entries are removed.
+     */
+    private static class RestoredEntries
+    {
+        private final Map<String, Long> expiries;
+
+        private final BloomFilter filter;
+
+        RestoredEntries( Map<String, Long> expiries )
+        {
+            this.expiries = expiries;
+            this.filter = new BloomFilter( expiries.size(), FALSE_POSITIVE_PROBABILITY );
+            for ( String path : expiries.keySet() )
+            {
+                filter.put( path );
+            }
+        }
+
+        /**
+         * The restored entries do not live longer than the current time to live allows.
+         */
+        synchronized void limitExpiry( long expiry )
+        {
+            expiries.replaceAll( ( path, e ) -> Math.min( e, expiry ) );
+        }
+
+        synchronized boolean contains( String path, long now )
+        {
+            if ( !filter.mightContain( path ) )
+            {
+                return false;
+            }
+            Long expiry = expiries.get( path );
+            if ( expiry == null )
+            {
+                return false;
+            }
+            if ( expiry <= now )
+            {
+                expiries.remove( path );
+                return false;
+            }
+            return true;
+        }
+
+        synchronized boolean isEmpty()
+        {
+            return expiries.isEmpty();
+        }
+
+        synchronized Map<String, Long> snapshot( long now )
+        {
+            expiries.values().removeIf( expiry -> expiry <= now );
+            return new HashMap<>( expiries );
+        }
+    }
+
+    /**
+     * The entries of one remote repository.
+     */
+    private static class Region
+    {
+        private final int maxEntries;
+
+        private final Map<String, Long> expiries;
+
+        private BloomFilter filter;
+
+        private int filterInsertions = 0;
+
+        private RestoredEntries restored;
+
+        private long timeToLive;
+
+        private long hits = 0;
+
+        private long misses = 0;
+
+        private long restoredHits = 0;
+
+        private long evicted = 0;
+
+        Region( final int maxEntries )
+        {
+            this.maxEntries = Math.max( 1, maxEntries );
+            this.filter = new BloomFilter( this.maxEntries, FALSE_POSITIVE_PROBABILITY );
+            this.expiries = new LinkedHashMap<String, Long>( 16, 0.75f, true )
+            {
+                @Override
+                protected boolean removeEldestEntry( Map.Entry<String, Long> eldest )
+                {
+                    if ( size() > Region.this.maxEntries )
+                    {
+                        evicted++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized void setTimeToLive( long timeToLive, RestoredEntries restoredEntries )
+        {
+            this.timeToLive = timeToLive;
+            if ( restoredEntries != null )
+            {
+                restoredEntries.limitExpiry( System.currentTimeMillis() + timeToLive );
+                this.restored = restoredEntries;
+            }
+        }
+
+        synchronized boolean lookup( String path, long now )
+        {
+            if ( filter.mightContain( path ) )
+            {
+                Long expiry = expiries.get( path );
+                if ( expiry != null )
+                {
+                    if ( expiry > now )
+                    {
+                        hits++;
+                        return true;
+                    }
+                    expiries.remove( path );
+                }
+            }
+            if ( restored != null )
+            {
+                if ( restored.contains( path, now ) )
+                {
+                    hits++;
+                    restoredHits++;
+                    return true;
+                }
+                if ( restored.isEmpty() )
+                {
+                    restored = null;
+                }
+            }
+            misses++;
+            return false;
+        }
+
+        synchronized void put( String path, long now )
+        {
+            expiries.put( path, now + timeToLive );
+            filter.put( path );
+            filterInsertions++;
+            // removed entries stay in the filter, so it is rebuilt before the false positive rate grows too much
+            if ( filterInsertions > 2 * maxEntries )
+            {
+                rebuildFilter( now );
+            }
+        }
+
+        private void rebuildFilter( long now )
+        {
+            filter = new BloomFilter( maxEntries, FALSE_POSITIVE_PROBABILITY );
+            filterInsertions = 0;
+            for ( Iterator<Map.Entry<String, Long>> it = expiries.entrySet().iterator(); it.hasNext(); )
+            {
+                Map.Entry<String, Long> entry = it.next();
+                if ( entry.getValue() <= now )
+                {
+                    it.remove();
+                }
+                else
+                {
+                    filter.put( entry.getKey() );
+                    filterInsertions++;
+                }
+            }
+        }
+
+        /**
+         * Returns the entries, that are not expired. The restored entries are included, as long as the limit of
+         * entries is not reached.
+         */
+        synchronized Map<String, Long> snapshot( long now )
+        {
+            rebuildFilter( now );
+            Map<String, Long> snapshot = new HashMap<>( expiries );
+            if ( restored != null )
+            {
+                for ( Map.Entry<String, Long> entry : restored.snapshot( now ).entrySet() )
+                {
+                    if ( snapshot.size() >= maxEntries )
+                    {
+                        break;
+                    }
+                    snapshot.putIfAbsent( entry.getKey(), entry.getValue() );
+                }
+            }
+            return snapshot;
+        }
+
+        synchronized void clear()
+        {
+            expiries.clear();
+            restored = null;
+            filter = new BloomFilter( maxEntries, FALSE_POSITIVE_PROBABILITY );
+            filterInsertions = 0;
+        }
+
+        synchronized NotFoundCacheStatistics getStatistics()
+        {
+            return new NotFoundCacheStatistics( expiries.size(), hits, misses, restoredHits, evicted );
+        }
+    }
+}
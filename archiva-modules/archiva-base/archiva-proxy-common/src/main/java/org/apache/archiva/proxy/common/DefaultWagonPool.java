@@ -0,0 +1,373 @@
+package org.apache.archiva.proxy.common;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.maven.wagon.ConnectionException;
+import org.apache.maven.wagon.Wagon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Default implementation of the wagon pool.
+ * <p>
+ * The number of wagons per route, borrowed and idle together, is limited by <code>maxPerRoute</code>. If all wagons
+ * of a route are in use, a request waits up to <code>maxWait</code> milliseconds for a returned wagon. Idle wagons
+ * are disconnected after <code>idleTimeout</code> milliseconds, either when they are found expired on borrow or by a
+ * background evictor. Wagons that were returned as not reusable are disconnected immediately, so only wagons
+ * whose last transfer did not fail are handed out again.
+ * </p>
+ * <p>
+ * The defaults can be changed with the system properties <code>archiva.wagonPool.maxPerRoute</code>,
+ * <code>archiva.wagonPool.idleTimeout</code> and <code>archiva.wagonPool.maxWait</code>.
+ * A <code>maxPerRoute</code> of 0 disables the pooling, each wagon is disconnected on return.
+ * </p>
+ *
+ * @since 3.0.0
+ */
+@Service( "wagonPool" )
+public class DefaultWagonPool
+    implements WagonPool
+{
+    public static final String MAX_PER_ROUTE_PROPERTY = "archiva.wagonPool.maxPerRoute";
+
+    public static final String IDLE_TIMEOUT_PROPERTY = "archiva.wagonPool.idleTimeout";
+
+    public static final String MAX_WAIT_PROPERTY = "archiva.wagonPool.maxWait";
+
+    private Logger log = LoggerFactory.getLogger( getClass() );
+
+    private final WagonFactory wagonFactory;
+
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+
+    private int maxPerRoute = Integer.getInteger( MAX_PER_ROUTE_PROPERTY, 20 );
+
+    private long idleTimeout = Long.getLong( IDLE_TIMEOUT_PROPERTY, 60000L );
+
+    private long maxWait = Long.getLong( MAX_WAIT_PROPERTY, 60000L );
+
+    private ScheduledExecutorService evictor;
+
+    @Inject
+    public DefaultWagonPool( WagonFactory wagonFactory )
+    {
+        this.wagonFactory = wagonFactory;
+    }
+
+    @PostConstruct
+    public void initialize()
+    {
+        evictor = Executors.newSingleThreadScheduledExecutor( runnable -> {
+            Thread thread = new Thread( runnable, "archiva-wagon-pool-evictor" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        long interval = Math.max( 1000L, idleTimeout / 2 );
+        evictor.scheduleWithFixedDelay( this::evictIdle, interval, interval, TimeUnit.MILLISECONDS );
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if ( evictor != null )
+        {
+            evictor.shutdownNow();
+        }
+        clear();
+    }
+
+    @Override
+    public Wagon borrowWagon( String route, WagonFactoryRequest wagonFactoryRequest, WagonConnector connector )
+        throws WagonFactoryException
+    {
+        return borrowWagon( route, wagonFactoryRequest, connector, maxWait );
+    }
+
+    @Override
+    public Wagon borrowWagon( String route, WagonFactoryRequest wagonFactoryRequest, WagonConnector connector,
+                              long maxWait )
+        throws WagonFactoryException
+    {
+        Route r = routes.computeIfAbsent( route, key -> new Route() );
+        Wagon wagon = null;
+        List<Wagon> expired = new ArrayList<>();
+        try
+        {
+            synchronized ( r )
+            {
+                long deadline = System.currentTimeMillis() + maxWait;
+                while ( wagon == null )
+                {
+                    r.removeExpired( idleTimeout, expired );
+                    IdleWagon idle = r.idle.pollLast();
+                    if ( idle != null )
+                    {
+                        wagon = idle.wagon;
+                        r.active++;
+                        r.reused++;
+                    }
+                    else if ( maxPerRoute <= 0 || r.active < maxPerRoute )
+                    {
+                        r.active++;
+                        r.created++;
+                        break;
+                    }
+                    else
+                    {
+                        long wait = deadline - System.currentTimeMillis();
+                        if ( wait <= 0 )
+                        {
+                            r.exhausted++;
+                            throw new WagonFactoryException(
+                                "No connection available for " + route + " within " + maxWait + " ms", null );
+                        }
+                        r.wait( wait );
+                    }
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new WagonFactoryException( "Interrupted while waiting for a connection to " + route, e );
+        }
+        finally
+        {
+            disconnect( expired );
+        }
+
+        if ( wagon != null )
+        {
+            log.debug( "Reusing connected wagon for {}", route );
+            return wagon;
+        }
+
+        boolean connected = false;
+        try
+        {
+            wagon = wagonFactory.getWagon( wagonFactoryRequest );
+            connected = connector.connect( wagon );
+            return connected ? wagon : null;
+        }
+        finally
+        {
+            if ( !connected )
+            {
+                release( r, null, false );
+            }
+        }
+    }
+
+    @Override
+    public void returnWagon( String route, Wagon wagon, boolean reusable )
+    {
+        if ( wagon == null )
+        {
+            return;
+        }
+        Route r = routes.get( route );
+        if ( r == null )
+        {
+            disconnect( wagon );
+            return;
+        }
+        release( r, wagon, reusable );
+    }
+
+    private void release( Route r, Wagon wagon, boolean reusable )
+    {
+        boolean keep;
+        synchronized ( r )
+        {
+            r.active--;
+            keep = wagon != null && reusable && maxPerRoute > 0;
+            if ( keep )
+            {
+                r.idle.addLast( new IdleWagon( wagon ) );
+            }
+            r.notifyAll();
+        }
+        if ( !keep && wagon != null )
+        {
+            disconnect( wagon );
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        List<Wagon> wagons = new ArrayList<>();
+        for ( Route r : routes.values() )
+        {
+            synchronized ( r )
+            {
+                for ( IdleWagon idle : r.idle )
+                {
+                    wagons.add( idle.wagon );
+                }
+                r.idle.clear();
+            }
+        }
+        disconnect( wagons );
+    }
+
+    /**
+     * Disconnects the idle wagons, that exceeded the idle timeout.
+     */
+    public void evictIdle()
+    {
+        List<Wagon> expired = new ArrayList<>();
+        for ( Route r : routes.values() )
+        {
+            synchronized ( r )
+            {
+                r.removeExpired( idleTimeout, expired );
+            }
+        }
+        disconnect( expired );
+    }
+
+    @Override
+    public Map<String, WagonPoolStatistics> getStatistics()
+    {
+        Map<String, WagonPoolStatistics> statistics = new TreeMap<>();
+        for ( Map.Entry<String, Route> entry : routes.entrySet() )
+        {
+            Route r = entry.getValue();
+            synchronized ( r )
+            {
+                statistics.put( entry.getKey(),
+                                new WagonPoolStatistics( r.active, r.idle.size(), r.created, r.reused, r.evicted,
+                                                         r.exhausted ) );
+            }
+        }
+        return statistics;
+    }
+
+    private void disconnect( List<Wagon> wagons )
+    {
+        for ( Wagon wagon : wagons )
+        {
+            disconnect( wagon );
+        }
+    }
+
+    private void disconnect( Wagon wagon )
+    {
+        try
+        {
+            wagon.disconnect();
+        }
+        catch ( ConnectionException e )
+        {
+            log.debug( "Unable to disconnect wagon: {}", e.getMessage() );
+        }
+    }
+
+    public int getMaxPerRoute()
+    {
+        return maxPerRoute;
+    }
+
+    public void setMaxPerRoute( int maxPerRoute )
+    {
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    public long getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout( long idleTimeout )
+    {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getMaxWait()
+    {
+        return maxWait;
+    }
+
+    public void setMaxWait( long maxWait )
+    {
+        this.maxWait = maxWait;
+    }
+
+    private static class Route
+    {
+        final Deque<IdleWagon> idle = new ArrayDeque<>();
+
+        int active = 0;
+
+        long created = 0;
+
+        long reused = 0;
+
+        long evicted = 0;
+
+        long exhausted = 0;
+
+        void removeExpired( long idleTimeout, List<Wagon> expired )
+        {
+            long now = System.currentTimeMillis();
+            Iterator<IdleWagon> it = idle.iterator();
+            while ( it.hasNext() )
+            {
+                IdleWagon wagon = it.next();
+                if ( now - wagon.since >= idleTimeout )
+                {
+                    it.remove();
+                    expired.add( wagon.wagon );
+                    evicted++;
+                }
+            }
+        }
+    }
+
+    private static class IdleWagon
+    {
+        final Wagon wagon;
+
+        final long since = System.currentTimeMillis();
+
+        IdleWagon( Wagon wagon )
+        {
+            this.wagon = wagon;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.apache.archiva.proxy.common;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Map;
+
+/**
+ * Cache of the resources, that were not found on a remote repository. The entries are kept per remote repository
+ * and path, so a request for a resource, that was recently missing, does not contact the remote repository again.
+ * The entries expire after the time to live of the remote repository.
+ *
+ * @since 3.0.0
+ */
+public interface NotFoundCache
+{
+    /**
+     * Returns true, if the resource was not found on the remote repository and the entry is not expired yet.
+     *
+     * @param repositoryId the id of the remote repository
+     * @param path the path of the resource relative to the repository root
+     * @return <code>true</code>, if the resource is known to be missing, otherwise <code>false</code>
+     */
+    boolean isNotFound( String repositoryId, String path );
+
+    /**
+     * Stores the resource as missing on the remote repository. Does nothing, if the time to live of the remote
+     * repository is 0.
+     *
+     * @param repositoryId the id of the remote repository
+     * @param path the path of the resource relative to the repository root
+     */
+    void cacheNotFound( String repositoryId, String path );
+
+    /**
+     * Sets the time to live of the entries of the remote repository. A value of 0 disables the cache for the
+     * remote repository and removes its entries.
+     *
+     * @param repositoryId the id of the remote repository
+     * @param timeToLive the time to live in milliseconds
+     */
+    void setTimeToLive( String repositoryId, long timeToLive );
+
+    /**
+     * Removes all entries.
+     */
+    void clear();
+
+    /**
+     * Returns the statistics for each remote repository.
+     */
+    Map<String, NotFoundCacheStatistics> getStatistics();
+}
@@ -0,0 +1,109 @@
+package org.apache.archiva.proxy.common;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Usage statistics of a remote repository in the {@link NotFoundCache}.
+ *
+ * @since 3.0.0
+ */
+public class NotFoundCacheStatistics
+{
+    private final int size;
+
+    private final long hits;
+
+    private final long misses;
+
+    private final long restoredHits;
+
+    private final long evicted;
+
+    public NotFoundCacheStatistics( int size, long hits, long misses, long restoredHits, long evicted )
+    {
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.restoredHits = restoredHits;
+        this.evicted = evicted;
+    }
+
+    /**
+     * The number of entries, that are currently stored.
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * The number of lookups, that found a missing resource, including the hits of the restored entries.
+     */
+    public long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * The number of lookups, that did not find an entry.
+     */
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * The number of hits, that were answered by the entries restored from a previous run.
+     */
+    public long getRestoredHits()
+    {
+        return restoredHits;
+    }
+
+    /**
+     * The number of entries, that were dropped because the maximum size was exceeded.
+     */
+    public long getEvicted()
+    {
+        return evicted;
+    }
+
+    /**
+     * The ratio of hits to all lookups, 0 if there were no lookups.
+     */
+    public double getHitRatio()
+    {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder( "NotFoundCacheStatistics{" );
+        sb.append( "size=" ).append( size );
+        sb.append( ", hits=" ).append( hits );
+        sb.append( ", misses=" ).append( misses );
+        sb.append( ", restoredHits=" ).append( restoredHits );
+        sb.append( ", evicted=" ).append( evicted );
+        sb.append( '}' );
+        return sb.toString();
+    }
+}
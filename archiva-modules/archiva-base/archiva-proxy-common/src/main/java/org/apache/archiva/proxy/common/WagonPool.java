@@ -0,0 +1,90 @@
+package org.apache.archiva.proxy.common;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.maven.wagon.Wagon;
+
+import java.util.Map;
+
+/**
+ * Pool of connected Wagon instances. The wagons are pooled per route, where a route identifies the remote
+ * repository and all settings used to connect to it. Wagons that are returned to the pool stay connected and are
+ * handed out to later requests for the same route, so the connection setup and authentication is not repeated for
+ * each transfer.
+ *
+ * @since 3.0.0
+ */
+public interface WagonPool
+{
+    /**
+     * Callback, that connects a new wagon to the remote repository.
+     */
+    interface WagonConnector
+    {
+        /**
+         * @param wagon the new wagon
+         * @return <code>true</code>, if the wagon is connected, otherwise <code>false</code>
+         */
+        boolean connect( Wagon wagon );
+    }
+
+    /**
+     * Returns a connected wagon for the given route. An idle wagon of the route is reused, if available. Otherwise
+     * a new wagon is created and connected. The wagon must be returned with {@link #returnWagon(String, Wagon, boolean)}.
+     *
+     * @param route the route key
+     * @param wagonFactoryRequest the request used to create a new wagon
+     * @param connector connects a new wagon
+     * @return the connected wagon, or <code>null</code>, if a new wagon could not be connected
+     * @throws WagonFactoryException if the wagon could not be created, or the route has no free wagon within the
+     *                               configured wait time
+     */
+    Wagon borrowWagon( String route, WagonFactoryRequest wagonFactoryRequest, WagonConnector connector )
+        throws WagonFactoryException;
+
+    /**
+     * Like {@link #borrowWagon(String, WagonFactoryRequest, WagonConnector)}, but waits at most the given time for a
+     * free wagon, if the route is exhausted.
+     *
+     * @param maxWait the maximum wait time in milliseconds, 0 to fail immediately
+     */
+    Wagon borrowWagon( String route, WagonFactoryRequest wagonFactoryRequest, WagonConnector connector, long maxWait )
+        throws WagonFactoryException;
+
+    /**
+     * Returns a borrowed wagon to the pool.
+     *
+     * @param route the route key used to borrow the wagon
+     * @param wagon the wagon
+     * @param reusable <code>true</code>, if the wagon may be used for further transfers. Wagons that failed with an
+     *                 error other than a missing resource should not be reused, they are disconnected.
+     */
+    void returnWagon( String route, Wagon wagon, boolean reusable );
+
+    /**
+     * Disconnects all idle wagons. Wagons that are in use are disconnected when they are returned.
+     */
+    void clear();
+
+    /**
+     * Returns the current usage statistics of the pool for each route.
+     */
+    Map<String, WagonPoolStatistics> getStatistics();
+}
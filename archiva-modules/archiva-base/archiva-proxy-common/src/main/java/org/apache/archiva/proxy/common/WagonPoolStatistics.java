@@ -0,0 +1,112 @@
+package org.apache.archiva.proxy.common;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Usage statistics of a route of the {@link WagonPool}.
+ *
+ * @since 3.0.0
+ */
+public class WagonPoolStatistics
+{
+    private final int active;
+
+    private final int idle;
+
+    private final long created;
+
+    private final long reused;
+
+    private final long evicted;
+
+    private final long exhausted;
+
+    public WagonPoolStatistics( int active, int idle, long created, long reused, long evicted, long exhausted )
+    {
+        this.active = active;
+        this.idle = idle;
+        this.created = created;
+        this.reused = reused;
+        this.evicted = evicted;
+        this.exhausted = exhausted;
+    }
+
+    /**
+     * The number of wagons, that are currently borrowed.
+     */
+    public int getActive()
+    {
+        return active;
+    }
+
+    /**
+     * The number of connected wagons, that are waiting in the pool.
+     */
+    public int getIdle()
+    {
+        return idle;
+    }
+
+    /**
+     * The number of wagons, that were created and connected.
+     */
+    public long getCreated()
+    {
+        return created;
+    }
+
+    /**
+     * The number of requests, that got an already connected wagon.
+     */
+    public long getReused()
+    {
+        return reused;
+    }
+
+    /**
+     * The number of idle wagons, that were disconnected because they exceeded the idle timeout.
+     */
+    public long getEvicted()
+    {
+        return evicted;
+    }
+
+    /**
+     * The number of requests, that failed because no wagon was available within the wait time.
+     */
+    public long getExhausted()
+    {
+        return exhausted;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder( "WagonPoolStatistics{" );
+        sb.append( "active=" ).append( active );
+        sb.append( ", idle=" ).append( idle );
+        sb.append( ", created=" ).append( created );
+        sb.append( ", reused=" ).append( reused );
+        sb.append( ", evicted=" ).append( evicted );
+        sb.append( ", exhausted=" ).append( exhausted );
+        sb.append( '}' );
+        return sb.toString();
+    }
+}
@@ -0,0 +1,152 @@
+package org.apache.archiva.proxy.common;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Test the expiry, limits and persistence of the not found cache.
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class DefaultNotFoundCacheTest
+    extends TestCase
+{
+    private static final String PATH = "org/apache/maven/test/1.0/test-1.0-sources.jar";
+
+    DefaultNotFoundCache cache;
+
+    Path directory = Paths.get( System.getProperty( "buildDirectory", "target" ), "notfound-cache" );
+
+    @Before
+    public void createCache()
+        throws Exception
+    {
+        if ( Files.isDirectory( directory ) )
+        {
+            try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory ) )
+            {
+                for ( Path file : files )
+                {
+                    Files.delete( file );
+                }
+            }
+        }
+        cache = new DefaultNotFoundCache();
+        cache.setDirectory( directory );
+        cache.initialize();
+    }
+
+    @Test
+    public void testEntriesExpire()
+        throws Exception
+    {
+        cache.setTimeToLive( "central", 200 );
+        assertFalse( cache.isNotFound( "central", PATH ) );
+        cache.cacheNotFound( "central", PATH );
+        assertTrue( cache.isNotFound( "central", PATH ) );
+        assertFalse( cache.isNotFound( "other", PATH ) );
+
+        NotFoundCacheStatistics statistics = cache.getStatistics().get( "central" );
+        assertEquals( 1, statistics.getHits() );
+        assertEquals( 1, statistics.getMisses() );
+        assertEquals( 0.5, statistics.getHitRatio(), 0.001 );
+
+        Thread.sleep( 300 );
+        assertFalse( cache.isNotFound( "central", PATH ) );
+        assertEquals( 0, cache.getStatistics().get( "central" ).getSize() );
+    }
+
+    @Test
+    public void testDisabledRepositoryIsNotCached()
+    {
+        cache.cacheNotFound( "central", PATH );
+        assertFalse( cache.isNotFound( "central", PATH ) );
+
+        cache.setTimeToLive( "central", 60000 );
+        cache.cacheNotFound( "central", PATH );
+        cache.setTimeToLive( "central", 0 );
+        assertFalse( cache.isNotFound( "central", PATH ) );
+        assertNull( cache.getStatistics().get( "central" ) );
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted()
+    {
+        cache.setMaxEntries( 2 );
+        cache.setTimeToLive( "central", 60000 );
+        cache.cacheNotFound( "central", "a.jar" );
+        cache.cacheNotFound( "central", "b.jar" );
+        assertTrue( cache.isNotFound( "central", "a.jar" ) );
+        cache.cacheNotFound( "central", "c.jar" );
+
+        assertTrue( cache.isNotFound( "central", "a.jar" ) );
+        assertFalse( cache.isNotFound( "central", "b.jar" ) );
+        assertTrue( cache.isNotFound( "central", "c.jar" ) );
+        assertEquals( 1, cache.getStatistics().get( "central" ).getEvicted() );
+    }
+
+    @Test
+    public void testEntriesSurviveRestart()
+    {
+        cache.setTimeToLive( "central", 60000 );
+        cache.cacheNotFound( "central", PATH );
+        cache.shutdown();
+        assertTrue( Files.exists( directory.resolve( "central.dat" ) ) );
+
+        DefaultNotFoundCache restarted = new DefaultNotFoundCache();
+        restarted.setDirectory( directory );
+        restarted.initialize();
+        restarted.setTimeToLive( "central", 60000 );
+
+        assertTrue( restarted.isNotFound( "central", PATH ) );
+        assertFalse( restarted.isNotFound( "central", "org/apache/maven/test/1.0/test-1.0.jar" ) );
+        assertEquals( 1, restarted.getStatistics().get( "central" ).getRestoredHits() );
+    }
+
+    @Test
+    public void testEntriesOfUnconfiguredRepositoriesAreSavedAgain()
+    {
+        cache.setTimeToLive( "central", 60000 );
+        cache.cacheNotFound( "central", PATH );
+        cache.shutdown();
+
+        // central is not configured before the next shutdown
+        DefaultNotFoundCache restarted = new DefaultNotFoundCache();
+        restarted.setDirectory( directory );
+        restarted.initialize();
+        restarted.shutdown();
+        assertTrue( Files.exists( directory.resolve( "central.dat" ) ) );
+
+        restarted = new DefaultNotFoundCache();
+        restarted.setDirectory( directory );
+        restarted.initialize();
+        restarted.setTimeToLive( "central", 60000 );
+        assertTrue( restarted.isNotFound( "central", PATH ) );
+    }
+}
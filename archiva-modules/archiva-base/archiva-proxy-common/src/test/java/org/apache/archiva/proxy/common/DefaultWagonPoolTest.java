@@ -0,0 +1,130 @@
+package org.apache.archiva.proxy.common;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import junit.framework.TestCase;
+import org.apache.archiva.test.utils.ArchivaSpringJUnit4ClassRunner;
+import org.apache.maven.wagon.Wagon;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+
+import javax.inject.Inject;
+
+/**
+ * Test the reuse, limits and eviction of the pooled wagons.
+ */
+@RunWith ( ArchivaSpringJUnit4ClassRunner.class )
+@ContextConfiguration ( locations = { "classpath*:/META-INF/spring-context.xml" } )
+public class DefaultWagonPoolTest
+    extends TestCase
+{
+    private static final String ROUTE = "central|file:///tmp|";
+
+    @Inject
+    WagonFactory factory;
+
+    DefaultWagonPool pool;
+
+    WagonFactoryRequest request = new WagonFactoryRequest().protocol( "wagon#file" );
+
+    @Before
+    public void createPool()
+    {
+        pool = new DefaultWagonPool( factory );
+    }
+
+    @After
+    public void shutdownPool()
+    {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testReturnedWagonIsReused()
+        throws Exception
+    {
+        Wagon first = pool.borrowWagon( ROUTE, request, wagon -> true );
+        pool.returnWagon( ROUTE, first, true );
+
+        Wagon second = pool.borrowWagon( ROUTE, request, wagon -> true );
+        assertSame( first, second );
+
+        WagonPoolStatistics statistics = pool.getStatistics().get( ROUTE );
+        assertEquals( 1, statistics.getCreated() );
+        assertEquals( 1, statistics.getReused() );
+        assertEquals( 1, statistics.getActive() );
+
+        // a broken connection is not handed out again
+        pool.returnWagon( ROUTE, second, false );
+        assertNotSame( second, pool.borrowWagon( ROUTE, request, wagon -> true ) );
+    }
+
+    @Test
+    public void testFailedConnectReleasesSlot()
+        throws Exception
+    {
+        pool.setMaxPerRoute( 1 );
+        pool.setMaxWait( 100 );
+
+        assertNull( pool.borrowWagon( ROUTE, request, wagon -> false ) );
+        assertNotNull( pool.borrowWagon( ROUTE, request, wagon -> true ) );
+    }
+
+    @Test
+    public void testExhaustedRouteTimesOut()
+        throws Exception
+    {
+        pool.setMaxPerRoute( 1 );
+        pool.setMaxWait( 100 );
+
+        pool.borrowWagon( ROUTE, request, wagon -> true );
+        try
+        {
+            pool.borrowWagon( ROUTE, request, wagon -> true );
+            fail( "WagonFactoryException expected" );
+        }
+        catch ( WagonFactoryException e )
+        {
+            assertEquals( 1, pool.getStatistics().get( ROUTE ).getExhausted() );
+        }
+    }
+
+    @Test
+    public void testIdleWagonsAreEvicted()
+        throws Exception
+    {
+        pool.setIdleTimeout( 50 );
+
+        Wagon wagon = pool.borrowWagon( ROUTE, request, w -> true );
+        pool.returnWagon( ROUTE, wagon, true );
+        assertEquals( 1, pool.getStatistics().get( ROUTE ).getIdle() );
+
+        Thread.sleep( 100 );
+        pool.evictIdle();
+
+        WagonPoolStatistics statistics = pool.getStatistics().get( ROUTE );
+        assertEquals( 0, statistics.getIdle() );
+        assertEquals( 1, statistics.getEvicted() );
+    }
+}
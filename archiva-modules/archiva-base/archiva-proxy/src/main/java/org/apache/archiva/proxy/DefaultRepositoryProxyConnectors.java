@@ -23,6 +23,9 @@
 import org.apache.archiva.admin.model.beans.NetworkProxy;
 import org.apache.archiva.admin.model.beans.ProxyConnectorRuleType;
 import org.apache.archiva.admin.model.networkproxy.NetworkProxyAdmin;
+import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumCache;
+import org.apache.archiva.common.FileTypeUtils;
 import org.apache.archiva.common.filelock.FileLockException;
 import org.apache.archiva.common.filelock.FileLockManager;
 import org.apache.archiva.common.filelock.FileLockTimeoutException;
@@ -33,22 +36,27 @@
 import org.apache.archiva.configuration.NetworkProxyConfiguration;
 import org.apache.archiva.configuration.ProxyConnectorConfiguration;
 import org.apache.archiva.configuration.ProxyConnectorRuleConfiguration;
+import org.apache.archiva.configuration.RemoteRepositoryConfiguration;
 import org.apache.archiva.model.ArtifactReference;
 import org.apache.archiva.model.Keys;
 import org.apache.archiva.model.RepositoryURL;
 import org.apache.archiva.policies.DownloadErrorPolicy;
 import org.apache.archiva.policies.DownloadPolicy;
+import org.apache.archiva.policies.MetadataRefreshPolicy;
 import org.apache.archiva.policies.PolicyConfigurationException;
 import org.apache.archiva.policies.PolicyViolationException;
 import org.apache.archiva.policies.PostDownloadPolicy;
 import org.apache.archiva.policies.PreDownloadPolicy;
 import org.apache.archiva.policies.ProxyDownloadException;
 import org.apache.archiva.policies.urlcache.UrlFailureCache;
+import org.apache.archiva.proxy.common.NotFoundCache;
 import org.apache.archiva.proxy.common.WagonFactory;
 import org.apache.archiva.proxy.common.WagonFactoryException;
 import org.apache.archiva.proxy.common.WagonFactoryRequest;
+import org.apache.archiva.proxy.common.WagonPool;
 import org.apache.archiva.proxy.model.ProxyConnector;
 import org.apache.archiva.proxy.model.ProxyFetchResult;
+import org.apache.archiva.proxy.model.ProxyTransferListener;
 import org.apache.archiva.proxy.model.RepositoryProxyConnectors;
 import org.apache.archiva.redback.components.registry.Registry;
 import org.apache.archiva.redback.components.registry.RegistryListener;
@@ -61,6 +69,7 @@
 import org.apache.archiva.repository.RepositoryContentFactory;
 import org.apache.archiva.repository.RepositoryCredentials;
 import org.apache.archiva.repository.RepositoryRegistry;
+import org.apache.archiva.repository.features.ProxyFetchFeature;
 import org.apache.archiva.repository.metadata.MetadataTools;
 import org.apache.archiva.repository.metadata.RepositoryMetadataException;
 import org.apache.archiva.scheduler.ArchivaTaskScheduler;
@@ -84,21 +93,41 @@
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * DefaultRepositoryProxyConnectors
@@ -111,6 +140,28 @@
 {
     private Logger log = LoggerFactory.getLogger( DefaultRepositoryProxyConnectors.class );
 
+    /**
+     * The checksums computed while an artifact is downloaded, these are the algorithms checked by the checksum policy.
+     */
+    private static final List<ChecksumAlgorithm> STREAMED_CHECKSUMS =
+        Arrays.asList( ChecksumAlgorithm.SHA256, ChecksumAlgorithm.SHA1, ChecksumAlgorithm.MD5 );
+
+    private static final int MAX_REMOTE_LAST_MODIFIED = 10000;
+
+    /**
+     * System property for the number of threads, that refresh metadata in the background.
+     */
+    public static final String METADATA_REFRESH_THREADS_PROPERTY = "archiva.proxy.metadataRefreshThreads";
+
+    private static final int MAX_QUEUED_METADATA_REFRESHES = 1000;
+
+    private static final int METADATA_UPDATE_LOCKS = 64;
+
+    /**
+     * System property for the maximum number of threads, that run the existence probes and checksum transfers.
+     */
+    public static final String WORKER_THREADS_PROPERTY = "archiva.proxy.workerThreads";
+
     @Inject
     @Named(value = "archivaConfiguration#default")
     private ArchivaConfiguration archivaConfiguration;
@@ -135,13 +186,65 @@
     @Inject
     private UrlFailureCache urlFailureCache;
 
+    @Inject
+    private NotFoundCache notFoundCache;
+
     private ConcurrentMap<String, List<ProxyConnector>> proxyConnectorMap = new ConcurrentHashMap<>();
 
     private ConcurrentMap<String, ProxyInfo> networkProxyMap = new ConcurrentHashMap<>();
 
+    /**
+     * Transfers that are currently running, keyed by managed repository, remote repository and local file.
+     */
+    private final ConcurrentMap<String, CompletableFuture<Path>> inFlightTransfers = new ConcurrentHashMap<>();
+
+    private final AtomicLong coalescedTransfers = new AtomicLong( 0 );
+
+    private final AtomicLong copyFallbacks = new AtomicLong( 0 );
+
+    private final AtomicLong unchangedMetadata = new AtomicLong( 0 );
+
+    /**
+     * The modification times reported by the remote repositories for downloaded metadata, keyed by remote repository
+     * and path.
+     */
+    private final Map<String, Long> remoteLastModified =
+        Collections.synchronizedMap( new LinkedHashMap<String, Long>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, Long> eldest )
+            {
+                return size() > MAX_REMOTE_LAST_MODIFIED;
+            }
+        } );
+
+    /**
+     * Runs the existence probes of the parallel proxy fetch and the checksum transfers. The number of threads is
+     * limited, tasks are not queued: if all threads are busy, the caller does the work sequentially.
+     */
+    private final ExecutorService proxyExecutor = createProxyExecutor();
+
+    /**
+     * Runs the background refreshes of metadata, the number of threads and queued refreshes is limited.
+     */
+    private final ThreadPoolExecutor metadataRefreshExecutor = createMetadataRefreshExecutor();
+
+    private final Set<String> pendingMetadataRefreshes = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong metadataRefreshes = new AtomicLong( 0 );
+
+    /**
+     * Serializes the merges of the proxied metadata into the metadata of the managed repository, so a request and a
+     * background refresh do not write the same file at once. The locks are striped by repository and path.
+     */
+    private final Object[] metadataUpdateLocks = createMetadataUpdateLocks();
+
     @Inject
     private WagonFactory wagonFactory;
 
+    @Inject
+    private WagonPool wagonPool;
+
     @Inject
     @Named(value = "archivaTaskScheduler#repository")
     private ArchivaTaskScheduler<RepositoryTask> scheduler;
@@ -153,15 +256,111 @@
     private NetworkProxyAdmin networkProxyAdmin;
 
     @Inject
-    @Named(value = "fileLockManager#default")
+    @Named(value = "fileLockManager")
     private FileLockManager fileLockManager;
 
+    @Inject
+    @Named(value = "checksumCache#default")
+    private ChecksumCache checksumCache;
+
     @PostConstruct
     public void initialize()
     {
         initConnectorsAndNetworkProxies();
         archivaConfiguration.addChangeListener( this );
+        cleanupStagingDirectories();
+    }
 
+    /**
+     * Removes partial downloads, that were left in the staging directories of the managed repositories by a
+     * previous run, e.g. after a crash.
+     */
+    private void cleanupStagingDirectories()
+    {
+        Set<Path> stagingDirectories = new HashSet<>();
+        for ( List<ProxyConnector> connectors : proxyConnectorMap.values() )
+        {
+            for ( ProxyConnector connector : connectors )
+            {
+                stagingDirectories.add( getStagingDirectory( connector.getSourceRepository() ) );
+            }
+        }
+        for ( Path stagingDirectory : stagingDirectories )
+        {
+            if ( !Files.isDirectory( stagingDirectory ) )
+            {
+                continue;
+            }
+            try ( Stream<Path> orphans = Files.list( stagingDirectory ) )
+            {
+                orphans.forEach( orphan -> {
+                    log.info( "Removing orphaned partial download {}", orphan );
+                    org.apache.archiva.common.utils.FileUtils.deleteQuietly( orphan );
+                } );
+            }
+            catch ( IOException e )
+            {
+                log.warn( "Could not clean up the staging directory {}: {}", stagingDirectory, e.getMessage() );
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor createProxyExecutor()
+    {
+        int threads = Math.max( 1, Integer.getInteger( WORKER_THREADS_PROPERTY, 32 ) );
+        ThreadPoolExecutor executor =
+            new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), new ThreadFactory()
+            {
+                private final AtomicInteger count = new AtomicInteger( 0 );
+
+                @Override
+                public Thread newThread( Runnable runnable )
+                {
+                    Thread thread = new Thread( runnable, "archiva-proxy-worker-" + count.incrementAndGet() );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
+
+    private static ThreadPoolExecutor createMetadataRefreshExecutor()
+    {
+        int threads = Math.max( 1, Integer.getInteger( METADATA_REFRESH_THREADS_PROPERTY, 4 ) );
+        ThreadPoolExecutor executor =
+            new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS,
+                                    new LinkedBlockingQueue<>( MAX_QUEUED_METADATA_REFRESHES ), new ThreadFactory()
+            {
+                private final AtomicInteger count = new AtomicInteger( 0 );
+
+                @Override
+                public Thread newThread( Runnable runnable )
+                {
+                    Thread thread = new Thread( runnable, "archiva-metadata-refresh-" + count.incrementAndGet() );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
+
+    private static Object[] createMetadataUpdateLocks()
+    {
+        Object[] locks = new Object[METADATA_UPDATE_LOCKS];
+        for ( int i = 0; i < locks.length; i++ )
+        {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        proxyExecutor.shutdownNow();
+        metadataRefreshExecutor.shutdownNow();
     }
 
     @SuppressWarnings("unchecked")
@@ -197,6 +396,11 @@ private void initConnectorsAndNetworkProxies()
             }
             connector.setTargetRepository(rRepo.getContent());
 
+            RemoteRepositoryConfiguration remoteConfig =
+                configuration.findRemoteRepositoryById( proxyConfig.getTargetRepoId() );
+            notFoundCache.setTimeToLive( proxyConfig.getTargetRepoId(), remoteConfig == null ? 0
+                : TimeUnit.SECONDS.toMillis( remoteConfig.getNotFoundCacheTtl() ) );
+
             connector.setProxyId( proxyConfig.getProxyId() );
             connector.setPolicies( proxyConfig.getPolicies() );
             connector.setOrder( proxyConfig.getOrder() );
@@ -305,6 +509,14 @@ private List<ProxyConnectorRuleConfiguration> findProxyConnectorRules( String so
     @Override
     public Path fetchFromProxies( ManagedRepositoryContent repository, ArtifactReference artifact )
         throws ProxyDownloadException
+    {
+        return fetchFromProxies( repository, artifact, null );
+    }
+
+    @Override
+    public Path fetchFromProxies( ManagedRepositoryContent repository, ArtifactReference artifact,
+                                  ProxyTransferListener transferListener )
+        throws ProxyDownloadException
     {
         Path localFile = toLocalFile( repository, artifact );
 
@@ -313,7 +525,9 @@ public Path fetchFromProxies( ManagedRepositoryContent repository, ArtifactRefer
         requestProperties.setProperty( "version", artifact.getVersion() );
         requestProperties.setProperty( "managedRepositoryId", repository.getId() );
 
-        List<ProxyConnector> connectors = getProxyConnectors( repository );
+        List<ProxyConnector> connectors =
+            getFetchOrder( repository, getProxyConnectors( repository ), localFile, requestProperties,
+                           targetRepository -> toRemotePath( targetRepository, artifact ) );
         Map<String, Exception> previousExceptions = new LinkedHashMap<>();
         for ( ProxyConnector connector : connectors )
         {
@@ -325,19 +539,13 @@ public Path fetchFromProxies( ManagedRepositoryContent repository, ArtifactRefer
             RemoteRepositoryContent targetRepository = connector.getTargetRepository();
             requestProperties.setProperty( "remoteRepositoryId", targetRepository.getId() );
 
-            String targetPath = targetRepository.toPath( artifact );
-
-            if ( SystemUtils.IS_OS_WINDOWS )
-            {
-                // toPath use system PATH_SEPARATOR so on windows url are \ which doesn't work very well :-)
-                targetPath = FilenameUtils.separatorsToUnix( targetPath );
-            }
+            String targetPath = toRemotePath( targetRepository, artifact );
 
             try
             {
                 Path downloadedFile =
                     transferFile( connector, targetRepository, targetPath, repository, localFile, requestProperties,
-                                  true );
+                                  true, transferListener );
 
                 if ( fileExists( downloadedFile ) )
                 {
@@ -388,7 +596,9 @@ public Path fetchFromProxies( ManagedRepositoryContent repository, String path )
         requestProperties.setProperty( "filetype", "resource" );
         requestProperties.setProperty( "managedRepositoryId", repository.getId() );
 
-        List<ProxyConnector> connectors = getProxyConnectors( repository );
+        List<ProxyConnector> connectors =
+            getFetchOrder( repository, getProxyConnectors( repository ), localFile, requestProperties,
+                           targetRepository -> path );
         for ( ProxyConnector connector : connectors )
         {
             if ( connector.isDisabled() )
@@ -447,6 +657,346 @@ public Path fetchFromProxies( ManagedRepositoryContent repository, String path )
         return null;
     }
 
+    private String toRemotePath( RemoteRepositoryContent targetRepository, ArtifactReference artifact )
+    {
+        String targetPath = targetRepository.toPath( artifact );
+
+        if ( SystemUtils.IS_OS_WINDOWS )
+        {
+            // toPath use system PATH_SEPARATOR so on windows url are \ which doesn't work very well :-)
+            targetPath = FilenameUtils.separatorsToUnix( targetPath );
+        }
+        return targetPath;
+    }
+
+    /**
+     * Returns the connectors in the order they should be tried for a resource.
+     * <p>
+     * If parallel proxy fetch is enabled for the managed repository and the resource is not present locally,
+     * the existence of the resource is probed on all eligible remote repositories concurrently. The connector
+     * that found the resource and has the lowest order is moved to the front. If a connector with higher order
+     * answers first, the answers of the preferred connectors are awaited for the configured hedge delay.
+     * Connectors that reported the resource as missing are dropped, connectors that could not be probed keep
+     * their place, so the download policies are applied to them as before.
+     * </p>
+     *
+     * @param repository the managed repository
+     * @param connectors the connectors of the managed repository in configured order
+     * @param localFile the local file of the resource
+     * @param requestProperties the request properties for the pre-download policies
+     * @param remotePath returns the path of the resource in the given remote repository
+     * @return the connectors to try, in this order
+     */
+    private List<ProxyConnector> getFetchOrder( ManagedRepositoryContent repository, List<ProxyConnector> connectors,
+                                                Path localFile, Properties requestProperties,
+                                                Function<RemoteRepositoryContent, String> remotePath )
+    {
+        ManagedRepository managedRepository = repository.getRepository();
+        if ( managedRepository == null || !managedRepository.supportsFeature( ProxyFetchFeature.class )
+            || connectors.size() < 2 || Files.exists( localFile ) )
+        {
+            return connectors;
+        }
+        ProxyFetchFeature fetchFeature = managedRepository.getFeature( ProxyFetchFeature.class ).get();
+        if ( !fetchFeature.isParallelFetch() )
+        {
+            return connectors;
+        }
+
+        List<Integer> eligible = new ArrayList<>();
+        for ( int i = 0; i < connectors.size(); i++ )
+        {
+            if ( isProbeEligible( connectors.get( i ), remotePath.apply( connectors.get( i ).getTargetRepository() ),
+                                  localFile, requestProperties ) )
+            {
+                eligible.add( i );
+            }
+        }
+        if ( eligible.size() < 2 )
+        {
+            return connectors;
+        }
+
+        final BlockingQueue<ProbeResult> answers = new LinkedBlockingQueue<>();
+        List<Future<?>> probes = new ArrayList<>( eligible.size() );
+        for ( final int index : eligible )
+        {
+            final ProxyConnector connector = connectors.get( index );
+            final String path = remotePath.apply( connector.getTargetRepository() );
+            try
+            {
+                probes.add(
+                    proxyExecutor.submit( () -> answers.add( new ProbeResult( index, probe( connector, path ) ) ) ) );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                // all workers are busy, the connector is tried in its configured order
+                answers.add( new ProbeResult( index, null ) );
+            }
+        }
+
+        Boolean[] found = new Boolean[connectors.size()];
+        boolean[] answered = new boolean[connectors.size()];
+        for ( int i = 0; i < connectors.size(); i++ )
+        {
+            // connectors that are not probed do not delay the selection
+            answered[i] = !eligible.contains( i );
+        }
+        int selected = -1;
+        try
+        {
+            long deadline = 0;
+            int pending = eligible.size();
+            while ( pending > 0 )
+            {
+                selected = findPreferred( found, answered );
+                if ( selected >= 0 )
+                {
+                    break;
+                }
+                ProbeResult answer;
+                if ( findFirstFound( found ) >= 0 )
+                {
+                    if ( deadline == 0 )
+                    {
+                        deadline = System.currentTimeMillis() + fetchFeature.getHedgeDelay();
+                    }
+                    long wait = deadline - System.currentTimeMillis();
+                    answer = wait > 0 ? answers.poll( wait, TimeUnit.MILLISECONDS ) : null;
+                    if ( answer == null )
+                    {
+                        break;
+                    }
+                }
+                else
+                {
+                    answer = answers.take();
+                }
+                answered[answer.index] = true;
+                found[answer.index] = answer.found;
+                pending--;
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            return connectors;
+        }
+        finally
+        {
+            // probes that already run are not interrupted, an interrupt would break the connection of the pooled
+            // wagon; they answer into the discarded queue and return their wagon
+            for ( Future<?> probe : probes )
+            {
+                probe.cancel( false );
+            }
+        }
+
+        if ( selected < 0 )
+        {
+            selected = findPreferred( found, answered );
+        }
+        if ( selected < 0 )
+        {
+            selected = findFirstFound( found );
+        }
+
+        List<ProxyConnector> ordered = new ArrayList<>( connectors.size() );
+        if ( selected >= 0 )
+        {
+            log.debug( "Probe found {} on repository {}", localFile, connectors.get( selected ).getTargetRepository().getId() );
+            ordered.add( connectors.get( selected ) );
+        }
+        for ( int i = 0; i < connectors.size(); i++ )
+        {
+            if ( i != selected && !Boolean.FALSE.equals( found[i] ) )
+            {
+                ordered.add( connectors.get( i ) );
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Returns the first connector that found the resource, if all connectors before it answered.
+     */
+    private int findPreferred( Boolean[] found, boolean[] answered )
+    {
+        for ( int i = 0; i < found.length && answered[i]; i++ )
+        {
+            if ( Boolean.TRUE.equals( found[i] ) )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int findFirstFound( Boolean[] found )
+    {
+        for ( int i = 0; i < found.length; i++ )
+        {
+            if ( Boolean.TRUE.equals( found[i] ) )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns <code>true</code>, if the sequential transfer would contact the remote repository of the connector,
+     * i.e. the connector is enabled, the path is not excluded by the white- and blacklist, the resource was not found
+     * recently and the pre-download policies of the connector allow the transfer.
+     */
+    private boolean isProbeEligible( ProxyConnector connector, String remotePath, Path localFile,
+                                     Properties requestProperties )
+    {
+        if ( connector.isDisabled() )
+        {
+            return false;
+        }
+        if ( CollectionUtils.isNotEmpty( connector.getWhitelist() ) && !matchesPattern( remotePath,
+                                                                                         connector.getWhitelist() ) )
+        {
+            return false;
+        }
+        if ( matchesPattern( remotePath, connector.getBlacklist() ) )
+        {
+            return false;
+        }
+        String url = connector.getTargetRepository().getURL().getUrl();
+        if ( !url.endsWith( "/" ) )
+        {
+            url = url + "/";
+        }
+        if ( notFoundCache.isNotFound( connector.getTargetRepository().getId(), remotePath ) )
+        {
+            return false;
+        }
+        // failures cached by the cached failures policy are handled by the sequential transfer
+        if ( urlFailureCache.hasFailedBefore( url + remotePath ) )
+        {
+            return false;
+        }
+        return isAllowedByPolicies( connector, remotePath, localFile, requestProperties );
+    }
+
+    /**
+     * Returns <code>true</code>, if the pre-download policies of the connector allow the transfer of the resource.
+     */
+    private boolean isAllowedByPolicies( ProxyConnector connector, String remotePath, Path localFile,
+                                         Properties requestProperties )
+    {
+        String url = connector.getTargetRepository().getURL().getUrl();
+        if ( !url.endsWith( "/" ) )
+        {
+            url = url + "/";
+        }
+        Properties policyProperties = new Properties();
+        policyProperties.putAll( requestProperties );
+        policyProperties.setProperty( "remoteRepositoryId", connector.getTargetRepository().getId() );
+        policyProperties.setProperty( "url", url + remotePath );
+        try
+        {
+            validatePolicies( this.preDownloadPolicies, connector.getPolicies(), policyProperties, localFile );
+            return true;
+        }
+        catch ( PolicyViolationException e )
+        {
+            log.debug( "Transfer of {} not allowed: {}", url + remotePath, e.getMessage() );
+            return false;
+        }
+    }
+
+    /**
+     * Checks, if the resource exists on the remote repository of the connector.
+     *
+     * @return <code>true</code> or <code>false</code>, or <code>null</code>, if the remote repository could not be
+     * asked
+     */
+    private Boolean probe( ProxyConnector connector, String remotePath )
+    {
+        RemoteRepositoryContent remoteRepository = connector.getTargetRepository();
+        String route = getRoute( connector, remoteRepository );
+        Wagon wagon = null;
+        boolean reusable = false;
+        try
+        {
+            wagon = borrowWagon( connector, remoteRepository );
+            if ( wagon == null )
+            {
+                return null;
+            }
+            Boolean exists = wagon.resourceExists( remotePath );
+            reusable = true;
+            if ( Boolean.FALSE.equals( exists ) )
+            {
+                notFoundCache.cacheNotFound( remoteRepository.getId(), remotePath );
+            }
+            return exists;
+        }
+        catch ( Exception e )
+        {
+            log.debug( "Probe of {} on repository {} failed: {}", remotePath, remoteRepository.getId(),
+                       e.getMessage() );
+            return null;
+        }
+        finally
+        {
+            wagonPool.returnWagon( route, wagon, reusable );
+        }
+    }
+
+    /**
+     * Keeps the modification time reported by the remote repository and passes the events to the listener of the
+     * request.
+     */
+    private static class LastModifiedListener
+        implements ProxyTransferListener
+    {
+        final ProxyTransferListener delegate;
+
+        volatile long lastModified = 0;
+
+        LastModifiedListener( ProxyTransferListener delegate )
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void transferStarted( Path file, long contentLength, long lastModified )
+        {
+            this.lastModified = lastModified;
+            if ( delegate != null )
+            {
+                delegate.transferStarted( file, contentLength, lastModified );
+            }
+        }
+
+        @Override
+        public void transferProgress( Path file, long bytes )
+        {
+            if ( delegate != null )
+            {
+                delegate.transferProgress( file, bytes );
+            }
+        }
+    }
+
+    private static class ProbeResult
+    {
+        final int index;
+
+        final Boolean found;
+
+        ProbeResult( int index, Boolean found )
+        {
+            this.index = index;
+            this.found = found;
+        }
+    }
+
     @Override
     public ProxyFetchResult fetchMetadataFromProxies( ManagedRepositoryContent repository, String logicalPath )
     {
@@ -468,6 +1018,16 @@ public ProxyFetchResult fetchMetadataFromProxies( ManagedRepositoryContent repos
             RemoteRepositoryContent targetRepository = connector.getTargetRepository();
 
             Path localRepoFile = toLocalRepoFile( repository, targetRepository, logicalPath );
+            if ( isStaleWhileRevalidate( connector ) && fileExists( localFile ) && fileExists( localRepoFile ) )
+            {
+                // answer with the local copy, the refreshed metadata is used by later requests. Metadata, that the
+                // policies would not fetch now, e.g. because it was checked recently, is not refreshed either
+                if ( isAllowedByPolicies( connector, logicalPath, localRepoFile, requestProperties ) )
+                {
+                    scheduleMetadataRefresh( connector, repository, logicalPath, localRepoFile );
+                }
+                continue;
+            }
             long originalMetadataTimestamp = getLastModified( localRepoFile );
 
             try
@@ -502,31 +1062,125 @@ public ProxyFetchResult fetchMetadataFromProxies( ManagedRepositoryContent repos
                 log.debug( "Full stack trace", e );
             }
         }
-
-        if ( hasBeenUpdated( localFile, originalTimestamp ) )
+
+        if ( hasBeenUpdated( localFile, originalTimestamp ) )
+        {
+            metadataNeedsUpdating = true;
+        }
+
+        if ( metadataNeedsUpdating || !Files.exists(localFile))
+        {
+            try
+            {
+                updateMetadata( repository, logicalPath );
+            }
+            catch ( RepositoryMetadataException e )
+            {
+                log.warn( "Unable to update metadata {}:{}", localFile.toAbsolutePath(), e.getMessage(), e );
+            }
+
+        }
+
+        if ( fileExists( localFile ) )
+        {
+            return new ProxyFetchResult( localFile, metadataNeedsUpdating );
+        }
+
+        return new ProxyFetchResult( null, false );
+    }
+
+    /**
+     * Merges the proxied metadata into the metadata of the managed repository. Merges of the same metadata are
+     * serialized.
+     */
+    private void updateMetadata( ManagedRepositoryContent repository, String logicalPath )
+        throws RepositoryMetadataException
+    {
+        String key = repository.getId() + ":" + logicalPath;
+        synchronized ( metadataUpdateLocks[Math.floorMod( key.hashCode(), metadataUpdateLocks.length )] )
+        {
+            metadataTools.updateMetadata( repository, logicalPath );
+        }
+    }
+
+    private boolean isStaleWhileRevalidate( ProxyConnector connector )
+    {
+        return connector.getPolicies() != null && MetadataRefreshPolicy.STALE_WHILE_REVALIDATE.equals(
+            connector.getPolicies().get( ProxyConnectorConfiguration.POLICY_METADATA_REFRESH ) );
+    }
+
+    /**
+     * Refreshes the metadata from the remote repository of the connector in the background. If a refresh of the same
+     * metadata is already scheduled, or the queue of the refresh executor is full, nothing is done.
+     */
+    private void scheduleMetadataRefresh( ProxyConnector connector, ManagedRepositoryContent repository,
+                                          String logicalPath, Path localRepoFile )
+    {
+        String key = repository.getId() + ":" + connector.getTargetRepository().getId() + ":" + logicalPath;
+        if ( !pendingMetadataRefreshes.add( key ) )
+        {
+            return;
+        }
+        try
+        {
+            metadataRefreshExecutor.execute( () -> {
+                try
+                {
+                    refreshMetadata( connector, repository, logicalPath, localRepoFile );
+                }
+                finally
+                {
+                    pendingMetadataRefreshes.remove( key );
+                }
+            } );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            pendingMetadataRefreshes.remove( key );
+            log.debug( "Skipping refresh of metadata {} from repository {}: {}", logicalPath,
+                       connector.getTargetRepository().getId(), e.getMessage() );
+        }
+    }
+
+    private void refreshMetadata( ProxyConnector connector, ManagedRepositoryContent repository, String logicalPath,
+                                  Path localRepoFile )
+    {
+        RemoteRepositoryContent targetRepository = connector.getTargetRepository();
+        Properties requestProperties = new Properties();
+        requestProperties.setProperty( "filetype", "metadata" );
+        long originalMetadataTimestamp = getLastModified( localRepoFile );
+        try
+        {
+            transferFile( connector, targetRepository, logicalPath, repository, localRepoFile, requestProperties,
+                          true );
+
+            if ( hasBeenUpdated( localRepoFile, originalMetadataTimestamp ) )
+            {
+                updateMetadata( repository, logicalPath );
+            }
+        }
+        catch ( NotFoundException | NotModifiedException e )
         {
-            metadataNeedsUpdating = true;
+            log.debug( "Metadata {} not refreshed from remote repository '{}': {}", logicalPath,
+                       targetRepository.getId(), e.getMessage() );
         }
-
-        if ( metadataNeedsUpdating || !Files.exists(localFile))
+        catch ( ProxyException | RepositoryAdminException | RepositoryMetadataException e )
         {
-            try
-            {
-                metadataTools.updateMetadata( repository, logicalPath );
-            }
-            catch ( RepositoryMetadataException e )
-            {
-                log.warn( "Unable to update metadata {}:{}", localFile.toAbsolutePath(), e.getMessage(), e );
-            }
-
+            log.warn( "Refresh of metadata {} from repository {} failed: {}", logicalPath, targetRepository.getId(),
+                      e.getMessage() );
         }
-
-        if ( fileExists( localFile ) )
+        finally
         {
-            return new ProxyFetchResult( localFile, metadataNeedsUpdating );
+            metadataRefreshes.incrementAndGet();
         }
+    }
 
-        return new ProxyFetchResult( null, false );
+    /**
+     * Returns the number of metadata refreshes, that were done in the background.
+     */
+    public long getMetadataRefreshCount()
+    {
+        return metadataRefreshes.get();
     }
 
     /**
@@ -540,61 +1194,82 @@ public ProxyFetchResult fetchMetadataFromProxies( ManagedRepositoryContent repos
      * @param resource
      * @param workingDirectory
      * @param repository
+     * @param transferListener notified while the artifact is written to <code>tmpResource</code>, may be null
      * @throws ProxyException
      * @throws NotModifiedException
      * @throws org.apache.archiva.admin.model.RepositoryAdminException
      */
     protected void transferResources( ProxyConnector connector, RemoteRepositoryContent remoteRepository, Path tmpMd5,
                                       Path tmpSha1, Path tmpResource, String url, String remotePath, Path resource,
-                                      Path workingDirectory, ManagedRepositoryContent repository )
+                                      Path workingDirectory, ManagedRepositoryContent repository,
+                                      ProxyTransferListener transferListener )
         throws ProxyException, NotModifiedException, RepositoryAdminException
     {
+        String route = getRoute( connector, remoteRepository );
         Wagon wagon = null;
+        boolean reusable = false;
         try
         {
-            RepositoryURL repoUrl = remoteRepository.getURL();
-            String protocol = repoUrl.getProtocol();
-            NetworkProxy networkProxy = null;
-            if ( StringUtils.isNotBlank( connector.getProxyId() ) )
-            {
-                networkProxy = networkProxyAdmin.getNetworkProxy( connector.getProxyId() );
-            }
-            WagonFactoryRequest wagonFactoryRequest = new WagonFactoryRequest( "wagon#" + protocol,
-                                                                               remoteRepository.getRepository().getExtraHeaders() ).networkProxy(
-                networkProxy );
-            wagon = wagonFactory.getWagon( wagonFactoryRequest );
-            if ( wagon == null )
-            {
-                throw new ProxyException( "Unsupported target repository protocol: " + protocol );
-            }
-
-            if ( wagon == null )
-            {
-                throw new ProxyException( "Unsupported target repository protocol: " + protocol );
-            }
+            wagon = borrowWagon( connector, remoteRepository );
 
-            boolean connected = connectToRepository( connector, wagon, remoteRepository );
-            if ( connected )
+            if ( wagon != null )
             {
-                transferArtifact( wagon, remoteRepository, remotePath, repository, resource, workingDirectory,
-                                  tmpResource );
+                // The checksum files are fetched on separate connections as soon as the remote repository starts
+                // sending the artifact. The artifact is hashed while it is written, so the checksum policy does
+                // not read the file again.
+                Map<String, Future<Boolean>> checksumTransfers = new LinkedHashMap<>();
+                StreamingChecksumListener checksumListener =
+                    new StreamingChecksumListener( STREAMED_CHECKSUMS, tmpResource, transferListener, () -> {
+                        checksumTransfers.put( ".sha1",
+                                               submitChecksumTransfer( connector, remoteRepository, remotePath,
+                                                                       repository, resource, workingDirectory, ".sha1",
+                                                                       tmpSha1 ) );
+                        checksumTransfers.put( ".md5",
+                                               submitChecksumTransfer( connector, remoteRepository, remotePath,
+                                                                       repository, resource, workingDirectory, ".md5",
+                                                                       tmpMd5 ) );
+                    } );
+                wagon.addTransferListener( checksumListener );
+                try
+                {
+                    transferArtifact( wagon, remoteRepository, remotePath, repository, resource, workingDirectory,
+                                      tmpResource );
+                    checksumListener.storeChecksums( tmpResource, checksumCache );
+                }
+                finally
+                {
+                    wagon.removeTransferListener( checksumListener );
+                    // the checksum transfers write to the working directory, wait for them even if the artifact
+                    // transfer failed
+                    awaitChecksumTransfers( checksumTransfers );
+                }
 
                 // TODO: these should be used to validate the download based on the policies, not always downloaded
                 // to
                 // save on connections since md5 is rarely used
-                transferChecksum( wagon, remoteRepository, remotePath, repository, resource, workingDirectory, ".sha1",
-                                  tmpSha1 );
-                transferChecksum( wagon, remoteRepository, remotePath, repository, resource, workingDirectory, ".md5",
-                                  tmpMd5 );
+                if ( !isTransferred( checksumTransfers, ".sha1" ) )
+                {
+                    transferChecksum( wagon, remoteRepository, remotePath, repository, resource, workingDirectory,
+                                      ".sha1", tmpSha1 );
+                }
+                if ( !isTransferred( checksumTransfers, ".md5" ) )
+                {
+                    transferChecksum( wagon, remoteRepository, remotePath, repository, resource, workingDirectory,
+                                      ".md5", tmpMd5 );
+                }
             }
+            reusable = true;
         }
         catch ( NotFoundException e )
         {
+            // the connection is still usable after a missing resource
+            reusable = true;
             urlFailureCache.cacheFailure( url );
             throw e;
         }
         catch ( NotModifiedException e )
         {
+            reusable = true;
             // Do not cache url here.
             throw e;
         }
@@ -609,18 +1284,151 @@ protected void transferResources( ProxyConnector connector, RemoteRepositoryCont
         }
         finally
         {
-            if ( wagon != null )
-            {
+            wagonPool.returnWagon( route, wagon, reusable );
+        }
+    }
+
+    /**
+     * Starts the transfer of a checksum file on a separate wagon. If no wagon of the pool is available without
+     * waiting, the task returns <code>false</code> and the checksum file must be transferred by the caller.
+     */
+    private Future<Boolean> submitChecksumTransfer( ProxyConnector connector, RemoteRepositoryContent remoteRepository,
+                                                    String remotePath, ManagedRepositoryContent repository,
+                                                    Path resource, Path workingDirectory, String ext, Path destFile )
+    {
+        try
+        {
+            return proxyExecutor.submit( () -> {
+                String route = getRoute( connector, remoteRepository );
+                Wagon wagon = null;
+                boolean reusable = false;
                 try
                 {
-                    wagon.disconnect();
+                    wagon = wagonPool.borrowWagon( route, getWagonFactoryRequest( connector, remoteRepository ),
+                                                   w -> w != null && connectToRepository( connector, w,
+                                                                                          remoteRepository ), 0 );
+                    if ( wagon == null )
+                    {
+                        return false;
+                    }
+                    transferChecksum( wagon, remoteRepository, remotePath, repository, resource, workingDirectory, ext,
+                                      destFile );
+                    reusable = true;
+                    return true;
+                }
+                catch ( WagonFactoryException e )
+                {
+                    log.debug( "No additional connection for the checksum transfer of {}: {}", remotePath,
+                               e.getMessage() );
+                    return false;
                 }
-                catch ( ConnectionException e )
+                finally
                 {
-                    log.warn( "Unable to disconnect wagon.", e );
+                    wagonPool.returnWagon( route, wagon, reusable );
                 }
+            } );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            // all workers are busy, the checksum file is transferred by the caller
+            return CompletableFuture.completedFuture( false );
+        }
+    }
+
+    private void awaitChecksumTransfers( Map<String, Future<Boolean>> checksumTransfers )
+        throws ProxyException
+    {
+        ProxyException failure = null;
+        for ( Future<Boolean> transfer : checksumTransfers.values() )
+        {
+            try
+            {
+                transfer.get();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                transfer.cancel( true );
+                failure = new ProxyException( "Interrupted while waiting for the checksum transfer", e );
+            }
+            catch ( ExecutionException e )
+            {
+                Throwable cause = e.getCause();
+                failure = cause instanceof ProxyException
+                    ? (ProxyException) cause
+                    : new ProxyException( "Checksum transfer failed: " + cause.getMessage(), cause );
             }
         }
+        if ( failure != null )
+        {
+            throw failure;
+        }
+    }
+
+    private boolean isTransferred( Map<String, Future<Boolean>> checksumTransfers, String ext )
+    {
+        Future<Boolean> transfer = checksumTransfers.get( ext );
+        try
+        {
+            return transfer != null && transfer.isDone() && transfer.get();
+        }
+        catch ( InterruptedException | ExecutionException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a connected wagon for the remote repository of the connector from the wagon pool.
+     *
+     * @return the wagon, or <code>null</code>, if the connection could not be established
+     * @throws ProxyException if there is no wagon for the protocol of the remote repository
+     */
+    private Wagon borrowWagon( ProxyConnector connector, RemoteRepositoryContent remoteRepository )
+        throws ProxyException, RepositoryAdminException, WagonFactoryException
+    {
+        boolean[] unsupported = new boolean[1];
+        Wagon wagon = wagonPool.borrowWagon( getRoute( connector, remoteRepository ),
+                                             getWagonFactoryRequest( connector, remoteRepository ), w -> {
+                if ( w == null )
+                {
+                    unsupported[0] = true;
+                    return false;
+                }
+                return connectToRepository( connector, w, remoteRepository );
+            } );
+        if ( unsupported[0] )
+        {
+            throw new ProxyException(
+                "Unsupported target repository protocol: " + remoteRepository.getURL().getProtocol() );
+        }
+        return wagon;
+    }
+
+    /**
+     * The route key of the wagon pool. Wagons are only shared between connectors with the same remote repository
+     * location and network proxy.
+     */
+    private String getRoute( ProxyConnector connector, RemoteRepositoryContent remoteRepository )
+    {
+        return remoteRepository.getId() + "|" + remoteRepository.getURL().getUrl() + "|" + StringUtils.defaultString(
+            connector.getProxyId() );
+    }
+
+    private WagonFactoryRequest getWagonFactoryRequest( ProxyConnector connector,
+                                                        RemoteRepositoryContent remoteRepository )
+        throws RepositoryAdminException
+    {
+        RepositoryURL repoUrl = remoteRepository.getURL();
+        String protocol = repoUrl.getProtocol();
+        NetworkProxy networkProxy = null;
+        if ( StringUtils.isNotBlank( connector.getProxyId() ) )
+        {
+            networkProxy = networkProxyAdmin.getNetworkProxy( connector.getProxyId() );
+        }
+        return new WagonFactoryRequest( "wagon#" + protocol,
+                                        remoteRepository.getRepository().getExtraHeaders() ).networkProxy(
+            networkProxy );
     }
 
     private void transferArtifact( Wagon wagon, RemoteRepositoryContent remoteRepository, String remotePath,
@@ -725,6 +1533,185 @@ private Path transferFile( ProxyConnector connector, RemoteRepositoryContent rem
                                ManagedRepositoryContent repository, Path resource, Properties requestProperties,
                                boolean executeConsumers )
         throws ProxyException, NotModifiedException, RepositoryAdminException
+    {
+        return transferFile( connector, remoteRepository, remotePath, repository, resource, requestProperties,
+                             executeConsumers, null );
+    }
+
+    /**
+     * Perform the transfer of the file and notify the listener about the progress of the download.
+     *
+     * @param transferListener the listener, or <code>null</code>. Requests that wait for a running transfer of the
+     *                         same resource are not notified.
+     * @see #transferFile(ProxyConnector, RemoteRepositoryContent, String, ManagedRepositoryContent, Path, Properties,
+     * boolean)
+     */
+    private Path transferFile( ProxyConnector connector, RemoteRepositoryContent remoteRepository, String remotePath,
+                               ManagedRepositoryContent repository, Path resource, Properties requestProperties,
+                               boolean executeConsumers, ProxyTransferListener transferListener )
+        throws ProxyException, NotModifiedException, RepositoryAdminException
+    {
+        // Concurrent requests for the same resource share one transfer, instead of downloading the resource
+        // once per request
+        String key = repository.getId() + ":" + remoteRepository.getId() + ":" + resource.toAbsolutePath();
+        CompletableFuture<Path> transfer = new CompletableFuture<>();
+        CompletableFuture<Path> inFlight = inFlightTransfers.putIfAbsent( key, transfer );
+        if ( inFlight != null )
+        {
+            coalescedTransfers.incrementAndGet();
+            log.debug( "Waiting for running transfer of {} from repository {}", remotePath, remoteRepository.getId() );
+            return awaitTransfer( inFlight, remotePath );
+        }
+        try
+        {
+            Path result =
+                transferFileFromRemote( connector, remoteRepository, remotePath, repository, resource, requestProperties,
+                                        executeConsumers, transferListener );
+            transfer.complete( result );
+            return result;
+        }
+        catch ( Throwable e )
+        {
+            transfer.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            inFlightTransfers.remove( key, transfer );
+        }
+    }
+
+    /**
+     * Waits for the transfer started by another request and returns its result. Exceptions of the transfer are
+     * rethrown, so the waiting request handles them like its own transfer.
+     */
+    private Path awaitTransfer( CompletableFuture<Path> transfer, String remotePath )
+        throws ProxyException, RepositoryAdminException
+    {
+        try
+        {
+            return transfer.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new ProxyException( "Interrupted while waiting for the transfer of " + remotePath, e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof ProxyException )
+            {
+                throw (ProxyException) cause;
+            }
+            if ( cause instanceof RepositoryAdminException )
+            {
+                throw (RepositoryAdminException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new ProxyException( "Transfer of " + remotePath + " failed: " + cause.getMessage(), cause );
+        }
+    }
+
+    /**
+     * Returns the number of requests, that were served by the transfer of a concurrent request for the same resource.
+     */
+    public long getCoalescedTransferCount()
+    {
+        return coalescedTransfers.get();
+    }
+
+    /**
+     * Keeps the local metadata file untouched, if the downloaded metadata has the same content. The modification
+     * time reported by the remote repository is remembered then, as the local file is the remote metadata.
+     *
+     * @throws NotModifiedException if the content of the metadata did not change
+     */
+    private void revalidateMetadata( RemoteRepositoryContent remoteRepository, String remotePath, Path resource,
+                                     Path tmpResource, long lastModified )
+        throws NotModifiedException
+    {
+        if ( !fileExists( resource ) || !fileExists( tmpResource ) )
+        {
+            return;
+        }
+        try
+        {
+            // the checksum of the download was computed while streaming, the local file is small and usually cached
+            if ( checksumCache.getChecksum( tmpResource, ChecksumAlgorithm.SHA1 ).equals(
+                checksumCache.getChecksum( resource, ChecksumAlgorithm.SHA1 ) ) )
+            {
+                unchangedMetadata.incrementAndGet();
+                recordRemoteLastModified( remoteRepository, remotePath, lastModified );
+                throw new NotModifiedException( "Metadata " + remotePath + " on repository " + remoteRepository.getId()
+                                                    + " has not changed" );
+            }
+        }
+        catch ( IOException e )
+        {
+            log.debug( "Could not compare metadata {} with the local file: {}", remotePath, e.getMessage() );
+        }
+    }
+
+    /**
+     * Remembers the modification time reported by the remote repository for metadata, that is in place in the
+     * managed repository, so the next request asks the remote repository with this time, if the metadata was
+     * modified. A time of <code>0</code> forgets the time, the next request uses the time of the local file.
+     */
+    private void recordRemoteLastModified( RemoteRepositoryContent remoteRepository, String remotePath,
+                                           long lastModified )
+    {
+        String key = remoteRepository.getId() + ":" + remotePath;
+        if ( lastModified > 0 )
+        {
+            remoteLastModified.put( key, lastModified );
+        }
+        else
+        {
+            remoteLastModified.remove( key );
+        }
+    }
+
+    /**
+     * Returns the modification time to send with a conditional request for the resource. That is the modification
+     * time, that the remote repository reported for the last download of metadata, otherwise the modification time of
+     * the local file.
+     */
+    private long getIfModifiedSince( RemoteRepositoryContent remoteRepository, String remotePath, Path localFile )
+        throws IOException
+    {
+        Long lastModified = remoteLastModified.get( remoteRepository.getId() + ":" + remotePath );
+        return lastModified != null ? lastModified : Files.getLastModifiedTime( localFile ).toMillis();
+    }
+
+    /**
+     * Returns the number of metadata downloads, that had the same content as the local file.
+     */
+    public long getUnchangedMetadataCount()
+    {
+        return unchangedMetadata.get();
+    }
+
+    /**
+     * Returns the number of downloads, that could not be moved atomically into the repository and were copied.
+     */
+    public long getCopyFallbackCount()
+    {
+        return copyFallbacks.get();
+    }
+
+    private Path transferFileFromRemote( ProxyConnector connector, RemoteRepositoryContent remoteRepository,
+                                         String remotePath, ManagedRepositoryContent repository, Path resource,
+                                         Properties requestProperties, boolean executeConsumers,
+                                         ProxyTransferListener transferListener )
+        throws ProxyException, NotModifiedException, RepositoryAdminException
     {
         String url = remoteRepository.getURL().getUrl();
         if ( !url.endsWith( "/" ) )
@@ -754,6 +1741,16 @@ private Path transferFile( ProxyConnector connector, RemoteRepositoryContent rem
             return null;
         }
 
+        // Metadata changes with each deployment, only missing artifacts are remembered
+        boolean metadata = "metadata".equals( requestProperties.getProperty( "filetype" ) );
+        if ( !metadata && !fileExists( resource ) && notFoundCache.isNotFound( remoteRepository.getId(),
+                                                                               remotePath ) )
+        {
+            throw new NotFoundException(
+                "Resource " + url + " was not found recently, skipping transfer from repository "
+                    + remoteRepository.getId() );
+        }
+
         // Handle pre-download policy
         try
         {
@@ -777,13 +1774,32 @@ private Path transferFile( ProxyConnector connector, RemoteRepositoryContent rem
         Path tmpMd5 = workingDirectory.resolve(resource.getFileName().toString() + ".md5" );
         Path tmpSha1 = workingDirectory.resolve( resource.getFileName().toString() + ".sha1" );
 
+        LastModifiedListener lastModifiedListener = new LastModifiedListener( transferListener );
         try
         {
 
-            transferResources( connector, remoteRepository, tmpMd5, tmpSha1, tmpResource, url, remotePath, resource,
-                               workingDirectory, repository );
+            try
+            {
+                transferResources( connector, remoteRepository, tmpMd5, tmpSha1, tmpResource, url, remotePath,
+                                   resource, workingDirectory, repository, lastModifiedListener );
+            }
+            catch ( NotFoundException e )
+            {
+                if ( !metadata )
+                {
+                    notFoundCache.cacheNotFound( remoteRepository.getId(), remotePath );
+                }
+                throw e;
+            }
+
+            if ( metadata )
+            {
+                revalidateMetadata( remoteRepository, remotePath, resource, tmpResource,
+                                    lastModifiedListener.lastModified );
+            }
 
             // Handle post-download policies.
+            boolean validated = true;
             try
             {
                 validatePolicies( this.postDownloadPolicies, connector.getPolicies(), requestProperties, tmpResource );
@@ -792,6 +1808,7 @@ private Path transferFile( ProxyConnector connector, RemoteRepositoryContent rem
             {
                 log.warn( "Transfer invalidated from {} : {}", url, e.getMessage() );
                 executeConsumers = false;
+                validated = false;
                 if ( !fileExists( tmpResource ) )
                 {
                     resource = null;
@@ -800,6 +1817,8 @@ private Path transferFile( ProxyConnector connector, RemoteRepositoryContent rem
 
             if ( resource != null )
             {
+                // computed while streaming or validated by the checksum policy, usually cached
+                Map<ChecksumAlgorithm, String> checksums = validated ? getChecksums( tmpResource ) : null;
                 synchronized ( resource.toAbsolutePath().toString().intern() )
                 {
                     Path directory = resource.getParent();
@@ -807,6 +1826,16 @@ private Path transferFile( ProxyConnector connector, RemoteRepositoryContent rem
                     moveFileIfExists( tmpSha1, directory );
                     moveFileIfExists( tmpResource, directory );
                 }
+                if ( checksums != null )
+                {
+                    recordChecksums( repository, resource, checksums );
+                }
+            }
+            if ( metadata )
+            {
+                // a rejected download must not be used to ask the remote repository for changes
+                recordRemoteLastModified( remoteRepository, remotePath,
+                                          validated && resource != null ? lastModifiedListener.lastModified : 0 );
             }
         }
         finally
@@ -824,6 +1853,37 @@ private Path transferFile( ProxyConnector connector, RemoteRepositoryContent rem
         return resource;
     }
 
+    private Map<ChecksumAlgorithm, String> getChecksums( Path tmpResource )
+    {
+        try
+        {
+            return checksumCache.getChecksums( tmpResource, ChecksumCache.DEFAULT_ALGORITHMS );
+        }
+        catch ( IOException e )
+        {
+            log.debug( "Could not get the checksums of {}: {}", tmpResource, e.getMessage() );
+            return null;
+        }
+    }
+
+    /**
+     * Records the checksums of the downloaded file at its final location, so the checksums are not calculated
+     * again by the next request or repository scan.
+     */
+    private void recordChecksums( ManagedRepositoryContent repository, Path resource,
+                                  Map<ChecksumAlgorithm, String> checksums )
+    {
+        try
+        {
+            checksumCache.putChecksums( resource, checksums );
+            checksumCache.recordValidatedChecksums( Paths.get( repository.getRepoRoot() ), resource, checksums );
+        }
+        catch ( IOException e )
+        {
+            log.debug( "Could not record the checksums of {}: {}", resource, e.getMessage() );
+        }
+    }
+
     private void queueRepositoryTask( String repositoryId, Path localFile )
     {
         RepositoryTask task = new RepositoryTask();
@@ -947,7 +2007,7 @@ private void transferSimpleFile( Wagon wagon, RemoteRepositoryContent remoteRepo
                 try
                 {
                     success = wagon.getIfNewer( addParameters( remotePath, remoteRepository.getRepository() ), destFile.toFile(),
-                                                Files.getLastModifiedTime(origFile).toMillis());
+                                                getIfModifiedSince( remoteRepository, remotePath, origFile ) );
                 }
                 catch ( IOException e )
                 {
@@ -1077,13 +2137,26 @@ private void validatePolicies( Map<String, DownloadErrorPolicy> policies, Map<St
     }
 
     /**
-     * Creates a working directory
+     * Creates a working directory in the staging directory of the repository, so the downloaded files can be moved
+     * into the repository without copying them. Falls back to the system temp directory, if the staging directory
+     * cannot be created.
      *
      * @param repository
      * @return file location of working directory
      */
     private Path createWorkingDirectory( ManagedRepositoryContent repository )
     {
+        Path stagingDirectory = getStagingDirectory( repository );
+        try
+        {
+            Files.createDirectories( stagingDirectory );
+            return Files.createTempDirectory( stagingDirectory, "download" );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not create working directory in {}, using the system temp directory: {}",
+                      stagingDirectory, e.getMessage() );
+        }
         try
         {
             return Files.createTempDirectory( "temp" );
@@ -1095,6 +2168,11 @@ private Path createWorkingDirectory( ManagedRepositoryContent repository )
 
     }
 
+    private Path getStagingDirectory( ManagedRepositoryContent repository )
+    {
+        return Paths.get( repository.getRepoRoot() ).resolve( FileTypeUtils.STAGING_DIRECTORY );
+    }
+
     /**
      * Used to move the temporary file to its real destination. This is patterned from the way WagonManager handles its
      * downloaded files.
@@ -1111,11 +2189,6 @@ private void moveTempToTarget( Path temp, Path target )
         try
         {
             lock = fileLockManager.writeFileLock( target );
-            try {
-                Files.deleteIfExists(lock.getFile());
-            } catch (IOException e) {
-                throw new ProxyException( "Unable to overwrite existing target file: " + target.toAbsolutePath() );
-            }
 
             try {
                 Files.createDirectories(lock.getFile().getParent());
@@ -1125,31 +2198,31 @@ private void moveTempToTarget( Path temp, Path target )
 
             try
             {
-                Files.move(temp, lock.getFile() );
+                // readers see either the old or the new file, never a partial one
+                Files.move( temp, lock.getFile(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE );
             }
             catch ( IOException e )
             {
+                copyFallbacks.incrementAndGet();
                 log.warn( "Unable to rename tmp file to its final name... resorting to copy command." );
 
+                // copy next to the target, so the final rename is still atomic
+                Path copy = lock.getFile().resolveSibling( "." + lock.getFile().getFileName() + ".tmp" );
                 try
                 {
-                    Files.copy( temp, lock.getFile());
+                    Files.copy( temp, copy, StandardCopyOption.REPLACE_EXISTING );
+                    Files.move( copy, lock.getFile(), StandardCopyOption.REPLACE_EXISTING,
+                                StandardCopyOption.ATOMIC_MOVE );
                 }
                 catch ( IOException e2 )
                 {
-                    if ( Files.exists(lock.getFile()) )
-                    {
-                        log.debug( "Tried to copy file {} to {} but file with this name already exists.",
-                            temp.getFileName(), lock.getFile().toAbsolutePath() );
-                    }
-                    else
-                    {
-                        throw new ProxyException(
-                            "Cannot copy tmp file " + temp.toAbsolutePath() + " to its final location", e2 );
-                    }
+                    throw new ProxyException(
+                        "Cannot copy tmp file " + temp.toAbsolutePath() + " to its final location", e2 );
                 }
                 finally
                 {
+                    org.apache.archiva.common.utils.FileUtils.deleteQuietly( copy );
                     org.apache.archiva.common.utils.FileUtils.deleteQuietly( temp );
                 }
             }
@@ -1301,6 +2374,9 @@ public void afterConfigurationChange( Registry registry, String propertyName, Ob
             || ConfigurationNames.isProxyConnector( propertyName ) ) //
         {
             initConnectorsAndNetworkProxies();
+            // pooled wagons may be connected with outdated credentials or network proxy settings
+            wagonPool.clear();
+            remoteLastModified.clear();
         }
     }
 
@@ -1363,6 +2439,16 @@ public void setMetadataTools( MetadataTools metadataTools )
         this.metadataTools = metadataTools;
     }
 
+    public NotFoundCache getNotFoundCache()
+    {
+        return notFoundCache;
+    }
+
+    public void setNotFoundCache( NotFoundCache notFoundCache )
+    {
+        this.notFoundCache = notFoundCache;
+    }
+
     public UrlFailureCache getUrlFailureCache()
     {
         return urlFailureCache;
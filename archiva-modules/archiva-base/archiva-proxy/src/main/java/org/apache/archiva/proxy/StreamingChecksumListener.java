@@ -0,0 +1,189 @@
+package org.apache.archiva.proxy;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.checksum.Checksum;
+import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumCache;
+import org.apache.archiva.proxy.model.ProxyTransferListener;
+import org.apache.maven.wagon.events.TransferEvent;
+import org.apache.maven.wagon.events.TransferListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transfer listener, that computes the checksums of a downloaded file from the bytes passed to the
+ * progress events, while the wagon writes them to disk.
+ * <p>
+ * After the transfer the checksums are stored in the {@link ChecksumCache}, so the checksum policy does not
+ * read the downloaded file again. The checksums are only stored, if the number of digested bytes matches the
+ * size of the file, i.e. if the wagon reported the complete content.
+ * </p>
+ * <p>
+ * An optional callback is run, when the wagon starts to receive the content. At this point the remote
+ * repository has confirmed, that the resource exists. An optional {@link ProxyTransferListener} is notified
+ * about the start and the progress of the download, so the content can be read while it is written.
+ * </p>
+ */
+class StreamingChecksumListener
+    implements TransferListener
+{
+    private Logger log = LoggerFactory.getLogger( StreamingChecksumListener.class );
+
+    private final List<Checksum> checksums = new ArrayList<>();
+
+    private final Runnable startCallback;
+
+    private final Path file;
+
+    private final ProxyTransferListener transferListener;
+
+    private long bytes = 0;
+
+    private boolean started = false;
+
+    private boolean failed = false;
+
+    StreamingChecksumListener( List<ChecksumAlgorithm> algorithms, Path file, ProxyTransferListener transferListener,
+                               Runnable startCallback )
+    {
+        for ( ChecksumAlgorithm algorithm : algorithms )
+        {
+            checksums.add( new Checksum( algorithm ) );
+        }
+        this.file = file;
+        this.transferListener = transferListener;
+        this.startCallback = startCallback;
+    }
+
+    @Override
+    public void transferInitiated( TransferEvent transferEvent )
+    {
+        // nothing to do
+    }
+
+    @Override
+    public void transferStarted( TransferEvent transferEvent )
+    {
+        if ( transferEvent.getRequestType() != TransferEvent.REQUEST_GET )
+        {
+            return;
+        }
+        for ( Checksum checksum : checksums )
+        {
+            checksum.reset();
+        }
+        bytes = 0;
+        failed = false;
+        if ( !started )
+        {
+            started = true;
+            if ( startCallback != null )
+            {
+                startCallback.run();
+            }
+        }
+        if ( transferListener != null )
+        {
+            transferListener.transferStarted( file, transferEvent.getResource().getContentLength(),
+                                              transferEvent.getResource().getLastModified() );
+        }
+    }
+
+    @Override
+    public void transferProgress( TransferEvent transferEvent, byte[] buffer, int length )
+    {
+        if ( !started || transferEvent.getRequestType() != TransferEvent.REQUEST_GET )
+        {
+            return;
+        }
+        for ( Checksum checksum : checksums )
+        {
+            checksum.update( buffer, 0, length );
+        }
+        bytes += length;
+        if ( transferListener != null )
+        {
+            transferListener.transferProgress( file, bytes );
+        }
+    }
+
+    @Override
+    public void transferCompleted( TransferEvent transferEvent )
+    {
+        // nothing to do
+    }
+
+    @Override
+    public void transferError( TransferEvent transferEvent )
+    {
+        failed = true;
+    }
+
+    @Override
+    public void debug( String message )
+    {
+        // nothing to do
+    }
+
+    /**
+     * Returns true, if the wagon started to receive the content.
+     */
+    boolean isStarted()
+    {
+        return started;
+    }
+
+    /**
+     * Stores the computed checksums of the downloaded file in the given cache.
+     *
+     * @return true, if the checksums were stored, false, if the streamed content does not match the file
+     */
+    boolean storeChecksums( Path file, ChecksumCache cache )
+    {
+        try
+        {
+            if ( !started || failed || !Files.exists( file ) || Files.size( file ) != bytes )
+            {
+                return false;
+            }
+            Map<ChecksumAlgorithm, String> values = new EnumMap<>( ChecksumAlgorithm.class );
+            for ( Checksum checksum : checksums )
+            {
+                values.put( checksum.getAlgorithm(), checksum.finish().getChecksum() );
+            }
+            cache.putChecksums( file, values );
+            return true;
+        }
+        catch ( IOException e )
+        {
+            log.debug( "Could not store the checksums of {}: {}", file, e.getMessage() );
+            return false;
+        }
+    }
+}
@@ -26,6 +26,8 @@
 import org.apache.archiva.policies.ReleasesPolicy;
 import org.apache.archiva.policies.SnapshotsPolicy;
 import org.apache.archiva.policies.urlcache.UrlFailureCache;
+import org.apache.archiva.proxy.common.NotFoundCache;
+import org.apache.archiva.proxy.common.NotFoundCacheStatistics;
 import org.apache.maven.wagon.ResourceDoesNotExistException;
 import org.easymock.EasyMock;
 import org.junit.Test;
@@ -36,6 +38,7 @@
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 
@@ -53,6 +56,9 @@
     @Inject
     UrlFailureCache urlFailureCache;
 
+    @Inject
+    NotFoundCache notFoundCache;
+
     @Test
     public void testGetWithCacheFailuresOn()
         throws Exception
@@ -144,6 +150,47 @@ public void testGetWithCacheFailuresOff()
         assertNoTempFiles( expectedFile );
     }
 
+    @Test
+    public void testGetWithNotFoundCache()
+        throws Exception
+    {
+        String path = "org/apache/maven/test/get-in-second-proxy/1.0/get-in-second-proxy-1.0.jar";
+        Path expectedFile = managedDefaultDir.resolve( path );
+        setupTestableManagedRepository( path );
+
+        assertNotExistsInManagedDefaultRepo( expectedFile );
+
+        ArtifactReference artifact = managedDefaultRepository.toArtifactReference( path );
+
+        // Configure Repository (usually done within archiva.xml configuration)
+        saveRemoteRepositoryConfig( "badproxied1", "Bad Proxied 1", "test://bad.machine.com/repo/", "default" );
+        config.getConfiguration().findRemoteRepositoryById( "badproxied1" ).setNotFoundCacheTtl( 60 );
+
+        // Configure Connector (usually done within archiva.xml configuration)
+        saveConnector( ID_DEFAULT_MANAGED, "badproxied1", ChecksumPolicy.FIX, ReleasesPolicy.ALWAYS,
+                       SnapshotsPolicy.ALWAYS, CachedFailuresPolicy.NO, false );
+
+        wagonMock.get( EasyMock.eq( path ), EasyMock.anyObject( File.class ) );
+        EasyMock.expectLastCall().andThrow( new ResourceDoesNotExistException( "resource does not exist." ) ).once();
+
+        wagonMockControl.replay();
+
+        Path downloadedFile = proxyHandler.fetchFromProxies( managedDefaultRepository, artifact );
+
+        wagonMockControl.verify();
+
+        // Second attempt is answered by the not found cache, although the cache failures policy is off
+        wagonMockControl.reset();
+        wagonMockControl.replay();
+        downloadedFile = proxyHandler.fetchFromProxies( managedDefaultRepository, artifact );
+        wagonMockControl.verify();
+
+        assertNotDownloaded( downloadedFile );
+        NotFoundCacheStatistics statistics = notFoundCache.getStatistics().get( "badproxied1" );
+        assertEquals( 1, statistics.getHits() );
+        assertEquals( 1, statistics.getSize() );
+    }
+
     @Test
     public void testGetWhenInBothProxiedButFirstCacheFailure()
         throws Exception
@@ -19,6 +19,7 @@
  * under the License.
  */
 
+import org.apache.archiva.checksum.ChecksumCache;
 import org.apache.archiva.common.utils.FileUtils;
 import org.apache.archiva.model.ArtifactReference;
 import org.apache.archiva.policies.CachedFailuresPolicy;
@@ -29,12 +30,15 @@
 import org.easymock.EasyMock;
 import org.junit.Test;
 
+import javax.inject.Inject;
+import javax.inject.Named;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 
@@ -46,6 +50,10 @@
 public class ChecksumTransferTest
     extends AbstractProxyTestCase
 {
+    @Inject
+    @Named( "checksumCache#default" )
+    private ChecksumCache checksumCache;
+
     @Test
     public void testGetChecksumWhenConnectorIsDisabled()
         throws Exception
@@ -94,6 +102,35 @@ public void testGetChecksumBothCorrect()
                          "e58f30c6a150a2e843552438d18e15cb *get-checksum-both-right-1.0.jar" );
     }
 
+    @Test
+    public void testChecksumsAreComputedWhileDownloading()
+        throws Exception
+    {
+        String path = "org/apache/maven/test/get-checksum-both-right/1.0/get-checksum-both-right-1.0.jar";
+        setupTestableManagedRepository( path );
+
+        Path expectedFile = managedDefaultDir.resolve( path );
+        ArtifactReference artifact = managedDefaultRepository.toArtifactReference( path );
+
+        FileUtils.deleteDirectory( expectedFile.getParent() );
+        assertFalse( Files.exists(expectedFile) );
+
+        // Configure Connector (usually done within archiva.xml configuration)
+        saveConnector( ID_DEFAULT_MANAGED, "proxied1", ChecksumPolicy.FAIL, ReleasesPolicy.ALWAYS,
+                       SnapshotsPolicy.ALWAYS, CachedFailuresPolicy.NO, false );
+
+        long misses = checksumCache.getMissCount();
+        Path downloadedFile = proxyHandler.fetchFromProxies( managedDefaultRepository, artifact );
+
+        Path proxied1File = Paths.get( REPOPATH_PROXIED1, path );
+        assertFileEquals( expectedFile, downloadedFile, proxied1File );
+        assertNoTempFiles( expectedFile );
+        assertChecksums( expectedFile, "066d76e459f7782c312c31e8a11b3c0f1e3e43a7 *get-checksum-both-right-1.0.jar",
+                         "e58f30c6a150a2e843552438d18e15cb *get-checksum-both-right-1.0.jar" );
+        // the checksum policy validated the download without reading the file again
+        assertEquals( misses, checksumCache.getMissCount() );
+    }
+
     @Test
     public void testGetChecksumCorrectSha1NoMd5()
         throws Exception
@@ -19,11 +19,13 @@
  * under the License.
  */
 
+import org.apache.archiva.common.FileTypeUtils;
 import org.apache.archiva.model.ArtifactReference;
 import org.apache.archiva.policies.CachedFailuresPolicy;
 import org.apache.archiva.policies.ChecksumPolicy;
 import org.apache.archiva.policies.ReleasesPolicy;
 import org.apache.archiva.policies.SnapshotsPolicy;
+import org.apache.archiva.repository.features.ProxyFetchFeature;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.maven.wagon.ResourceDoesNotExistException;
@@ -36,7 +38,14 @@
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.FileTime;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -93,6 +102,36 @@ public void testGetDefaultLayoutNotPresent()
         assertNoTempFiles( expectedFile );
     }
 
+    @Test
+    public void testDownloadIsStagedInRepository()
+        throws Exception
+    {
+        String path = "org/apache/maven/test/get-default-layout/1.0/get-default-layout-1.0.jar";
+        setupTestableManagedRepository( path );
+
+        Path expectedFile = managedDefaultDir.resolve( path );
+        Path stagingDir = managedDefaultDir.resolve( FileTypeUtils.STAGING_DIRECTORY );
+        ArtifactReference artifact = managedDefaultRepository.toArtifactReference( path );
+        DefaultRepositoryProxyConnectors connectors = (DefaultRepositoryProxyConnectors) proxyHandler;
+        long copyFallbacks = connectors.getCopyFallbackCount();
+
+        assertNotExistsInManagedDefaultRepo( expectedFile );
+
+        saveConnector( ID_DEFAULT_MANAGED, ID_PROXIED1, ChecksumPolicy.FIX, ReleasesPolicy.ONCE, SnapshotsPolicy.ONCE,
+                       CachedFailuresPolicy.NO, false );
+
+        Path downloadedFile = proxyHandler.fetchFromProxies( managedDefaultRepository, artifact );
+
+        assertFileEquals( expectedFile, downloadedFile, Paths.get( REPOPATH_PROXIED1, path ) );
+        // the download is renamed into place, not copied
+        assertEquals( copyFallbacks, connectors.getCopyFallbackCount() );
+        assertTrue( Files.isDirectory( stagingDir ) );
+        try ( Stream<Path> staged = Files.list( stagingDir ) )
+        {
+            assertEquals( 0, staged.count() );
+        }
+    }
+
     @Test
     public void testGetDefaultLayoutNotPresentPassthrough()
         throws Exception
@@ -462,5 +501,101 @@ public void testGetAllRepositoriesFail()
         // TODO: How much information on each failure should we pass back to the user vs. logging in the proxy? 
     }
 
+    @Test
+    public void testConcurrentRequestsShareOneTransfer()
+        throws Exception
+    {
+        String path = "org/apache/maven/test/get-default-layout/1.0/get-default-layout-1.0.jar";
+        setupTestableManagedRepository( path );
+
+        Path expectedFile = managedDefaultDir.resolve( path );
+        final ArtifactReference artifact = managedDefaultRepository.toArtifactReference( path );
+
+        assertNotExistsInManagedDefaultRepo( expectedFile );
+
+        saveRemoteRepositoryConfig( "slowproxied", "Slow Proxied", "test://slow.machine.com/repo/", "default" );
+        saveConnector( ID_DEFAULT_MANAGED, "slowproxied", ChecksumPolicy.IGNORE, ReleasesPolicy.ONCE,
+                       SnapshotsPolicy.ONCE, CachedFailuresPolicy.NO, false );
+
+        final AtomicInteger transfers = new AtomicInteger( 0 );
+        wagonMock.get( EasyMock.eq( path ), EasyMock.anyObject( File.class ) );
+        EasyMock.expectLastCall().andAnswer( () -> {
+            transfers.incrementAndGet();
+            // keep the transfer running, until the other requests arrived
+            Thread.sleep( 1000 );
+            return null;
+        } ).anyTimes();
+        wagonMockControl.replay();
+
+        int requests = 4;
+        final CyclicBarrier barrier = new CyclicBarrier( requests );
+        ExecutorService executor = Executors.newFixedThreadPool( requests );
+        try
+        {
+            Callable<Path> fetch = () -> {
+                barrier.await();
+                return proxyHandler.fetchFromProxies( managedDefaultRepository, artifact );
+            };
+            Future<?>[] results = new Future<?>[requests];
+            for ( int i = 0; i < requests; i++ )
+            {
+                results[i] = executor.submit( fetch );
+            }
+            for ( Future<?> result : results )
+            {
+                assertEquals( expectedFile, result.get( 30, TimeUnit.SECONDS ) );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        wagonMockControl.verify();
+        assertEquals( 1, transfers.get() );
+        assertTrue( Files.exists( expectedFile ) );
+        assertNoTempFiles( expectedFile );
+    }
+
+    @Test
+    public void testParallelFetchSkipsRepositoryWithoutArtifact()
+        throws Exception
+    {
+        String path = "org/apache/maven/test/get-in-second-proxy/1.0/get-in-second-proxy-1.0.jar";
+        setupTestableManagedRepository( path );
+
+        Path expectedFile = managedDefaultDir.resolve( path );
+        ArtifactReference artifact = managedDefaultRepository.toArtifactReference( path );
+
+        assertNotExistsInManagedDefaultRepo( expectedFile );
+
+        managedDefaultRepository.getRepository().getFeature( ProxyFetchFeature.class ).get().setParallelFetch( true );
+
+        saveRemoteRepositoryConfig( "missingproxied", "Missing Proxied", "test://missing.machine.com/repo/",
+                                    "default" );
+
+        final AtomicInteger transfers = new AtomicInteger( 0 );
+        EasyMock.expect( wagonMock.resourceExists( path ) ).andReturn( false );
+        wagonMock.get( EasyMock.eq( path ), EasyMock.anyObject( File.class ) );
+        EasyMock.expectLastCall().andAnswer( () -> {
+            transfers.incrementAndGet();
+            throw new ResourceDoesNotExistException( "Can't find resource." );
+        } ).anyTimes();
+        wagonMockControl.replay();
+
+        saveConnector( ID_DEFAULT_MANAGED, "missingproxied", false );
+        saveConnector( ID_DEFAULT_MANAGED, ID_PROXIED2, false );
+
+        Path downloadedFile = proxyHandler.fetchFromProxies( managedDefaultRepository, artifact );
+
+        wagonMockControl.verify();
+        // the first repository reported the artifact as missing, so no transfer was attempted
+        assertEquals( 0, transfers.get() );
+
+        Path proxied2File = Paths.get( REPOPATH_PROXIED2, path );
+        assertFileEquals( expectedFile, downloadedFile, proxied2File );
+        assertNoTempFiles( expectedFile );
+    }
+
 
 }
@@ -29,8 +29,10 @@
 import org.apache.archiva.model.VersionedReference;
 import org.apache.archiva.policies.CachedFailuresPolicy;
 import org.apache.archiva.policies.ChecksumPolicy;
+import org.apache.archiva.policies.MetadataRefreshPolicy;
 import org.apache.archiva.policies.ReleasesPolicy;
 import org.apache.archiva.policies.SnapshotsPolicy;
+import org.apache.archiva.proxy.model.ProxyFetchResult;
 import org.apache.archiva.repository.metadata.MetadataTools;
 import org.apache.archiva.repository.metadata.RepositoryMetadataException;
 import org.apache.archiva.repository.metadata.RepositoryMetadataWriter;
@@ -47,6 +49,8 @@
 import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -379,6 +383,107 @@ public void testGetProjectMetadataProxiedOnLocalOnRemote()
         assertRepoProjectMetadata( ID_PROXIED1, requestedResource, new String[]{ "1.0.22", "2.0" } );
     }
 
+    @Test
+    public void testGetProjectMetadataProxiedUnchangedOnRemote()
+        throws Exception
+    {
+        String requestedResource = "org/apache/maven/test/get-on-local-on-remote/maven-metadata.xml";
+        setupTestableManagedRepository( requestedResource );
+
+        saveConnector( ID_DEFAULT_MANAGED, ID_PROXIED1, ChecksumPolicy.FIX, ReleasesPolicy.ALWAYS,
+                       SnapshotsPolicy.ALWAYS, CachedFailuresPolicy.NO, false );
+
+        assertFetchProjectOrGroup( requestedResource );
+
+        DefaultRepositoryProxyConnectors connectors = (DefaultRepositoryProxyConnectors) proxyHandler;
+        long unchanged = connectors.getUnchangedMetadataCount();
+        Path repoFile =
+            managedDefaultDir.resolve( metadataTools.getRepositorySpecificName( ID_PROXIED1, requestedResource ) );
+        FileTime repoFileTime = FileTime.fromMillis( getPastDate().getTime() );
+        Files.setLastModifiedTime( repoFile, repoFileTime );
+
+        // the remote file looks modified, but has the same content
+        Path proxiedFile = Paths.get( REPOPATH_PROXIED1, requestedResource );
+        FileTime proxiedFileTime = Files.getLastModifiedTime( proxiedFile );
+        Files.setLastModifiedTime( proxiedFile, FileTime.fromMillis( getFutureDate().getTime() ) );
+        try
+        {
+            ProxyFetchResult result =
+                proxyHandler.fetchMetadataFromProxies( managedDefaultRepository, requestedResource );
+
+            assertNotNull( result.getFile() );
+            assertFalse( result.isModified() );
+            assertEquals( repoFileTime, Files.getLastModifiedTime( repoFile ) );
+            assertEquals( unchanged + 1, connectors.getUnchangedMetadataCount() );
+        }
+        finally
+        {
+            Files.setLastModifiedTime( proxiedFile, proxiedFileTime );
+        }
+    }
+
+    @Test
+    public void testGetProjectMetadataStaleWhileRevalidate()
+        throws Exception
+    {
+        String requestedResource = "org/apache/maven/test/get-on-local-on-remote/maven-metadata.xml";
+        setupTestableManagedRepository( requestedResource );
+
+        saveConnector( ID_DEFAULT_MANAGED, ID_PROXIED1, ChecksumPolicy.FIX, ReleasesPolicy.ALWAYS,
+                       SnapshotsPolicy.ALWAYS, CachedFailuresPolicy.NO, false );
+        config.getConfiguration().getProxyConnectors().get( 0 ).addPolicy(
+            ProxyConnectorConfiguration.POLICY_METADATA_REFRESH, MetadataRefreshPolicy.STALE_WHILE_REVALIDATE );
+        config.triggerChange( "proxyConnectors.proxyConnector(0).policies", "" );
+
+        // No repository specific copy yet, the metadata is fetched before answering
+        assertFetchProjectOrGroup( requestedResource );
+        assertProjectMetadataContents( requestedResource, new String[]{ "1.0.8", "1.0.22", "2.0" }, "2.0", "2.0" );
+
+        DefaultRepositoryProxyConnectors connectors = (DefaultRepositoryProxyConnectors) proxyHandler;
+        long refreshes = connectors.getMetadataRefreshCount();
+
+        // The local copy is returned, the metadata is refreshed in the background
+        ProxyFetchResult result = proxyHandler.fetchMetadataFromProxies( managedDefaultRepository, requestedResource );
+        assertNotNull( result.getFile() );
+        assertFalse( result.isModified() );
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while ( connectors.getMetadataRefreshCount() == refreshes && System.currentTimeMillis() < timeout )
+        {
+            Thread.sleep( 50 );
+        }
+        assertEquals( refreshes + 1, connectors.getMetadataRefreshCount() );
+        assertProjectMetadataContents( requestedResource, new String[]{ "1.0.8", "1.0.22", "2.0" }, "2.0", "2.0" );
+    }
+
+    @Test
+    public void testGetProjectMetadataStaleWhileRevalidateRespectsPolicies()
+        throws Exception
+    {
+        String requestedResource = "org/apache/maven/test/get-on-local-on-remote/maven-metadata.xml";
+        setupTestableManagedRepository( requestedResource );
+
+        saveConnector( ID_DEFAULT_MANAGED, ID_PROXIED1, ChecksumPolicy.FIX, ReleasesPolicy.ONCE,
+                       SnapshotsPolicy.ALWAYS, CachedFailuresPolicy.NO, false );
+        config.getConfiguration().getProxyConnectors().get( 0 ).addPolicy(
+            ProxyConnectorConfiguration.POLICY_METADATA_REFRESH, MetadataRefreshPolicy.STALE_WHILE_REVALIDATE );
+        config.triggerChange( "proxyConnectors.proxyConnector(0).policies", "" );
+
+        // No repository specific copy yet, the policy allows fetching it once
+        assertFetchProjectOrGroup( requestedResource );
+
+        DefaultRepositoryProxyConnectors connectors = (DefaultRepositoryProxyConnectors) proxyHandler;
+        long refreshes = connectors.getMetadataRefreshCount();
+
+        // The local copy is returned, the policy does not allow a refresh
+        ProxyFetchResult result = proxyHandler.fetchMetadataFromProxies( managedDefaultRepository, requestedResource );
+        assertNotNull( result.getFile() );
+        assertFalse( result.isModified() );
+
+        Thread.sleep( 500 );
+        assertEquals( refreshes, connectors.getMetadataRefreshCount() );
+    }
+
     /**
      * A request for a release maven-metadata.xml file that does not exist locally, and the managed
      * repository has no proxied repositories set up.
@@ -73,6 +73,13 @@
      */
     public static final String POLICY_CACHE_FAILURES = "cache-failures";
 
+    /**
+     * The policy key {@link #getPolicies()} for the refresh of metadata.
+     * See {@link org.apache.archiva.policies.MetadataRefreshPolicy}
+     * for details on potential values to this policy key.
+     */
+    public static final String POLICY_METADATA_REFRESH = "metadata-refresh";
+
     /**
      *
      * The order of the proxy connectors. (0 means no order specified)
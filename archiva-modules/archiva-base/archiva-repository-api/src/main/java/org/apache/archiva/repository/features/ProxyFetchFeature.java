@@ -0,0 +1,99 @@
+package org.apache.archiva.repository.features;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ *
+ * This feature provides settings for fetching missing artifacts from the remote repositories
+ * of the proxy connectors of a managed repository.
+ *
+ */
+public class ProxyFetchFeature implements RepositoryFeature<ProxyFetchFeature> {
+
+    private boolean parallelFetch = false;
+    private int hedgeDelay = 100;
+    private boolean streamingFetch = false;
+
+    public ProxyFetchFeature() {
+
+    }
+
+    @Override
+    public ProxyFetchFeature get() {
+        return this;
+    }
+
+    /**
+     * Returns true, if the remote repositories are asked concurrently for a missing artifact. Otherwise
+     * the proxy connectors are tried one after another in the configured order.
+     *
+     * @return True, if the parallel fetch is enabled, otherwise false.
+     */
+    public boolean isParallelFetch() {
+        return parallelFetch;
+    }
+
+    /**
+     * Sets the flag for asking the remote repositories concurrently.
+     *
+     * @param parallelFetch
+     */
+    public void setParallelFetch(boolean parallelFetch) {
+        this.parallelFetch = parallelFetch;
+    }
+
+    /**
+     * Returns the time in milliseconds to wait for the answer of a preferred remote repository, if a
+     * remote repository with a lower preference already found the artifact.
+     *
+     * @return The hedge delay in milliseconds, always greater or equal than 0.
+     */
+    public int getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    /**
+     * Sets the hedge delay. Negative values are reset to 0.
+     *
+     * @param hedgeDelay The delay in milliseconds
+     */
+    public void setHedgeDelay(int hedgeDelay) {
+        this.hedgeDelay = hedgeDelay < 0 ? 0 : hedgeDelay;
+    }
+
+    /**
+     * Returns true, if a proxied artifact is sent to the client while it is downloaded. The checksums are
+     * verified after the download, if the verification fails, the connection to the client is aborted.
+     *
+     * @return True, if the streaming fetch is enabled, otherwise false.
+     */
+    public boolean isStreamingFetch() {
+        return streamingFetch;
+    }
+
+    /**
+     * Sets the flag for sending proxied artifacts while they are downloaded.
+     *
+     * @param streamingFetch
+     */
+    public void setStreamingFetch(boolean streamingFetch) {
+        this.streamingFetch = streamingFetch;
+    }
+}
@@ -0,0 +1,111 @@
+package org.apache.archiva.repository.features;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ *
+ * This feature provides settings for the repository scan. The scan is run by the repository
+ * scanner, which feeds each file of the repository to the configured consumers.
+ *
+ */
+public class ScanningFeature implements RepositoryFeature<ScanningFeature> {
+
+    private int scanThreads = 1;
+    private boolean scanJournal = false;
+    private boolean watchChanges = false;
+
+    public ScanningFeature() {
+
+    }
+
+    public ScanningFeature(int scanThreads) {
+        setScanThreads(scanThreads);
+    }
+
+    @Override
+    public ScanningFeature get() {
+        return this;
+    }
+
+    /**
+     * Returns the number of worker threads, that process the files found during the scan.
+     * A value of 1 means that all files are processed by the thread that walks the repository.
+     *
+     * @return The number of scan threads, always greater than 0.
+     */
+    public int getScanThreads() {
+        return scanThreads;
+    }
+
+    /**
+     * Sets the number of worker threads used for the scan. Values lower than 1 are reset to 1.
+     *
+     * @param scanThreads The number of threads
+     */
+    public void setScanThreads(int scanThreads) {
+        this.scanThreads = scanThreads < 1 ? 1 : scanThreads;
+    }
+
+    /**
+     * Returns true, if the files are processed by more than one thread.
+     * @return True, if the scan runs in parallel, otherwise false.
+     */
+    public boolean isParallelScan() {
+        return scanThreads > 1;
+    }
+
+    /**
+     * Returns true, if the scanner keeps a journal of the repository directories. Incremental scans use
+     * the journal of the last completed scan to skip directories that did not change since.
+     *
+     * @return True, if the scan journal is used, otherwise false.
+     */
+    public boolean isScanJournal() {
+        return scanJournal;
+    }
+
+    /**
+     * Sets the flag for the usage of the scan journal.
+     *
+     * @param scanJournal
+     */
+    public void setScanJournal(boolean scanJournal) {
+        this.scanJournal = scanJournal;
+    }
+
+    /**
+     * Returns true, if the repository directories are watched for changes. Files that are added or modified
+     * outside of archiva are processed shortly after the change, without waiting for the next scheduled scan.
+     *
+     * @return True, if the change feed is enabled, otherwise false.
+     */
+    public boolean isWatchChanges() {
+        return watchChanges;
+    }
+
+    /**
+     * Sets the flag for watching the repository directories for changes.
+     *
+     * @param watchChanges
+     */
+    public void setWatchChanges(boolean watchChanges) {
+        this.watchChanges = watchChanges;
+    }
+}
@@ -21,6 +21,8 @@
 
 import org.apache.archiva.repository.features.ArtifactCleanupFeature;
 import org.apache.archiva.repository.features.IndexCreationFeature;
+import org.apache.archiva.repository.features.ProxyFetchFeature;
+import org.apache.archiva.repository.features.ScanningFeature;
 import org.apache.archiva.repository.features.StagingRepositoryFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,13 +42,16 @@ public class BasicManagedRepository extends AbstractManagedRepository
     Logger log = LoggerFactory.getLogger(BasicManagedRepository.class);
     ArtifactCleanupFeature artifactCleanupFeature = new ArtifactCleanupFeature(  );
     StagingRepositoryFeature stagingRepositoryFeature = new StagingRepositoryFeature( );
+    ScanningFeature scanningFeature = new ScanningFeature( );
+    ProxyFetchFeature proxyFetchFeature = new ProxyFetchFeature( );
 
 
     static final StandardCapabilities CAPABILITIES = new StandardCapabilities( new ReleaseScheme[] {
         ReleaseScheme.RELEASE, ReleaseScheme.SNAPSHOT
     }, new String[] {"default"}, new String[0], new String[] {
         ArtifactCleanupFeature.class.toString(), IndexCreationFeature.class.toString(),
-        StagingRepositoryFeature.class.toString()
+        StagingRepositoryFeature.class.toString(), ScanningFeature.class.toString(),
+        ProxyFetchFeature.class.toString()
     }, true, true, true, true, true  );
 
     public BasicManagedRepository( String id, String name, Path basePath )
@@ -66,6 +71,8 @@ private void initFeatures() {
         addFeature( artifactCleanupFeature );
         addFeature( indexCreationFeature );
         addFeature( stagingRepositoryFeature );
+        addFeature( scanningFeature );
+        addFeature( proxyFetchFeature );
     }
 
     @Override
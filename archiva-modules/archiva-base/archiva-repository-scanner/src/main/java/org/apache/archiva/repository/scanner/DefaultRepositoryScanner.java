@@ -25,6 +25,7 @@
 import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
 import org.apache.archiva.consumers.RepositoryContentConsumer;
 import org.apache.archiva.repository.ManagedRepository;
+import org.apache.archiva.repository.features.ScanningFeature;
 import org.apache.commons.collections4.CollectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -134,6 +135,26 @@ public RepositoryScanStatistics scan( ManagedRepository repository,
 
         scannerInstance.setFileNameIncludePattern(allIncludes);
         scannerInstance.setFileNameExcludePattern(allExcludes);
+        Path journalFile = null;
+        ScanJournal journal = null;
+        if ( repository.supportsFeature( ScanningFeature.class ) )
+        {
+            ScanningFeature scanningFeature = repository.getFeature( ScanningFeature.class ).get();
+            scannerInstance.setScanThreads( scanningFeature.getScanThreads() );
+            if ( scanningFeature.isScanJournal() )
+            {
+                journalFile = ScanJournal.getJournalFile( repository );
+                journal = new ScanJournal();
+                ScanJournal previousJournal = null;
+                // Consumers that want unmodified files must see every file, so nothing can be skipped
+                if ( changesSince > FRESH_SCAN && !processesUnmodified( knownContentConsumers )
+                    && !processesUnmodified( invalidContentConsumers ) )
+                {
+                    previousJournal = ScanJournal.load( journalFile );
+                }
+                scannerInstance.setScanJournal( previousJournal, journal );
+            }
+        }
         inProgressScans.add( scannerInstance );
 
         RepositoryScanStatistics stats = null;
@@ -145,16 +166,47 @@ public RepositoryScanStatistics scan( ManagedRepository repository,
 
             stats.setKnownConsumers( gatherIds( knownContentConsumers ) );
             stats.setInvalidConsumers( gatherIds( invalidContentConsumers ) );
+
+            if ( journal != null && scannerInstance.isJournalComplete() )
+            {
+                saveJournal( journal, journalFile );
+            }
         } catch (IOException e) {
             log.error("Could not scan directory {}", repositoryBase);
         } finally
         {
+            scannerInstance.releaseWorkers();
             inProgressScans.remove( scannerInstance );
         }
 
         return stats;
     }
 
+    private void saveJournal( ScanJournal journal, Path journalFile )
+    {
+        try
+        {
+            journal.save( journalFile );
+            log.debug( "Saved scan journal with {} directories to {}", journal.size(), journalFile );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not save scan journal {}: {}", journalFile, e.getMessage() );
+        }
+    }
+
+    private boolean processesUnmodified( List<? extends RepositoryContentConsumer> consumers )
+    {
+        for ( RepositoryContentConsumer consumer : consumers )
+        {
+            if ( consumer.isProcessUnmodified() )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private List<String> gatherIds( List<? extends RepositoryContentConsumer> consumers )
     {
         List<String> ids = new ArrayList<>();
@@ -0,0 +1,125 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.lang.StringUtils;
+
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The include and exclude patterns of a scan compiled into a single matcher.
+ * <p>
+ * A path matches, if it matches none of the exclude patterns and all of the include patterns.
+ * All exclude patterns are combined into one glob group, so only one regular expression
+ * is evaluated per path. Include patterns that match any file of the walk (<code>**&#47;*</code>)
+ * are dropped.
+ * </p>
+ */
+final class FileNamePatternMatcher
+    implements PathMatcher
+{
+    private static final String MATCH_ALL = "**/*";
+
+    private static final PathMatcher[] NO_MATCHERS = new PathMatcher[0];
+
+    private final PathMatcher[] includes;
+
+    private final PathMatcher[] excludes;
+
+    private FileNamePatternMatcher( PathMatcher[] includes, PathMatcher[] excludes )
+    {
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    static FileNamePatternMatcher compile( FileSystem fileSystem, List<String> includePatterns,
+                                           List<String> excludePatterns )
+    {
+        List<String> includes = new ArrayList<>( includePatterns.size() );
+        for ( String pattern : includePatterns )
+        {
+            // Every path of the walk is absolute, so it always contains a separator
+            if ( !MATCH_ALL.equals( pattern ) && !"**".equals( pattern ) )
+            {
+                includes.add( pattern );
+            }
+        }
+        return new FileNamePatternMatcher( toMatchers( fileSystem, includes, false ),
+                                           toMatchers( fileSystem, excludePatterns, true ) );
+    }
+
+    private static PathMatcher[] toMatchers( FileSystem fileSystem, List<String> patterns, boolean combine )
+    {
+        if ( patterns.isEmpty() )
+        {
+            return NO_MATCHERS;
+        }
+        if ( combine && patterns.size() > 1 && canCombine( patterns ) )
+        {
+            return new PathMatcher[]{
+                fileSystem.getPathMatcher( "glob:{" + StringUtils.join( patterns, ',' ) + "}" ) };
+        }
+        PathMatcher[] matchers = new PathMatcher[patterns.size()];
+        for ( int i = 0; i < matchers.length; i++ )
+        {
+            matchers[i] = fileSystem.getPathMatcher( "glob:" + patterns.get( i ) );
+        }
+        return matchers;
+    }
+
+    /**
+     * Glob groups cannot be nested and use ',' as delimiter.
+     */
+    private static boolean canCombine( List<String> patterns )
+    {
+        for ( String pattern : patterns )
+        {
+            if ( StringUtils.containsAny( pattern, "{},\\" ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean matches( Path path )
+    {
+        for ( PathMatcher exclude : excludes )
+        {
+            if ( exclude.matches( path ) )
+            {
+                return false;
+            }
+        }
+        for ( PathMatcher include : includes )
+        {
+            if ( !include.matches( path ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
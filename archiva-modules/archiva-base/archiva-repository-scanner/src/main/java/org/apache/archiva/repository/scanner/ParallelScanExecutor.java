@@ -0,0 +1,169 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.common.utils.ScanFile;
+import org.apache.archiva.consumers.RepositoryContentConsumer;
+import org.apache.archiva.repository.scanner.functors.ConsumerProcessFileClosure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dispatches the files found by the repository walk to the consumers on a bounded pool of worker threads.
+ * <p>
+ * Consumers that declare themselves as thread safe are called from any of the worker threads. All other
+ * consumers are fed through a single serialized lane, so they see the files one after another in the
+ * order they were found by the walk.
+ * </p>
+ * <p>
+ * The queues of both pools are bounded. If a queue is full, the walking thread blocks until a worker
+ * is ready, so the walk cannot run ahead of the consumers and fill the heap with pending files.
+ * </p>
+ */
+class ParallelScanExecutor
+{
+    private static final Logger log = LoggerFactory.getLogger( ParallelScanExecutor.class );
+
+    /**
+     * Number of pending files per worker thread, before the walk blocks.
+     */
+    private static final int QUEUE_SIZE_PER_THREAD = 64;
+
+    private static final RejectedExecutionHandler BLOCK_WHEN_FULL = ( task, executor ) -> {
+        if ( executor.isShutdown( ) )
+        {
+            throw new RejectedExecutionException( "Scan executor has been shut down" );
+        }
+        try
+        {
+            executor.getQueue( ).put( task );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            throw new RejectedExecutionException( "Interrupted while waiting for a free scan worker", e );
+        }
+    };
+
+    private final ThreadPoolExecutor workers;
+
+    private final ThreadPoolExecutor serialLane;
+
+    private final ConsumerProcessFileClosure consumerProcessFile;
+
+    ParallelScanExecutor( String repositoryId, int threads, ConsumerProcessFileClosure consumerProcessFile )
+    {
+        this.consumerProcessFile = consumerProcessFile;
+        this.workers = new ThreadPoolExecutor( threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                               new ArrayBlockingQueue<>( threads * QUEUE_SIZE_PER_THREAD ),
+                                               new ScanThreadFactory( "archiva-scan-" + repositoryId ),
+                                               BLOCK_WHEN_FULL );
+        this.serialLane = new ThreadPoolExecutor( 1, 1, 0L, TimeUnit.MILLISECONDS,
+                                                  new ArrayBlockingQueue<>( threads * QUEUE_SIZE_PER_THREAD ),
+                                                  new ScanThreadFactory( "archiva-scan-" + repositoryId + "-serial" ),
+                                                  BLOCK_WHEN_FULL );
+    }
+
+    /**
+     * Queues the file for the given consumers. The caller must not modify the lists after this call.
+     *
+     * @param file the file to process
+     * @param concurrentConsumers the thread safe consumers, that may process the file on any worker
+     * @param serialConsumers the consumers, that must be called from the serialized lane
+     */
+    void submit( ScanFile file, List<? extends RepositoryContentConsumer> concurrentConsumers,
+                 List<? extends RepositoryContentConsumer> serialConsumers )
+    {
+        if ( !concurrentConsumers.isEmpty( ) )
+        {
+            workers.execute( ( ) -> process( file, concurrentConsumers ) );
+        }
+        if ( !serialConsumers.isEmpty( ) )
+        {
+            serialLane.execute( ( ) -> process( file, serialConsumers ) );
+        }
+    }
+
+    private void process( ScanFile file, List<? extends RepositoryContentConsumer> consumers )
+    {
+        for ( RepositoryContentConsumer consumer : consumers )
+        {
+            consumerProcessFile.process( consumer, file );
+        }
+    }
+
+    /**
+     * Waits until all queued files are processed and stops the worker threads.
+     * No more files can be submitted after this call.
+     */
+    void awaitCompletion( )
+    {
+        workers.shutdown( );
+        serialLane.shutdown( );
+        try
+        {
+            while ( !workers.awaitTermination( 10, TimeUnit.SECONDS ) )
+            {
+                log.debug( "Waiting for {} queued files of the scan", workers.getQueue( ).size( ) );
+            }
+            while ( !serialLane.awaitTermination( 10, TimeUnit.SECONDS ) )
+            {
+                log.debug( "Waiting for {} queued files of the serial scan lane", serialLane.getQueue( ).size( ) );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            log.warn( "Interrupted while waiting for the scan workers, stopping the remaining tasks" );
+            workers.shutdownNow( );
+            serialLane.shutdownNow( );
+            Thread.currentThread( ).interrupt( );
+        }
+    }
+
+    private static class ScanThreadFactory
+        implements ThreadFactory
+    {
+        private final AtomicInteger counter = new AtomicInteger( );
+
+        private final String prefix;
+
+        ScanThreadFactory( String prefix )
+        {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread( Runnable r )
+        {
+            Thread thread = new Thread( r, prefix + "-" + counter.incrementAndGet( ) );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
+}
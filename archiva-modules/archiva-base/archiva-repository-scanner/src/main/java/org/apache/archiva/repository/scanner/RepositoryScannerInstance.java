@@ -19,8 +19,8 @@
  * under the License.
  */
 
-import org.apache.archiva.common.utils.BaseFile;
-import org.apache.archiva.common.utils.PathUtil;
+import org.apache.archiva.common.FileTypeUtils;
+import org.apache.archiva.common.utils.ScanFile;
 import org.apache.archiva.consumers.InvalidRepositoryContentConsumer;
 import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
 import org.apache.archiva.consumers.RepositoryContentConsumer;
@@ -30,28 +30,28 @@
 import org.apache.archiva.repository.scanner.functors.TriggerBeginScanClosure;
 import org.apache.archiva.repository.scanner.functors.TriggerScanCompletedClosure;
 import org.apache.commons.collections4.Closure;
-import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.IterableUtils;
-import org.apache.commons.collections4.functors.IfClosure;
 import org.apache.commons.lang.SystemUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.Deque;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * RepositoryScannerInstance
@@ -89,13 +89,43 @@
     private List<String> fileNameIncludePattern = new ArrayList<>();
     private List<String> fileNameExcludePattern = new ArrayList<>();
 
-    private List<PathMatcher> includeMatcher = new ArrayList<>();
-    private List<PathMatcher> excludeMatcher = new ArrayList<>();
+    /**
+     * Include and exclude patterns compiled at the start of the walk.
+     */
+    private PathMatcher fileNameMatcher;
 
     private boolean isRunning = false;
 
+    private int scanThreads = 1;
+
+    private ParallelScanExecutor parallelExecutor;
+
     Path basePath = null;
 
+    /**
+     * Length of the base path prefix including the trailing separator, used to cut off the relative path.
+     */
+    private int relativePathOffset;
+
+    /**
+     * The view that is reused for every file of a single threaded scan.
+     */
+    private final ScanFile scanFile = new ScanFile();
+
+    /**
+     * Journal of the last scan, used to skip unchanged directories. <code>null</code>, if nothing is skipped.
+     */
+    private ScanJournal previousJournal;
+
+    /**
+     * Journal recorded by this walk. <code>null</code>, if no journal is written.
+     */
+    private ScanJournal journal;
+
+    private boolean journalComplete = true;
+
+    private final Deque<DirectoryRecord> directoryStack = new ArrayDeque<>();
+
     public RepositoryScannerInstance( ManagedRepository repository,
                                       List<KnownRepositoryContentConsumer> knownConsumerList,
                                       List<InvalidRepositoryContentConsumer> invalidConsumerList )
@@ -106,8 +136,8 @@ public RepositoryScannerInstance( ManagedRepository repository,
 
         addFileNameIncludePattern("**/*");
 
-        consumerTimings = new HashMap<>();
-        consumerCounts = new HashMap<>();
+        consumerTimings = new ConcurrentHashMap<>();
+        consumerCounts = new ConcurrentHashMap<>();
 
         this.consumerProcessFile = new ConsumerProcessFileClosure();
         consumerProcessFile.setExecuteOnEntireRepo( true );
@@ -173,21 +203,57 @@ public long getChangesSince()
         return changesSince;
     }
 
+    public int getScanThreads()
+    {
+        return scanThreads;
+    }
+
+    /**
+     * Sets the number of threads that process the found files. With more than one thread, the
+     * files are dispatched to the consumers by a worker pool, while the walk continues.
+     * Must be set before the walk is started.
+     *
+     * @param scanThreads the number of worker threads
+     */
+    public void setScanThreads( int scanThreads )
+    {
+        this.scanThreads = scanThreads < 1 ? 1 : scanThreads;
+    }
+
+    /**
+     * Enables the scan journal for this walk.
+     *
+     * @param previousJournal the journal of the last completed scan. Directories that did not change since
+     *                        are not listed. May be <code>null</code> to walk all directories.
+     * @param journal         the journal that records the directories of this walk
+     */
+    void setScanJournal( ScanJournal previousJournal, ScanJournal journal )
+    {
+        this.previousJournal = previousJournal;
+        this.journal = journal;
+    }
+
+    /**
+     * Returns true, if the journal recorded all directories of the repository.
+     */
+    boolean isJournalComplete()
+    {
+        return journal != null && journalComplete && directoryStack.isEmpty();
+    }
+
     public List<String> getFileNameIncludePattern() {
         return fileNameIncludePattern;
     }
 
     public void setFileNameIncludePattern(List<String> fileNamePattern) {
         this.fileNameIncludePattern = fileNamePattern;
-        FileSystem sys = FileSystems.getDefault();
-        this.includeMatcher = fileNamePattern.stream().map(ts ->sys
-                .getPathMatcher("glob:" + ts)).collect(Collectors.toList());
+        this.fileNameMatcher = null;
     }
 
     public void addFileNameIncludePattern(String fileNamePattern) {
         if (! this.fileNameIncludePattern.contains(fileNamePattern)) {
             this.fileNameIncludePattern.add(fileNamePattern);
-            this.includeMatcher.add(FileSystems.getDefault().getPathMatcher("glob:" + fileNamePattern));
+            this.fileNameMatcher = null;
         }
     }
 
@@ -197,16 +263,24 @@ public List<String> getFileNameExcludePattern() {
 
     public void setFileNameExcludePattern(List<String> fileNamePattern) {
         this.fileNameExcludePattern = fileNamePattern;
-        FileSystem sys = FileSystems.getDefault();
-        this.excludeMatcher = fileNamePattern.stream().map(ts ->sys
-                .getPathMatcher("glob:" + ts)).collect(Collectors.toList());
+        this.fileNameMatcher = null;
     }
 
     public void addFileNameExcludePattern(String fileNamePattern) {
         if (! this.fileNameExcludePattern.contains(fileNamePattern)) {
             this.fileNameExcludePattern.add(fileNamePattern);
-            this.excludeMatcher.add(FileSystems.getDefault().getPathMatcher("glob:" + fileNamePattern));
+            this.fileNameMatcher = null;
+        }
+    }
+
+    private PathMatcher getFileNameMatcher( FileSystem fileSystem )
+    {
+        if ( fileNameMatcher == null )
+        {
+            fileNameMatcher =
+                FileNamePatternMatcher.compile( fileSystem, fileNameIncludePattern, fileNameExcludePattern );
         }
+        return fileNameMatcher;
     }
 
 
@@ -215,48 +289,188 @@ public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) th
         if (!isRunning) {
             isRunning = true;
             this.basePath = dir;
+            String base = dir.toString();
+            String separator = dir.getFileSystem().getSeparator();
+            this.relativePathOffset = base.endsWith( separator ) ? base.length() : base.length() + separator.length();
+            getFileNameMatcher( dir.getFileSystem() );
             log.info( "Walk Started: [{}] {}", this.repository.getId(), this.repository.getLocation() );
+            if ( scanThreads > 1 )
+            {
+                log.info( "Processing files of [{}] with {} threads", this.repository.getId(), scanThreads );
+                parallelExecutor = new ParallelScanExecutor( this.repository.getId(), scanThreads, consumerProcessFile );
+            }
             stats.triggerStart();
         }
+        String relativePath = dir.equals( basePath ) ? "" : dir.toString().substring( relativePathOffset );
+        if ( FileTypeUtils.DATA_DIRECTORY.equals( relativePath ) || FileTypeUtils.STAGING_DIRECTORY.equals(
+            relativePath ) )
+        {
+            return FileVisitResult.SKIP_SUBTREE;
+        }
+        if ( journal == null )
+        {
+            return FileVisitResult.CONTINUE;
+        }
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        if ( previousJournal != null && !relativePath.isEmpty() )
+        {
+            ScanJournal.DirectoryEntry entry = previousJournal.get( relativePath );
+            if ( entry != null && entry.getLastModified() == lastModified )
+            {
+                skipDirectory( dir, relativePath, entry );
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+        }
+        directoryStack.push( new DirectoryRecord( dir, relativePath, lastModified ) );
         return FileVisitResult.CONTINUE;
     }
 
+    /**
+     * The entries of the directory did not change since the last scan, so the directory is not listed.
+     * Only the recorded files, whose size or modification time changed, are visited. The recorded sub
+     * directories are walked, because their content may have changed.
+     */
+    private void skipDirectory( Path dir, String relativePath, ScanJournal.DirectoryEntry entry )
+        throws IOException
+    {
+        log.debug( "Skipping unchanged directory {}", dir );
+        directoryStack.push( new DirectoryRecord( dir, relativePath, entry.getLastModified() ) );
+        for ( ScanJournal.FileEntry fileEntry : entry.getFiles() )
+        {
+            Path file = dir.resolve( fileEntry.getName() );
+            BasicFileAttributes attrs;
+            try
+            {
+                attrs = Files.readAttributes( file, BasicFileAttributes.class );
+            }
+            catch ( IOException e )
+            {
+                // should not happen without a change of the directory time, but the journal must not lie
+                journalComplete = false;
+                continue;
+            }
+            if ( fileEntry.matches( attrs ) )
+            {
+                stats.increaseFileCount();
+                directoryStack.peek().entry.addFile( fileEntry.getName(), attrs.size(),
+                                                     attrs.lastModifiedTime().toMillis() );
+            }
+            else
+            {
+                visitFile( file, attrs );
+            }
+        }
+        for ( String name : entry.getSubdirectories() )
+        {
+            Path subdirectory = dir.resolve( name );
+            if ( Files.isDirectory( subdirectory ) )
+            {
+                Files.walkFileTree( subdirectory, EnumSet.of( FileVisitOption.FOLLOW_LINKS ), Integer.MAX_VALUE,
+                                    this );
+            }
+            else
+            {
+                // should not happen without a change of the directory time, but the journal must not lie
+                journalComplete = false;
+            }
+        }
+        recordDirectory( dir, null );
+    }
+
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-        if (excludeMatcher.stream().noneMatch(m -> m.matches(file)) && includeMatcher.stream().allMatch(m -> m.matches(file))) {
-            log.debug( "Walk Step: {}, {}", file );
+        if ( fileNameMatcher.matches( file ) ) {
+            log.debug( "Walk Step: {}", file );
 
             stats.increaseFileCount();
-
             // consume files regardless - the predicate will check the timestamp
-            Path repoPath = PathUtil.getPathFromUri( repository.getLocation() );
-            BaseFile basefile = new BaseFile( repoPath.toString(), file.toFile() );
+            // The walk started at the repository root, so the relative path is the suffix of the file path
+            long lastModified = attrs.lastModifiedTime().toMillis();
+            if ( journal != null && !directoryStack.isEmpty() )
+            {
+                directoryStack.peek().entry.addFile( file.getFileName().toString(), attrs.size(), lastModified );
+            }
+            scanFile.set( file, file.toString().substring( relativePathOffset ), lastModified );
 
             // Timestamp finished points to the last successful scan, not this current one.
-            if ( Files.getLastModifiedTime(file).toMillis() >= changesSince )
+            if ( lastModified >= changesSince )
             {
                 stats.increaseNewFileCount();
             }
 
-            consumerProcessFile.setBasefile( basefile );
-            consumerWantsFile.setBasefile( basefile );
+            consumerWantsFile.setScanFile( scanFile );
+
+            if ( parallelExecutor != null )
+            {
+                dispatch( scanFile.copy() );
+                return FileVisitResult.CONTINUE;
+            }
 
-            Closure<RepositoryContentConsumer> processIfWanted = IfClosure.ifClosure( consumerWantsFile, consumerProcessFile );
-            IterableUtils.forEach( this.knownConsumers, processIfWanted );
+            consumerProcessFile.setScanFile( scanFile );
+
+            for ( KnownRepositoryContentConsumer consumer : knownConsumers )
+            {
+                if ( consumerWantsFile.evaluate( consumer ) )
+                {
+                    consumerProcessFile.execute( consumer );
+                }
+            }
 
             if ( consumerWantsFile.getWantedFileCount() <= 0 )
             {
                 // Nothing known processed this file.  It is invalid!
-                IterableUtils.forEach( this.invalidConsumers, consumerProcessFile );
+                for ( InvalidRepositoryContentConsumer consumer : invalidConsumers )
+                {
+                    consumerProcessFile.execute( consumer );
+                }
             }
 
         }
         return FileVisitResult.CONTINUE;
     }
 
+    /**
+     * Selects the consumers for the given file on the walking thread and hands the file
+     * over to the worker pool.
+     */
+    private void dispatch( ScanFile file )
+    {
+        List<RepositoryContentConsumer> concurrentConsumers = new ArrayList<>();
+        List<RepositoryContentConsumer> serialConsumers = new ArrayList<>();
+        for ( KnownRepositoryContentConsumer consumer : knownConsumers )
+        {
+            if ( consumerWantsFile.evaluate( consumer ) )
+            {
+                ( consumer.isThreadSafe() ? concurrentConsumers : serialConsumers ).add( consumer );
+            }
+        }
+        if ( consumerWantsFile.getWantedFileCount() <= 0 )
+        {
+            // Nothing known processed this file.  It is invalid!
+            for ( InvalidRepositoryContentConsumer consumer : invalidConsumers )
+            {
+                ( consumer.isThreadSafe() ? concurrentConsumers : serialConsumers ).add( consumer );
+            }
+        }
+        parallelExecutor.submit( file, concurrentConsumers, serialConsumers );
+    }
+
+    /**
+     * Waits for the pending files of a parallel scan and stops the worker threads.
+     */
+    void releaseWorkers()
+    {
+        if ( parallelExecutor != null )
+        {
+            parallelExecutor.awaitCompletion();
+            parallelExecutor = null;
+        }
+    }
+
     @Override
     public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
         log.error("Error occured at {}: {}", file, exc.getMessage(), exc);
+        journalComplete = false;
         if (basePath!=null && Files.isSameFile(file, basePath)) {
             finishWalk();
         }
@@ -265,14 +479,47 @@ public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOExce
 
     @Override
     public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-        if (Files.isSameFile(dir, basePath)) {
+        if ( journal != null )
+        {
+            recordDirectory( dir, exc );
+        }
+        // the walk passes the start path itself, no need to stat every directory
+        if (dir.equals(basePath)) {
             finishWalk();
         }
         return FileVisitResult.CONTINUE;
     }
 
+    private void recordDirectory( Path dir, IOException exc )
+    {
+        if ( directoryStack.isEmpty() || !directoryStack.peek().path.equals( dir ) )
+        {
+            return;
+        }
+        DirectoryRecord record = directoryStack.pop();
+        if ( exc != null )
+        {
+            journalComplete = false;
+            return;
+        }
+        journal.put( record.relativePath, record.entry );
+        addToParent( dir );
+    }
+
+    private void addToParent( Path dir )
+    {
+        // The parent is not on the stack, if it was skipped. Its journal entry lists this directory already.
+        DirectoryRecord parent = directoryStack.peek();
+        if ( parent != null && parent.path.equals( dir.getParent() ) )
+        {
+            parent.entry.addSubdirectory( dir.getFileName().toString() );
+        }
+    }
+
     private void finishWalk() {
         this.isRunning = false;
+        // all files must be processed, before the consumers get the completion event
+        releaseWorkers();
         TriggerScanCompletedClosure scanCompletedClosure = new TriggerScanCompletedClosure( repository, true );
         IterableUtils.forEach( knownConsumers, scanCompletedClosure );
         IterableUtils.forEach( invalidConsumers, scanCompletedClosure );
@@ -284,4 +531,20 @@ private void finishWalk() {
         stats.triggerFinished();
         this.basePath = null;
     }
+
+    private static class DirectoryRecord
+    {
+        final Path path;
+
+        final String relativePath;
+
+        final ScanJournal.DirectoryEntry entry;
+
+        DirectoryRecord( Path path, String relativePath, long lastModified )
+        {
+            this.path = path;
+            this.relativePath = relativePath;
+            this.entry = new ScanJournal.DirectoryEntry( lastModified );
+        }
+    }
 }
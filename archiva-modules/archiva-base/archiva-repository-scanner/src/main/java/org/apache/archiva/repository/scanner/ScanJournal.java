@@ -0,0 +1,251 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.common.FileTypeUtils;
+import org.apache.archiva.repository.ManagedRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The journal of the last completed scan of a managed repository.
+ * <p>
+ * For each directory the journal stores the modification time, the size and modification time of the
+ * scanned files and the names of the sub directories. The modification time of a directory changes, if entries
+ * are added, removed or renamed, so an incremental scan can skip listing a directory with an unchanged
+ * modification time and descend directly into the recorded sub directories. The recorded files of such a
+ * directory are only checked for a changed size or modification time, so files that are modified in place
+ * are still found.
+ * </p>
+ * <p>
+ * The journal is stored in the Archiva data directory of the repository, next to the file metadata store.
+ * </p>
+ */
+class ScanJournal
+{
+    private static final Logger log = LoggerFactory.getLogger( ScanJournal.class );
+
+    private static final String FILE_NAME = "journal.dat";
+
+    private static final int MAGIC = 0x41534A32;
+
+    private final Map<String, DirectoryEntry> entries;
+
+    ScanJournal( )
+    {
+        this.entries = new HashMap<>( );
+    }
+
+    private ScanJournal( Map<String, DirectoryEntry> entries )
+    {
+        this.entries = entries;
+    }
+
+    static Path getJournalFile( ManagedRepository repository )
+    {
+        return repository.getLocalPath( ).resolve( FileTypeUtils.DATA_DIRECTORY ).resolve(
+            FileTypeUtils.SCAN_DIRECTORY ).resolve( FILE_NAME );
+    }
+
+    /**
+     * Loads the journal from the given file.
+     *
+     * @param file the journal file
+     * @return the journal or <code>null</code>, if the file does not exist or cannot be read
+     */
+    static ScanJournal load( Path file )
+    {
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream( Files.newInputStream( file ) ) ) )
+        {
+            if ( in.readInt( ) != MAGIC )
+            {
+                log.warn( "Ignoring scan journal {} with unknown format", file );
+                return null;
+            }
+            int count = in.readInt( );
+            Map<String, DirectoryEntry> entries = new HashMap<>( count * 4 / 3 + 1 );
+            for ( int i = 0; i < count; i++ )
+            {
+                String path = in.readUTF( );
+                DirectoryEntry entry = new DirectoryEntry( in.readLong( ) );
+                int files = in.readInt( );
+                for ( int j = 0; j < files; j++ )
+                {
+                    entry.addFile( in.readUTF( ), in.readLong( ), in.readLong( ) );
+                }
+                int subdirectories = in.readInt( );
+                for ( int j = 0; j < subdirectories; j++ )
+                {
+                    entry.subdirectories.add( in.readUTF( ) );
+                }
+                entries.put( path, entry );
+            }
+            return new ScanJournal( entries );
+        }
+        catch ( NoSuchFileException e )
+        {
+            return null;
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not read scan journal {}: {}", file, e.getMessage( ) );
+            return null;
+        }
+    }
+
+    /**
+     * Writes the journal to a temporary file and moves it to the given location.
+     */
+    void save( Path file )
+        throws IOException
+    {
+        Files.createDirectories( file.getParent( ) );
+        Path tmpFile = file.resolveSibling( FILE_NAME + ".tmp" );
+        try ( DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream( Files.newOutputStream( tmpFile ) ) ) )
+        {
+            out.writeInt( MAGIC );
+            out.writeInt( entries.size( ) );
+            for ( Map.Entry<String, DirectoryEntry> e : entries.entrySet( ) )
+            {
+                DirectoryEntry entry = e.getValue( );
+                out.writeUTF( e.getKey( ) );
+                out.writeLong( entry.lastModified );
+                out.writeInt( entry.files.size( ) );
+                for ( FileEntry file : entry.files )
+                {
+                    out.writeUTF( file.name );
+                    out.writeLong( file.size );
+                    out.writeLong( file.lastModified );
+                }
+                out.writeInt( entry.subdirectories.size( ) );
+                for ( String name : entry.subdirectories )
+                {
+                    out.writeUTF( name );
+                }
+            }
+        }
+        Files.move( tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+
+    DirectoryEntry get( String relativePath )
+    {
+        return entries.get( relativePath );
+    }
+
+    void put( String relativePath, DirectoryEntry entry )
+    {
+        entries.put( relativePath, entry );
+    }
+
+    int size( )
+    {
+        return entries.size( );
+    }
+
+    /**
+     * The recorded state of a single directory.
+     */
+    static class DirectoryEntry
+    {
+        private final long lastModified;
+
+        private final List<FileEntry> files = new ArrayList<>( );
+
+        private final List<String> subdirectories = new ArrayList<>( );
+
+        DirectoryEntry( long lastModified )
+        {
+            this.lastModified = lastModified;
+        }
+
+        long getLastModified( )
+        {
+            return lastModified;
+        }
+
+        List<FileEntry> getFiles( )
+        {
+            return files;
+        }
+
+        void addFile( String name, long size, long lastModified )
+        {
+            files.add( new FileEntry( name, size, lastModified ) );
+        }
+
+        List<String> getSubdirectories( )
+        {
+            return subdirectories;
+        }
+
+        void addSubdirectory( String name )
+        {
+            subdirectories.add( name );
+        }
+    }
+
+    /**
+     * The recorded state of a scanned file.
+     */
+    static class FileEntry
+    {
+        private final String name;
+
+        private final long size;
+
+        private final long lastModified;
+
+        FileEntry( String name, long size, long lastModified )
+        {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        String getName( )
+        {
+            return name;
+        }
+
+        /**
+         * Returns true, if the file has still the recorded size and modification time.
+         */
+        boolean matches( BasicFileAttributes attrs )
+        {
+            return attrs.size( ) == size && attrs.lastModifiedTime( ).toMillis( ) == lastModified;
+        }
+    }
+}
@@ -20,6 +20,7 @@
  */
 
 import org.apache.archiva.common.utils.BaseFile;
+import org.apache.archiva.common.utils.ScanFile;
 import org.apache.archiva.consumers.RepositoryContentConsumer;
 import org.apache.commons.collections4.Closure;
 import org.slf4j.Logger;
@@ -37,6 +38,8 @@
 
     private BaseFile basefile;
 
+    private ScanFile scanFile;
+
     private boolean executeOnEntireRepo;
 
     private Map<String, Long> consumerTimings;
@@ -46,27 +49,35 @@
     @Override
     public void execute( RepositoryContentConsumer input )
     {
-        RepositoryContentConsumer consumer = (RepositoryContentConsumer) input;
+        process( input, scanFile );
+    }
 
+    /**
+     * Sends the given file to the consumer. This method does not use the file set on this closure,
+     * so it may be called concurrently, if the timing and count maps are thread safe.
+     *
+     * @param consumer the consumer that should process the file
+     * @param file the file to process
+     */
+    public void process( RepositoryContentConsumer consumer, ScanFile file )
+    {
         String id = consumer.getId( );
         try
         {
             log.debug( "Sending to consumer: {}", id );
 
             long startTime = System.currentTimeMillis( );
-            consumer.processFile( basefile.getRelativePath( ), executeOnEntireRepo );
+            consumer.processFile( file.getRelativePath( ), executeOnEntireRepo );
             long endTime = System.currentTimeMillis( );
 
             if ( consumerTimings != null )
             {
-                Long value = consumerTimings.get( id );
-                consumerTimings.put( id, ( value != null ? value : 0 ) + endTime - startTime );
+                consumerTimings.merge( id, endTime - startTime, Long::sum );
             }
 
             if ( consumerCounts != null )
             {
-                Long value = consumerCounts.get( id );
-                consumerCounts.put( id, ( value != null ? value : 0 ) + 1 );
+                consumerCounts.merge( id, 1L, Long::sum );
             }
         }
         catch ( Exception e )
@@ -75,7 +86,7 @@ public void execute( RepositoryContentConsumer input )
              * So that the discoverer processing can continue.
              */
             log.error( "Consumer [{}] had an error when processing file ["
-                + "{}]: {}", id, basefile.getAbsolutePath( ), e.getMessage( ), e );
+                + "{}]: {}", id, file.getPath( ), e.getMessage( ), e );
         }
 
     }
@@ -88,6 +99,24 @@ public BaseFile getBasefile( )
     public void setBasefile( BaseFile basefile )
     {
         this.basefile = basefile;
+        this.scanFile = new ScanFile( basefile.toPath( ), basefile.getRelativePath( ), basefile.lastModified( ) );
+    }
+
+    public ScanFile getScanFile( )
+    {
+        return scanFile;
+    }
+
+    /**
+     * Sets the file that is sent to the consumers by {@link #execute(RepositoryContentConsumer)}.
+     * The view is not copied, so it may be reused for the next file, once all consumers are done.
+     *
+     * @param scanFile the file to process
+     */
+    public void setScanFile( ScanFile scanFile )
+    {
+        this.basefile = null;
+        this.scanFile = scanFile;
     }
 
     public boolean isExecuteOnEntireRepo( )
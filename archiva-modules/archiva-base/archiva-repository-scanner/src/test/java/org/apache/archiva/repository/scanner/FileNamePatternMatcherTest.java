@@ -0,0 +1,82 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Test;
+
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * FileNamePatternMatcherTest
+ */
+public class FileNamePatternMatcherTest
+{
+    private final FileSystem fs = FileSystems.getDefault();
+
+    private final Path base = Paths.get( "/repo" ).toAbsolutePath();
+
+    @Test
+    public void testMatchAllInclude()
+    {
+        FileNamePatternMatcher matcher =
+            FileNamePatternMatcher.compile( fs, Collections.singletonList( "**/*" ), Collections.emptyList() );
+        assertTrue( matcher.matches( base.resolve( "org/apache/test/1.0/test-1.0.jar" ) ) );
+    }
+
+    @Test
+    public void testCombinedExcludes()
+    {
+        FileNamePatternMatcher matcher = FileNamePatternMatcher.compile( fs, Collections.singletonList( "**/*" ),
+                                                                         Arrays.asList( "**/.svn/**", "**/*.html",
+                                                                                        "**/README*" ) );
+        assertTrue( matcher.matches( base.resolve( "org/apache/test/1.0/test-1.0.jar" ) ) );
+        assertFalse( matcher.matches( base.resolve( "org/apache/test/1.0/index.html" ) ) );
+        assertFalse( matcher.matches( base.resolve( "org/.svn/entries" ) ) );
+        assertFalse( matcher.matches( base.resolve( "org/apache/README.txt" ) ) );
+    }
+
+    @Test
+    public void testExcludesWithGroups()
+    {
+        FileNamePatternMatcher matcher = FileNamePatternMatcher.compile( fs, Collections.singletonList( "**/*" ),
+                                                                         Arrays.asList( "**/*.{html,txt}",
+                                                                                        "**/KEYS*" ) );
+        assertTrue( matcher.matches( base.resolve( "org/apache/test/1.0/test-1.0.pom" ) ) );
+        assertFalse( matcher.matches( base.resolve( "org/apache/test/notes.txt" ) ) );
+        assertFalse( matcher.matches( base.resolve( "org/apache/test/KEYS" ) ) );
+    }
+
+    @Test
+    public void testAllIncludesMustMatch()
+    {
+        FileNamePatternMatcher matcher =
+            FileNamePatternMatcher.compile( fs, Arrays.asList( "**/*", "**/*.jar" ), Collections.emptyList() );
+        assertTrue( matcher.matches( base.resolve( "org/apache/test/1.0/test-1.0.jar" ) ) );
+        assertFalse( matcher.matches( base.resolve( "org/apache/test/1.0/test-1.0.pom" ) ) );
+    }
+}
@@ -28,6 +28,7 @@
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ScanConsumer 
@@ -38,7 +39,13 @@
     extends AbstractMonitoredConsumer
     implements KnownRepositoryContentConsumer
 {
-    private int processCount = 0;
+    private AtomicInteger processCount = new AtomicInteger( );
+
+    private int beginScanCount = 0;
+
+    private int completeScanCount = 0;
+
+    private boolean threadSafe = false;
 
     private List<String> includes = new ArrayList<>();
 
@@ -85,6 +92,7 @@ public void beginScan( ManagedRepository repository, Date whenGathered )
     public void beginScan( ManagedRepository repository, Date whenGathered, boolean executeOnEntireRepo )
         throws ConsumerException
     {
+        this.beginScanCount++;
         beginScan( repository, whenGathered );
     }
 
@@ -92,7 +100,7 @@ public void beginScan( ManagedRepository repository, Date whenGathered, boolean
     public void processFile( String path )
         throws ConsumerException
     {
-        this.processCount++;
+        this.processCount.incrementAndGet( );
     }
 
     @Override
@@ -111,17 +119,39 @@ public void completeScan()
     @Override
     public void completeScan( boolean executeOnEntireRepo )
     {
+       this.completeScanCount++;
        completeScan();
     }
 
     public int getProcessCount()
     {
-        return processCount;
+        return processCount.get( );
     }
 
     public void setProcessCount( int processCount )
     {
-        this.processCount = processCount;
+        this.processCount.set( processCount );
+    }
+
+    public int getBeginScanCount()
+    {
+        return beginScanCount;
+    }
+
+    public int getCompleteScanCount()
+    {
+        return completeScanCount;
+    }
+
+    @Override
+    public boolean isThreadSafe()
+    {
+        return threadSafe;
+    }
+
+    public void setThreadSafe( boolean threadSafe )
+    {
+        this.threadSafe = threadSafe;
     }
 
     @Override
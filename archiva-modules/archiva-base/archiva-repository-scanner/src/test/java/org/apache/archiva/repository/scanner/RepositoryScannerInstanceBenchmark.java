@@ -0,0 +1,223 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.common.utils.BaseFile;
+import org.apache.archiva.common.utils.PathUtil;
+import org.apache.archiva.consumers.InvalidRepositoryContentConsumer;
+import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
+import org.apache.archiva.consumers.RepositoryContentConsumer;
+import org.apache.archiva.consumers.functors.ConsumerWantsFilePredicate;
+import org.apache.archiva.repository.BasicManagedRepository;
+import org.apache.archiva.repository.ManagedRepository;
+import org.apache.archiva.repository.scanner.functors.ConsumerProcessFileClosure;
+import org.apache.commons.collections4.Closure;
+import org.apache.commons.collections4.IterableUtils;
+import org.apache.commons.collections4.functors.IfClosure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Measures the per file overhead of the repository walk, compared to the former implementation
+ * of {@link RepositoryScannerInstance#visitFile(Path, BasicFileAttributes)}.
+ * <p>
+ * The consumer does nothing, so the numbers show only the cost of the scanner itself. This is not
+ * a unit test, run it with the <code>main</code> method from the test classpath. The GC profiler
+ * reports the allocation per walk (<code>gc.alloc.rate.norm</code>).
+ * </p>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class RepositoryScannerInstanceBenchmark
+{
+    private static final List<String> IGNORES = Arrays.asList( RepositoryScanner.IGNORABLE_CONTENT );
+
+    @Param( { "10000" } )
+    public int fileCount;
+
+    private Path repoDir;
+
+    private ManagedRepository repository;
+
+    private List<KnownRepositoryContentConsumer> knownConsumers;
+
+    private List<InvalidRepositoryContentConsumer> invalidConsumers;
+
+    @Setup( Level.Trial )
+    public void createRepository( )
+        throws IOException
+    {
+        repoDir = Files.createTempDirectory( "scan-benchmark" );
+        for ( int i = 0; i < fileCount; i++ )
+        {
+            Path versionDir = repoDir.resolve( "org/apache/test/artifact" + ( i / 100 ) + "/1." + ( i % 10 ) );
+            Files.createDirectories( versionDir );
+            Files.createFile( versionDir.resolve( "artifact-" + i + ( i % 2 == 0 ? ".jar" : ".pom" ) ) );
+        }
+        BasicManagedRepository repo = new BasicManagedRepository( "benchmark", "Benchmark", repoDir.getParent( ) );
+        repo.setLocation( repoDir.toUri( ) );
+        repository = repo;
+
+        KnownScanConsumer consumer = new KnownScanConsumer( );
+        consumer.setIncludes( new String[]{ "**/*.jar", "**/*.pom" } );
+        knownConsumers = Collections.singletonList( consumer );
+        invalidConsumers = Collections.emptyList( );
+    }
+
+    @TearDown( Level.Trial )
+    public void deleteRepository( )
+        throws IOException
+    {
+        org.apache.archiva.common.utils.FileUtils.deleteDirectory( repoDir );
+    }
+
+    @Benchmark
+    public long scannerInstance( )
+        throws IOException
+    {
+        RepositoryScannerInstance instance =
+            new RepositoryScannerInstance( repository, knownConsumers, invalidConsumers, 0 );
+        instance.setFileNameIncludePattern( new ArrayList<>( Collections.singletonList( "**/*" ) ) );
+        instance.setFileNameExcludePattern( IGNORES );
+        Files.walkFileTree( repoDir, EnumSet.of( FileVisitOption.FOLLOW_LINKS ), Integer.MAX_VALUE, instance );
+        return instance.getStatistics( ).getTotalFileCount( );
+    }
+
+    @Benchmark
+    public long formerVisitor( )
+        throws IOException
+    {
+        FormerVisitor visitor = new FormerVisitor( repository, knownConsumers, invalidConsumers );
+        Files.walkFileTree( repoDir, EnumSet.of( FileVisitOption.FOLLOW_LINKS ), Integer.MAX_VALUE, visitor );
+        return visitor.fileCount;
+    }
+
+    /**
+     * The per file processing as it was done before the scan pipeline was restructured.
+     */
+    private static class FormerVisitor
+        extends SimpleFileVisitor<Path>
+    {
+        private final ManagedRepository repository;
+
+        private final List<KnownRepositoryContentConsumer> knownConsumers;
+
+        private final List<InvalidRepositoryContentConsumer> invalidConsumers;
+
+        private final List<PathMatcher> includeMatcher;
+
+        private final List<PathMatcher> excludeMatcher;
+
+        private final ConsumerProcessFileClosure consumerProcessFile = new ConsumerProcessFileClosure( );
+
+        private final ConsumerWantsFilePredicate consumerWantsFile;
+
+        private long fileCount = 0;
+
+        private long newFileCount = 0;
+
+        FormerVisitor( ManagedRepository repository, List<KnownRepositoryContentConsumer> knownConsumers,
+                       List<InvalidRepositoryContentConsumer> invalidConsumers )
+        {
+            this.repository = repository;
+            this.knownConsumers = knownConsumers;
+            this.invalidConsumers = invalidConsumers;
+            this.includeMatcher = Collections.singletonList( FileSystems.getDefault( ).getPathMatcher( "glob:**/*" ) );
+            this.excludeMatcher = IGNORES.stream( ).map(
+                p -> FileSystems.getDefault( ).getPathMatcher( "glob:" + p ) ).collect( Collectors.toList( ) );
+            this.consumerWantsFile = new ConsumerWantsFilePredicate( repository );
+            consumerProcessFile.setExecuteOnEntireRepo( true );
+        }
+
+        @Override
+        public FileVisitResult visitFile( Path file, BasicFileAttributes attrs )
+            throws IOException
+        {
+            if ( excludeMatcher.stream( ).noneMatch( m -> m.matches( file ) ) && includeMatcher.stream( ).allMatch(
+                m -> m.matches( file ) ) )
+            {
+                fileCount++;
+                Path repoPath = PathUtil.getPathFromUri( repository.getLocation( ) );
+                BaseFile basefile = new BaseFile( repoPath.toString( ), file.toFile( ) );
+                if ( Files.getLastModifiedTime( file ).toMillis( ) >= 0 )
+                {
+                    newFileCount++;
+                }
+                consumerProcessFile.setBasefile( basefile );
+                consumerWantsFile.setBasefile( basefile );
+                Closure<RepositoryContentConsumer> processIfWanted =
+                    IfClosure.ifClosure( consumerWantsFile, consumerProcessFile );
+                IterableUtils.forEach( knownConsumers, processIfWanted );
+                if ( consumerWantsFile.getWantedFileCount( ) <= 0 )
+                {
+                    IterableUtils.forEach( invalidConsumers, consumerProcessFile );
+                }
+            }
+            return FileVisitResult.CONTINUE;
+        }
+    }
+
+    public static void main( String[] args )
+        throws RunnerException
+    {
+        Options options = new OptionsBuilder( )
+            .include( RepositoryScannerInstanceBenchmark.class.getSimpleName( ) )
+            .addProfiler( GCProfiler.class )
+            .build( );
+        new Runner( options ).run( );
+    }
+}
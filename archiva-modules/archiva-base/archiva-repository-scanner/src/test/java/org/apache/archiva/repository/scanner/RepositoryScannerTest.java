@@ -27,6 +27,7 @@
 import org.apache.archiva.repository.EditableManagedRepository;
 import org.apache.archiva.repository.EditableRemoteRepository;
 import org.apache.archiva.repository.ManagedRepository;
+import org.apache.archiva.repository.features.ScanningFeature;
 import org.apache.archiva.test.utils.ArchivaSpringJUnit4ClassRunner;
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
@@ -204,6 +205,54 @@ public void testTimestampRepositoryScannerFreshScan()
         assertEquals( "Processed Count (of invalid items)", 1, badconsumer.getProcessCount() );
     }
 
+    @Test
+    public void testIncrementalScanSkipsUnchangedDirectories()
+        throws Exception
+    {
+        ManagedRepository repository = createSimpleRepository();
+        repository.getFeature( ScanningFeature.class ).get().setScanJournal( true );
+        Path repoDir = repository.getLocalPath();
+
+        List<KnownRepositoryContentConsumer> knownConsumers = new ArrayList<>();
+        KnownScanConsumer consumer = new KnownScanConsumer();
+        consumer.setIncludes( ARTIFACT_PATTERNS );
+        knownConsumers.add( consumer );
+
+        List<InvalidRepositoryContentConsumer> invalidConsumers = new ArrayList<>();
+        InvalidScanConsumer badconsumer = new InvalidScanConsumer();
+        invalidConsumers.add( badconsumer );
+
+        RepositoryScanner scanner = lookupRepositoryScanner();
+        RepositoryScanStatistics stats =
+            scanner.scan( repository, knownConsumers, invalidConsumers, getIgnoreList(), RepositoryScanner.FRESH_SCAN );
+        assertEquals( "Stats.totalFileCount", 4, stats.getTotalFileCount() );
+        assertTrue( "Scan journal should exist", Files.exists( ScanJournal.getJournalFile( repository ) ) );
+
+        long lastScan = System.currentTimeMillis();
+        FileTime changed = FileTime.fromMillis( lastScan + 10000 );
+
+        // modified in place, the directory does not change
+        Path unchangedDir = repoDir.resolve( "groupId/artifactId/1.0-alpha-1" );
+        FileTime dirTime = Files.getLastModifiedTime( unchangedDir );
+        Files.setLastModifiedTime( unchangedDir.resolve( "artifactId-1.0-alpha-1.jar" ), changed );
+        Files.setLastModifiedTime( unchangedDir, dirTime );
+
+        // new file, the directory changes
+        Path changedDir = repoDir.resolve( "groupId/snapshot-artifact/1.0-alpha-1-SNAPSHOT" );
+        Path newFile = changedDir.resolve( "snapshot-artifact-1.0-alpha-1-20050611.202024-1.jar" );
+        Files.createFile( newFile );
+        Files.setLastModifiedTime( newFile, changed );
+        Files.setLastModifiedTime( changedDir, changed );
+
+        consumer.setProcessCount( 0 );
+        stats = scanner.scan( repository, knownConsumers, invalidConsumers, getIgnoreList(), lastScan );
+
+        assertNotNull( "Stats should not be null.", stats );
+        assertEquals( "Stats.totalFileCount", 5, stats.getTotalFileCount() );
+        assertEquals( "Stats.newFileCount", 2, stats.getNewFileCount() );
+        assertEquals( "Processed Count", 2, consumer.getProcessCount() );
+    }
+
     @Test
     public void testTimestampRepositoryScannerProcessUnmodified()
         throws Exception
@@ -259,6 +308,42 @@ public void testDefaultRepositoryScanner()
         assertEquals( "Processed Count (of invalid items):" + badconsumer.getPaths(), 6, badconsumer.getProcessCount() );
     }
 
+    @Test
+    public void testParallelRepositoryScanner()
+        throws Exception
+    {
+        ManagedRepository repository = createDefaultRepository();
+        repository.getFeature( ScanningFeature.class ).get().setScanThreads( 4 );
+
+        List<KnownRepositoryContentConsumer> knownConsumers = new ArrayList<>();
+        KnownScanConsumer concurrentConsumer = new KnownScanConsumer();
+        concurrentConsumer.setIncludes( ARTIFACT_PATTERNS );
+        concurrentConsumer.setThreadSafe( true );
+        knownConsumers.add( concurrentConsumer );
+        KnownScanConsumer serialConsumer = new KnownScanConsumer();
+        serialConsumer.setIncludes( ARTIFACT_PATTERNS );
+        knownConsumers.add( serialConsumer );
+
+        List<InvalidRepositoryContentConsumer> invalidConsumers = new ArrayList<>();
+        InvalidScanConsumer badconsumer = new InvalidScanConsumer();
+        invalidConsumers.add( badconsumer );
+
+        RepositoryScanner scanner = lookupRepositoryScanner();
+        RepositoryScanStatistics stats =
+            scanner.scan( repository, knownConsumers, invalidConsumers, getIgnoreList(), RepositoryScanner.FRESH_SCAN );
+
+        assertNotNull( "Stats should not be null.", stats );
+        assertEquals( "Begin scan count", 1, concurrentConsumer.getBeginScanCount() );
+        assertEquals( "Complete scan count", 1, concurrentConsumer.getCompleteScanCount() );
+        assertEquals( "Begin scan count", 1, serialConsumer.getBeginScanCount() );
+        assertEquals( "Complete scan count", 1, serialConsumer.getCompleteScanCount() );
+        assertMinimumHits( "Processed Count", 31, concurrentConsumer.getProcessCount() );
+        assertEquals( "Processed Count of concurrent and serial consumer", serialConsumer.getProcessCount(),
+                      concurrentConsumer.getProcessCount() );
+        assertTrue( "Scanned files", stats.getTotalFileCount() >= concurrentConsumer.getProcessCount()
+            + badconsumer.getProcessCount() );
+    }
+
     @Test
     public void testDefaultRepositoryArtifactScanner()
         throws Exception
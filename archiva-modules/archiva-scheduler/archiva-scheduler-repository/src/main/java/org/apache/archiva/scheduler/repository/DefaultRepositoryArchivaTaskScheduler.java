@@ -33,6 +33,9 @@
 import org.apache.archiva.redback.components.scheduler.Scheduler;
 import org.apache.archiva.redback.components.taskqueue.TaskQueue;
 import org.apache.archiva.redback.components.taskqueue.TaskQueueException;
+import org.apache.archiva.repository.ManagedRepository;
+import org.apache.archiva.repository.RepositoryRegistry;
+import org.apache.archiva.repository.features.ScanningFeature;
 import org.apache.archiva.scheduler.repository.model.RepositoryArchivaTaskScheduler;
 import org.apache.archiva.scheduler.repository.model.RepositoryTask;
 import org.apache.commons.lang.time.StopWatch;
@@ -51,10 +54,13 @@
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Default implementation of a scheduling component for archiva.
@@ -78,6 +84,9 @@
     @Inject
     private ArchivaConfiguration archivaConfiguration;
 
+    @Inject
+    private RepositoryRegistry repositoryRegistry;
+
     @Inject
     @Named( value = "repositoryStatisticsManager#default" )
     private RepositoryStatisticsManager repositoryStatisticsManager;
@@ -104,6 +113,8 @@
 
     private List<String> queuedRepos = new ArrayList<>();
 
+    private Map<String, RepositoryChangeWatcher> changeWatchers = new ConcurrentHashMap<>();
+
     @PostConstruct
     public void startup()
         throws ArchivaException
@@ -134,6 +145,8 @@ public void startup()
                         throw new ArchivaException( "Unable to start scheduler: " + e.getMessage(), e );
                     }
 
+                    startChangeWatcher( repoConfig );
+
                     try
                     {
                         if ( !isPreviouslyScanned( repoConfig, metadataRepository ) )
@@ -169,6 +182,7 @@ public void stop()
         }
         jobs.clear();
         queuedRepos.clear();
+        stopChangeWatchers();
 
     }
 
@@ -280,6 +294,7 @@ public void configurationEvent( ConfigurationEvent event )
                 }
             }
             jobs.clear();
+            stopChangeWatchers();
 
             List<ManagedRepositoryConfiguration> repositories =
                 archivaConfiguration.getConfiguration().getManagedRepositories();
@@ -297,6 +312,10 @@ public void configurationEvent( ConfigurationEvent event )
                         log.error( "error restarting job: '{}' : '{}'", REPOSITORY_JOB, repoConfig.getId() );
                     }
                 }
+                if ( repoConfig.isScanned() )
+                {
+                    startChangeWatcher( repoConfig );
+                }
             }
         }
     }
@@ -392,4 +411,40 @@ private synchronized void scheduleRepositoryJobs( ManagedRepositoryConfiguration
         }
 
     }
+
+    private synchronized void startChangeWatcher( ManagedRepositoryConfiguration repoConfig )
+    {
+        if ( !repoConfig.isWatchChanges() || changeWatchers.containsKey( repoConfig.getId() ) )
+        {
+            return;
+        }
+        ManagedRepository repository = repositoryRegistry.getManagedRepository( repoConfig.getId() );
+        if ( repository == null || !repository.supportsFeature( ScanningFeature.class )
+            || !repository.getFeature( ScanningFeature.class ).get().isWatchChanges() )
+        {
+            return;
+        }
+
+        RepositoryChangeWatcher watcher =
+            new RepositoryChangeWatcher( repository.getId(), repository.getLocalPath(), this );
+        try
+        {
+            watcher.start();
+            changeWatchers.put( repository.getId(), watcher );
+        }
+        catch ( IOException e )
+        {
+            log.error( "Unable to watch repository [{}] for changes, relying on the scheduled scans: {}",
+                       repository.getId(), e.getMessage() );
+        }
+    }
+
+    private synchronized void stopChangeWatchers()
+    {
+        for ( RepositoryChangeWatcher watcher : changeWatchers.values() )
+        {
+            watcher.stop();
+        }
+        changeWatchers.clear();
+    }
 }
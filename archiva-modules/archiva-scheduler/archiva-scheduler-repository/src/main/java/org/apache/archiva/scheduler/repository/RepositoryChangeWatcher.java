@@ -0,0 +1,359 @@
+package org.apache.archiva.scheduler.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.components.taskqueue.TaskQueueException;
+import org.apache.archiva.scheduler.repository.model.RepositoryArchivaTaskScheduler;
+import org.apache.archiva.scheduler.repository.model.RepositoryTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the directories of a managed repository and queues repository tasks for the files that
+ * are created or modified outside of archiva.
+ *
+ * Events are coalesced: the touched files are collected until no new event arrived for the quiet period,
+ * or until the maximum delay since the first pending event is reached. Then one task is queued for each
+ * regular file that still exists. If the watch service reports an overflow, the single file events are
+ * discarded and a full scan of the repository is queued instead.
+ *
+ * Files and directories starting with a dot are ignored. This excludes the index and scan journal directories,
+ * and the temporary files written by tools like rsync, which are renamed to their final name at the end
+ * of the transfer.
+ */
+class RepositoryChangeWatcher
+    implements Runnable
+{
+    private static final Logger log = LoggerFactory.getLogger( RepositoryChangeWatcher.class );
+
+    static final long DEFAULT_QUIET_PERIOD = 2000;
+
+    static final long DEFAULT_MAX_DELAY = 30000;
+
+    private final String repositoryId;
+
+    private final Path basePath;
+
+    private final RepositoryArchivaTaskScheduler scheduler;
+
+    private final long quietPeriod;
+
+    private final long maxDelay;
+
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+
+    private final Set<Path> pendingFiles = new LinkedHashSet<>();
+
+    private boolean overflow = false;
+
+    private WatchService watchService;
+
+    private Thread thread;
+
+    private volatile boolean running = false;
+
+    RepositoryChangeWatcher( String repositoryId, Path basePath, RepositoryArchivaTaskScheduler scheduler )
+    {
+        this( repositoryId, basePath, scheduler, DEFAULT_QUIET_PERIOD, DEFAULT_MAX_DELAY );
+    }
+
+    RepositoryChangeWatcher( String repositoryId, Path basePath, RepositoryArchivaTaskScheduler scheduler,
+                             long quietPeriod, long maxDelay )
+    {
+        this.repositoryId = repositoryId;
+        this.basePath = basePath;
+        this.scheduler = scheduler;
+        this.quietPeriod = quietPeriod;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Registers the repository directories and starts the watcher thread.
+     *
+     * @throws IOException if the watch service could not be created or the base directory could not be registered
+     */
+    public synchronized void start()
+        throws IOException
+    {
+        if ( running )
+        {
+            return;
+        }
+        watchService = basePath.getFileSystem().newWatchService();
+        registerAll( basePath, false );
+        running = true;
+        thread = new Thread( this, "archiva-watch-" + repositoryId );
+        thread.setDaemon( true );
+        thread.start();
+        log.info( "Watching {} directories of repository {} for changes", keys.size(), repositoryId );
+    }
+
+    /**
+     * Stops the watcher thread. Pending file events that are not queued yet are discarded.
+     */
+    public synchronized void stop()
+    {
+        if ( !running )
+        {
+            return;
+        }
+        running = false;
+        try
+        {
+            watchService.close();
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not close the watch service of repository {}: {}", repositoryId, e.getMessage() );
+        }
+        try
+        {
+            thread.join( quietPeriod + 1000 );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    public String getRepositoryId()
+    {
+        return repositoryId;
+    }
+
+    @Override
+    public void run()
+    {
+        long firstEvent = 0;
+        try
+        {
+            while ( running )
+            {
+                WatchKey key;
+                if ( pendingFiles.isEmpty() && !overflow )
+                {
+                    key = watchService.take();
+                }
+                else
+                {
+                    key = watchService.poll( quietPeriod, TimeUnit.MILLISECONDS );
+                }
+                long now = System.currentTimeMillis();
+                if ( key != null )
+                {
+                    processEvents( key );
+                    if ( pendingFiles.isEmpty() && !overflow )
+                    {
+                        firstEvent = 0;
+                    }
+                    else if ( firstEvent == 0 )
+                    {
+                        firstEvent = now;
+                    }
+                }
+                if ( ( key == null || now - firstEvent >= maxDelay ) && ( overflow || !pendingFiles.isEmpty() ) )
+                {
+                    flush();
+                    firstEvent = 0;
+                }
+            }
+        }
+        catch ( ClosedWatchServiceException e )
+        {
+            // stopped
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch ( RuntimeException e )
+        {
+            log.error( "Watching repository {} for changes failed: {}", repositoryId, e.getMessage(), e );
+        }
+        finally
+        {
+            running = false;
+        }
+    }
+
+    private void processEvents( WatchKey key )
+    {
+        Path dir = keys.get( key );
+        for ( WatchEvent<?> event : key.pollEvents() )
+        {
+            WatchEvent.Kind<?> kind = event.kind();
+            if ( kind == StandardWatchEventKinds.OVERFLOW )
+            {
+                overflow = true;
+                continue;
+            }
+            if ( dir == null || overflow )
+            {
+                continue;
+            }
+            Path child = dir.resolve( (Path) event.context() );
+            if ( isIgnored( child ) )
+            {
+                continue;
+            }
+            if ( kind == StandardWatchEventKinds.ENTRY_DELETE )
+            {
+                pendingFiles.remove( child );
+            }
+            else if ( Files.isDirectory( child ) )
+            {
+                if ( kind == StandardWatchEventKinds.ENTRY_CREATE )
+                {
+                    // The directory may already contain files, when the events of the new directory arrive
+                    try
+                    {
+                        registerAll( child, true );
+                    }
+                    catch ( IOException e )
+                    {
+                        log.warn( "Could not register directory {} of repository {}: {}", child, repositoryId,
+                                  e.getMessage() );
+                        overflow = true;
+                    }
+                }
+            }
+            else
+            {
+                pendingFiles.add( child );
+            }
+        }
+        if ( !key.reset() )
+        {
+            keys.remove( key );
+        }
+    }
+
+    private void flush()
+    {
+        try
+        {
+            if ( overflow )
+            {
+                log.info( "Too many changes in repository {}, queueing a full scan", repositoryId );
+                overflow = false;
+                pendingFiles.clear();
+                try
+                {
+                    // Directories created during the overflow are not registered yet
+                    registerAll( basePath, false );
+                }
+                catch ( IOException e )
+                {
+                    log.warn( "Could not register the directories of repository {}: {}", repositoryId,
+                              e.getMessage() );
+                }
+                scheduler.queueTask( new RepositoryTask( repositoryId, true ) );
+                return;
+            }
+
+            log.debug( "Queueing {} changed files of repository {}", pendingFiles.size(), repositoryId );
+            for ( Path file : pendingFiles )
+            {
+                if ( Files.isRegularFile( file ) )
+                {
+                    RepositoryTask task = new RepositoryTask( repositoryId );
+                    task.setResourceFile( file );
+                    task.setUpdateRelatedArtifacts( true );
+                    task.setScanAll( false );
+                    scheduler.queueTask( task );
+                }
+            }
+            pendingFiles.clear();
+        }
+        catch ( TaskQueueException e )
+        {
+            log.error( "Unable to queue the changes of repository {}: {}", repositoryId, e.getMessage() );
+            pendingFiles.clear();
+        }
+    }
+
+    private void registerAll( Path start, final boolean collectFiles )
+        throws IOException
+    {
+        Files.walkFileTree( start, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory( Path dir, BasicFileAttributes attrs )
+                throws IOException
+            {
+                if ( !dir.equals( basePath ) && isIgnored( dir ) )
+                {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = dir.register( watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                             StandardWatchEventKinds.ENTRY_MODIFY,
+                                             StandardWatchEventKinds.ENTRY_DELETE );
+                keys.put( key, dir );
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attrs )
+            {
+                if ( collectFiles && attrs.isRegularFile() && !isIgnored( file ) )
+                {
+                    pendingFiles.add( file );
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed( Path file, IOException exc )
+            {
+                log.debug( "Could not visit {}: {}", file, exc.getMessage() );
+                return FileVisitResult.CONTINUE;
+            }
+        } );
+    }
+
+    private static boolean isIgnored( Path path )
+    {
+        Path name = path.getFileName();
+        return name != null && name.toString().startsWith( "." );
+    }
+}
@@ -0,0 +1,172 @@
+package org.apache.archiva.scheduler.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.common.utils.FileUtils;
+import org.apache.archiva.scheduler.repository.model.RepositoryArchivaTaskScheduler;
+import org.apache.archiva.scheduler.repository.model.RepositoryTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the file system change feed of a repository.
+ */
+public class RepositoryChangeWatcherTest
+{
+    private static final String REPO_ID = "watchedRepo";
+
+    private static final long TIMEOUT = 20000;
+
+    private Path repoDir;
+
+    private RecordingScheduler scheduler;
+
+    private RepositoryChangeWatcher watcher;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        repoDir = Paths.get( "target/watched-repository" ).toAbsolutePath();
+        FileUtils.deleteDirectory( repoDir );
+        Files.createDirectories( repoDir.resolve( "org/apache/archiva" ) );
+        scheduler = new RecordingScheduler();
+        watcher = new RepositoryChangeWatcher( REPO_ID, repoDir, scheduler, 200, 5000 );
+        watcher.start();
+    }
+
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        watcher.stop();
+        FileUtils.deleteDirectory( repoDir );
+    }
+
+    @Test
+    public void testCreatedFilesAreQueued()
+        throws Exception
+    {
+        Path existingDir = repoDir.resolve( "org/apache/archiva" );
+        Path jar = Files.write( existingDir.resolve( "archiva-1.0.jar" ), new byte[]{ 1, 2, 3 } );
+        Files.write( existingDir.resolve( ".archiva-1.0.jar.tmp" ), new byte[]{ 1 } );
+
+        // Files in new directories are queued, even if they were created before the directory was registered
+        Path newDir = repoDir.resolve( "org/apache/maven/maven-core/1.0" );
+        Files.createDirectories( newDir );
+        Path pom = Files.write( newDir.resolve( "maven-core-1.0.pom" ), "<project/>".getBytes() );
+
+        List<Path> files = waitForFiles( 2 );
+        assertEquals( 2, files.size() );
+        assertTrue( files.contains( jar ) );
+        assertTrue( files.contains( pom ) );
+
+        for ( RepositoryTask task : scheduler.tasks )
+        {
+            assertEquals( REPO_ID, task.getRepositoryId() );
+            assertFalse( task.isScanAll() );
+            assertTrue( task.isUpdateRelatedArtifacts() );
+        }
+    }
+
+    @Test
+    public void testBurstIsCoalesced()
+        throws Exception
+    {
+        Path jar = repoDir.resolve( "org/apache/archiva/archiva-1.0.jar" );
+        for ( int i = 0; i < 10; i++ )
+        {
+            Files.write( jar, new byte[]{ (byte) i } );
+        }
+
+        List<Path> files = waitForFiles( 1 );
+        assertEquals( 1, files.size() );
+        assertEquals( jar, files.get( 0 ) );
+    }
+
+    @Test
+    public void testStop()
+        throws Exception
+    {
+        assertTrue( watcher.isRunning() );
+        watcher.stop();
+        assertFalse( watcher.isRunning() );
+    }
+
+    private List<Path> waitForFiles( int count )
+        throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while ( scheduler.tasks.size() < count && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 100 );
+        }
+        // give the watcher the chance to queue unexpected duplicates
+        Thread.sleep( 500 );
+        List<Path> files = new ArrayList<>();
+        for ( RepositoryTask task : scheduler.tasks )
+        {
+            files.add( task.getResourceFile() );
+        }
+        return files;
+    }
+
+    private static class RecordingScheduler
+        implements RepositoryArchivaTaskScheduler
+    {
+        final List<RepositoryTask> tasks = new CopyOnWriteArrayList<>();
+
+        @Override
+        public boolean isProcessingRepositoryTask( String repositoryId )
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isProcessingRepositoryTask( RepositoryTask task )
+        {
+            return tasks.contains( task );
+        }
+
+        @Override
+        public void queueTask( RepositoryTask task )
+        {
+            tasks.add( task );
+        }
+
+        @Override
+        public boolean unQueueTask( RepositoryTask task )
+        {
+            return tasks.remove( task );
+        }
+    }
+}
@@ -49,7 +49,7 @@
     private Cache usersCache;
 
     @Inject
-    @Named( value = "fileLockManager#default" )
+    @Named( value = "fileLockManager" )
     private FileLockManager fileLockManager;
 
     @Override
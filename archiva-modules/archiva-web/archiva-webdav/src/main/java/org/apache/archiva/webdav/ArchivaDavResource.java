@@ -29,6 +29,8 @@
 import org.apache.archiva.scheduler.ArchivaTaskScheduler;
 import org.apache.archiva.scheduler.repository.model.RepositoryArchivaTaskScheduler;
 import org.apache.archiva.scheduler.repository.model.RepositoryTask;
+import org.apache.archiva.webdav.util.ByteRange;
+import org.apache.archiva.webdav.util.FileSpooler;
 import org.apache.archiva.webdav.util.IndexWriter;
 import org.apache.archiva.webdav.util.MimeTypes;
 import org.apache.commons.io.FileUtils;
@@ -64,13 +66,17 @@
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.stream.Stream;
 
 /**
@@ -106,10 +112,21 @@
 
     public static final String COMPLIANCE_CLASS = "1, 2";
 
+    /**
+     * Extensions of the checksum files, that are used for the entity tag, in the order of preference.
+     */
+    private static final String[] ETAG_CHECKSUM_EXTENSIONS = { ".sha1", ".md5" };
+
+    private static final int MAX_CHECKSUM_FILE_SIZE = 1024;
+
+    private static final String MULTIPART_BOUNDARY = "ARCHIVA_BYTERANGES";
+
     private final ArchivaTaskScheduler<RepositoryTask> scheduler;
 
     private final FileLockManager fileLockManager;
 
+    private StreamingProxyTransfer streamingTransfer;
+
     private Logger log = LoggerFactory.getLogger( ArchivaDavResource.class );
 
     public ArchivaDavResource( String localResource, String logicalResource, org.apache.archiva.repository.ManagedRepository repository,
@@ -161,7 +178,7 @@ public String getSupportedMethods()
     @Override
     public boolean exists()
     {
-        return Files.exists(localResource);
+        return streamingTransfer != null || Files.exists(localResource);
     }
 
     @Override
@@ -188,6 +205,14 @@ public Path getLocalResource()
         return localResource;
     }
 
+    /**
+     * Sets the proxied download, that is sent to the client instead of the local file, while it is downloaded.
+     */
+    void setStreamingTransfer( StreamingProxyTransfer streamingTransfer )
+    {
+        this.streamingTransfer = streamingTransfer;
+    }
+
     @Override
     public String getResourcePath()
     {
@@ -203,6 +228,10 @@ public String getHref()
     @Override
     public long getModificationTime()
     {
+        if ( streamingTransfer != null && !Files.exists( localResource ) )
+        {
+            return streamingTransfer.getLastModified();
+        }
         try
         {
             return Files.getLastModifiedTime(localResource).toMillis();
@@ -214,24 +243,156 @@ public long getModificationTime()
         }
     }
 
+    /**
+     * Returns true, if a proxied download is sent instead of the local file.
+     */
+    boolean isStreaming()
+    {
+        return streamingTransfer != null;
+    }
+
+    /**
+     * Returns the strong entity tag of the file. It is taken from the stored SHA-1 or MD5 checksum, if the
+     * checksum file is not older than the file. Otherwise it is built from the size and the modification time.
+     *
+     * @return the quoted entity tag, or <code>null</code> for collections and proxied downloads
+     */
+    public String getETag()
+    {
+        if ( streamingTransfer != null || !Files.isRegularFile( localResource ) )
+        {
+            return null;
+        }
+        try
+        {
+            BasicFileAttributes attrs = Files.readAttributes( localResource, BasicFileAttributes.class );
+            String checksum = readStoredChecksum( attrs.lastModifiedTime().toMillis() );
+            if ( checksum != null )
+            {
+                return "\"" + checksum + "\"";
+            }
+            return "\"" + Long.toHexString( attrs.size() ) + "-" + Long.toHexString(
+                attrs.lastModifiedTime().toMillis() ) + "\"";
+        }
+        catch ( IOException e )
+        {
+            log.debug( "Could not read attributes of {}: {}", localResource, e.getMessage() );
+            return null;
+        }
+    }
+
+    private String readStoredChecksum( long lastModified )
+    {
+        String fileName = localResource.getFileName().toString();
+        for ( String extension : ETAG_CHECKSUM_EXTENSIONS )
+        {
+            if ( fileName.endsWith( extension ) )
+            {
+                // checksums of checksum files are not stored
+                return null;
+            }
+        }
+        for ( String extension : ETAG_CHECKSUM_EXTENSIONS )
+        {
+            Path checksumFile = localResource.resolveSibling( fileName + extension );
+            try
+            {
+                if ( Files.isRegularFile( checksumFile )
+                    && Files.getLastModifiedTime( checksumFile ).toMillis() >= lastModified
+                    && Files.size( checksumFile ) <= MAX_CHECKSUM_FILE_SIZE )
+                {
+                    String content = new String( Files.readAllBytes( checksumFile ), StandardCharsets.US_ASCII ).trim();
+                    // the checksum may be followed by the file name
+                    String checksum = content.split( "\\s+", 2 )[0].toLowerCase( Locale.ROOT );
+                    if ( checksum.length() >= 32 && checksum.matches( "[0-9a-f]+" ) )
+                    {
+                        return checksum;
+                    }
+                }
+            }
+            catch ( IOException e )
+            {
+                log.debug( "Could not read checksum file {}: {}", checksumFile, e.getMessage() );
+            }
+        }
+        return null;
+    }
+
     @Override
     public void spool( OutputContext outputContext )
         throws IOException
     {
-        if ( !isCollection() )
+        spool( outputContext, null );
+    }
+
+    /**
+     * Writes the given ranges of the file. A single range is sent as it is, multiple ranges are sent as
+     * <code>multipart/byteranges</code> content. The caller has to set the partial content status.
+     *
+     * @param outputContext the output context
+     * @param ranges the ranges to send, or <code>null</code> for the complete content
+     * @throws IOException if the file could not be read or the content could not be written
+     */
+    public void spool( OutputContext outputContext, List<ByteRange> ranges )
+        throws IOException
+    {
+        if ( streamingTransfer != null )
         {
-            outputContext.setContentLength( Files.size( localResource ) );
+            long contentLength = streamingTransfer.getContentLength();
+            if ( contentLength >= 0 )
+            {
+                outputContext.setContentLength( contentLength );
+            }
             outputContext.setContentType( mimeTypes.getMimeType( localResource.getFileName().toString() ) );
+            if ( outputContext.hasStream() )
+            {
+                streamingTransfer.spool( outputContext.getOutputStream() );
+            }
+            return;
+        }
+
+        if ( !isCollection() && !outputContext.hasStream() )
+        {
+            setContentHeaders( outputContext, Files.size( localResource ), ranges );
+            return;
         }
 
         try
         {
-            if ( !isCollection() && outputContext.hasStream() )
+            if ( !isCollection() )
             {
                 Lock lock = fileLockManager.readFileLock( localResource );
-                try (InputStream is = Files.newInputStream( lock.getFile()))
+                try (FileChannel channel = FileChannel.open( lock.getFile(), StandardOpenOption.READ ))
                 {
-                    IOUtils.copy( is, outputContext.getOutputStream() );
+                    // the size of the opened file, it cannot change while the read lock is held
+                    long length = channel.size();
+                    setContentHeaders( outputContext, length, ranges );
+                    OutputStream out = outputContext.getOutputStream();
+                    if ( ranges == null )
+                    {
+                        FileSpooler.spool( channel, out, true );
+                    }
+                    else if ( ranges.size() == 1 )
+                    {
+                        ByteRange range = ranges.get( 0 );
+                        channel.position( range.getStart() );
+                        FileSpooler.spool( channel, out, range.getLength(), true );
+                    }
+                    else
+                    {
+                        String contentType = mimeTypes.getMimeType( localResource.getFileName().toString() );
+                        for ( ByteRange range : ranges )
+                        {
+                            out.write( getPartHeader( contentType, range, length ) );
+                            channel.position( range.getStart() );
+                            FileSpooler.spool( channel, out, range.getLength(), false );
+                        }
+                        out.write( getMultipartEnd() );
+                    }
+                }
+                finally
+                {
+                    fileLockManager.release( lock );
                 }
             }
             else if ( outputContext.hasStream() )
@@ -250,6 +411,52 @@ else if ( outputContext.hasStream() )
         }
     }
 
+    private void setContentHeaders( OutputContext outputContext, long length, List<ByteRange> ranges )
+    {
+        String contentType = mimeTypes.getMimeType( localResource.getFileName().toString() );
+        outputContext.setModificationTime( getModificationTime() );
+        String etag = getETag();
+        if ( etag != null )
+        {
+            outputContext.setETag( etag );
+        }
+        outputContext.setProperty( "Accept-Ranges", "bytes" );
+        if ( ranges == null )
+        {
+            outputContext.setContentLength( length );
+            outputContext.setContentType( contentType );
+        }
+        else if ( ranges.size() == 1 )
+        {
+            ByteRange range = ranges.get( 0 );
+            outputContext.setProperty( "Content-Range", range.getContentRange( length ) );
+            outputContext.setContentLength( range.getLength() );
+            outputContext.setContentType( contentType );
+        }
+        else
+        {
+            long contentLength = getMultipartEnd().length;
+            for ( ByteRange range : ranges )
+            {
+                contentLength += getPartHeader( contentType, range, length ).length + range.getLength();
+            }
+            outputContext.setContentLength( contentLength );
+            outputContext.setContentType( "multipart/byteranges; boundary=" + MULTIPART_BOUNDARY );
+        }
+    }
+
+    private static byte[] getPartHeader( String contentType, ByteRange range, long length )
+    {
+        String header = "\r\n--" + MULTIPART_BOUNDARY + "\r\n" + "Content-Type: " + contentType + "\r\n"
+            + "Content-Range: " + range.getContentRange( length ) + "\r\n\r\n";
+        return header.getBytes( StandardCharsets.US_ASCII );
+    }
+
+    private static byte[] getMultipartEnd()
+    {
+        return ( "\r\n--" + MULTIPART_BOUNDARY + "--\r\n" ).getBytes( StandardCharsets.US_ASCII );
+    }
+
     @Override
     public DavPropertyName[] getPropertyNames()
     {
@@ -721,6 +928,12 @@ protected DavPropertySet initProperties()
             properties.add( new DefaultDavProperty<>( DavPropertyName.GETCONTENTLENGTH, 0 ) );
         }
 
+        String etag = getETag();
+        if ( etag != null )
+        {
+            properties.add( new DefaultDavProperty<>( DavPropertyName.GETETAG, etag ) );
+        }
+
         this.properties = properties;
 
         return properties;
@@ -39,11 +39,9 @@
 import org.apache.archiva.indexer.merger.TemporaryGroupIndex;
 import org.apache.archiva.indexer.search.RepositorySearch;
 import org.apache.archiva.indexer.search.RepositorySearchException;
-import org.apache.archiva.maven2.metadata.MavenMetadataReader;
 import org.apache.archiva.metadata.model.facets.AuditEvent;
 import org.apache.archiva.metadata.repository.storage.RelocationException;
 import org.apache.archiva.metadata.repository.storage.RepositoryStorage;
-import org.apache.archiva.model.ArchivaRepositoryMetadata;
 import org.apache.archiva.model.ArtifactReference;
 import org.apache.archiva.policies.ProxyDownloadException;
 import org.apache.archiva.proxy.model.RepositoryProxyConnectors;
@@ -66,12 +64,12 @@
 import org.apache.archiva.repository.content.maven2.RepositoryRequest;
 import org.apache.archiva.repository.events.AuditListener;
 import org.apache.archiva.repository.features.IndexCreationFeature;
+import org.apache.archiva.repository.features.ProxyFetchFeature;
 import org.apache.archiva.repository.metadata.MetadataTools;
 import org.apache.archiva.repository.metadata.RepositoryMetadataException;
-import org.apache.archiva.repository.metadata.RepositoryMetadataMerge;
-import org.apache.archiva.repository.metadata.RepositoryMetadataWriter;
 import org.apache.archiva.scheduler.repository.model.RepositoryArchivaTaskScheduler;
 import org.apache.archiva.security.ServletAuthenticator;
+import org.apache.archiva.webdav.util.MergedMetadataCache;
 import org.apache.archiva.webdav.util.MimeTypes;
 import org.apache.archiva.webdav.util.TemporaryGroupIndexSessionCleaner;
 import org.apache.archiva.webdav.util.WebdavMethodUtil;
@@ -89,9 +87,6 @@
 import org.apache.jackrabbit.webdav.lock.LockManager;
 import org.apache.jackrabbit.webdav.lock.SimpleLockManager;
 import org.apache.maven.index.context.IndexingContext;
-import org.codehaus.plexus.digest.ChecksumFile;
-import org.codehaus.plexus.digest.Digester;
-import org.codehaus.plexus.digest.DigesterException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MarkerFactory;
@@ -99,6 +94,7 @@
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.servlet.http.HttpServletResponse;
@@ -114,6 +110,12 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -124,8 +126,15 @@
 {
     private static final String PROXIED_SUFFIX = " (proxied)";
 
+    /**
+     * System property for the maximum number of proxy fetches, that are streamed to the clients at the same time.
+     */
+    public static final String STREAMING_THREADS_PROPERTY = "archiva.webdav.streamingThreads";
+
     private static final String HTTP_PUT_METHOD = "PUT";
 
+    private static final String HTTP_GET_METHOD = "GET";
+
     private Logger log = LoggerFactory.getLogger( ArchivaDavResourceFactory.class );
 
     @Inject
@@ -175,22 +184,27 @@
      */
     private final LockManager lockManager = new SimpleLockManager();
 
-    private ChecksumFile checksum;
-
-    private Digester digestSha1;
-
-    private Digester digestMd5;
+    /**
+     * Merged maven-metadata.xml files of the repository groups
+     */
+    private final MergedMetadataCache mergedMetadataCache = new MergedMetadataCache();
 
     @Inject
     @Named( value = "archivaTaskScheduler#repository" )
     private RepositoryArchivaTaskScheduler scheduler;
 
     @Inject
-    @Named( value = "fileLockManager#default" )
+    @Named( value = "fileLockManager" )
     private FileLockManager fileLockManager;
 
     private ApplicationContext applicationContext;
 
+    /**
+     * Runs the proxy fetches, that are sent to the client while they are downloaded. The number of threads is
+     * limited, fetches are not queued: if all threads are busy, the artifact is fetched in the request thread.
+     */
+    private final ThreadPoolExecutor streamingExecutor = createStreamingExecutor();
+
     @Inject
     public ArchivaDavResourceFactory( ApplicationContext applicationContext, PlexusSisuBridge plexusSisuBridge,
                                       ArchivaConfiguration archivaConfiguration )
@@ -198,21 +212,43 @@ public ArchivaDavResourceFactory( ApplicationContext applicationContext, PlexusS
     {
         this.archivaConfiguration = archivaConfiguration;
         this.applicationContext = applicationContext;
-        this.checksum = plexusSisuBridge.lookup( ChecksumFile.class );
-
-        this.digestMd5 = plexusSisuBridge.lookup( Digester.class, "md5" );
-        this.digestSha1 = plexusSisuBridge.lookup( Digester.class, "sha1" );
 
         // TODO remove this hard dependency on maven !!
         repositoryRequest = new RepositoryRequest( );
     }
 
+    private static ThreadPoolExecutor createStreamingExecutor()
+    {
+        int threads = Math.max( 1, Integer.getInteger( STREAMING_THREADS_PROPERTY, 50 ) );
+        ThreadPoolExecutor executor =
+            new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), new ThreadFactory()
+            {
+                private final AtomicInteger count = new AtomicInteger( 0 );
+
+                @Override
+                public Thread newThread( Runnable runnable )
+                {
+                    Thread thread = new Thread( runnable, "archiva-proxy-stream-" + count.incrementAndGet() );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
+
     @PostConstruct
     public void initialize()
     {
         // no op
     }
 
+    @PreDestroy
+    public void shutdown()
+    {
+        streamingExecutor.shutdownNow();
+    }
+
     @Override
     public DavResource createResource( final DavResourceLocator locator, final DavServletRequest request,
                                        final DavServletResponse response )
@@ -342,10 +378,11 @@ public DavResource createResource( final DavResourceLocator locator, final DavSe
                 // for MRM-872 handle checksums of the merged metadata files
                 if ( repositoryRequest.isSupportFile( requestedResource ) )
                 {
-                    Path metadataChecksum =
-                        Paths.get( filePath + "." + StringUtils.substringAfterLast( requestedResource, "." ) );
+                    String extension = "." + StringUtils.substringAfterLast( requestedResource, "." );
+                    Path metadataChecksum = getMergedMetadataChecksum( Paths.get( filePath ), extension,
+                                                                       resourcesInAbsolutePath );
 
-                    if ( Files.exists(metadataChecksum) )
+                    if ( metadataChecksum != null && Files.exists( metadataChecksum ) )
                     {
                         LogicalResource logicalResource =
                             new LogicalResource( getLogicalResource( archivaLocator, null, false ) );
@@ -362,56 +399,21 @@ public DavResource createResource( final DavResourceLocator locator, final DavSe
                     if ( resourcesInAbsolutePath != null && resourcesInAbsolutePath.size() > 1 )
                     {
                         // merge the metadata of all repos under group
-                        ArchivaRepositoryMetadata mergedMetadata = new ArchivaRepositoryMetadata();
+                        List<Path> memberFiles = new ArrayList<>( resourcesInAbsolutePath.size() );
                         for ( String resourceAbsPath : resourcesInAbsolutePath )
                         {
-                            try
-                            {
-                                Path metadataFile = Paths.get( resourceAbsPath );
-                                ArchivaRepositoryMetadata repoMetadata = MavenMetadataReader.read( metadataFile );
-                                mergedMetadata = RepositoryMetadataMerge.merge( mergedMetadata, repoMetadata );
-                            }
-                            catch ( XMLException e )
-                            {
-                                throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                                                        "Error occurred while reading metadata file." );
-                            }
-                            catch ( RepositoryMetadataException r )
-                            {
-                                throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                                                        "Error occurred while merging metadata file." );
-                            }
+                            memberFiles.add( Paths.get( resourceAbsPath ) );
                         }
+                        Path resourceFile = getMergedMetadata( Paths.get( filePath ), memberFiles ).getFile();
 
-                        try
-                        {
-                            Path resourceFile = writeMergedMetadataToFile( mergedMetadata, filePath );
-
-                            LogicalResource logicalResource =
-                                new LogicalResource( getLogicalResource( archivaLocator, null, false ) );
+                        LogicalResource logicalResource =
+                            new LogicalResource( getLogicalResource( archivaLocator, null, false ) );
 
-                            resource =
-                                new ArchivaDavResource( resourceFile.toAbsolutePath().toString(), logicalResource.getPath(), null,
-                                                        request.getRemoteAddr(), activePrincipal,
-                                                        request.getDavSession(), archivaLocator, this, mimeTypes,
-                                                        auditListeners, scheduler, fileLockManager );
-                        }
-                        catch ( RepositoryMetadataException r )
-                        {
-                            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                                                    "Error occurred while writing metadata file." );
-                        }
-                        catch ( IOException ie )
-                        {
-                            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                                                    "Error occurred while generating checksum files." );
-                        }
-                        catch ( DigesterException de )
-                        {
-                            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                                                    "Error occurred while generating checksum files."
-                                                        + de.getMessage() );
-                        }
+                        resource =
+                            new ArchivaDavResource( resourceFile.toAbsolutePath().toString(), logicalResource.getPath(), null,
+                                                    request.getRemoteAddr(), activePrincipal,
+                                                    request.getDavSession(), archivaLocator, this, mimeTypes,
+                                                    auditListeners, scheduler, fileLockManager );
                     }
                 }
             }
@@ -639,7 +641,13 @@ private DavResource processRepository( final DavServletRequest request, ArchivaD
                                                logicalResource.getPath(), action, activePrincipal );
                         }
 
-                        if ( !Files.exists(resourceFile) )
+                        if ( logicalResource.getStreamingTransfer() != null )
+                        {
+                            // the content is sent, while it is downloaded
+                            ( (ArchivaDavResource) resource ).setStreamingTransfer(
+                                logicalResource.getStreamingTransfer() );
+                        }
+                        else if ( !Files.exists(resourceFile) )
                         {
                             throw new DavException( HttpServletResponse.SC_NOT_FOUND, "Resource does not exist" );
                         }
@@ -789,14 +797,14 @@ private boolean fetchContentFromProxies( ManagedRepositoryContent managedReposit
                     this.applicationContext.getBean( "repositoryStorage#" + repositoryLayout, RepositoryStorage.class );
                 repositoryStorage.applyServerSideRelocation( managedRepository, artifact );
 
-                Path proxiedFile = connectors.fetchFromProxies( managedRepository, artifact );
+                Path proxiedFile = fetchArtifactFromProxies( managedRepository, request, resource, artifact );
 
                 resource.setPath( managedRepository.toPath( artifact ) );
 
                 log.debug( "Proxied artifact '{}:{}:{}'", artifact.getGroupId(), artifact.getArtifactId(),
                            artifact.getVersion() );
 
-                return ( proxiedFile != null );
+                return ( proxiedFile != null || resource.getStreamingTransfer() != null );
             }
         }
         catch ( LayoutException e )
@@ -812,6 +820,70 @@ private boolean fetchContentFromProxies( ManagedRepositoryContent managedReposit
         return false;
     }
 
+    /**
+     * Fetches the artifact from the proxies. If streaming fetch is enabled for the repository, the fetch runs in
+     * the background and the request waits only until the remote repository starts sending the content. The
+     * transfer is then set on the logical resource and <code>null</code> is returned.
+     */
+    private Path fetchArtifactFromProxies( ManagedRepositoryContent managedRepository, DavServletRequest request,
+                                           LogicalResource resource, ArtifactReference artifact )
+        throws ProxyDownloadException, DavException
+    {
+        if ( !isStreamingFetch( managedRepository, request ) )
+        {
+            return connectors.fetchFromProxies( managedRepository, artifact );
+        }
+
+        StreamingProxyTransfer transfer = new StreamingProxyTransfer();
+        try
+        {
+            streamingExecutor.execute( () -> {
+                try
+                {
+                    transfer.complete( connectors.fetchFromProxies( managedRepository, artifact, transfer ) );
+                }
+                catch ( Throwable e )
+                {
+                    transfer.fail( e );
+                }
+            } );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            log.debug( "All streaming threads are busy, fetching {} without streaming", artifact );
+            return connectors.fetchFromProxies( managedRepository, artifact );
+        }
+        try
+        {
+            if ( transfer.awaitStart() )
+            {
+                resource.setStreamingTransfer( transfer );
+                return null;
+            }
+            return transfer.awaitResult();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e );
+        }
+        catch ( ProxyDownloadException | RuntimeException | Error e )
+        {
+            throw e;
+        }
+        catch ( Throwable e )
+        {
+            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e );
+        }
+    }
+
+    private boolean isStreamingFetch( ManagedRepositoryContent managedRepository, DavServletRequest request )
+    {
+        ManagedRepository repository = managedRepository.getRepository();
+        return HTTP_GET_METHOD.equals( request.getMethod() ) && repository != null && repository.supportsFeature(
+            ProxyFetchFeature.class ) && repository.getFeature( ProxyFetchFeature.class ).get().isStreamingFetch();
+    }
+
     // TODO: remove?
 
     private void triggerAuditEvent( String remoteIP, String repositoryId, String resource, String action,
@@ -921,11 +993,23 @@ private String addHrefPrefix( String contextPath, String path ) {
     {
         private String path;
 
+        private StreamingProxyTransfer streamingTransfer;
+
         public LogicalResource( String path )
         {
             this.path = path;
         }
 
+        public StreamingProxyTransfer getStreamingTransfer()
+        {
+            return streamingTransfer;
+        }
+
+        public void setStreamingTransfer( StreamingProxyTransfer streamingTransfer )
+        {
+            this.streamingTransfer = streamingTransfer;
+        }
+
         public String getPath()
         {
             return path;
@@ -1236,37 +1320,72 @@ private boolean isAllowedToContinue( DavServletRequest request, List<String> rep
         return allow;
     }
 
-    private Path writeMergedMetadataToFile( ArchivaRepositoryMetadata mergedMetadata, String outputFilename )
-        throws RepositoryMetadataException, DigesterException, IOException
+    private MergedMetadataCache.Entry getMergedMetadata( Path outputFile, List<Path> memberFiles )
+        throws DavException
     {
-        Path outputFile = Paths.get( outputFilename );
-        if ( Files.exists(outputFile) )
+        try
         {
-            org.apache.archiva.common.utils.FileUtils.deleteQuietly( outputFile );
+            return mergedMetadataCache.getMergedMetadata( outputFile, memberFiles );
+        }
+        catch ( XMLException e )
+        {
+            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                                    "Error occurred while reading metadata file." );
+        }
+        catch ( RepositoryMetadataException e )
+        {
+            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                                    "Error occurred while merging metadata file." );
+        }
+        catch ( IOException e )
+        {
+            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                                    "Error occurred while writing metadata file." );
         }
-
-        Files.createDirectories(outputFile.getParent());
-        RepositoryMetadataWriter.write( mergedMetadata, outputFile );
-
-        createChecksumFile( outputFilename, digestSha1 );
-        createChecksumFile( outputFilename, digestMd5 );
-
-        return outputFile;
     }
 
-    private void createChecksumFile( String path, Digester digester )
-        throws DigesterException, IOException
+    /**
+     * Returns the checksum file of the merged metadata. The checksums are taken from the cache entry of the
+     * last merge, so they always match the merged metadata. If there is no current entry, the metadata files
+     * next to the requested checksum files are merged.
+     */
+    private Path getMergedMetadataChecksum( Path outputFile, String extension, List<String> checksumFiles )
+        throws DavException
     {
-        Path checksumFile = Paths.get( path + digester.getFilenameExtension() );
-        if ( !Files.exists(checksumFile) )
+        MergedMetadataCache.Entry entry;
+        try
         {
-            org.apache.archiva.common.utils.FileUtils.deleteQuietly( checksumFile );
-            checksum.createChecksum( Paths.get( path ).toFile(), digester );
+            entry = mergedMetadataCache.getCurrentEntry( outputFile );
         }
-        else if ( !Files.isRegularFile( checksumFile) )
+        catch ( IOException e )
         {
-            log.error( "Checksum file is not a file." );
+            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                                    "Error occurred while writing metadata file." );
         }
+        if ( entry == null )
+        {
+            List<Path> memberFiles = new ArrayList<>( checksumFiles.size() );
+            for ( String checksumFile : checksumFiles )
+            {
+                Path memberFile = Paths.get( StringUtils.substringBeforeLast( checksumFile, "." ) );
+                if ( Files.exists( memberFile ) )
+                {
+                    memberFiles.add( memberFile );
+                }
+            }
+            if ( memberFiles.size() < 2 )
+            {
+                // nothing to merge, the checksum of a single repository is sent
+                return null;
+            }
+            entry = getMergedMetadata( outputFile, memberFiles );
+        }
+        return entry.getChecksumFile( extension );
+    }
+
+    public MergedMetadataCache getMergedMetadataCache()
+    {
+        return mergedMetadataCache;
     }
 
     private boolean isProjectReference( String requestedResource )
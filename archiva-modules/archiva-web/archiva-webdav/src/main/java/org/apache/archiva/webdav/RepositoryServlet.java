@@ -27,6 +27,7 @@
 import org.apache.archiva.configuration.ConfigurationListener;
 import org.apache.archiva.redback.integration.filter.authentication.HttpAuthenticator;
 import org.apache.archiva.security.ServletAuthenticator;
+import org.apache.archiva.webdav.util.ByteRange;
 import org.apache.jackrabbit.webdav.DavException;
 import org.apache.jackrabbit.webdav.DavLocatorFactory;
 import org.apache.jackrabbit.webdav.DavMethods;
@@ -50,9 +51,11 @@
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -170,6 +173,123 @@ else if ( e.getCause() != null )
         }
     }
 
+    /**
+     * Answers conditional and range requests for files. <code>If-None-Match</code> is checked against the
+     * entity tag of the file, <code>If-Modified-Since</code> only if no entity tag was sent. A <code>Range</code>
+     * header is ignored, if an <code>If-Range</code> header does not match the current file.
+     */
+    @Override
+    protected void spoolResource( WebdavRequest request, WebdavResponse response, DavResource resource,
+                                  boolean sendContent )
+        throws IOException
+    {
+        if ( !( resource instanceof ArchivaDavResource ) || !resource.exists() || resource.isCollection()
+            || ( (ArchivaDavResource) resource ).isStreaming() )
+        {
+            super.spoolResource( request, response, resource, sendContent );
+            return;
+        }
+        ArchivaDavResource archivaResource = (ArchivaDavResource) resource;
+        String etag = archivaResource.getETag();
+        long modificationTime = resource.getModificationTime();
+
+        if ( isNotModified( request, etag, modificationTime ) )
+        {
+            if ( etag != null )
+            {
+                response.setHeader( "ETag", etag );
+            }
+            response.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+            return;
+        }
+
+        List<ByteRange> ranges = null;
+        String rangeHeader = request.getHeader( "Range" );
+        if ( rangeHeader != null && isRangeValid( request, etag, modificationTime ) )
+        {
+            long length = Files.size( archivaResource.getLocalResource() );
+            ranges = ByteRange.parse( rangeHeader, length );
+            if ( ranges != null && ranges.isEmpty() )
+            {
+                response.setHeader( "Content-Range", "bytes */" + length );
+                response.sendError( HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE );
+                return;
+            }
+            if ( ranges != null )
+            {
+                response.setStatus( HttpServletResponse.SC_PARTIAL_CONTENT );
+            }
+        }
+
+        OutputStream out = sendContent ? response.getOutputStream() : null;
+        archivaResource.spool( getOutputContext( response, out ), ranges );
+        response.flushBuffer();
+    }
+
+    private boolean isNotModified( WebdavRequest request, String etag, long modificationTime )
+    {
+        String ifNoneMatch = request.getHeader( "If-None-Match" );
+        if ( ifNoneMatch != null )
+        {
+            return etag != null && matchesETag( ifNoneMatch, etag );
+        }
+        long ifModifiedSince = getDateHeader( request, "If-Modified-Since" );
+        // the dates of the headers have a precision of seconds
+        return ifModifiedSince >= 0 && modificationTime > 0 && modificationTime / 1000 * 1000 <= ifModifiedSince;
+    }
+
+    private boolean isRangeValid( WebdavRequest request, String etag, long modificationTime )
+    {
+        String ifRange = request.getHeader( "If-Range" );
+        if ( ifRange == null )
+        {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if ( ifRange.startsWith( "\"" ) || ifRange.startsWith( "W/" ) )
+        {
+            // If-Range requires the strong comparison
+            return etag != null && etag.equals( ifRange );
+        }
+        long date = getDateHeader( request, "If-Range" );
+        return date >= 0 && modificationTime / 1000 * 1000 == date;
+    }
+
+    private static boolean matchesETag( String header, String etag )
+    {
+        for ( String value : header.split( "," ) )
+        {
+            value = value.trim();
+            if ( "*".equals( value ) )
+            {
+                return true;
+            }
+            // If-None-Match uses the weak comparison
+            if ( value.startsWith( "W/" ) )
+            {
+                value = value.substring( 2 );
+            }
+            if ( value.equals( etag ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long getDateHeader( WebdavRequest request, String name )
+    {
+        try
+        {
+            return request.getDateHeader( name );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            log.debug( "Invalid date in {} header: {}", name, request.getHeader( name ) );
+            return -1;
+        }
+    }
+
     public synchronized void initServers( ServletConfig servletConfig )
         throws RepositoryAdminException
     {
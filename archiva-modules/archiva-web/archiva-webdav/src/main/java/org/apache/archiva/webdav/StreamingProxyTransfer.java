@@ -0,0 +1,302 @@
+package org.apache.archiva.webdav;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.proxy.model.ProxyTransferListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * A proxied download, that is sent to the client while it is written to the temporary download file.
+ * <p>
+ * The fetch runs in a separate thread. The request thread waits with {@link #awaitStart()} until the
+ * remote repository starts sending the content, or the fetch is finished. If the content is streaming,
+ * {@link #spool(OutputStream)} copies the temporary file to the client as it grows.
+ * </p>
+ * <p>
+ * The last chunk of the content is held back until the fetch is finished and the download policies
+ * (e.g. the checksum verification) have passed. If the fetch fails, the file is not moved into the managed
+ * repository by the proxy and {@link #spool(OutputStream)} throws an exception, which aborts the response,
+ * so the client never receives a complete, but invalid artifact.
+ * </p>
+ */
+class StreamingProxyTransfer
+    implements ProxyTransferListener
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximum time in milliseconds to wait for a progress notification, before the file is checked again.
+     */
+    private static final long POLL_INTERVAL = 100;
+
+    private Logger log = LoggerFactory.getLogger( StreamingProxyTransfer.class );
+
+    private final Object monitor = new Object();
+
+    private Path file;
+
+    private long contentLength = -1;
+
+    private long lastModified = 0;
+
+    private int starts = 0;
+
+    private boolean done = false;
+
+    private Path result;
+
+    private Throwable failure;
+
+    @Override
+    public void transferStarted( Path file, long contentLength, long lastModified )
+    {
+        synchronized ( monitor )
+        {
+            this.file = file;
+            this.contentLength = contentLength;
+            this.lastModified = lastModified;
+            starts++;
+            monitor.notifyAll();
+        }
+    }
+
+    @Override
+    public void transferProgress( Path file, long bytes )
+    {
+        synchronized ( monitor )
+        {
+            monitor.notifyAll();
+        }
+    }
+
+    /**
+     * Called with the result of the fetch.
+     *
+     * @param result the file in the managed repository, or <code>null</code>, if nothing was fetched
+     */
+    void complete( Path result )
+    {
+        synchronized ( monitor )
+        {
+            this.result = result;
+            this.done = true;
+            monitor.notifyAll();
+        }
+    }
+
+    /**
+     * Called, if the fetch failed with an exception.
+     */
+    void fail( Throwable failure )
+    {
+        synchronized ( monitor )
+        {
+            this.failure = failure;
+            this.done = true;
+            monitor.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the remote repository starts sending the content, or the fetch is finished.
+     *
+     * @return <code>true</code>, if the content is streaming, <code>false</code>, if the fetch is finished
+     */
+    boolean awaitStart()
+        throws InterruptedException
+    {
+        synchronized ( monitor )
+        {
+            while ( starts == 0 && !done )
+            {
+                monitor.wait();
+            }
+            return starts > 0 && !done;
+        }
+    }
+
+    /**
+     * Waits until the fetch is finished and returns the fetched file.
+     *
+     * @return the file in the managed repository, or <code>null</code>, if nothing was fetched
+     * @throws Throwable the exception the fetch failed with
+     */
+    Path awaitResult()
+        throws Throwable
+    {
+        synchronized ( monitor )
+        {
+            while ( !done )
+            {
+                monitor.wait();
+            }
+            if ( failure != null )
+            {
+                throw failure;
+            }
+            return result;
+        }
+    }
+
+    long getContentLength()
+    {
+        synchronized ( monitor )
+        {
+            return contentLength;
+        }
+    }
+
+    long getLastModified()
+    {
+        synchronized ( monitor )
+        {
+            return lastModified > 0 ? lastModified : System.currentTimeMillis();
+        }
+    }
+
+    private boolean isSucceeded()
+    {
+        return done && failure == null && result != null && Files.exists( result );
+    }
+
+    /**
+     * Copies the content to the given stream, while it is downloaded.
+     *
+     * @throws IOException if the content could not be written, or if the download failed or was not valid
+     */
+    void spool( OutputStream out )
+        throws IOException
+    {
+        Path source;
+        synchronized ( monitor )
+        {
+            source = file;
+            while ( !done && !Files.exists( source ) )
+            {
+                await();
+            }
+            if ( !Files.exists( source ) )
+            {
+                // the download was already moved into the repository
+                source = isSucceeded() ? result : null;
+            }
+        }
+        if ( source == null )
+        {
+            throw new IOException( "Proxied download failed: " + describeFailure() );
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] pending = new byte[BUFFER_SIZE];
+        int pendingLength = 0;
+        long written = 0;
+        try ( InputStream in = Files.newInputStream( source ) )
+        {
+            boolean finished = false;
+            while ( true )
+            {
+                int n = in.read( buffer );
+                if ( n > 0 )
+                {
+                    // hold back the last chunk read, until the download is verified
+                    out.write( pending, 0, pendingLength );
+                    written += pendingLength;
+                    byte[] swap = pending;
+                    pending = buffer;
+                    buffer = swap;
+                    pendingLength = n;
+                }
+                else if ( finished )
+                {
+                    break;
+                }
+                else
+                {
+                    synchronized ( monitor )
+                    {
+                        if ( done )
+                        {
+                            // read the remaining content written before the fetch finished
+                            finished = true;
+                        }
+                        else
+                        {
+                            await();
+                        }
+                    }
+                }
+            }
+        }
+        catch ( NoSuchFileException e )
+        {
+            throw new IOException( "Proxied download failed: " + describeFailure(), e );
+        }
+
+        synchronized ( monitor )
+        {
+            long size = written + pendingLength;
+            if ( starts > 1 || !isSucceeded() || Files.size( result ) != size )
+            {
+                log.warn( "Aborting response, the proxied download of {} failed: {}", file, describeFailure() );
+                throw new IOException( "Proxied download failed: " + describeFailure() );
+            }
+        }
+        out.write( pending, 0, pendingLength );
+    }
+
+    private void await()
+        throws IOException
+    {
+        try
+        {
+            monitor.wait( POLL_INTERVAL );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while waiting for the proxied download", e );
+        }
+    }
+
+    private String describeFailure()
+    {
+        if ( failure != null )
+        {
+            return failure.getMessage();
+        }
+        if ( starts > 1 )
+        {
+            return "the download was restarted";
+        }
+        if ( done && ( result == null || !Files.exists( result ) ) )
+        {
+            return "the download was rejected by the download policies";
+        }
+        return "the downloaded content does not match the cached file";
+    }
+}
@@ -0,0 +1,202 @@
+package org.apache.archiva.webdav.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A range of bytes of a file, as requested with the HTTP <code>Range</code> header.
+ * The start and the end position are inclusive.
+ */
+public class ByteRange
+{
+    private static final String BYTES_UNIT = "bytes=";
+
+    /**
+     * Requests with more ranges are answered with the complete content. Many small ranges cost more to
+     * serve than the complete file and are a known way to overload a server.
+     */
+    public static final int MAX_RANGES = 16;
+
+    private final long start;
+
+    private final long end;
+
+    public ByteRange( long start, long end )
+    {
+        if ( start < 0 || end < start )
+        {
+            throw new IllegalArgumentException( "Invalid range " + start + "-" + end );
+        }
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getStart()
+    {
+        return start;
+    }
+
+    public long getEnd()
+    {
+        return end;
+    }
+
+    public long getLength()
+    {
+        return end - start + 1;
+    }
+
+    /**
+     * Returns the value of the <code>Content-Range</code> header for this range.
+     *
+     * @param completeLength the length of the complete content
+     */
+    public String getContentRange( long completeLength )
+    {
+        return "bytes " + start + "-" + end + "/" + completeLength;
+    }
+
+    /**
+     * Parses the value of a <code>Range</code> header.
+     * <p>
+     * Overlapping and adjacent ranges are merged and the result is sorted by the start position.
+     * </p>
+     *
+     * @param header the header value, may be <code>null</code>
+     * @param length the length of the content
+     * @return <code>null</code>, if the header is missing, not valid or not worth to be served as range, so the
+     * complete content should be sent. An empty list, if none of the ranges is satisfiable.
+     */
+    public static List<ByteRange> parse( String header, long length )
+    {
+        if ( header == null || !header.regionMatches( true, 0, BYTES_UNIT, 0, BYTES_UNIT.length() ) )
+        {
+            return null;
+        }
+        String[] specs = header.substring( BYTES_UNIT.length() ).split( "," );
+        if ( specs.length > MAX_RANGES )
+        {
+            return null;
+        }
+        List<ByteRange> ranges = new ArrayList<>( specs.length );
+        for ( String spec : specs )
+        {
+            spec = spec.trim();
+            int dash = spec.indexOf( '-' );
+            if ( dash < 0 )
+            {
+                return null;
+            }
+            try
+            {
+                String first = spec.substring( 0, dash ).trim();
+                String last = spec.substring( dash + 1 ).trim();
+                if ( first.isEmpty() )
+                {
+                    // suffix range: the last bytes of the content
+                    long suffix = Long.parseLong( last );
+                    if ( suffix < 0 )
+                    {
+                        return null;
+                    }
+                    if ( suffix > 0 && length > 0 )
+                    {
+                        ranges.add( new ByteRange( Math.max( 0, length - suffix ), length - 1 ) );
+                    }
+                }
+                else
+                {
+                    long start = Long.parseLong( first );
+                    long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong( last );
+                    if ( start < 0 || end < start )
+                    {
+                        return null;
+                    }
+                    if ( start < length )
+                    {
+                        ranges.add( new ByteRange( start, Math.min( end, length - 1 ) ) );
+                    }
+                }
+            }
+            catch ( NumberFormatException e )
+            {
+                return null;
+            }
+        }
+        return merge( ranges );
+    }
+
+    private static List<ByteRange> merge( List<ByteRange> ranges )
+    {
+        if ( ranges.size() < 2 )
+        {
+            return ranges;
+        }
+        List<ByteRange> sorted = new ArrayList<>( ranges );
+        Collections.sort( sorted, Comparator.comparingLong( ByteRange::getStart ) );
+        List<ByteRange> merged = new ArrayList<>( sorted.size() );
+        ByteRange current = sorted.get( 0 );
+        for ( ByteRange range : sorted.subList( 1, sorted.size() ) )
+        {
+            if ( range.start <= current.end + 1 )
+            {
+                current = new ByteRange( current.start, Math.max( current.end, range.end ) );
+            }
+            else
+            {
+                merged.add( current );
+                current = range;
+            }
+        }
+        merged.add( current );
+        return merged;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( o == null || getClass() != o.getClass() )
+        {
+            return false;
+        }
+        ByteRange that = (ByteRange) o;
+        return start == that.start && end == that.end;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * Long.hashCode( start ) + Long.hashCode( end );
+    }
+
+    @Override
+    public String toString()
+    {
+        return start + "-" + end;
+    }
+}
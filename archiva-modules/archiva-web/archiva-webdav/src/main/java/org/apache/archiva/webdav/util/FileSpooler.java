@@ -0,0 +1,231 @@
+package org.apache.archiva.webdav.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Writes the content of a file to an output stream with as few copies as possible.
+ * <ul>
+ * <li>If the stream is a file output stream, the content is passed with {@link FileChannel#transferTo(long, long,
+ * WritableByteChannel)}, so the operating system can copy it without passing it through the heap.</li>
+ * <li>If the stream is a Jetty servlet output stream, the file channel is handed to its <code>sendContent</code>
+ * method, that reads the file into the buffers of the connector. This saves the copy through the stream, but
+ * the content is still copied once. The stream is closed afterwards, so this is only used for the complete
+ * content of a response.</li>
+ * <li>Otherwise the content is copied with a buffer, that is large enough for big files. The buffers are pooled,
+ * so concurrent downloads do not allocate a new buffer each.</li>
+ * </ul>
+ */
+public class FileSpooler
+{
+    private static final Logger log = LoggerFactory.getLogger( FileSpooler.class );
+
+    /**
+     * Size of the buffer used to copy to streams, that do not support a faster path.
+     */
+    public static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Files smaller than this are copied with a buffer, as the setup of the faster paths costs more than it saves.
+     */
+    public static final long MIN_CHANNEL_SIZE = 64 * 1024;
+
+    /**
+     * Maximum number of idle buffers kept for reuse. More concurrent copies allocate additional buffers.
+     */
+    private static final int MAX_POOLED_BUFFERS = 32;
+
+    private static final BlockingQueue<byte[]> BUFFERS = new ArrayBlockingQueue<>( MAX_POOLED_BUFFERS );
+
+    private static final ConcurrentMap<Class<?>, Optional<Method>> SEND_CONTENT_METHODS = new ConcurrentHashMap<>();
+
+    private FileSpooler()
+    {
+        // no instances
+    }
+
+    /**
+     * Writes the remaining content of the channel, starting at its current position, to the stream.
+     *
+     * @param channel the file channel to read from
+     * @param out the stream to write to
+     * @param completeResponse <code>true</code>, if the content is the complete response, and the stream may be
+     *                         closed after writing
+     * @return the number of bytes written
+     * @throws IOException if reading or writing fails
+     */
+    public static long spool( FileChannel channel, OutputStream out, boolean completeResponse )
+        throws IOException
+    {
+        return spool( channel, out, Long.MAX_VALUE, completeResponse );
+    }
+
+    /**
+     * Writes at most <code>count</code> bytes of the channel, starting at its current position, to the stream.
+     * Fewer bytes are written, if the end of the file is reached before.
+     *
+     * @param channel the file channel to read from
+     * @param out the stream to write to
+     * @param count the maximum number of bytes to write
+     * @param completeResponse <code>true</code>, if the content is the last part of the response, and the stream
+     *                         may be closed after writing
+     * @return the number of bytes written
+     * @throws IOException if reading or writing fails
+     */
+    public static long spool( FileChannel channel, OutputStream out, long count, boolean completeResponse )
+        throws IOException
+    {
+        long available = channel.size() - channel.position();
+        long remaining = Math.min( count, available );
+        if ( remaining >= MIN_CHANNEL_SIZE )
+        {
+            if ( out instanceof FileOutputStream )
+            {
+                return transfer( channel, ( (FileOutputStream) out ).getChannel(), remaining );
+            }
+            // sendContent writes up to the end of the file
+            Method sendContent =
+                completeResponse && remaining == available ? getSendContentMethod( out.getClass() ) : null;
+            if ( sendContent != null )
+            {
+                return sendContent( sendContent, channel, out, remaining );
+            }
+        }
+        return copy( channel, out, remaining );
+    }
+
+    private static long transfer( FileChannel channel, WritableByteChannel target, long count )
+        throws IOException
+    {
+        long start = channel.position();
+        long position = start;
+        long end = Math.min( channel.size(), start + count );
+        while ( position < end )
+        {
+            long transferred = channel.transferTo( position, end - position, target );
+            if ( transferred <= 0 )
+            {
+                // the file was truncated meanwhile
+                break;
+            }
+            position += transferred;
+        }
+        channel.position( position );
+        return position - start;
+    }
+
+    private static long sendContent( Method sendContent, FileChannel channel, OutputStream out, long remaining )
+        throws IOException
+    {
+        try
+        {
+            sendContent.invoke( out, channel );
+            return remaining;
+        }
+        catch ( InvocationTargetException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException( e.getCause() );
+        }
+        catch ( IllegalAccessException e )
+        {
+            throw new IOException( e );
+        }
+    }
+
+    private static long copy( FileChannel channel, OutputStream out, long remaining )
+        throws IOException
+    {
+        // small files do not need a large buffer
+        boolean pooled = remaining >= MIN_CHANNEL_SIZE;
+        byte[] buffer = pooled ? borrowBuffer() : new byte[(int) Math.max( 1, remaining )];
+        try
+        {
+            ByteBuffer byteBuffer = ByteBuffer.wrap( buffer );
+            long total = 0;
+            while ( total < remaining )
+            {
+                byteBuffer.limit( (int) Math.min( buffer.length, remaining - total ) );
+                int count = channel.read( byteBuffer );
+                if ( count <= 0 )
+                {
+                    break;
+                }
+                out.write( buffer, 0, count );
+                total += count;
+                byteBuffer.clear();
+            }
+            return total;
+        }
+        finally
+        {
+            if ( pooled )
+            {
+                // dropped, if the pool is full
+                BUFFERS.offer( buffer );
+            }
+        }
+    }
+
+    private static byte[] borrowBuffer()
+    {
+        byte[] buffer = BUFFERS.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    private static Method getSendContentMethod( Class<?> streamClass )
+    {
+        return SEND_CONTENT_METHODS.computeIfAbsent( streamClass, clazz -> {
+            if ( !"org.eclipse.jetty.server.HttpOutput".equals( clazz.getName() ) )
+            {
+                return Optional.empty();
+            }
+            try
+            {
+                return Optional.of( clazz.getMethod( "sendContent", ReadableByteChannel.class ) );
+            }
+            catch ( NoSuchMethodException e )
+            {
+                log.debug( "No sendContent method found on {}", clazz.getName() );
+                return Optional.empty();
+            }
+        } ).orElse( null );
+    }
+}
@@ -0,0 +1,417 @@
+package org.apache.archiva.webdav.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.maven2.metadata.MavenMetadataReader;
+import org.apache.archiva.model.ArchivaRepositoryMetadata;
+import org.apache.archiva.repository.metadata.RepositoryMetadataException;
+import org.apache.archiva.repository.metadata.RepositoryMetadataMerge;
+import org.apache.archiva.repository.metadata.RepositoryMetadataWriter;
+import org.apache.archiva.xml.XMLException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache for the merged <code>maven-metadata.xml</code> files of repository groups.
+ * <p>
+ * The metadata files of the member repositories are only read and merged again, if one of them was added,
+ * removed or changed its size or modification time. The merged content and its SHA-1 and MD5 checksums are
+ * computed together and kept in memory. They are written to the output file and its checksum files only
+ * when the content changed or the files were removed, so the metadata and the checksums always match.
+ * </p>
+ * <p>
+ * The number of entries is limited, the least recently used entries are dropped first. This class is thread
+ * safe, concurrent requests for the same merged file wait for the merge of the first request.
+ * </p>
+ */
+public class MergedMetadataCache
+{
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    public static final String SHA1_EXTENSION = ".sha1";
+
+    public static final String MD5_EXTENSION = ".md5";
+
+    private final Logger log = LoggerFactory.getLogger( MergedMetadataCache.class );
+
+    private final Map<Path, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong( 0 );
+
+    private final AtomicLong merges = new AtomicLong( 0 );
+
+    public MergedMetadataCache()
+    {
+        this( DEFAULT_MAX_ENTRIES );
+    }
+
+    public MergedMetadataCache( final int maxEntries )
+    {
+        this.entries = new LinkedHashMap<Path, Entry>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<Path, Entry> eldest )
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the merged metadata of the given member files. The member files are merged in the given order, if
+     * there is no current entry for the output file.
+     *
+     * @param outputFile the file the merged metadata is written to. The checksums are written to the files with the
+     *                   same name and the extensions {@link #SHA1_EXTENSION} and {@link #MD5_EXTENSION}.
+     * @param memberFiles the metadata files of the member repositories
+     * @return the entry with the merged content and the checksums
+     * @throws XMLException if a member file could not be read
+     * @throws RepositoryMetadataException if the metadata could not be merged or serialized
+     * @throws IOException if the merged files could not be written
+     */
+    public Entry getMergedMetadata( Path outputFile, List<Path> memberFiles )
+        throws XMLException, RepositoryMetadataException, IOException
+    {
+        Path key = outputFile.toAbsolutePath().normalize();
+        List<MemberState> states = new ArrayList<>( memberFiles.size() );
+        for ( Path memberFile : memberFiles )
+        {
+            states.add( MemberState.of( memberFile ) );
+        }
+
+        Entry entry;
+        synchronized ( entries )
+        {
+            entry = entries.get( key );
+            if ( entry == null )
+            {
+                entry = new Entry( key );
+                entries.put( key, entry );
+            }
+        }
+
+        synchronized ( entry )
+        {
+            if ( entry.content != null && states.equals( entry.members ) )
+            {
+                hits.incrementAndGet();
+                if ( !entry.isWritten() )
+                {
+                    // removed from disk, e.g. by a repository purge
+                    entry.write();
+                }
+                return entry;
+            }
+
+            merges.incrementAndGet();
+            ArchivaRepositoryMetadata mergedMetadata = new ArchivaRepositoryMetadata();
+            for ( Path memberFile : memberFiles )
+            {
+                ArchivaRepositoryMetadata repoMetadata = MavenMetadataReader.read( memberFile );
+                mergedMetadata = RepositoryMetadataMerge.merge( mergedMetadata, repoMetadata );
+            }
+            StringWriter writer = new StringWriter();
+            RepositoryMetadataWriter.write( mergedMetadata, writer );
+            byte[] content = writer.toString().getBytes( StandardCharsets.UTF_8 );
+
+            if ( entry.content == null || !Arrays.equals( content, entry.content ) || !entry.isWritten() )
+            {
+                entry.content = content;
+                entry.sha1 = digest( "SHA-1", content );
+                entry.md5 = digest( "MD5", content );
+                entry.write();
+            }
+            else
+            {
+                log.debug( "Merged metadata {} did not change", key );
+            }
+            entry.members = states;
+            return entry;
+        }
+    }
+
+    /**
+     * Returns the entry for the output file, if none of the member files of the last merge changed.
+     * Checksum requests use this, as they do not know all member files of the metadata request.
+     *
+     * @param outputFile the file the merged metadata is written to
+     * @return the current entry, or <code>null</code> if there is none or it needs to be merged again
+     * @throws IOException if the merged files had to be written again and this failed
+     */
+    public Entry getCurrentEntry( Path outputFile )
+        throws IOException
+    {
+        Entry entry;
+        synchronized ( entries )
+        {
+            entry = entries.get( outputFile.toAbsolutePath().normalize() );
+        }
+        if ( entry == null )
+        {
+            return null;
+        }
+        synchronized ( entry )
+        {
+            if ( entry.content == null )
+            {
+                return null;
+            }
+            for ( MemberState member : entry.members )
+            {
+                if ( !member.equals( MemberState.of( member.file ) ) )
+                {
+                    return null;
+                }
+            }
+            hits.incrementAndGet();
+            if ( !entry.isWritten() )
+            {
+                entry.write();
+            }
+            return entry;
+        }
+    }
+
+    public void clear()
+    {
+        synchronized ( entries )
+        {
+            entries.clear();
+        }
+    }
+
+    public int size()
+    {
+        synchronized ( entries )
+        {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Returns the number of requests, that were answered without reading the member files.
+     */
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of requests, that needed to merge the member files.
+     */
+    public long getMergeCount()
+    {
+        return merges.get();
+    }
+
+    private static String digest( String algorithm, byte[] content )
+        throws RepositoryMetadataException
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance( algorithm ).digest( content );
+            StringBuilder hex = new StringBuilder( digest.length * 2 );
+            for ( byte b : digest )
+            {
+                hex.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( b & 0xf, 16 ) );
+            }
+            return hex.toString();
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new RepositoryMetadataException( "Digest algorithm not available: " + algorithm, e );
+        }
+    }
+
+    /**
+     * The merged metadata of one group and project.
+     */
+    public static class Entry
+    {
+        private final Path file;
+
+        private List<MemberState> members;
+
+        private byte[] content;
+
+        private String sha1;
+
+        private String md5;
+
+        Entry( Path file )
+        {
+            this.file = file;
+        }
+
+        public Path getFile()
+        {
+            return file;
+        }
+
+        /**
+         * Returns the file with the checksum for the given extension.
+         *
+         * @param extension {@link #SHA1_EXTENSION} or {@link #MD5_EXTENSION}
+         * @return the checksum file, or <code>null</code> for other extensions
+         */
+        public Path getChecksumFile( String extension )
+        {
+            if ( SHA1_EXTENSION.equals( extension ) || MD5_EXTENSION.equals( extension ) )
+            {
+                return file.resolveSibling( file.getFileName() + extension );
+            }
+            return null;
+        }
+
+        public synchronized String getSha1()
+        {
+            return sha1;
+        }
+
+        public synchronized String getMd5()
+        {
+            return md5;
+        }
+
+        public synchronized byte[] getContent()
+        {
+            return content.clone();
+        }
+
+        private boolean isWritten()
+        {
+            return Files.exists( file ) && Files.exists( getChecksumFile( SHA1_EXTENSION ) ) && Files.exists(
+                getChecksumFile( MD5_EXTENSION ) );
+        }
+
+        private void write()
+            throws IOException
+        {
+            Files.createDirectories( file.getParent() );
+            String fileName = file.getFileName().toString();
+            // the checksums first, so a client never sees new metadata with old checksums
+            writeAtomically( getChecksumFile( SHA1_EXTENSION ),
+                             ( sha1 + "  " + fileName ).getBytes( StandardCharsets.US_ASCII ) );
+            writeAtomically( getChecksumFile( MD5_EXTENSION ),
+                             ( md5 + "  " + fileName ).getBytes( StandardCharsets.US_ASCII ) );
+            writeAtomically( file, content );
+            // not older than the metadata, so the stored checksums are used for the entity tag
+            FileTime lastModified = Files.getLastModifiedTime( file );
+            Files.setLastModifiedTime( getChecksumFile( SHA1_EXTENSION ), lastModified );
+            Files.setLastModifiedTime( getChecksumFile( MD5_EXTENSION ), lastModified );
+        }
+
+        private static void writeAtomically( Path target, byte[] content )
+            throws IOException
+        {
+            Path temp = Files.createTempFile( target.getParent(), "." + target.getFileName(), ".tmp" );
+            try
+            {
+                Files.write( temp, content );
+                try
+                {
+                    Files.move( temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+                }
+                catch ( AtomicMoveNotSupportedException e )
+                {
+                    Files.move( temp, target, StandardCopyOption.REPLACE_EXISTING );
+                }
+            }
+            finally
+            {
+                Files.deleteIfExists( temp );
+            }
+        }
+    }
+
+    /**
+     * Size and modification time of a member file, <code>-1</code> if the file does not exist.
+     */
+    private static class MemberState
+    {
+        final Path file;
+
+        final long size;
+
+        final long lastModified;
+
+        private MemberState( Path file, long size, long lastModified )
+        {
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        static MemberState of( Path file )
+        {
+            try
+            {
+                BasicFileAttributes attrs = Files.readAttributes( file, BasicFileAttributes.class );
+                return new MemberState( file, attrs.size(), attrs.lastModifiedTime().toMillis() );
+            }
+            catch ( IOException e )
+            {
+                return new MemberState( file, -1, -1 );
+            }
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() )
+            {
+                return false;
+            }
+            MemberState that = (MemberState) o;
+            return size == that.size && lastModified == that.lastModified && file.equals( that.file );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = file.hashCode();
+            result = 31 * result + Long.hashCode( size );
+            result = 31 * result + Long.hashCode( lastModified );
+            return result;
+        }
+    }
+}
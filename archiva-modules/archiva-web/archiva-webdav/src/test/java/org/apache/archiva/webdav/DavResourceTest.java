@@ -45,6 +45,7 @@
 import org.springframework.test.context.ContextConfiguration;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -61,6 +62,7 @@
     private MimeTypes mimeTypes;
 
     @Inject
+    @Named( value = "fileLockManager" )
     private FileLockManager fileLockManager;
 
     private ArchivaDavResourceLocator resourceLocator;
@@ -574,4 +574,84 @@ public void testGetNoProxySnapshotRedirectToTimestampedSnapshot()
                       response.getHeader("Location") );
     }
 
+    @Test
+    public void testGetNoProxyArtifactNotModified()
+        throws Exception
+    {
+        String commonsLangJar = "commons-lang/commons-lang/2.1/commons-lang-2.1.jar";
+        Path artifactFile = repoRootInternal.resolve( commonsLangJar );
+        Files.createDirectories( artifactFile.getParent() );
+        org.apache.archiva.common.utils.FileUtils.writeStringToFile( artifactFile, Charset.defaultCharset(),
+                                                                     "dummy-commons-lang-artifact" );
+        // the stored checksum is used as entity tag
+        org.apache.archiva.common.utils.FileUtils.writeStringToFile( artifactFile.resolveSibling(
+            "commons-lang-2.1.jar.sha1" ), Charset.defaultCharset(), "2bb14b388973351b0a4dfe11d171965f59cc61a1" );
+
+        MockHttpServletResponse response = execute( createGetRequest( "/repository/internal/" + commonsLangJar ) );
+        assertEquals( HttpServletResponse.SC_OK, response.getStatus() );
+        assertEquals( "\"2bb14b388973351b0a4dfe11d171965f59cc61a1\"", response.getHeader( "ETag" ) );
+
+        MockHttpServletRequest request = createGetRequest( "/repository/internal/" + commonsLangJar );
+        request.addHeader( "If-None-Match", "\"other\", \"2bb14b388973351b0a4dfe11d171965f59cc61a1\"" );
+        response = execute( request );
+        assertEquals( HttpServletResponse.SC_NOT_MODIFIED, response.getStatus() );
+        assertEquals( 0, response.getContentAsByteArray().length );
+
+        request = createGetRequest( "/repository/internal/" + commonsLangJar );
+        request.addHeader( "If-None-Match", "\"other\"" );
+        assertEquals( HttpServletResponse.SC_OK, execute( request ).getStatus() );
+    }
+
+    @Test
+    public void testGetNoProxyArtifactRange()
+        throws Exception
+    {
+        String commonsLangJar = "commons-lang/commons-lang/2.1/commons-lang-2.1.jar";
+        String expectedArtifactContents = "dummy-commons-lang-artifact";
+        Path artifactFile = repoRootInternal.resolve( commonsLangJar );
+        Files.createDirectories( artifactFile.getParent() );
+        org.apache.archiva.common.utils.FileUtils.writeStringToFile( artifactFile, Charset.defaultCharset(),
+                                                                     expectedArtifactContents );
+
+        MockHttpServletRequest request = createGetRequest( "/repository/internal/" + commonsLangJar );
+        request.addHeader( "Range", "bytes=6-" );
+        MockHttpServletResponse response = execute( request );
+        assertEquals( HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus() );
+        assertEquals( "bytes 6-26/27", response.getHeader( "Content-Range" ) );
+        assertEquals( "commons-lang-artifact", response.getContentAsString() );
+
+        request = createGetRequest( "/repository/internal/" + commonsLangJar );
+        request.addHeader( "Range", "bytes=0-4,-8" );
+        response = execute( request );
+        assertEquals( HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus() );
+        assertTrue( response.getContentType().startsWith( "multipart/byteranges" ) );
+        String content = response.getContentAsString();
+        assertTrue( content.contains( "Content-Range: bytes 0-4/27\r\n\r\ndummy\r\n" ) );
+        assertTrue( content.contains( "Content-Range: bytes 19-26/27\r\n\r\nartifact\r\n" ) );
+        assertEquals( content.length(), response.getContentLength() );
+
+        // the file was changed since the client got the first part
+        request = createGetRequest( "/repository/internal/" + commonsLangJar );
+        request.addHeader( "Range", "bytes=6-" );
+        request.addHeader( "If-Range", "\"outdated\"" );
+        response = execute( request );
+        assertEquals( HttpServletResponse.SC_OK, response.getStatus() );
+        assertEquals( expectedArtifactContents, response.getContentAsString() );
+
+        request = createGetRequest( "/repository/internal/" + commonsLangJar );
+        request.addHeader( "Range", "bytes=100-" );
+        response = execute( request );
+        assertEquals( HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus() );
+        assertEquals( "bytes */27", response.getHeader( "Content-Range" ) );
+    }
+
+    private MockHttpServletRequest createGetRequest( String path )
+    {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRequestURI( path );
+        request.addHeader( "User-Agent", "Apache Archiva unit test" );
+        request.setMethod( "GET" );
+        return request;
+    }
+
 }
@@ -0,0 +1,168 @@
+package org.apache.archiva.webdav;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Test sending a proxied download to the client, while it is written.
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class StreamingProxyTransferTest
+    extends TestCase
+{
+    private static final int CHUNKS = 20;
+
+    private static final int CHUNK_SIZE = 10000;
+
+    private ExecutorService executor;
+
+    private Path workingDirectory;
+
+    private Path tempFile;
+
+    private Path repositoryFile;
+
+    @Override
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+        executor = Executors.newSingleThreadExecutor();
+        workingDirectory = Files.createTempDirectory( "streaming" );
+        tempFile = workingDirectory.resolve( "artifact.jar" );
+        repositoryFile = workingDirectory.resolve( "repository" ).resolve( "artifact.jar" );
+        Files.createDirectories( repositoryFile.getParent() );
+    }
+
+    @Override
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        executor.shutdownNow();
+        org.apache.archiva.common.utils.FileUtils.deleteDirectory( workingDirectory );
+        super.tearDown();
+    }
+
+    @Test
+    public void testContentIsSentWhileDownloading()
+        throws Exception
+    {
+        StreamingProxyTransfer transfer = new StreamingProxyTransfer();
+        Future<?> download = executor.submit( () -> download( transfer, true ) );
+
+        assertTrue( transfer.awaitStart() );
+        assertEquals( CHUNKS * CHUNK_SIZE, transfer.getContentLength() );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transfer.spool( out );
+        download.get();
+
+        assertTrue( Arrays.equals( Files.readAllBytes( repositoryFile ), out.toByteArray() ) );
+    }
+
+    @Test
+    public void testRejectedDownloadAbortsResponse()
+        throws Exception
+    {
+        StreamingProxyTransfer transfer = new StreamingProxyTransfer();
+        Future<?> download = executor.submit( () -> download( transfer, false ) );
+
+        assertTrue( transfer.awaitStart() );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try
+        {
+            transfer.spool( out );
+            fail( "IOException expected" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+        download.get();
+
+        // the client never receives the complete content
+        assertTrue( out.size() < CHUNKS * CHUNK_SIZE );
+        assertFalse( Files.exists( repositoryFile ) );
+    }
+
+    @Test
+    public void testFinishedDownloadIsNotStreamed()
+        throws Throwable
+    {
+        StreamingProxyTransfer transfer = new StreamingProxyTransfer();
+        transfer.complete( null );
+
+        assertFalse( transfer.awaitStart() );
+        assertNull( transfer.awaitResult() );
+    }
+
+    /**
+     * Writes the temporary file in chunks like the proxy does, and moves it into the repository, if it is valid.
+     */
+    private Void download( StreamingProxyTransfer transfer, boolean valid )
+        throws Exception
+    {
+        transfer.transferStarted( tempFile, CHUNKS * CHUNK_SIZE, 0 );
+        byte[] chunk = new byte[CHUNK_SIZE];
+        try ( OutputStream out = Files.newOutputStream( tempFile ) )
+        {
+            for ( int i = 0; i < CHUNKS; i++ )
+            {
+                Arrays.fill( chunk, (byte) i );
+                out.write( chunk );
+                out.flush();
+                transfer.transferProgress( tempFile, ( i + 1L ) * CHUNK_SIZE );
+                Thread.sleep( 5 );
+            }
+        }
+        if ( valid )
+        {
+            Files.move( tempFile, repositoryFile, StandardCopyOption.REPLACE_EXISTING );
+            transfer.complete( repositoryFile );
+        }
+        else
+        {
+            // the checksum policy removes the invalid download
+            Files.delete( tempFile );
+            transfer.complete( null );
+        }
+        return null;
+    }
+}
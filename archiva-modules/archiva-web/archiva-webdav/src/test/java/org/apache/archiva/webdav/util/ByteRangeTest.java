@@ -0,0 +1,84 @@
+package org.apache.archiva.webdav.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ByteRangeTest
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class ByteRangeTest
+{
+    @Test
+    public void testSingleRanges()
+    {
+        assertEquals( Collections.singletonList( new ByteRange( 0, 99 ) ), ByteRange.parse( "bytes=0-99", 1000 ) );
+        assertEquals( Collections.singletonList( new ByteRange( 500, 999 ) ), ByteRange.parse( "bytes=500-", 1000 ) );
+        assertEquals( Collections.singletonList( new ByteRange( 900, 999 ) ), ByteRange.parse( "bytes=-100", 1000 ) );
+        // ranges beyond the end are cut
+        assertEquals( Collections.singletonList( new ByteRange( 990, 999 ) ),
+                      ByteRange.parse( "bytes=990-2000", 1000 ) );
+        assertEquals( Collections.singletonList( new ByteRange( 0, 999 ) ), ByteRange.parse( "bytes=-2000", 1000 ) );
+        assertEquals( "bytes 0-99/1000", new ByteRange( 0, 99 ).getContentRange( 1000 ) );
+    }
+
+    @Test
+    public void testMultipleRangesAreMerged()
+    {
+        assertEquals( Arrays.asList( new ByteRange( 0, 9 ), new ByteRange( 900, 999 ) ),
+                      ByteRange.parse( "bytes=-100, 0-9", 1000 ) );
+        assertEquals( Collections.singletonList( new ByteRange( 0, 29 ) ),
+                      ByteRange.parse( "bytes=0-9,10-19,15-29", 1000 ) );
+    }
+
+    @Test
+    public void testInvalidRangesAreIgnored()
+    {
+        assertNull( ByteRange.parse( null, 1000 ) );
+        assertNull( ByteRange.parse( "items=0-9", 1000 ) );
+        assertNull( ByteRange.parse( "bytes=9-0", 1000 ) );
+        assertNull( ByteRange.parse( "bytes=a-b", 1000 ) );
+        assertNull( ByteRange.parse( "bytes=10", 1000 ) );
+        StringBuilder header = new StringBuilder( "bytes=0-0" );
+        for ( int i = 1; i <= ByteRange.MAX_RANGES; i++ )
+        {
+            header.append( ',' ).append( i * 2 ).append( '-' ).append( i * 2 );
+        }
+        assertNull( ByteRange.parse( header.toString(), 1000 ) );
+    }
+
+    @Test
+    public void testUnsatisfiableRanges()
+    {
+        assertTrue( ByteRange.parse( "bytes=1000-", 1000 ).isEmpty() );
+        assertTrue( ByteRange.parse( "bytes=-0", 1000 ).isEmpty() );
+        assertTrue( ByteRange.parse( "bytes=0-", 0 ).isEmpty() );
+    }
+}
@@ -0,0 +1,166 @@
+package org.apache.archiva.webdav.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the former stream copy of the WebDAV GET responses with the buffered path of {@link FileSpooler}.
+ * The content is sent over a loopback socket, that is drained by a separate thread.
+ * <ul>
+ * <li><code>stream</code>: copy from a file input stream with the 4 KB buffer of IOUtils</li>
+ * <li><code>buffer</code>: FileSpooler with a stream, that is not a file or Jetty output stream</li>
+ * </ul>
+ * <p>
+ * This is not a unit test, run it with the <code>main</code> method from the test classpath. The test files are
+ * created in the temp directory, the largest needs 500 MB of free space.
+ * </p>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class FileSpoolerBenchmark
+{
+    @Param( { "1024", "1048576", "524288000" } )
+    public long fileSize;
+
+    @Param( { "stream", "buffer" } )
+    public String mode;
+
+    private Path file;
+
+    private ServerSocketChannel server;
+
+    private SocketChannel client;
+
+    private Thread drain;
+
+    @Setup( Level.Trial )
+    public void setup( )
+        throws IOException
+    {
+        file = Files.createTempFile( "spool-benchmark", ".bin" );
+        byte[] block = new byte[1024 * 1024];
+        new Random( 42 ).nextBytes( block );
+        try (OutputStream out = Files.newOutputStream( file ))
+        {
+            long written = 0;
+            while ( written < fileSize )
+            {
+                int len = (int) Math.min( block.length, fileSize - written );
+                out.write( block, 0, len );
+                written += len;
+            }
+        }
+
+        server = ServerSocketChannel.open( );
+        server.bind( new InetSocketAddress( InetAddress.getLoopbackAddress( ), 0 ) );
+        client = SocketChannel.open( server.getLocalAddress( ) );
+        SocketChannel accepted = server.accept( );
+        drain = new Thread( ( ) -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect( 256 * 1024 );
+            try
+            {
+                while ( accepted.read( buffer ) >= 0 )
+                {
+                    buffer.clear( );
+                }
+            }
+            catch ( IOException e )
+            {
+                // closed by the tear down
+            }
+        }, "spool-benchmark-drain" );
+        drain.setDaemon( true );
+        drain.start( );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown( )
+        throws IOException, InterruptedException
+    {
+        client.close( );
+        drain.join( 10000 );
+        server.close( );
+        Files.deleteIfExists( file );
+    }
+
+    @Benchmark
+    public long spool( )
+        throws IOException
+    {
+        if ( "stream".equals( mode ) )
+        {
+            try (InputStream in = Files.newInputStream( file ))
+            {
+                return IOUtils.copyLarge( in, Channels.newOutputStream( client ) );
+            }
+        }
+        try (FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ))
+        {
+            return FileSpooler.spool( channel, Channels.newOutputStream( client ), false );
+        }
+    }
+
+    public static void main( String[] args )
+        throws RunnerException
+    {
+        Options options = new OptionsBuilder( )
+            .include( FileSpoolerBenchmark.class.getSimpleName( ) )
+            .build( );
+        new Runner( options ).run( );
+    }
+}
@@ -0,0 +1,146 @@
+package org.apache.archiva.webdav.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * FileSpoolerTest
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class FileSpoolerTest
+{
+    private Path source;
+
+    private Path target;
+
+    @Before
+    public void createFiles()
+        throws IOException
+    {
+        source = Files.createTempFile( "spool-source", ".bin" );
+        target = Files.createTempFile( "spool-target", ".bin" );
+    }
+
+    @After
+    public void deleteFiles()
+        throws IOException
+    {
+        Files.deleteIfExists( source );
+        Files.deleteIfExists( target );
+    }
+
+    @Test
+    public void testSmallFileIsCopied()
+        throws IOException
+    {
+        byte[] content = createContent( 1000 );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open( source, StandardOpenOption.READ ))
+        {
+            assertEquals( content.length, FileSpooler.spool( channel, out, true ) );
+        }
+        assertArrayEquals( content, out.toByteArray() );
+    }
+
+    @Test
+    public void testLargeFileIsCopiedToStream()
+        throws IOException
+    {
+        byte[] content = createContent( FileSpooler.BUFFER_SIZE * 2 + 17 );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open( source, StandardOpenOption.READ ))
+        {
+            assertEquals( content.length, FileSpooler.spool( channel, out, true ) );
+        }
+        assertArrayEquals( content, out.toByteArray() );
+    }
+
+    @Test
+    public void testLargeFileIsTransferredToChannel()
+        throws IOException
+    {
+        byte[] content = createContent( FileSpooler.BUFFER_SIZE * 2 + 17 );
+        try (FileChannel channel = FileChannel.open( source, StandardOpenOption.READ );
+             FileOutputStream out = new FileOutputStream( target.toFile() ))
+        {
+            // start in the middle, like a partial response
+            channel.position( 100 );
+            assertEquals( content.length - 100, FileSpooler.spool( channel, out, false ) );
+            assertEquals( content.length, channel.position() );
+        }
+        byte[] expected = new byte[content.length - 100];
+        System.arraycopy( content, 100, expected, 0, expected.length );
+        assertArrayEquals( expected, Files.readAllBytes( target ) );
+    }
+
+    @Test
+    public void testCountIsRespected()
+        throws IOException
+    {
+        byte[] content = createContent( FileSpooler.BUFFER_SIZE * 2 + 17 );
+        int start = 1000;
+        int count = FileSpooler.BUFFER_SIZE + 5;
+        byte[] expected = new byte[count];
+        System.arraycopy( content, start, expected, 0, count );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open( source, StandardOpenOption.READ ))
+        {
+            channel.position( start );
+            assertEquals( count, FileSpooler.spool( channel, out, count, false ) );
+        }
+        assertArrayEquals( expected, out.toByteArray() );
+
+        try (FileChannel channel = FileChannel.open( source, StandardOpenOption.READ );
+             FileOutputStream fileOut = new FileOutputStream( target.toFile() ))
+        {
+            channel.position( start );
+            assertEquals( count, FileSpooler.spool( channel, fileOut, count, false ) );
+            assertEquals( start + count, channel.position() );
+        }
+        assertArrayEquals( expected, Files.readAllBytes( target ) );
+    }
+
+    private byte[] createContent( int size )
+        throws IOException
+    {
+        byte[] content = new byte[size];
+        new Random( 42 ).nextBytes( content );
+        Files.write( source, content );
+        return content;
+    }
+}
@@ -0,0 +1,152 @@
+package org.apache.archiva.webdav.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.common.utils.FileUtils;
+import org.apache.archiva.maven2.metadata.MavenMetadataReader;
+import org.apache.archiva.model.ArchivaRepositoryMetadata;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MergedMetadataCacheTest
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class MergedMetadataCacheTest
+{
+    private Path baseDir;
+
+    private Path first;
+
+    private Path second;
+
+    private Path outputFile;
+
+    private List<Path> members;
+
+    private MergedMetadataCache cache;
+
+    @Before
+    public void createMetadata()
+        throws Exception
+    {
+        baseDir = Paths.get( "target/merged-metadata-cache" );
+        FileUtils.deleteDirectory( baseDir );
+        first = writeMetadata( "first", "1.0" );
+        second = writeMetadata( "second", "2.0" );
+        outputFile = baseDir.resolve( "first/dummy/maven-metadata-group.xml" );
+        members = Arrays.asList( first, second );
+        cache = new MergedMetadataCache( 10 );
+    }
+
+    @After
+    public void deleteMetadata()
+        throws Exception
+    {
+        FileUtils.deleteDirectory( baseDir );
+    }
+
+    @Test
+    public void testMembersAreMergedOnce()
+        throws Exception
+    {
+        MergedMetadataCache.Entry entry = cache.getMergedMetadata( outputFile, members );
+        assertEquals( 1, cache.getMergeCount() );
+        ArchivaRepositoryMetadata metadata = MavenMetadataReader.read( entry.getFile() );
+        assertEquals( Arrays.asList( "1.0", "2.0" ), metadata.getAvailableVersions() );
+        assertArrayEquals( entry.getContent(), Files.readAllBytes( outputFile ) );
+        assertEquals( entry.getSha1() + "  maven-metadata-group.xml", new String(
+            Files.readAllBytes( entry.getChecksumFile( MergedMetadataCache.SHA1_EXTENSION ) ),
+            StandardCharsets.US_ASCII ) );
+        assertEquals( entry.getMd5() + "  maven-metadata-group.xml", new String(
+            Files.readAllBytes( entry.getChecksumFile( MergedMetadataCache.MD5_EXTENSION ) ),
+            StandardCharsets.US_ASCII ) );
+
+        assertSame( entry, cache.getMergedMetadata( outputFile, members ) );
+        assertSame( entry, cache.getCurrentEntry( outputFile ) );
+        assertEquals( 1, cache.getMergeCount() );
+        assertEquals( 2, cache.getHitCount() );
+    }
+
+    @Test
+    public void testChangedMemberIsMergedAgain()
+        throws Exception
+    {
+        String sha1 = cache.getMergedMetadata( outputFile, members ).getSha1();
+
+        writeMetadata( "second", "3.0" );
+        Files.setLastModifiedTime( second, FileTime.fromMillis( System.currentTimeMillis() + 60000 ) );
+        assertNull( cache.getCurrentEntry( outputFile ) );
+
+        MergedMetadataCache.Entry entry = cache.getMergedMetadata( outputFile, members );
+        assertEquals( 2, cache.getMergeCount() );
+        assertFalse( sha1.equals( entry.getSha1() ) );
+        assertTrue( MavenMetadataReader.read( outputFile ).getAvailableVersions().contains( "3.0" ) );
+
+        // another set of members is merged again
+        cache.getMergedMetadata( outputFile, Arrays.asList( first ) );
+        assertEquals( 3, cache.getMergeCount() );
+    }
+
+    @Test
+    public void testRemovedFilesAreWrittenAgain()
+        throws Exception
+    {
+        MergedMetadataCache.Entry entry = cache.getMergedMetadata( outputFile, members );
+        Files.delete( outputFile );
+        Files.delete( entry.getChecksumFile( MergedMetadataCache.MD5_EXTENSION ) );
+
+        cache.getMergedMetadata( outputFile, members );
+        assertEquals( 1, cache.getMergeCount() );
+        assertArrayEquals( entry.getContent(), Files.readAllBytes( outputFile ) );
+        assertTrue( Files.exists( entry.getChecksumFile( MergedMetadataCache.MD5_EXTENSION ) ) );
+    }
+
+    private Path writeMetadata( String repository, String version )
+        throws Exception
+    {
+        Path file = baseDir.resolve( repository ).resolve( "dummy/maven-metadata.xml" );
+        Files.createDirectories( file.getParent() );
+        String content = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<metadata><groupId>dummy</groupId><artifactId>dummy</artifactId><versioning>"
+            + "<versions><version>" + version + "</version></versions>"
+            + "<lastUpdated>20080708095554</lastUpdated></versioning></metadata>";
+        Files.write( file, content.getBytes( StandardCharsets.UTF_8 ) );
+        return file;
+    }
+}
@@ -312,4 +312,37 @@ public List<ArtifactMetadata> searchArtifacts( String key, String text, String r
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public MetadataCursor<ArtifactMetadata> streamArtifacts( String repositoryId, QueryParameter queryParameter )
+        throws MetadataRepositoryException
+    {
+        return PagedMetadataCursor.fromList( getArtifacts( repositoryId ), queryParameter );
+    }
+
+    @Override
+    public MetadataCursor<ArtifactMetadata> streamArtifactsByDateRange( String repositoryId, Date startTime,
+                                                                        Date endTime, QueryParameter queryParameter )
+        throws MetadataRepositoryException
+    {
+        return PagedMetadataCursor.fromList( getArtifactsByDateRange( repositoryId, startTime, endTime ), queryParameter );
+    }
+
+    @Override
+    public MetadataCursor<ArtifactMetadata> streamArtifactsByChecksum( String repositoryId, String checksum,
+                                                                       QueryParameter queryParameter )
+        throws MetadataRepositoryException
+    {
+        return PagedMetadataCursor.fromList( getArtifactsByChecksum( repositoryId, checksum ), queryParameter );
+    }
+
+    @Override
+    public MetadataCursor<ArtifactMetadata> streamSearchArtifacts( String key, String text, String repositoryId,
+                                                                   boolean exact, QueryParameter queryParameter )
+        throws MetadataRepositoryException
+    {
+        List<ArtifactMetadata> artifacts =
+            key == null ? searchArtifacts( text, repositoryId, exact ) : searchArtifacts( key, text, repositoryId, exact );
+        return PagedMetadataCursor.fromList( artifacts, queryParameter );
+    }
+
 }
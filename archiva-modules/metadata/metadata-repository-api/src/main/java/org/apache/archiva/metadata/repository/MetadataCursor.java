@@ -0,0 +1,69 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterator over the results of a streaming query of the {@link MetadataRepository}. The results are fetched
+ * from the backend while iterating, so the whole result is never kept in memory.
+ * <p>
+ * Errors of the backend are thrown as {@link MetadataCursorException} by {@link #hasNext()} and {@link #next()}.
+ * A cursor must be closed, if it is not iterated to the end. The cursor must not be used after the repository
+ * session, that created it, was closed.
+ * </p>
+ *
+ * @param <T> the type of the results
+ * @since 3.0.0
+ */
+public interface MetadataCursor<T>
+    extends Iterator<T>, AutoCloseable
+{
+    /**
+     * Returns the token, that can be used in a {@link QueryParameter} to continue the query after the last
+     * element returned by this cursor. Before the first element is returned, this is the token the cursor was
+     * created with.
+     *
+     * @return the resume token, or <code>null</code> if no element was returned yet
+     */
+    String getResumeToken();
+
+    /**
+     * Releases the resources of the backend. Subsequent calls of {@link #hasNext()} return <code>false</code>.
+     */
+    @Override
+    void close();
+
+    /**
+     * Returns a sequential stream over the remaining elements. Closing the stream closes the cursor.
+     *
+     * @return the stream
+     */
+    default Stream<T> stream()
+    {
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize( this, Spliterator.ORDERED | Spliterator.NONNULL ), false ).onClose(
+            this::close );
+    }
+}
@@ -333,4 +333,66 @@ List<ArtifactMetadata> searchArtifacts( String text, String repositoryId, boolea
     List<ArtifactMetadata> searchArtifacts( String key, String text, String repositoryId, boolean exact )
         throws MetadataRepositoryException;
 
+    /**
+     * Streaming variant of {@link #getArtifacts(String)}. The artifacts are fetched page by page while the cursor
+     * is iterated, the order is defined by the backend but stable between cursors of the same query.
+     *
+     * @param repositoryId the repository
+     * @param queryParameter the page size and the resume token
+     * @return the cursor, must be closed by the caller
+     * @throws MetadataRepositoryException
+     * @since 3.0.0
+     */
+    MetadataCursor<ArtifactMetadata> streamArtifacts( String repositoryId, QueryParameter queryParameter )
+        throws MetadataRepositoryException;
+
+    /**
+     * Streaming variant of {@link #getArtifactsByDateRange(String, Date, Date)}. Unlike the list variant, the
+     * artifacts are not sorted by the date they were gathered.
+     *
+     * @param repositoryId the repository
+     * @param startTime can be <code>null</code>
+     * @param endTime can be <code>null</code>
+     * @param queryParameter the page size and the resume token
+     * @return the cursor, must be closed by the caller
+     * @throws MetadataRepositoryException
+     * @since 3.0.0
+     */
+    MetadataCursor<ArtifactMetadata> streamArtifactsByDateRange( String repositoryId, Date startTime, Date endTime,
+                                                                 QueryParameter queryParameter )
+        throws MetadataRepositoryException;
+
+    /**
+     * Streaming variant of {@link #getArtifactsByChecksum(String, String)}.
+     *
+     * @param repositoryId the repository
+     * @param checksum the md5 or sha1 checksum
+     * @param queryParameter the page size and the resume token
+     * @return the cursor, must be closed by the caller
+     * @throws MetadataRepositoryException
+     * @since 3.0.0
+     */
+    MetadataCursor<ArtifactMetadata> streamArtifactsByChecksum( String repositoryId, String checksum,
+                                                                QueryParameter queryParameter )
+        throws MetadataRepositoryException;
+
+    /**
+     * Streaming variant of {@link #searchArtifacts(String, String, String, boolean)}.
+     * Backends without full text search, like the file backend, throw an
+     * {@link UnsupportedOperationException} here as in their search methods.
+     *
+     * @param key search only inside this key, can be null to search in all keys
+     * @param text
+     * @param repositoryId can be null to search in all repositories
+     * @param exact running an exact search, the value must exactly match the text.
+     * @param queryParameter the page size and the resume token
+     * @return the cursor, must be closed by the caller
+     * @throws MetadataRepositoryException
+     * @throws UnsupportedOperationException if the backend does not support searching
+     * @since 3.0.0
+     */
+    MetadataCursor<ArtifactMetadata> streamSearchArtifacts( String key, String text, String repositoryId,
+                                                            boolean exact, QueryParameter queryParameter )
+        throws MetadataRepositoryException;
+
 }
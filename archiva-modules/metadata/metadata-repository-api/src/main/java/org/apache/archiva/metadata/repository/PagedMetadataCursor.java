@@ -0,0 +1,202 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Cursor, that fetches the results page by page. Each page is loaded with the resume token of the last element
+ * of the previous page. If a page contains less elements than the page size, it is the last page.
+ * <p>
+ * By default the resume token is the offset of the next element. Backends, that can seek to a key, override
+ * {@link #getResumeToken(Object, String, int)} and return the key of the element instead.
+ * </p>
+ *
+ * @param <T> the type of the results
+ * @since 3.0.0
+ */
+public abstract class PagedMetadataCursor<T>
+    implements MetadataCursor<T>
+{
+    private final int pageSize;
+
+    private String resumeToken;
+
+    private String pageToken;
+
+    private Iterator<T> page = Collections.emptyIterator();
+
+    private int index;
+
+    private boolean lastPage = false;
+
+    private boolean closed = false;
+
+    protected PagedMetadataCursor( QueryParameter queryParameter )
+    {
+        this.pageSize = queryParameter.getPageSize();
+        this.resumeToken = queryParameter.getResumeToken();
+    }
+
+    /**
+     * Loads the elements after the given token.
+     *
+     * @param resumeToken the token of the last element of the previous page, <code>null</code> for the first page
+     * @param pageSize the maximum number of elements to return
+     * @return the elements, the list has less than <code>pageSize</code> elements, if this is the last page
+     * @throws MetadataRepositoryException if the backend query fails
+     */
+    protected abstract List<T> loadPage( String resumeToken, int pageSize )
+        throws MetadataRepositoryException;
+
+    /**
+     * Returns the token, that continues the query after the given element.
+     *
+     * @param element the element
+     * @param pageToken the token the page of the element was loaded with
+     * @param index the index of the element in its page
+     * @return the resume token
+     */
+    protected String getResumeToken( T element, String pageToken, int index )
+    {
+        return Long.toString( toOffset( pageToken ) + index + 1 );
+    }
+
+    /**
+     * Releases the resources of the backend. Called once on {@link #close()}.
+     */
+    protected void release()
+    {
+        // nothing to release by default
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while ( !closed && !page.hasNext() )
+        {
+            if ( lastPage )
+            {
+                close();
+                return false;
+            }
+            List<T> elements;
+            try
+            {
+                elements = loadPage( resumeToken, pageSize );
+            }
+            catch ( MetadataRepositoryException e )
+            {
+                close();
+                throw new MetadataCursorException( e.getMessage(), e );
+            }
+            lastPage = elements.size() < pageSize;
+            pageToken = resumeToken;
+            page = elements.iterator();
+            index = -1;
+        }
+        return !closed;
+    }
+
+    @Override
+    public T next()
+    {
+        if ( !hasNext() )
+        {
+            throw new NoSuchElementException();
+        }
+        T element = page.next();
+        index++;
+        resumeToken = getResumeToken( element, pageToken, index );
+        return element;
+    }
+
+    @Override
+    public String getResumeToken()
+    {
+        return resumeToken;
+    }
+
+    @Override
+    public void close()
+    {
+        if ( !closed )
+        {
+            closed = true;
+            page = Collections.emptyIterator();
+            release();
+        }
+    }
+
+    /**
+     * Adapts a complete result to a cursor. The result is copied once, the resume token is the offset in the
+     * result, so it is only valid as long as the result of the query does not change.
+     *
+     * @param result the complete result
+     * @param queryParameter the page size and the resume token
+     * @return the cursor
+     */
+    public static <T> MetadataCursor<T> fromList( Collection<T> result, QueryParameter queryParameter )
+    {
+        final List<T> elements = new ArrayList<>( result );
+        return new PagedMetadataCursor<T>( queryParameter )
+        {
+            @Override
+            protected List<T> loadPage( String resumeToken, int pageSize )
+            {
+                int offset = (int) Math.min( toOffset( resumeToken ), elements.size() );
+                return elements.subList( offset, (int) Math.min( elements.size(), (long) offset + pageSize ) );
+            }
+        };
+    }
+
+    /**
+     * Converts an offset token to the offset.
+     *
+     * @param token the token, may be <code>null</code>
+     * @return the offset, 0 for a <code>null</code> token
+     * @throws IllegalArgumentException if the token is not an offset
+     */
+    protected static long toOffset( String token )
+    {
+        if ( token == null || token.isEmpty() )
+        {
+            return 0;
+        }
+        try
+        {
+            long offset = Long.parseLong( token );
+            if ( offset >= 0 )
+            {
+                return offset;
+            }
+        }
+        catch ( NumberFormatException e )
+        {
+            // handled below
+        }
+        throw new IllegalArgumentException( "Invalid resume token: " + token );
+    }
+}
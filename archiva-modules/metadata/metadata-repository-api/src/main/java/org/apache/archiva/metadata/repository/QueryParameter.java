@@ -0,0 +1,79 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Parameters for the streaming queries of the {@link MetadataRepository}.
+ * <p>
+ * The page size is the number of elements, that are fetched from the backend with one request. It is a hint:
+ * backends, that fetch the results lazily anyway, may ignore it. The resume token is taken from
+ * {@link MetadataCursor#getResumeToken()} of a previous cursor of the same query. If it is set, the new cursor
+ * starts with the element after the last element returned by the previous cursor.
+ * </p>
+ *
+ * @since 3.0.0
+ */
+public class QueryParameter
+{
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private final int pageSize;
+
+    private final String resumeToken;
+
+    public QueryParameter()
+    {
+        this( DEFAULT_PAGE_SIZE, null );
+    }
+
+    public QueryParameter( int pageSize )
+    {
+        this( pageSize, null );
+    }
+
+    public QueryParameter( int pageSize, String resumeToken )
+    {
+        if ( pageSize < 1 )
+        {
+            throw new IllegalArgumentException( "The page size must be greater than 0" );
+        }
+        this.pageSize = pageSize;
+        this.resumeToken = resumeToken;
+    }
+
+    public int getPageSize()
+    {
+        return pageSize;
+    }
+
+    /**
+     * @return the token of a previous cursor, or <code>null</code> to start with the first element
+     */
+    public String getResumeToken()
+    {
+        return resumeToken;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "QueryParameter{pageSize=" + pageSize + ", resumeToken='" + resumeToken + "'}";
+    }
+}
@@ -56,6 +56,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -1086,6 +1087,76 @@ public void testGetArtifactsByChecksumMultipleCopies()
                       new ArrayList<>( repository.getArtifactsByChecksum( OTHER_REPO_ID, TEST_MD5 ) ) );
     }
 
+    @Test
+    public void testStreamArtifactsWithResumeToken()
+        throws Exception
+    {
+        List<ArtifactMetadata> expected = new ArrayList<>();
+        for ( String version : Arrays.asList( TEST_PROJECT_VERSION, TEST_PROJECT_VERSION_2_0 ) )
+        {
+            for ( String type : Arrays.asList( "jar", "pom" ) )
+            {
+                ArtifactMetadata artifact = createArtifact( type );
+                artifact.setId( TEST_PROJECT + "-" + version + "." + type );
+                artifact.setProjectVersion( version );
+                artifact.setVersion( version );
+                repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, version, artifact );
+                expected.add( artifact );
+            }
+        }
+        repository.save();
+
+        List<ArtifactMetadata> streamed = new ArrayList<>();
+        String resumeToken;
+        try ( MetadataCursor<ArtifactMetadata> cursor = repository.streamArtifacts( TEST_REPO_ID,
+                                                                                    new QueryParameter( 3 ) ) )
+        {
+            streamed.add( cursor.next() );
+            streamed.add( cursor.next() );
+            resumeToken = cursor.getResumeToken();
+        }
+        assertNotNull( resumeToken );
+
+        try ( MetadataCursor<ArtifactMetadata> cursor = repository.streamArtifacts( TEST_REPO_ID,
+                                                                                    new QueryParameter( 1,
+                                                                                                        resumeToken ) ) )
+        {
+            cursor.forEachRemaining( streamed::add );
+            assertFalse( cursor.hasNext() );
+        }
+
+        assertThat( streamed ).hasSize( 4 ).containsOnlyElementsOf( expected );
+        assertThat( new LinkedHashSet<>( streamed ) ).hasSize( 4 );
+    }
+
+    @Test
+    public void testStreamArtifactsByChecksumAndDateRange()
+        throws Exception
+    {
+        ArtifactMetadata artifact = createArtifact();
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, artifact );
+        ArtifactMetadata otherArtifact = createArtifact( "pom" );
+        otherArtifact.setMd5( "0123456789abcdef0123456789abcdef" );
+        otherArtifact.setSha1( "0123456789abcdef0123456789abcdef01234567" );
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, otherArtifact );
+        repository.save();
+
+        try ( MetadataCursor<ArtifactMetadata> cursor = repository.streamArtifactsByChecksum( TEST_REPO_ID, TEST_SHA1,
+                                                                                              new QueryParameter() ) )
+        {
+            assertEquals( Collections.singletonList( artifact ), cursor.stream().collect( Collectors.toList() ) );
+        }
+
+        Date upperBound = new Date( artifact.getWhenGathered().getTime() + 10000 );
+        try ( MetadataCursor<ArtifactMetadata> cursor = repository.streamArtifactsByDateRange( TEST_REPO_ID, null,
+                                                                                               upperBound,
+                                                                                               new QueryParameter(
+                                                                                                   1 ) ) )
+        {
+            assertThat( cursor.stream().collect( Collectors.toList() ) ).containsOnly( artifact, otherArtifact );
+        }
+    }
+
     @Test
     public void testGetNamespacesWithSparseDepth()
         throws Exception
@@ -1698,7 +1769,7 @@ private void createArtifactWithData()
         repository.save();
     }
 
-    private static ArtifactMetadata createArtifact()
+    protected static ArtifactMetadata createArtifact()
     {
         return createArtifact( "jar" );
     }
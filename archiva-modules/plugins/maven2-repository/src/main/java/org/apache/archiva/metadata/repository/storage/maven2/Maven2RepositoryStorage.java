@@ -25,7 +25,7 @@
 import org.apache.archiva.admin.model.networkproxy.NetworkProxyAdmin;
 import org.apache.archiva.admin.model.proxyconnector.ProxyConnectorAdmin;
 import org.apache.archiva.checksum.ChecksumAlgorithm;
-import org.apache.archiva.checksum.ChecksummedFile;
+import org.apache.archiva.checksum.ChecksumCache;
 import org.apache.archiva.common.Try;
 import org.apache.archiva.common.utils.VersionUtil;
 import org.apache.archiva.maven2.metadata.MavenMetadataReader;
@@ -148,6 +148,10 @@
     @Named( "pathParser#default" )
     private PathParser pathParser;
 
+    @Inject
+    @Named( "checksumCache#default" )
+    private ChecksumCache checksumCache;
+
     private static final String METADATA_FILENAME_START = "maven-metadata";
 
     private static final String METADATA_FILENAME = METADATA_FILENAME_START + ".xml";
@@ -882,25 +886,20 @@ private static String removePrefix( final String href )
         return joinedString;
     }
 
-    private static void populateArtifactMetadataFromFile( ArtifactMetadata metadata, Path file ) throws IOException {
+    private void populateArtifactMetadataFromFile( ArtifactMetadata metadata, Path file ) throws IOException {
         metadata.setWhenGathered( new Date() );
         metadata.setFileLastModified( Files.getLastModifiedTime(file).toMillis() );
-        ChecksummedFile checksummedFile = new ChecksummedFile( file );
-        try
-        {
-            metadata.setMd5( checksummedFile.calculateChecksum( ChecksumAlgorithm.MD5 ) );
-        }
-        catch ( IOException e )
-        {
-            LOGGER.error( "Unable to checksum file {}: {},MD5", file, e.getMessage() );
-        }
         try
         {
-            metadata.setSha1( checksummedFile.calculateChecksum( ChecksumAlgorithm.SHA1 ) );
+            // both checksums are calculated in one pass and are kept for the consumers of the current scan
+            Map<ChecksumAlgorithm, String> checksums =
+                checksumCache.getChecksums( file, ChecksumCache.DEFAULT_ALGORITHMS );
+            metadata.setMd5( checksums.get( ChecksumAlgorithm.MD5 ) );
+            metadata.setSha1( checksums.get( ChecksumAlgorithm.SHA1 ) );
         }
         catch ( IOException e )
         {
-            LOGGER.error( "Unable to checksum file {}: {},SHA1", file, e.getMessage() );
+            LOGGER.error( "Unable to checksum file {}: {}", file, e.getMessage() );
         }
         metadata.setSize( Files.size(file) );
     }
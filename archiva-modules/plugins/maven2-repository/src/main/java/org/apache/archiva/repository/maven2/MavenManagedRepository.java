@@ -28,7 +28,9 @@
 import org.apache.archiva.repository.UnsupportedFeatureException;
 import org.apache.archiva.repository.features.ArtifactCleanupFeature;
 import org.apache.archiva.repository.features.IndexCreationFeature;
+import org.apache.archiva.repository.features.ProxyFetchFeature;
 import org.apache.archiva.repository.features.RepositoryFeature;
+import org.apache.archiva.repository.features.ScanningFeature;
 import org.apache.archiva.repository.features.StagingRepositoryFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +55,8 @@ public class MavenManagedRepository extends AbstractManagedRepository
     private ArtifactCleanupFeature artifactCleanupFeature = new ArtifactCleanupFeature( );
     private IndexCreationFeature indexCreationFeature;
     private StagingRepositoryFeature stagingRepositoryFeature = new StagingRepositoryFeature(  );
+    private ScanningFeature scanningFeature = new ScanningFeature( );
+    private ProxyFetchFeature proxyFetchFeature = new ProxyFetchFeature( );
 
     
 
@@ -61,7 +65,8 @@ public class MavenManagedRepository extends AbstractManagedRepository
         new String[] { DEFAULT_LAYOUT, LEGACY_LAYOUT},
         new String[] {},
         new String[] {ArtifactCleanupFeature.class.getName(), IndexCreationFeature.class.getName(),
-            StagingRepositoryFeature.class.getName()},
+            StagingRepositoryFeature.class.getName(), ScanningFeature.class.getName(),
+            ProxyFetchFeature.class.getName()},
         true,
         true,
         true,
@@ -98,6 +103,10 @@ public <T extends RepositoryFeature<T>> RepositoryFeature<T> getFeature( Class<T
             return (RepositoryFeature<T>) indexCreationFeature;
         } else if (StagingRepositoryFeature.class.equals(clazz)) {
             return (RepositoryFeature<T>) stagingRepositoryFeature;
+        } else if (ScanningFeature.class.equals(clazz)) {
+            return (RepositoryFeature<T>) scanningFeature;
+        } else if (ProxyFetchFeature.class.equals(clazz)) {
+            return (RepositoryFeature<T>) proxyFetchFeature;
         } else {
             throw new UnsupportedFeatureException(  );
         }
@@ -108,7 +117,9 @@ public <T extends RepositoryFeature<T>> boolean supportsFeature( Class<T> clazz
     {
         if (ArtifactCleanupFeature.class.equals(clazz) ||
             IndexCreationFeature.class.equals(clazz) ||
-            StagingRepositoryFeature.class.equals(clazz)) {
+            StagingRepositoryFeature.class.equals(clazz) ||
+            ScanningFeature.class.equals(clazz) ||
+            ProxyFetchFeature.class.equals(clazz)) {
             return true;
         }
         return false;
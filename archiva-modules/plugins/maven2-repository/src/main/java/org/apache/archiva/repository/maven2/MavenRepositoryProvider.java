@@ -39,7 +39,9 @@
 import org.apache.archiva.repository.UnsupportedURIException;
 import org.apache.archiva.repository.features.ArtifactCleanupFeature;
 import org.apache.archiva.repository.features.IndexCreationFeature;
+import org.apache.archiva.repository.features.ProxyFetchFeature;
 import org.apache.archiva.repository.features.RemoteIndexFeature;
+import org.apache.archiva.repository.features.ScanningFeature;
 import org.apache.archiva.repository.features.StagingRepositoryFeature;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -191,6 +193,16 @@ public void updateManagedInstance(EditableManagedRepository repo, ManagedReposit
         artifactCleanupFeature.setDeleteReleasedSnapshots(cfg.isDeleteReleasedSnapshots());
         artifactCleanupFeature.setRetentionCount(cfg.getRetentionCount());
         artifactCleanupFeature.setRetentionPeriod(Period.ofDays(cfg.getRetentionPeriod()));
+
+        ScanningFeature scanningFeature = repo.getFeature(ScanningFeature.class).get();
+        scanningFeature.setScanThreads(cfg.getScanThreads());
+        scanningFeature.setScanJournal(cfg.isScanJournal());
+        scanningFeature.setWatchChanges(cfg.isWatchChanges());
+
+        ProxyFetchFeature proxyFetchFeature = repo.getFeature(ProxyFetchFeature.class).get();
+        proxyFetchFeature.setParallelFetch(cfg.isParallelProxyFetch());
+        proxyFetchFeature.setHedgeDelay(cfg.getProxyHedgeDelay());
+        proxyFetchFeature.setStreamingFetch(cfg.isStreamingProxyFetch());
     }
 
 
@@ -339,6 +351,16 @@ public ManagedRepositoryConfiguration getManagedConfiguration(ManagedRepository
         cfg.setRetentionPeriod(artifactCleanupFeature.getRetentionPeriod().getDays());
         cfg.setDeleteReleasedSnapshots(artifactCleanupFeature.isDeleteReleasedSnapshots());
 
+        ScanningFeature scanningFeature = managedRepository.getFeature(ScanningFeature.class).get();
+        cfg.setScanThreads(scanningFeature.getScanThreads());
+        cfg.setScanJournal(scanningFeature.isScanJournal());
+        cfg.setWatchChanges(scanningFeature.isWatchChanges());
+
+        ProxyFetchFeature proxyFetchFeature = managedRepository.getFeature(ProxyFetchFeature.class).get();
+        cfg.setParallelProxyFetch(proxyFetchFeature.isParallelFetch());
+        cfg.setProxyHedgeDelay(proxyFetchFeature.getHedgeDelay());
+        cfg.setStreamingProxyFetch(proxyFetchFeature.isStreamingFetch());
+
         if (managedRepository.getActiveReleaseSchemes().contains(ReleaseScheme.RELEASE)) {
             cfg.setReleases(true);
         } else {
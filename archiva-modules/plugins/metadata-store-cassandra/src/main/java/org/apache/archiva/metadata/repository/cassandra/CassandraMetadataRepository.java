@@ -52,10 +52,14 @@
 import org.apache.archiva.metadata.model.ProjectVersionMetadata;
 import org.apache.archiva.metadata.model.ProjectVersionReference;
 import org.apache.archiva.metadata.model.Scm;
+import org.apache.archiva.metadata.repository.MetadataCursor;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
+import org.apache.archiva.metadata.repository.PagedMetadataCursor;
+import org.apache.archiva.metadata.repository.QueryParameter;
 import org.apache.archiva.metadata.repository.cassandra.model.ArtifactMetadataModel;
+import org.apache.archiva.metadata.repository.cassandra.model.ColumnNames;
 import org.apache.archiva.metadata.repository.cassandra.model.MetadataFacetModel;
 import org.apache.archiva.metadata.repository.cassandra.model.Namespace;
 import org.apache.archiva.metadata.repository.cassandra.model.Project;
@@ -68,6 +72,7 @@
 
 import javax.persistence.PersistenceException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -79,6 +84,7 @@
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
 
 import static org.apache.archiva.metadata.repository.cassandra.CassandraUtils.*;
 import static org.apache.archiva.metadata.repository.cassandra.model.ColumnNames.*;
@@ -2273,6 +2279,78 @@ protected ModelMapper getModelMapper()
         return ModelMapperHolder.MODEL_MAPPER;
     }
 
+    @Override
+    public MetadataCursor<ArtifactMetadata> streamArtifacts( final String repositoryId,
+                                                             QueryParameter queryParameter )
+    {
+        RangeSlicesQuery<String, String, String> query = HFactory //
+            .createRangeSlicesQuery( keyspace, ss, ss, ss ) //
+            .setColumnFamily( cassandraArchivaManager.getArtifactMetadataFamilyName() ) //
+            .setColumnNames( ArtifactMetadataModel.COLUMNS ) //
+            .addEqualsExpression( REPOSITORY_NAME.toString(), repositoryId );
+
+        return new ArtifactCursor<>( Collections.singletonList( query ), columnSlice -> true,
+                                     this::mapArtifactMetadataStringColumnSlice, queryParameter );
+    }
+
+    @Override
+    public MetadataCursor<ArtifactMetadata> streamArtifactsByDateRange( final String repositoryId,
+                                                                        final Date startTime, final Date endTime,
+                                                                        QueryParameter queryParameter )
+    {
+        RangeSlicesQuery<String, String, Long> query = HFactory //
+            .createRangeSlicesQuery( keyspace, ss, ss, LongSerializer.get() ) //
+            .setColumnFamily( cassandraArchivaManager.getArtifactMetadataFamilyName() ) //
+            .setColumnNames( ArtifactMetadataModel.COLUMNS ); //
+
+        if ( startTime != null )
+        {
+            query = query.addGteExpression( WHEN_GATHERED.toString(), startTime.getTime() );
+        }
+        if ( endTime != null )
+        {
+            query = query.addLteExpression( WHEN_GATHERED.toString(), endTime.getTime() );
+        }
+
+        return new ArtifactCursor<>( Collections.singletonList( query ), columnSlice -> StringUtils.equals(
+            getAsStringValue( columnSlice, REPOSITORY_NAME.toString() ), repositoryId ),
+                                     this::mapArtifactMetadataLongColumnSlice, queryParameter );
+    }
+
+    @Override
+    public MetadataCursor<ArtifactMetadata> streamArtifactsByChecksum( final String repositoryId,
+                                                                       final String checksum,
+                                                                       QueryParameter queryParameter )
+    {
+        // cql cannot run or in queries so running twice the query
+        List<RangeSlicesQuery<String, String, String>> queries = new ArrayList<>( 2 );
+        for ( ColumnNames column : Arrays.asList( SHA1, MD5 ) )
+        {
+            queries.add( HFactory //
+                             .createRangeSlicesQuery( keyspace, ss, ss, ss ) //
+                             .setColumnFamily( cassandraArchivaManager.getArtifactMetadataFamilyName() ) //
+                             .setColumnNames( ArtifactMetadataModel.COLUMNS ) //
+                             .addEqualsExpression( column.toString(), checksum ) //
+                             .addEqualsExpression( REPOSITORY_NAME.toString(), repositoryId ) );
+        }
+
+        return new ArtifactCursor<>( queries, columnSlice -> true, this::mapArtifactMetadataStringColumnSlice,
+                                     queryParameter );
+    }
+
+    /**
+     * The search queries several column families and merges the results, so the complete result is loaded first.
+     */
+    @Override
+    public MetadataCursor<ArtifactMetadata> streamSearchArtifacts( String key, String text, String repositoryId,
+                                                                   boolean exact, QueryParameter queryParameter )
+        throws MetadataRepositoryException
+    {
+        List<ArtifactMetadata> artifacts =
+            key == null ? searchArtifacts( text, repositoryId, exact ) : searchArtifacts( key, text, repositoryId, exact );
+        return PagedMetadataCursor.fromList( artifacts, queryParameter );
+    }
+
     /**
      * This implementation just calls getArtifactsByMetadata( null, text, repositoryId ). We can't search artifacts by
      * any property.
@@ -2297,4 +2375,94 @@ public List<ArtifactMetadata> searchArtifacts( String key, String text, String r
         artifacts.addAll( getArtifactsByProperty( key, text, repositoryId ) );
         return artifacts;
     }
+
+    /**
+     * Cursor over the rows of one or more range slices queries, that are run one after another. Each page is
+     * fetched with one request per query, starting at the key of the last returned row. The resume token is the
+     * index of the query and the last row key: <code>index/key</code>.
+     */
+    private static class ArtifactCursor<V>
+        extends PagedMetadataCursor<ArtifactMetadata>
+    {
+        private final List<RangeSlicesQuery<String, String, V>> queries;
+
+        private final Predicate<ColumnSlice<String, V>> filter;
+
+        private final Function<ColumnSlice<String, V>, ArtifactMetadata> mapper;
+
+        // the resume tokens of the artifacts of the current page
+        private final List<String> tokens = new ArrayList<>();
+
+        ArtifactCursor( List<RangeSlicesQuery<String, String, V>> queries,
+                        Predicate<ColumnSlice<String, V>> filter,
+                        Function<ColumnSlice<String, V>, ArtifactMetadata> mapper, QueryParameter queryParameter )
+        {
+            super( queryParameter );
+            this.queries = queries;
+            this.filter = filter;
+            this.mapper = mapper;
+        }
+
+        @Override
+        protected List<ArtifactMetadata> loadPage( String resumeToken, int pageSize )
+        {
+            int queryIndex = 0;
+            String startKey = "";
+            if ( resumeToken != null )
+            {
+                int i = resumeToken.indexOf( '/' );
+                try
+                {
+                    queryIndex = Integer.parseInt( resumeToken.substring( 0, Math.max( i, 0 ) ) );
+                }
+                catch ( NumberFormatException e )
+                {
+                    throw new IllegalArgumentException( "Invalid resume token: " + resumeToken );
+                }
+                startKey = resumeToken.substring( i + 1 );
+            }
+
+            tokens.clear();
+            List<ArtifactMetadata> artifacts = new ArrayList<>( pageSize );
+            while ( queryIndex < queries.size() )
+            {
+                // the start key is inclusive, so one more row is requested
+                OrderedRows<String, String, V> rows = queries.get( queryIndex ) //
+                    .setKeys( startKey, "" ) //
+                    .setRowCount( pageSize + 1 ) //
+                    .execute().get();
+                for ( Row<String, String, V> row : rows )
+                {
+                    if ( row.getKey().equals( startKey ) )
+                    {
+                        continue;
+                    }
+                    startKey = row.getKey();
+                    ColumnSlice<String, V> columnSlice = row.getColumnSlice();
+                    // skip the tombstones of removed rows
+                    if ( !columnSlice.getColumns().isEmpty() && filter.apply( columnSlice ) )
+                    {
+                        artifacts.add( mapper.apply( columnSlice ) );
+                        tokens.add( queryIndex + "/" + row.getKey() );
+                        if ( artifacts.size() >= pageSize )
+                        {
+                            return artifacts;
+                        }
+                    }
+                }
+                if ( rows.getCount() <= pageSize )
+                {
+                    queryIndex++;
+                    startKey = "";
+                }
+            }
+            return artifacts;
+        }
+
+        @Override
+        protected String getResumeToken( ArtifactMetadata artifact, String pageToken, int index )
+        {
+            return tokens.get( index );
+        }
+    }
 }
@@ -0,0 +1,453 @@
+package org.apache.archiva.metadata.repository.file;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Secondary indexes of the artifacts of one repository in the file metadata store.
+ * <p>
+ * The artifacts are identified by their coordinates <code>namespace/project/version/id</code>, which is also
+ * the path of the artifact in the content directory. The index maps the md5 and sha1 checksums and the hour
+ * the artifact was gathered to the coordinates, so lookups by checksum or date range do not need to read
+ * the metadata of all artifacts. The indexes are sorted maps, lookups are logarithmic in the number of
+ * artifacts.
+ * </p>
+ * <p>
+ * Only the checksums and gathering time of each artifact are stored, the maps are built when the index is
+ * loaded. Changes are journaled as described in {@link PersistentIndex}.
+ * </p>
+ */
+class ArtifactIndex
+    extends PersistentIndex
+{
+    private static final String FILE_NAME = "artifacts.dat";
+
+    private static final int MAGIC = 0x41494432;
+
+    private static final long BUCKET_SIZE = TimeUnit.HOURS.toMillis( 1 );
+
+    private static final int PUT = 1;
+
+    private static final int REMOVE = 2;
+
+    private static final int REMOVE_ALL = 3;
+
+    private final NavigableMap<String, Entry> entries = new TreeMap<>();
+
+    private final NavigableMap<String, NavigableSet<String>> checksums = new TreeMap<>();
+
+    private final NavigableMap<Long, NavigableSet<String>> buckets = new TreeMap<>();
+
+    private ArtifactIndex( Path indexFile )
+    {
+        super( indexFile, MAGIC );
+    }
+
+    /**
+     * Returns the index stored in the given directory. The index is loaded from disk on first access.
+     *
+     * @param registry the registry of the loaded indexes
+     * @param directory the index directory
+     * @return the shared index instance
+     */
+    static ArtifactIndex forDirectory( IndexRegistry registry, Path directory )
+    {
+        return registry.getIndex( directory, FILE_NAME, ArtifactIndex::new );
+    }
+
+    static String getCoordinates( String namespace, String project, String version, String id )
+    {
+        return namespace + "/" + project + "/" + version + "/" + id;
+    }
+
+    synchronized void put( String namespace, String project, String version, ArtifactMetadata artifact )
+    {
+        String coordinates = getCoordinates( namespace, project, version, artifact.getId() );
+        Date whenGathered = artifact.getWhenGathered();
+        Entry entry =
+            new Entry( artifact.getSha1(), artifact.getMd5(), whenGathered != null ? whenGathered.getTime() : null );
+        if ( entry.equals( entries.get( coordinates ) ) )
+        {
+            return;
+        }
+        putEntry( coordinates, entry );
+        writeRecord( PUT, out -> writeEntry( out, coordinates, entry ) );
+    }
+
+    synchronized void remove( String coordinates )
+    {
+        if ( removeEntry( coordinates ) )
+        {
+            writeRecord( REMOVE, out -> out.writeUTF( coordinates ) );
+        }
+    }
+
+    /**
+     * Removes all artifacts, whose coordinates start with the given prefix, e.g. all artifacts of a project.
+     */
+    synchronized void removeAll( String prefix )
+    {
+        if ( removeEntries( prefix ) )
+        {
+            writeRecord( REMOVE_ALL, out -> out.writeUTF( prefix ) );
+        }
+    }
+
+    /**
+     * Returns the coordinates of the artifacts with the given md5 or sha1 checksum.
+     */
+    synchronized Set<String> getByChecksum( String checksum )
+    {
+        Set<String> coordinates = checksums.get( checksum );
+        return coordinates != null ? new TreeSet<>( coordinates ) : Collections.emptySet();
+    }
+
+    /**
+     * Returns the coordinates of the artifacts gathered after the start time and before the end time.
+     *
+     * @param startTime can be <code>null</code>
+     * @param endTime can be <code>null</code>
+     */
+    synchronized Set<String> getByDateRange( Date startTime, Date endTime )
+    {
+        if ( buckets.isEmpty() )
+        {
+            return Collections.emptySet();
+        }
+        long from = startTime != null ? getBucket( startTime.getTime() ) : buckets.firstKey();
+        long to = endTime != null ? getBucket( endTime.getTime() ) : buckets.lastKey();
+        if ( from > to )
+        {
+            return Collections.emptySet();
+        }
+        Set<String> result = new LinkedHashSet<>();
+        for ( Set<String> bucket : buckets.subMap( from, true, to, true ).values() )
+        {
+            for ( String coordinates : bucket )
+            {
+                long whenGathered = entries.get( coordinates ).whenGathered;
+                if ( ( startTime == null || startTime.getTime() < whenGathered ) && ( endTime == null
+                    || endTime.getTime() > whenGathered ) )
+                {
+                    result.add( coordinates );
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the next page of the artifacts with the given md5 or sha1 checksum, in the order of their coordinates.
+     *
+     * @param after the position of the last artifact of the previous page, <code>null</code> for the first page
+     * @param limit the maximum number of artifacts
+     * @return the coordinates of the artifacts by their position, the position is the coordinates
+     */
+    synchronized Map<String, String> getByChecksum( String checksum, String after, int limit )
+    {
+        Map<String, String> page = new LinkedHashMap<>();
+        NavigableSet<String> coordinates = checksums.get( checksum );
+        if ( coordinates == null )
+        {
+            return page;
+        }
+        for ( String c : after != null ? coordinates.tailSet( after, false ) : coordinates )
+        {
+            if ( page.size() >= limit )
+            {
+                break;
+            }
+            page.put( c, c );
+        }
+        return page;
+    }
+
+    /**
+     * Returns the next page of the artifacts gathered after the start time and before the end time. The artifacts
+     * are ordered by the hour they were gathered and by their coordinates, so a page is read from the hour buckets
+     * starting at the position of the previous page.
+     *
+     * @param startTime can be <code>null</code>
+     * @param endTime can be <code>null</code>
+     * @param after the position of the last artifact of the previous page, <code>null</code> for the first page
+     * @param limit the maximum number of artifacts
+     * @return the coordinates of the artifacts by their position, <code>hour/coordinates</code>
+     * @throws IllegalArgumentException if the position is invalid
+     */
+    synchronized Map<String, String> getByDateRange( Date startTime, Date endTime, String after, int limit )
+    {
+        Map<String, String> page = new LinkedHashMap<>();
+        if ( buckets.isEmpty() )
+        {
+            return page;
+        }
+        long from = startTime != null ? getBucket( startTime.getTime() ) : buckets.firstKey();
+        long to = endTime != null ? getBucket( endTime.getTime() ) : buckets.lastKey();
+        Long afterBucket = null;
+        String afterCoordinates = null;
+        if ( after != null )
+        {
+            int separator = after.indexOf( '/' );
+            try
+            {
+                afterBucket = Long.valueOf( after.substring( 0, Math.max( separator, 0 ) ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                throw new IllegalArgumentException( "Invalid resume token: " + after );
+            }
+            afterCoordinates = after.substring( separator + 1 );
+            from = Math.max( from, afterBucket );
+        }
+        if ( from > to )
+        {
+            return page;
+        }
+        for ( Map.Entry<Long, NavigableSet<String>> bucket : buckets.subMap( from, true, to, true ).entrySet() )
+        {
+            NavigableSet<String> coordinates = bucket.getValue();
+            if ( bucket.getKey().equals( afterBucket ) )
+            {
+                coordinates = coordinates.tailSet( afterCoordinates, false );
+            }
+            for ( String c : coordinates )
+            {
+                long whenGathered = entries.get( c ).whenGathered;
+                if ( ( startTime == null || startTime.getTime() < whenGathered ) && ( endTime == null
+                    || endTime.getTime() > whenGathered ) )
+                {
+                    page.put( bucket.getKey() + "/" + c, c );
+                    if ( page.size() >= limit )
+                    {
+                        return page;
+                    }
+                }
+            }
+        }
+        return page;
+    }
+
+    synchronized int size()
+    {
+        return entries.size();
+    }
+
+    @Override
+    protected void writeEntries( DataOutputStream out )
+        throws IOException
+    {
+        out.writeInt( entries.size() );
+        for ( Map.Entry<String, Entry> e : entries.entrySet() )
+        {
+            writeEntry( out, e.getKey(), e.getValue() );
+        }
+    }
+
+    @Override
+    protected void readEntries( DataInputStream in, Path file )
+        throws IOException
+    {
+        int count = in.readInt();
+        for ( int i = 0; i < count; i++ )
+        {
+            String coordinates = in.readUTF();
+            putEntry( coordinates, readEntry( in ) );
+        }
+    }
+
+    @Override
+    protected void readRecord( int type, DataInputStream in )
+        throws IOException
+    {
+        switch ( type )
+        {
+            case PUT:
+                String coordinates = in.readUTF();
+                putEntry( coordinates, readEntry( in ) );
+                break;
+            case REMOVE:
+                removeEntry( in.readUTF() );
+                break;
+            case REMOVE_ALL:
+                removeEntries( in.readUTF() );
+                break;
+            default:
+                throw new IOException( "Unknown record type " + type );
+        }
+    }
+
+    @Override
+    protected void clearEntries()
+    {
+        entries.clear();
+        checksums.clear();
+        buckets.clear();
+    }
+
+    private static void writeEntry( DataOutputStream out, String coordinates, Entry entry )
+        throws IOException
+    {
+        out.writeUTF( coordinates );
+        out.writeUTF( entry.sha1 != null ? entry.sha1 : "" );
+        out.writeUTF( entry.md5 != null ? entry.md5 : "" );
+        out.writeBoolean( entry.whenGathered != null );
+        out.writeLong( entry.whenGathered != null ? entry.whenGathered : 0 );
+    }
+
+    private static Entry readEntry( DataInputStream in )
+        throws IOException
+    {
+        String sha1 = in.readUTF();
+        String md5 = in.readUTF();
+        boolean hasWhenGathered = in.readBoolean();
+        long whenGathered = in.readLong();
+        return new Entry( sha1.isEmpty() ? null : sha1, md5.isEmpty() ? null : md5,
+                          hasWhenGathered ? whenGathered : null );
+    }
+
+    private void putEntry( String coordinates, Entry entry )
+    {
+        removeEntry( coordinates );
+        entries.put( coordinates, entry );
+        addToMaps( coordinates, entry );
+    }
+
+    private boolean removeEntry( String coordinates )
+    {
+        Entry entry = entries.remove( coordinates );
+        if ( entry == null )
+        {
+            return false;
+        }
+        removeFromMaps( coordinates, entry );
+        return true;
+    }
+
+    private boolean removeEntries( String prefix )
+    {
+        NavigableMap<String, Entry> removed = entries.subMap( prefix, true, prefix + Character.MAX_VALUE, false );
+        if ( removed.isEmpty() )
+        {
+            return false;
+        }
+        for ( Map.Entry<String, Entry> entry : removed.entrySet() )
+        {
+            removeFromMaps( entry.getKey(), entry.getValue() );
+        }
+        removed.clear();
+        return true;
+    }
+
+    private void addToMaps( String coordinates, Entry entry )
+    {
+        if ( entry.sha1 != null )
+        {
+            checksums.computeIfAbsent( entry.sha1, k -> new TreeSet<>() ).add( coordinates );
+        }
+        if ( entry.md5 != null )
+        {
+            checksums.computeIfAbsent( entry.md5, k -> new TreeSet<>() ).add( coordinates );
+        }
+        if ( entry.whenGathered != null )
+        {
+            buckets.computeIfAbsent( getBucket( entry.whenGathered ), k -> new TreeSet<>() ).add( coordinates );
+        }
+    }
+
+    private void removeFromMaps( String coordinates, Entry entry )
+    {
+        removeFromMap( checksums, entry.sha1, coordinates );
+        removeFromMap( checksums, entry.md5, coordinates );
+        if ( entry.whenGathered != null )
+        {
+            removeFromMap( buckets, getBucket( entry.whenGathered ), coordinates );
+        }
+    }
+
+    private static <K> void removeFromMap( Map<K, ? extends Set<String>> map, K key, String coordinates )
+    {
+        if ( key == null )
+        {
+            return;
+        }
+        Set<String> values = map.get( key );
+        if ( values != null && values.remove( coordinates ) && values.isEmpty() )
+        {
+            map.remove( key );
+        }
+    }
+
+    private static long getBucket( long time )
+    {
+        return Math.floorDiv( time, BUCKET_SIZE );
+    }
+
+    private static class Entry
+    {
+        final String sha1;
+
+        final String md5;
+
+        final Long whenGathered;
+
+        Entry( String sha1, String md5, Long whenGathered )
+        {
+            this.sha1 = sha1;
+            this.md5 = md5;
+            this.whenGathered = whenGathered;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( !( o instanceof Entry ) )
+            {
+                return false;
+            }
+            Entry entry = (Entry) o;
+            return Objects.equals( sha1, entry.sha1 ) && Objects.equals( md5, entry.md5 ) && Objects.equals(
+                whenGathered, entry.whenGathered );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( sha1, md5, whenGathered );
+        }
+    }
+}
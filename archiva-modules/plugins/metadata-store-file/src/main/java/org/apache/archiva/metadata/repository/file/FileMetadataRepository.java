@@ -34,9 +34,13 @@
 import org.apache.archiva.metadata.model.ProjectVersionMetadata;
 import org.apache.archiva.metadata.model.ProjectVersionReference;
 import org.apache.archiva.metadata.model.Scm;
+import org.apache.archiva.metadata.repository.MetadataCursor;
+import org.apache.archiva.metadata.repository.MetadataCursorException;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
+import org.apache.archiva.metadata.repository.PagedMetadataCursor;
+import org.apache.archiva.metadata.repository.QueryParameter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,6 +53,7 @@
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -57,12 +62,18 @@
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -73,6 +84,8 @@
 
     private final ArchivaConfiguration configuration;
 
+    private final IndexRegistry indexRegistry;
+
     private Logger log = LoggerFactory.getLogger( FileMetadataRepository.class );
 
     private static final String PROJECT_METADATA_KEY = "project-metadata";
@@ -83,11 +96,33 @@
 
     private static final String METADATA_KEY = "metadata";
 
+    private static final String INDEX_DIRECTORY = "index";
+
+    private final Set<ArtifactIndex> openIndexes = new HashSet<>();
+
+    private final Set<PropertyIndex> openPropertyIndexes = new HashSet<>();
+
+    /**
+     * The properties files changed in this session, keyed by the file path. The files are written on
+     * {@link #save()}, so a file, that is changed several times in a session, is written only once.
+     */
+    private final Map<Path, Properties> pendingProperties = new LinkedHashMap<>();
+
     public FileMetadataRepository( Map<String, MetadataFacetFactory> metadataFacetFactories,
                                    ArchivaConfiguration configuration )
+    {
+        this( metadataFacetFactories, configuration, new IndexRegistry() );
+    }
+
+    /**
+     * @param indexRegistry the indexes shared with the other sessions of the session factory
+     */
+    FileMetadataRepository( Map<String, MetadataFacetFactory> metadataFacetFactories,
+                            ArchivaConfiguration configuration, IndexRegistry indexRegistry )
     {
         this.metadataFacetFactories = metadataFacetFactories;
         this.configuration = configuration;
+        this.indexRegistry = indexRegistry;
     }
 
     private Path getBaseDirectory(String repoId )
@@ -110,6 +145,278 @@ private Path getDirectory( String repoId )
         return getBaseDirectory( repoId ).resolve( "content" );
     }
 
+    private boolean isConfigured( String repoId )
+    {
+        return configuration.getConfiguration().getManagedRepositoriesAsMap().containsKey( repoId );
+    }
+
+    /**
+     * Returns the namespace trie of the repository.
+     *
+     * @return the trie, or <code>null</code>, if the repository is not configured
+     */
+    private NamespaceTrie getNamespaceTrie( String repoId )
+        throws IOException
+    {
+        if ( !isConfigured( repoId ) )
+        {
+            return null;
+        }
+        return NamespaceTrie.forDirectory( indexRegistry, getDirectory( repoId ),
+                                           NAMESPACE_METADATA_KEY + ".properties" );
+    }
+
+    /**
+     * Returns the artifact index of the repository, without building it.
+     *
+     * @return the index, or <code>null</code>, if the repository is not configured
+     */
+    private ArtifactIndex findArtifactIndex( String repoId )
+        throws IOException
+    {
+        if ( !isConfigured( repoId ) )
+        {
+            return null;
+        }
+        ArtifactIndex index =
+            ArtifactIndex.forDirectory( indexRegistry, getBaseDirectory( repoId ).resolve( INDEX_DIRECTORY ) );
+        synchronized ( openIndexes )
+        {
+            openIndexes.add( index );
+        }
+        return index;
+    }
+
+    private void updateArtifactIndex( String repoId, Consumer<ArtifactIndex> update )
+        throws IOException
+    {
+        ArtifactIndex index = findArtifactIndex( repoId );
+        if ( index != null )
+        {
+            update.accept( index );
+        }
+    }
+
+    /**
+     * Returns the artifact index of the repository. If the index is not complete, it is rebuilt from the content.
+     *
+     * @return the index, or <code>null</code>, if the repository is not configured
+     */
+    private ArtifactIndex getArtifactIndex( String repoId )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            ArtifactIndex index = findArtifactIndex( repoId );
+            if ( index == null )
+            {
+                return null;
+            }
+            synchronized ( index )
+            {
+                if ( !index.isComplete() )
+                {
+                    log.info( "Building the artifact index of repository {}", repoId );
+                    index.clear();
+                    // walks the content page by page, so the artifacts are not loaded at once
+                    try ( MetadataCursor<ArtifactMetadata> artifacts = new ArtifactCursor( repoId, artifact -> true,
+                                                                                           new QueryParameter() ) )
+                    {
+                        while ( artifacts.hasNext() )
+                        {
+                            ArtifactMetadata artifact = artifacts.next();
+                            index.put( artifact.getNamespace(), artifact.getProject(), artifact.getProjectVersion(),
+                                       artifact );
+                        }
+                    }
+                    catch ( MetadataCursorException e )
+                    {
+                        throw new MetadataRepositoryException( e.getMessage(), e );
+                    }
+                    index.setComplete();
+                    index.save();
+                }
+            }
+            return index;
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    /**
+     * Returns the property index of the repository, without building it.
+     *
+     * @return the index, or <code>null</code>, if the repository is not configured
+     */
+    private PropertyIndex findPropertyIndex( String repoId )
+        throws IOException
+    {
+        if ( !isConfigured( repoId ) )
+        {
+            return null;
+        }
+        PropertyIndex index =
+            PropertyIndex.forDirectory( indexRegistry, getBaseDirectory( repoId ).resolve( INDEX_DIRECTORY ) );
+        synchronized ( openPropertyIndexes )
+        {
+            openPropertyIndexes.add( index );
+        }
+        return index;
+    }
+
+    private void updatePropertyIndex( String repoId, Consumer<PropertyIndex> update )
+        throws IOException
+    {
+        PropertyIndex index = findPropertyIndex( repoId );
+        if ( index != null )
+        {
+            update.accept( index );
+        }
+    }
+
+    /**
+     * Returns the property index of the repository. If the index is not complete, it is rebuilt from the content.
+     *
+     * @return the index, or <code>null</code>, if the repository is not configured
+     */
+    private PropertyIndex getPropertyIndex( String repoId )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            PropertyIndex index = findPropertyIndex( repoId );
+            if ( index == null )
+            {
+                return null;
+            }
+            synchronized ( index )
+            {
+                if ( !index.isComplete() )
+                {
+                    log.info( "Building the property index of repository {}", repoId );
+                    index.clear();
+                    for ( String ns : getRootNamespaces( repoId ) )
+                    {
+                        buildPropertyIndex( index, repoId, ns );
+                    }
+                    index.setComplete();
+                    index.save();
+                }
+            }
+            return index;
+        }
+        catch ( IOException | MetadataResolutionException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    private void buildPropertyIndex( PropertyIndex index, String repoId, String ns )
+        throws IOException, MetadataResolutionException
+    {
+        for ( String namespace : getNamespaces( repoId, ns ) )
+        {
+            buildPropertyIndex( index, repoId, ns + "." + namespace );
+        }
+
+        for ( String project : getProjects( repoId, ns ) )
+        {
+            for ( String version : getProjectVersions( repoId, ns, project ) )
+            {
+                Path directory = getDirectory( repoId ).resolve( ns + "/" + project + "/" + version );
+                index.put( PropertyIndex.getCoordinates( ns, project, version ),
+                           readOrCreateProperties( directory, PROJECT_VERSION_METADATA_KEY ) );
+            }
+        }
+    }
+
+    /**
+     * Returns the artifacts, whose metadata contains the given property, in the given or in all repositories.
+     * Properties of the project version match all artifacts of the project version.
+     */
+    private List<ArtifactMetadata> getArtifactsByTerm( char kind, String key, String value, String repositoryId )
+        throws MetadataRepositoryException
+    {
+        String term = PropertyIndex.getTerm( kind, key, value );
+        Collection<String> repositoryIds =
+            repositoryId != null ? Collections.singletonList( repositoryId ) : getRepositories();
+        List<ArtifactMetadata> artifacts = new ArrayList<>();
+        try
+        {
+            for ( String repoId : repositoryIds )
+            {
+                PropertyIndex index = getPropertyIndex( repoId );
+                if ( index == null )
+                {
+                    continue;
+                }
+                for ( String coordinates : index.get( term ) )
+                {
+                    String[] path = coordinates.split( "/" );
+                    Path directory = getDirectory( repoId ).resolve( coordinates );
+                    // the index may contain project versions changed by other processes
+                    Set<String> ids = PropertyIndex.getTerms(
+                        readOrCreateProperties( directory, PROJECT_VERSION_METADATA_KEY ) ).get( term );
+                    if ( ids == null )
+                    {
+                        continue;
+                    }
+                    for ( ArtifactMetadata artifact : getArtifacts( repoId, path[0], path[1], path[2] ) )
+                    {
+                        if ( kind != PropertyIndex.ARTIFACT_FACET || ids.contains( artifact.getId() ) )
+                        {
+                            artifacts.add( artifact );
+                        }
+                    }
+                }
+            }
+        }
+        catch ( IOException | MetadataResolutionException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+        return artifacts;
+    }
+
+    /**
+     * Reads the artifacts with the given coordinates. Coordinates of artifacts, that do not exist anymore, are
+     * skipped.
+     */
+    private List<ArtifactMetadata> getArtifacts( String repoId, Collection<String> coordinates )
+        throws MetadataRepositoryException
+    {
+        Map<String, Set<String>> idsByVersion = new LinkedHashMap<>();
+        for ( String coordinate : coordinates )
+        {
+            int i = coordinate.lastIndexOf( '/' );
+            idsByVersion.computeIfAbsent( coordinate.substring( 0, i ), k -> new HashSet<>() ).add(
+                coordinate.substring( i + 1 ) );
+        }
+
+        List<ArtifactMetadata> artifacts = new ArrayList<>( coordinates.size() );
+        try
+        {
+            for ( Map.Entry<String, Set<String>> entry : idsByVersion.entrySet() )
+            {
+                String[] path = entry.getKey().split( "/" );
+                for ( ArtifactMetadata artifact : getArtifacts( repoId, path[0], path[1], path[2] ) )
+                {
+                    if ( entry.getValue().contains( artifact.getId() ) )
+                    {
+                        artifacts.add( artifact );
+                    }
+                }
+            }
+        }
+        catch ( MetadataResolutionException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+        return artifacts;
+    }
+
     @Override
     public void updateProject( String repoId, ProjectMetadata project )
     {
@@ -234,6 +541,9 @@ public void updateProjectVersion( String repoId, String namespace, String projec
             updateProjectVersionFacets( versionMetadata, properties );
 
             writeProperties( properties, directory, PROJECT_VERSION_METADATA_KEY );
+
+            updatePropertyIndex( repoId, index -> index.put(
+                PropertyIndex.getCoordinates( namespace, projectId, versionMetadata.getId() ), properties ) );
         }
         catch ( IOException e )
         {
@@ -302,11 +612,25 @@ public void updateNamespace( String repoId, String namespace )
     {
         try
         {
-            Path namespaceDirectory = getDirectory( repoId ).resolve( namespace );
+            Path namespaceFile = getDirectory( repoId ).resolve( namespace ).resolve(
+                NAMESPACE_METADATA_KEY + ".properties" );
+            if ( Files.exists( namespaceFile ) )
+            {
+                // the file contains only the namespace, it is not rewritten for each project of the namespace
+                return;
+            }
             Properties properties = new Properties();
             properties.setProperty( "namespace", namespace );
-            writeProperties( properties, namespaceDirectory, NAMESPACE_METADATA_KEY );
-
+            // written instantly, the namespace trie reflects the directories on disk
+            NamespaceTrie namespaceTrie = getNamespaceTrie( repoId );
+            if ( namespaceTrie != null )
+            {
+                namespaceTrie.add( namespace, () -> storeProperties( properties, namespaceFile ) );
+            }
+            else
+            {
+                storeProperties( properties, namespaceFile );
+            }
         }
         catch ( IOException e )
         {
@@ -321,16 +645,16 @@ public List<String> getMetadataFacets( String repoId, String facetId )
         try
         {
             Path directory = getMetadataDirectory( repoId, facetId );
-            if (!(Files.exists(directory) && Files.isDirectory(directory))) {
-                return Collections.emptyList();
-            }
-            List<String> facets;
             final String searchFile = METADATA_KEY + ".properties";
-            try(Stream<Path> fs = Files.walk(directory, FileVisitOption.FOLLOW_LINKS) ) {
-                facets = fs.filter(Files::isDirectory).filter(path -> Files.exists(path.resolve(searchFile)))
-                        .map(path -> directory.relativize(path).toString()).collect(Collectors.toList());
+            Set<String> facets = new LinkedHashSet<>();
+            if (Files.exists(directory) && Files.isDirectory(directory)) {
+                try(Stream<Path> fs = Files.walk(directory, FileVisitOption.FOLLOW_LINKS) ) {
+                    fs.filter(Files::isDirectory).filter(path -> Files.exists(path.resolve(searchFile)))
+                            .map(path -> directory.relativize(path).toString()).forEach(facets::add);
+                }
             }
-            return facets;
+            facets.addAll( getPendingDirectories( directory, searchFile, false ) );
+            return new ArrayList<>( facets );
         }
         catch ( IOException e )
         {
@@ -345,10 +669,13 @@ public boolean hasMetadataFacet( String repositoryId, String facetId )
 
         try {
             Path directory = getMetadataDirectory(repositoryId, facetId);
+            final String searchFile = METADATA_KEY + ".properties";
+            if (!getPendingDirectories(directory, searchFile, false).isEmpty()) {
+                return true;
+            }
             if (!(Files.exists(directory) && Files.isDirectory(directory))) {
                 return false;
             }
-            final String searchFile = METADATA_KEY + ".properties";
             try (Stream<Path> fs = Files.walk(directory, FileVisitOption.FOLLOW_LINKS)) {
                 return fs.filter(Files::isDirectory).anyMatch(path -> Files.exists(path.resolve(searchFile)));
             }
@@ -420,6 +747,7 @@ public void removeMetadataFacets( String repositoryId, String facetId )
         try
         {
             Path dir = getMetadataDirectory( repositoryId, facetId );
+            discardProperties( dir );
             org.apache.archiva.common.utils.FileUtils.deleteDirectory( dir );
         }
         catch ( IOException e )
@@ -435,6 +763,7 @@ public void removeMetadataFacet( String repoId, String facetId, String name )
         try
         {
             Path dir = getMetadataDirectory( repoId, facetId ).resolve( name );
+            discardProperties( dir );
             org.apache.archiva.common.utils.FileUtils.deleteDirectory( dir );
         }
         catch ( IOException e )
@@ -447,57 +776,28 @@ public void removeMetadataFacet( String repoId, String facetId, String name )
     public List<ArtifactMetadata> getArtifactsByDateRange( String repoId, Date startTime, Date endTime )
         throws MetadataRepositoryException
     {
-        try
+        ArtifactIndex index = getArtifactIndex( repoId );
+        if ( index == null )
         {
-            // TODO: this is quite slow - if we are to persist with this repository implementation we should build an index
-            //  of this information (eg. in Lucene, as before)
-
-            List<ArtifactMetadata> artifacts = new ArrayList<>();
-            for ( String ns : getRootNamespaces( repoId ) )
-            {
-                getArtifactsByDateRange( artifacts, repoId, ns, startTime, endTime );
-            }
-            artifacts.sort(new ArtifactComparator() );
-            return artifacts;
+            return new ArrayList<>();
         }
-        catch ( MetadataResolutionException e )
+        List<ArtifactMetadata> artifacts = new ArrayList<>();
+        for ( ArtifactMetadata artifact : getArtifacts( repoId, index.getByDateRange( startTime, endTime ) ) )
         {
-            throw new MetadataRepositoryException( e.getMessage(), e );
+            // the index may contain artifacts changed by other processes
+            if ( isGatheredBetween( artifact, startTime, endTime ) )
+            {
+                artifacts.add( artifact );
+            }
         }
+        artifacts.sort( new ArtifactComparator() );
+        return artifacts;
     }
 
-    private void getArtifactsByDateRange( List<ArtifactMetadata> artifacts, String repoId, String ns, Date startTime,
-                                          Date endTime )
-        throws MetadataRepositoryException
+    private static boolean isGatheredBetween( ArtifactMetadata artifact, Date startTime, Date endTime )
     {
-        try
-        {
-            for ( String namespace : getNamespaces( repoId, ns ) )
-            {
-                getArtifactsByDateRange( artifacts, repoId, ns + "." + namespace, startTime, endTime );
-            }
-
-            for ( String project : getProjects( repoId, ns ) )
-            {
-                for ( String version : getProjectVersions( repoId, ns, project ) )
-                {
-                    for ( ArtifactMetadata artifact : getArtifacts( repoId, ns, project, version ) )
-                    {
-                        if ( startTime == null || startTime.before( artifact.getWhenGathered() ) )
-                        {
-                            if ( endTime == null || endTime.after( artifact.getWhenGathered() ) )
-                            {
-                                artifacts.add( artifact );
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        catch ( MetadataResolutionException e )
-        {
-            throw new MetadataRepositoryException( e.getMessage(), e );
-        }
+        return ( startTime == null || startTime.before( artifact.getWhenGathered() ) ) && ( endTime == null
+            || endTime.after( artifact.getWhenGathered() ) );
     }
 
     @Override
@@ -607,19 +907,136 @@ else if ( "facetIds".equals( field ) )
     @Override
     public void save()
     {
-        // it's all instantly persisted
+        // the indexes are written first, so they never miss written metadata
+        saveIndexes();
+        flushPropertiesQuietly();
     }
 
     @Override
     public void close()
     {
-        // nothing additional to close
+        // the file-based storage always persisted instantly, so the pending changes are not dropped here
+        saveIndexes();
+        flushPropertiesQuietly();
+    }
+
+    private void flushPropertiesQuietly()
+    {
+        try
+        {
+            flushProperties();
+        }
+        catch ( IOException e )
+        {
+            log.error( "Could not write the metadata: {}", e.getMessage(), e );
+        }
+    }
+
+    private void saveIndexes()
+    {
+        synchronized ( openIndexes )
+        {
+            for ( ArtifactIndex index : openIndexes )
+            {
+                try
+                {
+                    index.save();
+                }
+                catch ( IOException e )
+                {
+                    log.error( "Could not save the artifact index: {}", e.getMessage(), e );
+                }
+            }
+            openIndexes.clear();
+        }
+        synchronized ( openPropertyIndexes )
+        {
+            for ( PropertyIndex index : openPropertyIndexes )
+            {
+                try
+                {
+                    index.save();
+                }
+                catch ( IOException e )
+                {
+                    log.error( "Could not save the property index: {}", e.getMessage(), e );
+                }
+            }
+            openPropertyIndexes.clear();
+        }
     }
 
     @Override
     public void revert()
     {
-        log.warn( "Attempted to revert a session, but the file-based repository storage doesn't support it" );
+        List<Path> revertedFiles;
+        synchronized ( pendingProperties )
+        {
+            if ( pendingProperties.isEmpty() )
+            {
+                return;
+            }
+            revertedFiles = new ArrayList<>( pendingProperties.keySet() );
+            pendingProperties.clear();
+        }
+        // the indexes already contain the reverted changes, the project versions are indexed again from the
+        // written metadata. The indexes are shared, so the changes of other sessions are kept.
+        String versionFileName = PROJECT_VERSION_METADATA_KEY + ".properties";
+        for ( String repoId : getRepositories() )
+        {
+            try
+            {
+                Path directory = getDirectory( repoId );
+                for ( Path file : revertedFiles )
+                {
+                    Path relativePath = file.startsWith( directory ) ? directory.relativize( file ) : null;
+                    if ( relativePath != null && relativePath.getNameCount() == 4 && versionFileName.equals(
+                        relativePath.getFileName().toString() ) )
+                    {
+                        reindexProjectVersion( repoId, relativePath.getName( 0 ).toString(),
+                                               relativePath.getName( 1 ).toString(),
+                                               relativePath.getName( 2 ).toString() );
+                    }
+                }
+            }
+            catch ( IOException | MetadataResolutionException e )
+            {
+                log.error( "Could not revert the indexes of repository {}, they are rebuilt: {}", repoId,
+                           e.getMessage(), e );
+                try
+                {
+                    updateArtifactIndex( repoId, ArtifactIndex::clear );
+                    updatePropertyIndex( repoId, PropertyIndex::clear );
+                }
+                catch ( IOException ex )
+                {
+                    log.error( "Could not clear the indexes of repository {}: {}", repoId, ex.getMessage(), ex );
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the index entries of the project version by the entries of its written metadata.
+     */
+    private void reindexProjectVersion( String repoId, String namespace, String projectId, String projectVersion )
+        throws IOException, MetadataResolutionException
+    {
+        String coordinates = PropertyIndex.getCoordinates( namespace, projectId, projectVersion );
+        Collection<ArtifactMetadata> artifacts = getArtifacts( repoId, namespace, projectId, projectVersion );
+        Properties properties =
+            readOrCreateProperties( getDirectory( repoId ).resolve( coordinates ), PROJECT_VERSION_METADATA_KEY );
+        updateArtifactIndex( repoId, index -> {
+            synchronized ( index )
+            {
+                index.removeAll( coordinates + "/" );
+                for ( ArtifactMetadata artifact : artifacts )
+                {
+                    index.put( namespace, projectId, projectVersion, artifact );
+                }
+            }
+        } );
+        updatePropertyIndex( repoId, index -> index.put( coordinates, properties ) );
     }
 
     @Override
@@ -663,24 +1080,21 @@ public Collection<String> getRepositories()
     public List<ArtifactMetadata> getArtifactsByChecksum( String repositoryId, String checksum )
         throws MetadataRepositoryException
     {
-        try
+        ArtifactIndex index = getArtifactIndex( repositoryId );
+        if ( index == null )
         {
-            // TODO: this is quite slow - if we are to persist with this repository implementation we should build an index
-            //  of this information (eg. in Lucene, as before)
-            // alternatively, we could build a referential tree in the content repository, however it would need some levels
-            // of depth to avoid being too broad to be useful (eg. /repository/checksums/a/ab/abcdef1234567)
-
-            List<ArtifactMetadata> artifacts = new ArrayList<>();
-            for ( String ns : getRootNamespaces( repositoryId ) )
-            {
-                getArtifactsByChecksum( artifacts, repositoryId, ns, checksum );
-            }
-            return artifacts;
+            return new ArrayList<>();
         }
-        catch ( MetadataResolutionException e )
+        List<ArtifactMetadata> artifacts = new ArrayList<>();
+        for ( ArtifactMetadata artifact : getArtifacts( repositoryId, index.getByChecksum( checksum ) ) )
         {
-            throw new MetadataRepositoryException( e.getMessage(), e );
+            // the index may contain artifacts changed by other processes
+            if ( hasChecksum( artifact, checksum ) )
+            {
+                artifacts.add( artifact );
+            }
         }
+        return artifacts;
     }
 
     @Override
@@ -690,7 +1104,19 @@ public void removeNamespace( String repositoryId, String project )
         try
         {
             Path namespaceDirectory = getDirectory( repositoryId ).resolve( project );
-            org.apache.archiva.common.utils.FileUtils.deleteDirectory( namespaceDirectory );
+            discardProperties( namespaceDirectory );
+            NamespaceTrie namespaceTrie = getNamespaceTrie( repositoryId );
+            if ( namespaceTrie != null )
+            {
+                namespaceTrie.remove( project, () -> org.apache.archiva.common.utils.FileUtils.deleteDirectory(
+                    namespaceDirectory ) );
+            }
+            else
+            {
+                org.apache.archiva.common.utils.FileUtils.deleteDirectory( namespaceDirectory );
+            }
+            updateArtifactIndex( repositoryId, index -> index.removeAll( project + "/" ) );
+            updatePropertyIndex( repositoryId, index -> index.removeAll( project + "/" ) );
             //Properties properties = new Properties();
             //properties.setProperty( "namespace", namespace );
             //writeProperties( properties, namespaceDirectory, NAMESPACE_METADATA_KEY );
@@ -736,6 +1162,13 @@ public void removeArtifact( ArtifactMetadata artifactMetadata, String baseVersio
             }
 
             writeProperties( properties, directory, PROJECT_VERSION_METADATA_KEY );
+
+            updateArtifactIndex( artifactMetadata.getRepositoryId(), index -> index.remove(
+                ArtifactIndex.getCoordinates( artifactMetadata.getNamespace(), artifactMetadata.getProject(),
+                                              baseVersion, id ) ) );
+            updatePropertyIndex( artifactMetadata.getRepositoryId(), index -> index.put(
+                PropertyIndex.getCoordinates( artifactMetadata.getNamespace(), artifactMetadata.getProject(),
+                                              baseVersion ), properties ) );
         }
         catch ( IOException e )
         {
@@ -772,8 +1205,15 @@ public void removeArtifact( String repoId, String namespace, String project, Str
                 }
             }
 
+            discardProperties( directory );
             org.apache.archiva.common.utils.FileUtils.deleteDirectory( directory );
             //writeProperties( properties, directory, PROJECT_VERSION_METADATA_KEY );
+
+            // the whole version directory is removed
+            updateArtifactIndex( repoId,
+                                 index -> index.removeAll( namespace + "/" + project + "/" + version + "/" ) );
+            updatePropertyIndex( repoId,
+                                 index -> index.remove( PropertyIndex.getCoordinates( namespace, project, version ) ) );
         }
         catch ( IOException e )
         {
@@ -806,7 +1246,23 @@ public void removeRepository( String repoId )
         try
         {
             Path dir = getDirectory( repoId );
+            discardProperties( dir );
             org.apache.archiva.common.utils.FileUtils.deleteDirectory( dir );
+            updateArtifactIndex( repoId, index -> {
+                index.clear();
+                index.setComplete();
+            } );
+            updatePropertyIndex( repoId, index -> {
+                index.clear();
+                index.setComplete();
+            } );
+            NamespaceTrie namespaceTrie = getNamespaceTrie( repoId );
+            if ( namespaceTrie != null )
+            {
+                namespaceTrie.clear();
+            }
+            // the cleared indexes are still saved by this session, but not kept for the next sessions
+            indexRegistry.evict( getBaseDirectory( repoId ) );
         }
         catch ( IOException e )
         {
@@ -814,56 +1270,30 @@ public void removeRepository( String repoId )
         }
     }
 
-    private void getArtifactsByChecksum( List<ArtifactMetadata> artifacts, String repositoryId, String ns,
-                                         String checksum )
-        throws MetadataRepositoryException
+    private static boolean hasChecksum( ArtifactMetadata artifact, String checksum )
     {
-        try
-        {
-            for ( String namespace : getNamespaces( repositoryId, ns ) )
-            {
-                getArtifactsByChecksum( artifacts, repositoryId, ns + "." + namespace, checksum );
-            }
-
-            for ( String project : getProjects( repositoryId, ns ) )
-            {
-                for ( String version : getProjectVersions( repositoryId, ns, project ) )
-                {
-                    for ( ArtifactMetadata artifact : getArtifacts( repositoryId, ns, project, version ) )
-                    {
-                        if ( checksum.equals( artifact.getMd5() ) || checksum.equals( artifact.getSha1() ) )
-                        {
-                            artifacts.add( artifact );
-                        }
-                    }
-                }
-            }
-        }
-        catch ( MetadataResolutionException e )
-        {
-            throw new MetadataRepositoryException( e.getMessage(), e );
-        }
+        return checksum.equals( artifact.getMd5() ) || checksum.equals( artifact.getSha1() );
     }
 
     @Override
     public List<ArtifactMetadata> getArtifactsByProjectVersionMetadata( String key, String value, String repositoryId )
         throws MetadataRepositoryException
     {
-        throw new UnsupportedOperationException( "not yet implemented in File backend" );
+        return getArtifactsByTerm( PropertyIndex.PROJECT_VERSION_FACET, key, value, repositoryId );
     }
 
     @Override
     public List<ArtifactMetadata> getArtifactsByMetadata( String key, String value, String repositoryId )
         throws MetadataRepositoryException
     {
-        throw new UnsupportedOperationException( "not yet implemented in File backend" );
+        return getArtifactsByTerm( PropertyIndex.ARTIFACT_FACET, key, value, repositoryId );
     }
 
     @Override
     public List<ArtifactMetadata> getArtifactsByProperty( String key, String value, String repositoryId )
         throws MetadataRepositoryException
     {
-        throw new UnsupportedOperationException( "getArtifactsByProperty not yet implemented in File backend" );
+        return getArtifactsByTerm( PropertyIndex.PROJECT_VERSION_PROPERTY, key, value, repositoryId );
     }
 
     private Path getMetadataDirectory( String repoId, String facetId )
@@ -936,6 +1366,10 @@ public void updateArtifact( String repoId, String namespace, String projectId, S
             updateArtifactFacets( artifact, properties );
 
             writeProperties( properties, directory, PROJECT_VERSION_METADATA_KEY );
+
+            updateArtifactIndex( repoId, index -> index.put( namespace, projectId, projectVersion, artifact ) );
+            updatePropertyIndex( repoId, index -> index.put(
+                PropertyIndex.getCoordinates( namespace, projectId, projectVersion ), properties ) );
         }
         catch ( IOException e )
         {
@@ -965,8 +1399,19 @@ private Properties readOrCreateProperties( Path directory, String propertiesKey
     private Properties readProperties( Path directory, String propertiesKey )
         throws IOException
     {
+        Path file = directory.resolve( propertiesKey + ".properties" );
         Properties properties = new Properties();
-        try (InputStream in = Files.newInputStream( directory.resolve( propertiesKey + ".properties" )))
+        synchronized ( pendingProperties )
+        {
+            Properties pending = pendingProperties.get( file );
+            if ( pending != null )
+            {
+                // a copy, the callers modify the returned properties
+                properties.putAll( pending );
+                return properties;
+            }
+        }
+        try (InputStream in = Files.newInputStream( file ))
         {
 
             properties.load( in );
@@ -1256,36 +1701,12 @@ public Collection<String> getNamespaces( String repoId, String baseNamespace )
     {
         try
         {
-            List<String> allNamespaces;
-            Path directory = getDirectory( repoId );
-            if (!(Files.exists(directory) && Files.isDirectory(directory))) {
-                return Collections.emptyList();
-            }
-            final String searchFile = NAMESPACE_METADATA_KEY + ".properties";
-            try(Stream<Path> fs = Files.list(directory)) {
-                allNamespaces = fs.filter(Files::isDirectory).filter(path ->
-                        Files.exists(path.resolve(searchFile))
-                ).map(path -> path.getFileName().toString()).collect(Collectors.toList());
-            }
-
-            Set<String> namespaces = new LinkedHashSet<>();
-            int fromIndex = baseNamespace != null ? baseNamespace.length() + 1 : 0;
-            for ( String namespace : allNamespaces )
+            NamespaceTrie namespaceTrie = getNamespaceTrie( repoId );
+            if ( namespaceTrie == null )
             {
-                if ( baseNamespace == null || namespace.startsWith( baseNamespace + "." ) )
-                {
-                    int i = namespace.indexOf( '.', fromIndex );
-                    if ( i >= 0 )
-                    {
-                        namespaces.add( namespace.substring( fromIndex, i ) );
-                    }
-                    else
-                    {
-                        namespaces.add( namespace.substring( fromIndex ) );
-                    }
-                }
+                return Collections.emptyList();
             }
-            return new ArrayList<>( namespaces );
+            return namespaceTrie.getChildren( baseNamespace );
         }
         catch ( IOException e )
         {
@@ -1299,19 +1720,19 @@ public Collection<String> getProjects( String repoId, String namespace )
     {
         try
         {
-            List<String> projects;
             Path directory = getDirectory( repoId ).resolve( namespace );
-            if (!(Files.exists(directory) && Files.isDirectory(directory))) {
-                return Collections.emptyList();
-            }
             final String searchFile = PROJECT_METADATA_KEY + ".properties";
-            try(Stream<Path> fs = Files.list(directory)) {
-                projects = fs.filter(Files::isDirectory).filter(path ->
-                        Files.exists(path.resolve(searchFile))
-                ).map(path -> path.getFileName().toString()).collect(Collectors.toList());
+            Set<String> projects = new LinkedHashSet<>();
+            if (Files.exists(directory) && Files.isDirectory(directory)) {
+                try(Stream<Path> fs = Files.list(directory)) {
+                    fs.filter(Files::isDirectory).filter(path ->
+                            Files.exists(path.resolve(searchFile))
+                    ).map(path -> path.getFileName().toString()).forEach(projects::add);
+                }
             }
+            projects.addAll( getPendingDirectories( directory, searchFile, true ) );
 
-            return projects;
+            return new ArrayList<>( projects );
         }
         catch ( IOException e )
         {
@@ -1325,18 +1746,18 @@ public Collection<String> getProjectVersions( String repoId, String namespace, S
     {
         try
         {
-            List<String> projectVersions;
             Path directory = getDirectory( repoId ).resolve( namespace + "/" + projectId );
-            if (!(Files.exists(directory) && Files.isDirectory(directory))) {
-                return Collections.emptyList();
-            }
             final String searchFile = PROJECT_VERSION_METADATA_KEY + ".properties";
-            try(Stream<Path> fs = Files.list(directory)) {
-                projectVersions = fs.filter(Files::isDirectory).filter(path ->
-                        Files.exists(path.resolve(searchFile))
-                ).map(path -> path.getFileName().toString()).collect(Collectors.toList());
+            Set<String> projectVersions = new LinkedHashSet<>();
+            if (Files.exists(directory) && Files.isDirectory(directory)) {
+                try(Stream<Path> fs = Files.list(directory)) {
+                    fs.filter(Files::isDirectory).filter(path ->
+                            Files.exists(path.resolve(searchFile))
+                    ).map(path -> path.getFileName().toString()).forEach(projectVersions::add);
+                }
             }
-            return projectVersions;
+            projectVersions.addAll( getPendingDirectories( directory, searchFile, true ) );
+            return new ArrayList<>( projectVersions );
         }
         catch ( IOException e )
         {
@@ -1351,7 +1772,10 @@ public void removeProject( String repositoryId, String namespace, String project
         try
         {
             Path directory = getDirectory( repositoryId ).resolve( namespace + "/" + projectId );
+            discardProperties( directory );
             org.apache.archiva.common.utils.FileUtils.deleteDirectory( directory );
+            updateArtifactIndex( repositoryId, index -> index.removeAll( namespace + "/" + projectId + "/" ) );
+            updatePropertyIndex( repositoryId, index -> index.removeAll( namespace + "/" + projectId + "/" ) );
         }
         catch ( IOException e )
         {
@@ -1366,7 +1790,12 @@ public void removeProjectVersion( String repoId, String namespace, String projec
         try
         {
             Path directory = getDirectory( repoId ).resolve( namespace + "/" + projectId + "/" + projectVersion );
+            discardProperties( directory );
             org.apache.archiva.common.utils.FileUtils.deleteDirectory( directory );
+            updateArtifactIndex( repoId,
+                                 index -> index.removeAll( namespace + "/" + projectId + "/" + projectVersion + "/" ) );
+            updatePropertyIndex( repoId, index -> index.remove(
+                PropertyIndex.getCoordinates( namespace, projectId, projectVersion ) ) );
         }
         catch ( IOException e )
         {
@@ -1375,13 +1804,97 @@ public void removeProjectVersion( String repoId, String namespace, String projec
 
     }
 
+    /**
+     * Keeps the properties until the session is saved. Reads of the same file in this session return the
+     * pending properties.
+     */
     private void writeProperties( Properties properties, Path directory, String propertiesKey )
+    {
+        Properties pending = new Properties();
+        pending.putAll( properties );
+        synchronized ( pendingProperties )
+        {
+            pendingProperties.put( directory.resolve( propertiesKey + ".properties" ), pending );
+        }
+    }
+
+    /**
+     * Returns the directories below the given directory, that contain the given properties file in the pending
+     * properties of this session. The listings add them to the directories on disk, so listing does not write the
+     * pending properties and a session can collect the changes of many files until it is saved.
+     *
+     * @param children <code>true</code> to return only direct children of the directory
+     * @return the paths of the directories relative to the given directory
+     */
+    private Set<String> getPendingDirectories( Path directory, String fileName, boolean children )
+    {
+        Set<String> directories = new LinkedHashSet<>();
+        synchronized ( pendingProperties )
+        {
+            for ( Path file : pendingProperties.keySet() )
+            {
+                Path parent = file.getParent();
+                if ( file.getFileName().toString().equals( fileName ) && parent.startsWith( directory ) && (
+                    !children || directory.equals( parent.getParent() ) ) )
+                {
+                    directories.add( directory.relativize( parent ).toString() );
+                }
+            }
+        }
+        return directories;
+    }
+
+    /**
+     * Writes the pending properties of this session. Must be called before directories are walked, that do
+     * not consider the pending properties, because the directories of new entries are not created before.
+     */
+    private void flushProperties()
+        throws IOException
+    {
+        synchronized ( pendingProperties )
+        {
+            Iterator<Map.Entry<Path, Properties>> it = pendingProperties.entrySet().iterator();
+            while ( it.hasNext() )
+            {
+                Map.Entry<Path, Properties> entry = it.next();
+                storeProperties( entry.getValue(), entry.getKey() );
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops the pending properties below the given directory, e.g. if the directory is deleted.
+     */
+    private void discardProperties( Path directory )
+    {
+        synchronized ( pendingProperties )
+        {
+            pendingProperties.keySet().removeIf( file -> file.startsWith( directory ) );
+        }
+    }
+
+    /**
+     * Writes the properties to a temporary file, that replaces the file by an atomic move. So readers never
+     * see a partially written file.
+     */
+    private static void storeProperties( Properties properties, Path file )
         throws IOException
     {
-        Files.createDirectories(directory);
-        try (OutputStream os = Files.newOutputStream( directory.resolve( propertiesKey + ".properties" )))
+        Files.createDirectories( file.getParent() );
+        // unique per write, concurrent sessions may write the same file
+        Path tmpFile = Files.createTempFile( file.getParent(), "." + file.getFileName(), ".tmp" );
+        try
+        {
+            try (OutputStream os = Files.newOutputStream( tmpFile ))
+            {
+                properties.store( os, null );
+            }
+            Files.move( tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        finally
         {
-            properties.store( os, null );
+            Files.deleteIfExists( tmpFile );
         }
     }
 
@@ -1454,4 +1967,233 @@ public List<ArtifactMetadata> searchArtifacts( String key, String text, String r
     {
         throw new UnsupportedOperationException( "searchArtifacts not yet implemented in File backend" );
     }
+
+    @Override
+    public MetadataCursor<ArtifactMetadata> streamArtifacts( String repositoryId, QueryParameter queryParameter )
+    {
+        return new ArtifactCursor( repositoryId, artifact -> true, queryParameter );
+    }
+
+    @Override
+    public MetadataCursor<ArtifactMetadata> streamArtifactsByDateRange( String repositoryId, Date startTime,
+                                                                        Date endTime, QueryParameter queryParameter )
+    {
+        return new IndexedArtifactCursor( repositoryId,
+                                          ( index, after, limit ) -> index.getByDateRange( startTime, endTime, after,
+                                                                                           limit ),
+                                          artifact -> isGatheredBetween( artifact, startTime, endTime ),
+                                          queryParameter );
+    }
+
+    @Override
+    public MetadataCursor<ArtifactMetadata> streamArtifactsByChecksum( String repositoryId, String checksum,
+                                                                       QueryParameter queryParameter )
+    {
+        return new IndexedArtifactCursor( repositoryId,
+                                          ( index, after, limit ) -> index.getByChecksum( checksum, after, limit ),
+                                          artifact -> hasChecksum( artifact, checksum ), queryParameter );
+    }
+
+    @Override
+    public MetadataCursor<ArtifactMetadata> streamSearchArtifacts( String key, String text, String repositoryId,
+                                                                   boolean exact, QueryParameter queryParameter )
+    {
+        throw new UnsupportedOperationException( "searchArtifacts not yet implemented in File backend" );
+    }
+
+    /**
+     * Returns the names of the sub directories, that contain the given properties file, in natural order.
+     * Directories with a name lower than <code>from</code> are skipped without looking into them.
+     */
+    private static List<String> getSortedDirectories( Path directory, String propertiesKey, String from )
+        throws IOException
+    {
+        if ( !Files.isDirectory( directory ) )
+        {
+            return Collections.emptyList();
+        }
+        final String searchFile = propertiesKey + ".properties";
+        try ( Stream<Path> fs = Files.list( directory ) )
+        {
+            return fs.filter( path -> from == null || path.getFileName().toString().compareTo( from ) >= 0 ).filter(
+                path -> Files.exists( path.resolve( searchFile ) ) ).map(
+                path -> path.getFileName().toString() ).sorted().collect( Collectors.toList() );
+        }
+    }
+
+    /**
+     * Walks the namespace, project and version directories in natural order and collects the artifacts of
+     * each page on request. The resume token is the path of the last returned artifact
+     * (<code>namespace/project/version/id</code>), so a page starts with the directories of the previous
+     * page's last artifact and skips all directories before it.
+     */
+    private class ArtifactCursor
+        extends PagedMetadataCursor<ArtifactMetadata>
+    {
+        private final String repoId;
+
+        private final Predicate<ArtifactMetadata> filter;
+
+        ArtifactCursor( String repoId, Predicate<ArtifactMetadata> filter, QueryParameter queryParameter )
+        {
+            super( queryParameter );
+            this.repoId = repoId;
+            this.filter = filter;
+        }
+
+        @Override
+        protected List<ArtifactMetadata> loadPage( String resumeToken, int pageSize )
+            throws MetadataRepositoryException
+        {
+            String[] position = resumeToken != null ? resumeToken.split( "/", 4 ) : new String[4];
+            if ( position.length != 4 )
+            {
+                throw new IllegalArgumentException( "Invalid resume token: " + resumeToken );
+            }
+            List<ArtifactMetadata> page = new ArrayList<>();
+            try
+            {
+                flushProperties();
+                Path directory = getDirectory( repoId );
+                for ( String ns : getSortedDirectories( directory, NAMESPACE_METADATA_KEY, position[0] ) )
+                {
+                    boolean inNamespace = ns.equals( position[0] );
+                    Path namespaceDirectory = directory.resolve( ns );
+                    for ( String project : getSortedDirectories( namespaceDirectory, PROJECT_METADATA_KEY,
+                                                                 inNamespace ? position[1] : null ) )
+                    {
+                        boolean inProject = inNamespace && project.equals( position[1] );
+                        for ( String version : getSortedDirectories( namespaceDirectory.resolve( project ),
+                                                                     PROJECT_VERSION_METADATA_KEY,
+                                                                     inProject ? position[2] : null ) )
+                        {
+                            boolean inVersion = inProject && version.equals( position[2] );
+                            List<ArtifactMetadata> artifacts =
+                                new ArrayList<>( getArtifacts( repoId, ns, project, version ) );
+                            artifacts.sort( Comparator.comparing( ArtifactMetadata::getId ) );
+                            for ( ArtifactMetadata artifact : artifacts )
+                            {
+                                if ( inVersion && artifact.getId().compareTo( position[3] ) <= 0 )
+                                {
+                                    continue;
+                                }
+                                if ( filter.test( artifact ) )
+                                {
+                                    page.add( artifact );
+                                    if ( page.size() >= pageSize )
+                                    {
+                                        return page;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+                return page;
+            }
+            catch ( IOException | MetadataResolutionException e )
+            {
+                throw new MetadataRepositoryException( e.getMessage(), e );
+            }
+        }
+
+        @Override
+        protected String getResumeToken( ArtifactMetadata artifact, String pageToken, int index )
+        {
+            return artifact.getNamespace() + "/" + artifact.getProject() + "/" + artifact.getProjectVersion() + "/"
+                + artifact.getId();
+        }
+    }
+
+    /**
+     * Reads a page of the artifacts, that match a query, from the sorted views of the artifact index.
+     */
+    private interface IndexQuery
+    {
+        /**
+         * @param after the position of the last artifact of the previous page, <code>null</code> for the first page
+         * @return the coordinates of at most <code>limit</code> artifacts by their position in the query result
+         */
+        Map<String, String> getPage( ArtifactIndex index, String after, int limit );
+    }
+
+    /**
+     * Pages through the artifacts, that the artifact index returns for a query, in the order of the index. Each page
+     * is read from the index starting after the position of the previous page, the resume token is the position of
+     * the last returned artifact. The metadata of each page is read from the content and checked with the filter,
+     * because the index may contain artifacts changed by other processes.
+     */
+    private class IndexedArtifactCursor
+        extends PagedMetadataCursor<ArtifactMetadata>
+    {
+        private final String repoId;
+
+        private final IndexQuery query;
+
+        private final Predicate<ArtifactMetadata> filter;
+
+        /**
+         * The positions of the artifacts of the current page.
+         */
+        private final Map<ArtifactMetadata, String> positions = new IdentityHashMap<>();
+
+        IndexedArtifactCursor( String repoId, IndexQuery query, Predicate<ArtifactMetadata> filter,
+                               QueryParameter queryParameter )
+        {
+            super( queryParameter );
+            this.repoId = repoId;
+            this.query = query;
+            this.filter = filter;
+        }
+
+        @Override
+        protected List<ArtifactMetadata> loadPage( String resumeToken, int pageSize )
+            throws MetadataRepositoryException
+        {
+            List<ArtifactMetadata> page = new ArrayList<>();
+            positions.clear();
+            ArtifactIndex index = getArtifactIndex( repoId );
+            if ( index == null )
+            {
+                return page;
+            }
+            String after = resumeToken;
+            while ( page.size() < pageSize )
+            {
+                Map<String, String> batch = query.getPage( index, after, pageSize - page.size() );
+                if ( batch.isEmpty() )
+                {
+                    break;
+                }
+                Map<String, ArtifactMetadata> artifacts = new HashMap<>();
+                for ( ArtifactMetadata artifact : getArtifacts( repoId, batch.values() ) )
+                {
+                    artifacts.put( getCoordinates( artifact ), artifact );
+                }
+                for ( Map.Entry<String, String> position : batch.entrySet() )
+                {
+                    ArtifactMetadata artifact = artifacts.get( position.getValue() );
+                    if ( artifact != null && filter.test( artifact ) )
+                    {
+                        page.add( artifact );
+                        positions.put( artifact, position.getKey() );
+                    }
+                    after = position.getKey();
+                }
+            }
+            return page;
+        }
+
+        @Override
+        protected String getResumeToken( ArtifactMetadata artifact, String pageToken, int index )
+        {
+            return positions.get( artifact );
+        }
+    }
+
+    private static String getCoordinates( ArtifactMetadata artifact )
+    {
+        return ArtifactIndex.getCoordinates( artifact.getNamespace(), artifact.getProject(),
+                                             artifact.getProjectVersion(), artifact.getId() );
+    }
 }
@@ -54,6 +54,8 @@ public class FileRepositorySessionFactory extends AbstractRepositorySessionFacto
     @Inject
     private ApplicationContext applicationContext;
 
+    private final IndexRegistry indexRegistry = new IndexRegistry();
+
     public void initialize()
     {
         Map<String, MetadataFacetFactory> tmpMetadataFacetFactories =
@@ -72,13 +74,14 @@ public void initialize()
 
     @Override
     protected void shutdown() {
-        // do nothing
+        indexRegistry.clear();
     }
 
     @Override
     public RepositorySession createSession()
     {
-        MetadataRepository metadataRepository = new FileMetadataRepository( metadataFacetFactories, configuration );
+        MetadataRepository metadataRepository = new FileMetadataRepository( metadataFacetFactories, configuration,
+                                                                         indexRegistry );
 
         return new RepositorySession( metadataRepository, metadataResolver );
     }
@@ -0,0 +1,90 @@
+package org.apache.archiva.metadata.repository.file;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The loaded indexes and namespace tries of the repositories. The registry is owned by the session factory, so all
+ * sessions of the factory share one instance per index file and content directory. The indexes of a repository are
+ * evicted, when the repository is removed, and all indexes are dropped, when the factory is closed.
+ */
+class IndexRegistry
+{
+    private final Map<Path, PersistentIndex> indexes = new ConcurrentHashMap<>();
+
+    private final Map<Path, NamespaceTrie> namespaceTries = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the index stored in the given file of the directory. The index is loaded from disk on first access.
+     *
+     * @param directory the index directory
+     * @param fileName the name of the index file, identifies the type of the index
+     * @param factory creates an empty index for the index file
+     * @return the shared index instance
+     */
+    @SuppressWarnings( "unchecked" )
+    <T extends PersistentIndex> T getIndex( Path directory, String fileName, Function<Path, T> factory )
+    {
+        Path indexFile = directory.toAbsolutePath().normalize().resolve( fileName );
+        return (T) indexes.computeIfAbsent( indexFile, file -> {
+            PersistentIndex index = factory.apply( file );
+            index.load();
+            return index;
+        } );
+    }
+
+    /**
+     * Returns the namespace trie of the given content directory.
+     *
+     * @param directory the content directory
+     * @param factory creates the trie for the normalized directory
+     * @return the shared trie instance
+     */
+    NamespaceTrie getNamespaceTrie( Path directory, Function<Path, NamespaceTrie> factory )
+    {
+        return namespaceTries.computeIfAbsent( directory.toAbsolutePath().normalize(), factory );
+    }
+
+    /**
+     * Drops the indexes and namespace tries stored below the given directory, e.g. the metadata directory of a
+     * removed repository. Sessions, that still use an evicted index, keep their instance.
+     *
+     * @param directory the directory of the repository metadata
+     */
+    void evict( Path directory )
+    {
+        Path prefix = directory.toAbsolutePath().normalize();
+        indexes.keySet().removeIf( file -> file.startsWith( prefix ) );
+        namespaceTries.keySet().removeIf( dir -> dir.startsWith( prefix ) );
+    }
+
+    /**
+     * Drops all indexes and namespace tries.
+     */
+    void clear()
+    {
+        indexes.clear();
+        namespaceTries.clear();
+    }
+}
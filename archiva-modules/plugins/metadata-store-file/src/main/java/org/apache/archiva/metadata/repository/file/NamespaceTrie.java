@@ -0,0 +1,260 @@
+package org.apache.archiva.metadata.repository.file;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Tree of the namespaces of one repository in the file metadata store.
+ * <p>
+ * The namespaces are stored as flat directories (e.g. <code>org.apache.maven</code>) in the content directory.
+ * The trie splits them at the dots, so the child namespaces of a namespace are found without listing and
+ * filtering all namespace directories. Nodes, that are no namespace of their own (<code>org</code> and
+ * <code>org.apache</code> in the example), are kept as long as they have children.
+ * </p>
+ * <p>
+ * The trie is loaded from the content directory on first access. Adding or removing a namespace directory
+ * changes the modification time of the content directory, so changes of other processes are detected with one
+ * file system call and the trie is loaded again. There is one instance per content directory, which is shared
+ * by all sessions of the session factory, see {@link IndexRegistry}. The instance is thread safe.
+ * </p>
+ */
+class NamespaceTrie
+{
+    private final Path directory;
+
+    private final String searchFile;
+
+    private Node root;
+
+    private Object fileKey;
+
+    private FileTime lastModified;
+
+    private NamespaceTrie( Path directory, String searchFile )
+    {
+        this.directory = directory;
+        this.searchFile = searchFile;
+    }
+
+    /**
+     * Returns the trie of the given content directory.
+     *
+     * @param registry the registry of the loaded indexes
+     * @param directory the content directory
+     * @param searchFile the name of the file, that marks a directory as namespace
+     * @return the shared trie instance
+     */
+    static NamespaceTrie forDirectory( IndexRegistry registry, Path directory, String searchFile )
+    {
+        return registry.getNamespaceTrie( directory, dir -> new NamespaceTrie( dir, searchFile ) );
+    }
+
+    /**
+     * Returns the names of the child namespaces in natural order.
+     *
+     * @param namespace the parent namespace, or <code>null</code> for the root namespaces
+     * @return the child names, without the parent namespace
+     * @throws IOException if the content directory could not be read
+     */
+    synchronized List<String> getChildren( String namespace )
+        throws IOException
+    {
+        refresh();
+        Node node = namespace != null ? root.find( namespace.split( "\\." ) ) : root;
+        return node != null ? new ArrayList<>( node.children.keySet() ) : Collections.emptyList();
+    }
+
+    /**
+     * Runs the change, that creates the namespace directory, and adds the namespace.
+     */
+    synchronized void add( String namespace, Change change )
+        throws IOException
+    {
+        boolean current = isCurrent();
+        change.run();
+        if ( current )
+        {
+            root.add( namespace.split( "\\." ) );
+            updateTimestamp();
+        }
+        else
+        {
+            root = null;
+        }
+    }
+
+    /**
+     * Runs the change, that deletes the namespace directory, and removes the namespace. Child namespaces are kept.
+     */
+    synchronized void remove( String namespace, Change change )
+        throws IOException
+    {
+        boolean current = isCurrent();
+        change.run();
+        if ( current )
+        {
+            root.remove( namespace.split( "\\." ), 0 );
+            updateTimestamp();
+        }
+        else
+        {
+            root = null;
+        }
+    }
+
+    /**
+     * Drops the loaded namespaces, they are loaded again on next access.
+     */
+    synchronized void clear()
+    {
+        root = null;
+    }
+
+    /**
+     * Returns <code>true</code>, if the trie is loaded and the content directory was not changed since.
+     */
+    private boolean isCurrent()
+        throws IOException
+    {
+        if ( root == null )
+        {
+            return false;
+        }
+        if ( !Files.isDirectory( directory ) )
+        {
+            return lastModified == null;
+        }
+        BasicFileAttributes attributes = Files.readAttributes( directory, BasicFileAttributes.class );
+        return Objects.equals( fileKey, attributes.fileKey() ) && attributes.lastModifiedTime().equals(
+            lastModified );
+    }
+
+    private void refresh()
+        throws IOException
+    {
+        if ( isCurrent() )
+        {
+            return;
+        }
+        if ( !Files.isDirectory( directory ) )
+        {
+            root = new Node();
+            fileKey = null;
+            lastModified = null;
+        }
+        else
+        {
+            BasicFileAttributes attributes = Files.readAttributes( directory, BasicFileAttributes.class );
+            fileKey = attributes.fileKey();
+            lastModified = attributes.lastModifiedTime();
+            Node node = new Node();
+            try ( Stream<Path> fs = Files.list( directory ) )
+            {
+                fs.filter( path -> Files.exists( path.resolve( searchFile ) ) ).forEach(
+                    path -> node.add( path.getFileName().toString().split( "\\." ) ) );
+            }
+            root = node;
+        }
+    }
+
+    private void updateTimestamp()
+        throws IOException
+    {
+        if ( Files.isDirectory( directory ) )
+        {
+            BasicFileAttributes attributes = Files.readAttributes( directory, BasicFileAttributes.class );
+            fileKey = attributes.fileKey();
+            lastModified = attributes.lastModifiedTime();
+        }
+        else
+        {
+            fileKey = null;
+            lastModified = null;
+        }
+    }
+
+    /**
+     * A change of the content directory.
+     */
+    interface Change
+    {
+        void run()
+            throws IOException;
+    }
+
+    private static class Node
+    {
+        final Map<String, Node> children = new TreeMap<>();
+
+        boolean namespace = false;
+
+        Node find( String[] names )
+        {
+            Node node = this;
+            for ( int i = 0; i < names.length && node != null; i++ )
+            {
+                node = node.children.get( names[i] );
+            }
+            return node;
+        }
+
+        void add( String[] names )
+        {
+            Node node = this;
+            for ( String name : names )
+            {
+                node = node.children.computeIfAbsent( name, k -> new Node() );
+            }
+            node.namespace = true;
+        }
+
+        /**
+         * @return <code>true</code>, if this node is empty and can be removed from its parent
+         */
+        boolean remove( String[] names, int index )
+        {
+            if ( index == names.length )
+            {
+                namespace = false;
+            }
+            else
+            {
+                Node child = children.get( names[index] );
+                if ( child != null && child.remove( names, index + 1 ) )
+                {
+                    children.remove( names[index] );
+                }
+            }
+            return !namespace && children.isEmpty();
+        }
+    }
+}
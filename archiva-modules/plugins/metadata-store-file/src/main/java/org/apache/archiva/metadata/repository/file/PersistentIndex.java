@@ -0,0 +1,334 @@
+package org.apache.archiva.metadata.repository.file;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Base class of the indexes of the file metadata store, that persists the index in an index file and a journal.
+ * <p>
+ * Each change is written as a record to an in-memory buffer, which is appended to the journal on the next save.
+ * So a save only writes the changes since the last save. The index file is rewritten with all entries, when the
+ * journal gets larger than the index file, or after the index was rebuilt. On load the records of the journal are
+ * replayed on top of the index file.
+ * </p>
+ * <p>
+ * The store saves the indexes before the changed metadata files are written, so the indexes may contain entries,
+ * that are not written yet, but no written metadata is missing. The lookups check the metadata they return. An index
+ * without index file was not built yet or was cleared, it is rebuilt from the content.
+ * </p>
+ * <p>
+ * There is one instance per index file, which is shared by all sessions of the session factory, see
+ * {@link IndexRegistry}. The instances are thread safe, subclasses synchronize on the instance.
+ * </p>
+ */
+abstract class PersistentIndex
+{
+    private static final Logger log = LoggerFactory.getLogger( PersistentIndex.class );
+
+    /**
+     * The journal is merged into the index file, if it is larger than the index file and this minimum size.
+     */
+    private static final long MIN_JOURNAL_MERGE_SIZE = 1024 * 1024;
+
+    private static final String JOURNAL_SUFFIX = ".log";
+
+    private final Path indexFile;
+
+    private final Path journalFile;
+
+    private final int magic;
+
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    private final DataOutputStream pendingOut = new DataOutputStream( pending );
+
+    private boolean complete = false;
+
+    private boolean rewrite = false;
+
+    private long indexSize = 0;
+
+    private long journalSize = 0;
+
+    /**
+     * @param indexFile the index file
+     * @param magic the first int of the index file, identifies the format of the index
+     */
+    protected PersistentIndex( Path indexFile, int magic )
+    {
+        this.indexFile = indexFile;
+        this.journalFile = indexFile.resolveSibling( indexFile.getFileName() + JOURNAL_SUFFIX );
+        this.magic = magic;
+    }
+
+    /**
+     * Writes all entries of the index, after the magic number of the index file.
+     */
+    protected abstract void writeEntries( DataOutputStream out )
+        throws IOException;
+
+    /**
+     * Reads the entries written by {@link #writeEntries(DataOutputStream)}.
+     *
+     * @param file the index file, for indexes that read parts of the file on demand
+     */
+    protected abstract void readEntries( DataInputStream in, Path file )
+        throws IOException;
+
+    /**
+     * Applies a record written by {@link #writeRecord(int, RecordWriter)} to the entries.
+     *
+     * @param type the type of the record
+     */
+    protected abstract void readRecord( int type, DataInputStream in )
+        throws IOException;
+
+    /**
+     * Removes all entries from memory.
+     */
+    protected abstract void clearEntries();
+
+    /**
+     * Called after all entries were written to a new index file.
+     *
+     * @param file the index file
+     */
+    protected void indexFileWritten( Path file )
+        throws IOException
+    {
+        // nothing to do by default
+    }
+
+    /**
+     * Returns <code>false</code>, if the index was not found on disk and was not rebuilt since.
+     */
+    synchronized boolean isComplete()
+    {
+        return complete;
+    }
+
+    /**
+     * Marks the index as complete after a rebuild. The next save writes the whole index file.
+     */
+    synchronized void setComplete()
+    {
+        complete = true;
+        rewrite = true;
+        pending.reset();
+    }
+
+    /**
+     * Removes all entries and the files of the index, so the index is rebuilt.
+     */
+    synchronized void clear()
+    {
+        clearEntries();
+        complete = false;
+        pending.reset();
+        try
+        {
+            Files.deleteIfExists( indexFile );
+            Files.deleteIfExists( journalFile );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not delete the index {}: {}", indexFile, e.getMessage() );
+        }
+        indexSize = 0;
+        journalSize = 0;
+    }
+
+    /**
+     * Records a change of the index. Records of an incomplete index are not needed, it is written completely
+     * after the rebuild.
+     *
+     * @param type the type of the record, passed to {@link #readRecord(int, DataInputStream)}
+     * @param writer writes the data of the record
+     */
+    protected void writeRecord( int type, RecordWriter writer )
+    {
+        if ( !complete || rewrite )
+        {
+            return;
+        }
+        try
+        {
+            pendingOut.writeByte( type );
+            writer.write( pendingOut );
+        }
+        catch ( IOException e )
+        {
+            // not thrown by the in-memory stream
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Writes the changes since the last save to disk, if the index is complete.
+     *
+     * @throws IOException if the index could not be written
+     */
+    synchronized void save()
+        throws IOException
+    {
+        if ( !complete )
+        {
+            return;
+        }
+        if ( rewrite || journalSize + pending.size() > Math.max( MIN_JOURNAL_MERGE_SIZE, indexSize ) )
+        {
+            writeIndexFile();
+        }
+        else if ( pending.size() > 0 )
+        {
+            try ( OutputStream out = Files.newOutputStream( journalFile, StandardOpenOption.CREATE,
+                                                            StandardOpenOption.APPEND ) )
+            {
+                pending.writeTo( out );
+            }
+            journalSize += pending.size();
+            pending.reset();
+        }
+    }
+
+    private void writeIndexFile()
+        throws IOException
+    {
+        Files.createDirectories( indexFile.getParent() );
+        Path tmpFile = indexFile.resolveSibling( indexFile.getFileName() + ".tmp" );
+        try ( DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream( Files.newOutputStream( tmpFile ) ) ) )
+        {
+            out.writeInt( magic );
+            writeEntries( out );
+        }
+        Files.move( tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        Files.deleteIfExists( journalFile );
+        indexSize = Files.size( indexFile );
+        journalSize = 0;
+        rewrite = false;
+        pending.reset();
+        indexFileWritten( indexFile );
+    }
+
+    /**
+     * Loads the index file and replays the journal. Called by the {@link IndexRegistry} on first access.
+     */
+    void load()
+    {
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream( Files.newInputStream( indexFile ) ) ) )
+        {
+            if ( in.readInt() != magic )
+            {
+                log.warn( "Ignoring index {} with unknown format", indexFile );
+                return;
+            }
+            readEntries( in, indexFile );
+            indexSize = Files.size( indexFile );
+            complete = true;
+        }
+        catch ( NoSuchFileException e )
+        {
+            // not built yet
+            return;
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not read index {}, the index is rebuilt: {}", indexFile, e.getMessage() );
+            clearEntries();
+            return;
+        }
+        replayJournal();
+    }
+
+    private void replayJournal()
+    {
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream( Files.newInputStream( journalFile ) ) ) )
+        {
+            int type;
+            while ( ( type = in.read() ) >= 0 )
+            {
+                readRecord( type, in );
+            }
+            journalSize = Files.size( journalFile );
+        }
+        catch ( NoSuchFileException e )
+        {
+            // no changes since the index file was written
+        }
+        catch ( EOFException e )
+        {
+            // the VM stopped while the journal was written, the next save must not append to the partial record
+            log.warn( "Ignoring the incomplete last record of the index journal {}", journalFile );
+            rewrite = true;
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not read index journal {}, the index is rebuilt: {}", journalFile, e.getMessage() );
+            clearEntries();
+            complete = false;
+        }
+    }
+
+    /**
+     * Values like descriptions may exceed the length limit of {@link DataOutputStream#writeUTF(String)}.
+     */
+    protected static void writeString( DataOutputStream out, String value )
+        throws IOException
+    {
+        byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+    protected static String readString( DataInputStream in )
+        throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Writes the data of a record.
+     */
+    protected interface RecordWriter
+    {
+        void write( DataOutputStream out )
+            throws IOException;
+    }
+}
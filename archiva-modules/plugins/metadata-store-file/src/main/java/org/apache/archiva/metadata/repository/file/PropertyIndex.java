@@ -0,0 +1,631 @@
+package org.apache.archiva.metadata.repository.file;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Inverted index of the properties of the project versions of one repository in the file metadata store.
+ * <p>
+ * The index maps terms, i.e. the kind, the key and the value of a property, to the coordinates of the project
+ * versions (<code>namespace/project/version</code>), whose metadata contains the property. There are three kinds
+ * of properties: the properties of the project version itself, e.g. <code>url</code> or <code>org.name</code>,
+ * the properties of the project version facets and the properties of the artifact facets. The index only
+ * stores the project versions, the artifacts matching a term are taken from the metadata of the project version.
+ * </p>
+ * <p>
+ * The postings are kept on disk. The index file contains the sorted coordinates of the project versions, followed
+ * by the sorted terms, each with the numbers of the project versions containing it. Only the coordinates, a hash of
+ * the terms of each project version and every {@value #BLOCK_SIZE}th term are held in memory, a lookup reads one
+ * block of terms from the file. The project versions changed since the index file was written are held in memory
+ * completely and are merged into the index file, when it is written again. Changes are journaled as described in
+ * {@link PersistentIndex}.
+ * </p>
+ */
+class PropertyIndex
+    extends PersistentIndex
+{
+    static final char PROJECT_VERSION_PROPERTY = 'p';
+
+    static final char PROJECT_VERSION_FACET = 'f';
+
+    static final char ARTIFACT_FACET = 'a';
+
+    private static final String FILE_NAME = "properties.dat";
+
+    private static final int MAGIC = 0x50494432;
+
+    private static final String ARTIFACT_FACET_PREFIX = "artifact:facet:";
+
+    /**
+     * The number of terms between two terms held in memory.
+     */
+    private static final int BLOCK_SIZE = 64;
+
+    /**
+     * Marks the end of the terms in the index file.
+     */
+    private static final int END_OF_TERMS = -1;
+
+    private static final int PUT = 1;
+
+    private static final int REMOVE = 2;
+
+    private static final int REMOVE_ALL = 3;
+
+    private Path indexFile;
+
+    /**
+     * The sorted coordinates of the project versions in the index file.
+     */
+    private String[] documents = new String[0];
+
+    /**
+     * The hashes of the terms of the project versions in the index file, by document number.
+     */
+    private long[] hashes = new long[0];
+
+    /**
+     * The first term of each block and the offset of the block in the index file.
+     */
+    private final NavigableMap<String, Long> blocks = new TreeMap<>();
+
+    private long termsOffset = 0;
+
+    /**
+     * The terms of the project versions changed since the index file was written. Removed project versions have
+     * no terms. The entries replace the project versions in the index file.
+     */
+    private final NavigableMap<String, Set<String>> changedDocuments = new TreeMap<>();
+
+    /**
+     * The postings of the changed project versions.
+     */
+    private final Map<String, Set<String>> changedPostings = new HashMap<>();
+
+    private PropertyIndex( Path indexFile )
+    {
+        super( indexFile, MAGIC );
+    }
+
+    /**
+     * Returns the index stored in the given directory. The index is loaded from disk on first access.
+     *
+     * @param registry the registry of the loaded indexes
+     * @param directory the index directory
+     * @return the shared index instance
+     */
+    static PropertyIndex forDirectory( IndexRegistry registry, Path directory )
+    {
+        return registry.getIndex( directory, FILE_NAME, PropertyIndex::new );
+    }
+
+    static String getCoordinates( String namespace, String project, String version )
+    {
+        return namespace + "/" + project + "/" + version;
+    }
+
+    static String getTerm( char kind, String key, String value )
+    {
+        return kind + key + '\u0000' + value;
+    }
+
+    /**
+     * Returns the terms of the properties of a project version. Artifact facet properties are mapped to the ids of
+     * the artifacts, all other properties to an empty set.
+     * <p>
+     * Dependencies, references and the plain artifact data are not indexed, they are no properties of the project
+     * version in the other metadata stores.
+     * </p>
+     *
+     * @param properties the content of <code>version-metadata.properties</code>
+     */
+    static Map<String, Set<String>> getTerms( Properties properties )
+    {
+        Map<String, Set<String>> terms = new HashMap<>();
+        for ( String name : properties.stringPropertyNames() )
+        {
+            String value = properties.getProperty( name );
+            if ( name.startsWith( ARTIFACT_FACET_PREFIX ) )
+            {
+                // artifact:facet:<artifact id>:<facet id>:<key>
+                String[] parts = name.substring( ARTIFACT_FACET_PREFIX.length() ).split( ":", 3 );
+                if ( parts.length == 3 )
+                {
+                    terms.computeIfAbsent( getTerm( ARTIFACT_FACET, parts[2], value ), k -> new TreeSet<>() ).add(
+                        parts[0] );
+                }
+            }
+            else if ( name.startsWith( "artifact:" ) || name.startsWith( "ref:" ) )
+            {
+                continue;
+            }
+            else if ( name.indexOf( ':' ) > 0 )
+            {
+                // <facet id>:<key>
+                terms.put( getTerm( PROJECT_VERSION_FACET, name.substring( name.indexOf( ':' ) + 1 ), value ),
+                           Collections.emptySet() );
+            }
+            else if ( !name.equals( "facetIds" ) && !name.startsWith( "dependency." ) )
+            {
+                terms.put( getTerm( PROJECT_VERSION_PROPERTY, name, value ), Collections.emptySet() );
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Replaces the terms of the given project version by the terms of its current properties.
+     */
+    synchronized void put( String coordinates, Properties properties )
+    {
+        Set<String> terms = new TreeSet<>( getTerms( properties ).keySet() );
+        Set<String> oldTerms = changedDocuments.get( coordinates );
+        if ( oldTerms != null ? terms.equals( oldTerms ) : isInIndexFile( coordinates, terms ) )
+        {
+            return;
+        }
+        setDocument( coordinates, terms );
+        writeRecord( PUT, out -> {
+            writeString( out, coordinates );
+            out.writeInt( terms.size() );
+            for ( String term : terms )
+            {
+                writeString( out, term );
+            }
+        } );
+    }
+
+    synchronized void remove( String coordinates )
+    {
+        if ( removeDocument( coordinates ) )
+        {
+            writeRecord( REMOVE, out -> writeString( out, coordinates ) );
+        }
+    }
+
+    /**
+     * Removes all project versions, whose coordinates start with the given prefix, e.g. all versions of a project.
+     */
+    synchronized void removeAll( String prefix )
+    {
+        if ( removeDocuments( prefix ) )
+        {
+            writeRecord( REMOVE_ALL, out -> writeString( out, prefix ) );
+        }
+    }
+
+    /**
+     * Returns the coordinates of the project versions, whose metadata contains the given term.
+     */
+    synchronized Set<String> get( String term )
+        throws IOException
+    {
+        Set<String> coordinates = new TreeSet<>();
+        for ( int document : readPostings( term ) )
+        {
+            if ( !changedDocuments.containsKey( documents[document] ) )
+            {
+                coordinates.add( documents[document] );
+            }
+        }
+        Set<String> changed = changedPostings.get( term );
+        if ( changed != null )
+        {
+            coordinates.addAll( changed );
+        }
+        return coordinates;
+    }
+
+    synchronized int size()
+    {
+        int size = documents.length;
+        for ( Map.Entry<String, Set<String>> entry : changedDocuments.entrySet() )
+        {
+            boolean inIndexFile = Arrays.binarySearch( documents, entry.getKey() ) >= 0;
+            if ( inIndexFile && entry.getValue().isEmpty() )
+            {
+                size--;
+            }
+            else if ( !inIndexFile && !entry.getValue().isEmpty() )
+            {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Writes the project versions of the index file, that were not changed, and the changed project versions
+     * to the new index file. The terms of the current index file are merged with the terms of the changed
+     * project versions.
+     */
+    @Override
+    protected void writeEntries( DataOutputStream out )
+        throws IOException
+    {
+        // the numbers of the documents of the current index file in the new index file, -1 if dropped
+        int[] numbers = new int[documents.length];
+        Map<String, Integer> changedNumbers = new HashMap<>();
+        List<String> coordinates = new ArrayList<>();
+        List<Long> termHashes = new ArrayList<>();
+        Iterator<Map.Entry<String, Set<String>>> changed = changedDocuments.entrySet().iterator();
+        Map.Entry<String, Set<String>> nextChanged = changed.hasNext() ? changed.next() : null;
+        int i = 0;
+        while ( i < documents.length || nextChanged != null )
+        {
+            int order = i >= documents.length ? 1
+                : nextChanged == null ? -1 : documents[i].compareTo( nextChanged.getKey() );
+            if ( order < 0 )
+            {
+                numbers[i] = coordinates.size();
+                coordinates.add( documents[i] );
+                termHashes.add( hashes[i] );
+                i++;
+            }
+            else
+            {
+                if ( order == 0 )
+                {
+                    numbers[i++] = -1;
+                }
+                if ( !nextChanged.getValue().isEmpty() )
+                {
+                    changedNumbers.put( nextChanged.getKey(), coordinates.size() );
+                    coordinates.add( nextChanged.getKey() );
+                    termHashes.add( hash( nextChanged.getValue() ) );
+                }
+                nextChanged = changed.hasNext() ? changed.next() : null;
+            }
+        }
+
+        out.writeInt( coordinates.size() );
+        for ( int j = 0; j < coordinates.size(); j++ )
+        {
+            writeString( out, coordinates.get( j ) );
+            out.writeLong( termHashes.get( j ) );
+        }
+
+        Iterator<String> changedTerms = new TreeSet<>( changedPostings.keySet() ).iterator();
+        String nextChangedTerm = changedTerms.hasNext() ? changedTerms.next() : null;
+        try ( DataInputStream in = openTerms( termsOffset ) )
+        {
+            String term = in != null ? readTerm( in ) : null;
+            while ( term != null || nextChangedTerm != null )
+            {
+                int order = term == null ? 1 : nextChangedTerm == null ? -1 : term.compareTo( nextChangedTerm );
+                List<Integer> postings = new ArrayList<>();
+                String current = order <= 0 ? term : nextChangedTerm;
+                if ( order <= 0 )
+                {
+                    for ( int document : readPostingList( in ) )
+                    {
+                        if ( numbers[document] >= 0 )
+                        {
+                            postings.add( numbers[document] );
+                        }
+                    }
+                    term = readTerm( in );
+                }
+                if ( order >= 0 )
+                {
+                    for ( String document : changedPostings.get( nextChangedTerm ) )
+                    {
+                        postings.add( changedNumbers.get( document ) );
+                    }
+                    nextChangedTerm = changedTerms.hasNext() ? changedTerms.next() : null;
+                }
+                if ( !postings.isEmpty() )
+                {
+                    Collections.sort( postings );
+                    writeString( out, current );
+                    out.writeInt( postings.size() );
+                    for ( int document : postings )
+                    {
+                        out.writeInt( document );
+                    }
+                }
+            }
+        }
+        out.writeInt( END_OF_TERMS );
+    }
+
+    @Override
+    protected void readEntries( DataInputStream in, Path file )
+        throws IOException
+    {
+        indexFile = file;
+        long offset = 4;
+        int count = in.readInt();
+        offset += 4;
+        String[] fileDocuments = new String[count];
+        long[] fileHashes = new long[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            fileDocuments[i] = readString( in );
+            fileHashes[i] = in.readLong();
+            offset += 4 + fileDocuments[i].getBytes( StandardCharsets.UTF_8 ).length + 8;
+        }
+        termsOffset = offset;
+        for ( int i = 0; ; i++ )
+        {
+            int length = in.readInt();
+            if ( length == END_OF_TERMS )
+            {
+                break;
+            }
+            if ( i % BLOCK_SIZE == 0 )
+            {
+                byte[] bytes = new byte[length];
+                in.readFully( bytes );
+                blocks.put( new String( bytes, StandardCharsets.UTF_8 ), offset );
+            }
+            else
+            {
+                skipFully( in, length );
+            }
+            int postings = in.readInt();
+            skipFully( in, 4L * postings );
+            offset += 4 + length + 4 + 4L * postings;
+        }
+        documents = fileDocuments;
+        hashes = fileHashes;
+    }
+
+    @Override
+    protected void readRecord( int type, DataInputStream in )
+        throws IOException
+    {
+        switch ( type )
+        {
+            case PUT:
+                String coordinates = readString( in );
+                int count = in.readInt();
+                Set<String> terms = new TreeSet<>();
+                for ( int i = 0; i < count; i++ )
+                {
+                    terms.add( readString( in ) );
+                }
+                setDocument( coordinates, terms );
+                break;
+            case REMOVE:
+                removeDocument( readString( in ) );
+                break;
+            case REMOVE_ALL:
+                removeDocuments( readString( in ) );
+                break;
+            default:
+                throw new IOException( "Unknown record type " + type );
+        }
+    }
+
+    @Override
+    protected void clearEntries()
+    {
+        documents = new String[0];
+        hashes = new long[0];
+        blocks.clear();
+        termsOffset = 0;
+        changedDocuments.clear();
+        changedPostings.clear();
+    }
+
+    /**
+     * The changes are part of the new index file now, only its coordinates and blocks are kept.
+     */
+    @Override
+    protected void indexFileWritten( Path file )
+        throws IOException
+    {
+        clearEntries();
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream( Files.newInputStream( file ) ) ) )
+        {
+            in.readInt();
+            readEntries( in, file );
+        }
+    }
+
+    private boolean isInIndexFile( String coordinates, Set<String> terms )
+    {
+        int document = Arrays.binarySearch( documents, coordinates );
+        return document >= 0 ? hashes[document] == hash( terms ) : terms.isEmpty();
+    }
+
+    private void setDocument( String coordinates, Set<String> terms )
+    {
+        Set<String> oldTerms = changedDocuments.put( coordinates, terms );
+        if ( oldTerms != null )
+        {
+            for ( String term : oldTerms )
+            {
+                Set<String> values = changedPostings.get( term );
+                if ( values != null && values.remove( coordinates ) && values.isEmpty() )
+                {
+                    changedPostings.remove( term );
+                }
+            }
+        }
+        for ( String term : terms )
+        {
+            changedPostings.computeIfAbsent( term, k -> new TreeSet<>() ).add( coordinates );
+        }
+    }
+
+    private boolean removeDocument( String coordinates )
+    {
+        Set<String> terms = changedDocuments.get( coordinates );
+        if ( terms != null ? terms.isEmpty() : Arrays.binarySearch( documents, coordinates ) < 0 )
+        {
+            return false;
+        }
+        setDocument( coordinates, Collections.emptySet() );
+        return true;
+    }
+
+    private boolean removeDocuments( String prefix )
+    {
+        List<String> removed = new ArrayList<>();
+        int first = Arrays.binarySearch( documents, prefix );
+        for ( int i = first >= 0 ? first : -first - 1; i < documents.length && documents[i].startsWith( prefix ); i++ )
+        {
+            removed.add( documents[i] );
+        }
+        removed.addAll( changedDocuments.subMap( prefix, true, prefix + Character.MAX_VALUE, false ).keySet() );
+        boolean changed = false;
+        for ( String coordinates : removed )
+        {
+            changed |= removeDocument( coordinates );
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the numbers of the project versions in the index file, that contain the term.
+     */
+    private int[] readPostings( String term )
+        throws IOException
+    {
+        Map.Entry<String, Long> block = blocks.floorEntry( term );
+        if ( block == null )
+        {
+            return new int[0];
+        }
+        try ( DataInputStream in = openTerms( block.getValue() ) )
+        {
+            for ( int i = 0; i < BLOCK_SIZE; i++ )
+            {
+                String current = readTerm( in );
+                int order = current != null ? current.compareTo( term ) : 1;
+                if ( order > 0 )
+                {
+                    break;
+                }
+                if ( order == 0 )
+                {
+                    return readPostingList( in );
+                }
+                skipFully( in, 4L * in.readInt() );
+            }
+        }
+        return new int[0];
+    }
+
+    /**
+     * Opens the index file at the given offset of the terms.
+     *
+     * @return the stream, or <code>null</code>, if there is no index file
+     */
+    private DataInputStream openTerms( long offset )
+        throws IOException
+    {
+        if ( indexFile == null || termsOffset == 0 )
+        {
+            return null;
+        }
+        SeekableByteChannel channel = Files.newByteChannel( indexFile );
+        channel.position( offset );
+        return new DataInputStream( new BufferedInputStream( Channels.newInputStream( channel ) ) );
+    }
+
+    /**
+     * Reads the next term, or returns <code>null</code> at the end of the terms.
+     */
+    private static String readTerm( DataInputStream in )
+        throws IOException
+    {
+        int length = in.readInt();
+        if ( length == END_OF_TERMS )
+        {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    private static int[] readPostingList( DataInputStream in )
+        throws IOException
+    {
+        int[] postings = new int[in.readInt()];
+        for ( int i = 0; i < postings.length; i++ )
+        {
+            postings[i] = in.readInt();
+        }
+        return postings;
+    }
+
+    private static void skipFully( DataInputStream in, long count )
+        throws IOException
+    {
+        long remaining = count;
+        while ( remaining > 0 )
+        {
+            int skipped = in.skipBytes( (int) Math.min( remaining, Integer.MAX_VALUE ) );
+            if ( skipped <= 0 )
+            {
+                // skipBytes does not tell the end of the stream apart
+                in.readByte();
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * A 64 bit FNV-1a hash of the sorted terms, so unchanged project versions of the index file are detected
+     * without reading their terms.
+     */
+    private static long hash( Set<String> terms )
+    {
+        long hash = 0xcbf29ce484222325L;
+        for ( String term : new TreeSet<>( terms ) )
+        {
+            for ( int i = 0; i < term.length(); i++ )
+            {
+                hash ^= term.charAt( i );
+                hash *= 0x100000001b3L;
+            }
+            // a zero character separates the terms
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -22,15 +22,23 @@
 import org.apache.archiva.configuration.ArchivaConfiguration;
 import org.apache.archiva.configuration.Configuration;
 import org.apache.archiva.configuration.ManagedRepositoryConfiguration;
+import org.apache.archiva.metadata.model.ArtifactMetadata;
 import org.apache.archiva.metadata.model.MetadataFacetFactory;
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
 import org.apache.archiva.metadata.repository.AbstractMetadataRepositoryTest;
 import org.junit.Before;
 import org.junit.Ignore;
+import org.junit.Test;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -38,6 +46,9 @@
 public class FileMetadataRepositoryTest
     extends AbstractMetadataRepositoryTest
 {
+    private static final String INDEX_TEST_SHA1 = "0123456789abcdef0123456789abcdef01234567";
+
+    private IndexRegistry indexRegistry;
 
     @Before
     @Override
@@ -54,12 +65,13 @@ public void setUp()
         ArchivaConfiguration config = createTestConfiguration( directory );
         Map<String, MetadataFacetFactory> factories = createTestMetadataFacetFactories();
 
-        this.repository = new FileMetadataRepository( factories, config );
+        this.indexRegistry = new IndexRegistry();
+        this.repository = new FileMetadataRepository( factories, config, indexRegistry );
     }
 
     @Override
     @Ignore
-    public void testGetArtifactsByProjectVersionMetadata()
+    public void testSearchArtifactsByKey()
         throws Exception
     {
         // TODO not implemented
@@ -67,7 +79,7 @@ public void testGetArtifactsByProjectVersionMetadata()
 
     @Override
     @Ignore
-    public void testGetArtifactsByProjectVersionMetadataNoRepository()
+    public void testSearchArtifactsByKeyExact()
         throws Exception
     {
         // TODO not implemented
@@ -75,7 +87,7 @@ public void testGetArtifactsByProjectVersionMetadataNoRepository()
 
     @Override
     @Ignore
-    public void testGetArtifactsByProjectVersionMetadataAllRepositories()
+    public void testSearchArtifactsFullText()
         throws Exception
     {
         // TODO not implemented
@@ -83,7 +95,7 @@ public void testGetArtifactsByProjectVersionMetadataAllRepositories()
 
     @Override
     @Ignore
-    public void testGetArtifactsByMetadataAllRepositories()
+    public void testSearchArtifactsFullTextExact()
         throws Exception
     {
         // TODO not implemented
@@ -91,7 +103,7 @@ public void testGetArtifactsByMetadataAllRepositories()
 
     @Override
     @Ignore
-    public void testGetArtifactsByPropertySingleResult()
+    public void testSearchArtifactsByFacetKeyAllRepos()
         throws Exception
     {
         // TODO not implemented
@@ -99,7 +111,7 @@ public void testGetArtifactsByPropertySingleResult()
 
     @Override
     @Ignore
-    public void testSearchArtifactsByKey()
+    public void testSearchArtifactsByFacetKey()
         throws Exception
     {
         // TODO not implemented
@@ -107,50 +119,176 @@ public void testSearchArtifactsByKey()
 
     @Override
     @Ignore
-    public void testSearchArtifactsByKeyExact()
+    public void testSearchArtifactsFullTextByFacet()
         throws Exception
     {
         // TODO not implemented
     }
 
-    @Override
-    @Ignore
-    public void testSearchArtifactsFullText()
+    @Test
+    public void testArtifactIndexIsRebuilt()
         throws Exception
     {
-        // TODO not implemented
+        ArtifactMetadata artifact = createArtifact();
+        artifact.setSha1( INDEX_TEST_SHA1 );
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, artifact );
+        repository.save();
+
+        Path indexDirectory = Paths.get( "target/test-repositories", TEST_REPO_ID, ".archiva", "index" );
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByChecksum( TEST_REPO_ID, INDEX_TEST_SHA1 ) );
+        assertTrue( Files.exists( indexDirectory.resolve( "artifacts.dat" ) ) );
+
+        // a lost index is rebuilt from the content on the next lookup
+        ArtifactIndex.forDirectory( indexRegistry, indexDirectory ).clear();
+        assertFalse( Files.exists( indexDirectory.resolve( "artifacts.dat" ) ) );
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByChecksum( TEST_REPO_ID, INDEX_TEST_SHA1 ) );
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByDateRange( TEST_REPO_ID, null, null ) );
+        assertTrue( ArtifactIndex.forDirectory( indexRegistry, indexDirectory ).isComplete() );
+
+        repository.removeProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION );
+        assertTrue( repository.getArtifactsByChecksum( TEST_REPO_ID, INDEX_TEST_SHA1 ).isEmpty() );
+        assertEquals( 0, ArtifactIndex.forDirectory( indexRegistry, indexDirectory ).size() );
     }
 
-    @Override
-    @Ignore
-    public void testSearchArtifactsFullTextExact()
+    @Test
+    public void testRevertKeepsSavedIndexEntries()
         throws Exception
     {
-        // TODO not implemented
+        ArtifactMetadata artifact = createArtifact();
+        artifact.setSha1( INDEX_TEST_SHA1 );
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, artifact );
+        repository.save();
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByChecksum( TEST_REPO_ID, INDEX_TEST_SHA1 ) );
+
+        String otherSha1 = "fedcba9876543210fedcba9876543210fedcba98";
+        artifact.setSha1( otherSha1 );
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, artifact );
+        repository.revert();
+
+        // only the reverted project version is indexed again, the index is not rebuilt
+        Path indexDirectory = Paths.get( "target/test-repositories", TEST_REPO_ID, ".archiva", "index" );
+        assertTrue( ArtifactIndex.forDirectory( indexRegistry, indexDirectory ).isComplete() );
+        assertTrue( repository.getArtifactsByChecksum( TEST_REPO_ID, otherSha1 ).isEmpty() );
+        artifact.setSha1( INDEX_TEST_SHA1 );
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByChecksum( TEST_REPO_ID, INDEX_TEST_SHA1 ) );
     }
 
-    @Override
-    @Ignore
-    public void testSearchArtifactsByFacetKeyAllRepos()
+    @Test
+    public void testNamespaceTrie()
         throws Exception
     {
-        // TODO not implemented
+        repository.updateNamespace( TEST_REPO_ID, "org.apache.maven" );
+        repository.updateNamespace( TEST_REPO_ID, "org.apache.archiva" );
+        repository.updateNamespace( TEST_REPO_ID, "org.codehaus" );
+
+        assertEquals( Arrays.asList( "apache", "codehaus" ), repository.getNamespaces( TEST_REPO_ID, "org" ) );
+
+        repository.removeNamespace( TEST_REPO_ID, "org.apache.maven" );
+        assertEquals( Collections.singletonList( "archiva" ), repository.getNamespaces( TEST_REPO_ID, "org.apache" ) );
+        repository.removeNamespace( TEST_REPO_ID, "org.apache.archiva" );
+        assertEquals( Collections.singletonList( "codehaus" ), repository.getNamespaces( TEST_REPO_ID, "org" ) );
+
+        // namespaces created by other processes are detected by the modification time of the content directory
+        Path content = Paths.get( "target/test-repositories", TEST_REPO_ID, ".archiva", "content" );
+        Files.createDirectories( content.resolve( "com.example" ) );
+        Files.createFile( content.resolve( "com.example" ).resolve( "namespace-metadata.properties" ) );
+        Files.setLastModifiedTime( content, FileTime.fromMillis( System.currentTimeMillis() + 10000 ) );
+        assertEquals( Arrays.asList( "com", "org" ), repository.getRootNamespaces( TEST_REPO_ID ) );
     }
 
-    @Override
-    @Ignore
-    public void testSearchArtifactsByFacetKey()
+    @Test
+    public void testChangesAreWrittenOnSave()
         throws Exception
     {
-        // TODO not implemented
+        Path versionDirectory = Paths.get( "target/test-repositories", TEST_REPO_ID, ".archiva", "content",
+                                           TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION );
+        Path versionFile = versionDirectory.resolve( "version-metadata.properties" );
+
+        ArtifactMetadata artifact = createArtifact();
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, artifact );
+
+        // the pending changes are visible in the session, but not yet written
+        assertFalse( Files.exists( versionFile ) );
+        assertEquals( Collections.singletonList( artifact ), new ArrayList<>(
+            repository.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION ) ) );
+        assertEquals( Collections.singletonList( TEST_PROJECT_VERSION ), new ArrayList<>(
+            repository.getProjectVersions( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT ) ) );
+        assertFalse( Files.exists( versionFile ) );
+
+        repository.save();
+        assertTrue( Files.exists( versionFile ) );
+        try ( Stream<Path> files = Files.list( versionDirectory ) )
+        {
+            assertFalse( files.anyMatch( file -> file.getFileName().toString().endsWith( ".tmp" ) ) );
+        }
+
+        // reverted changes are dropped
+        artifact.setSize( 42 );
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, artifact );
+        repository.revert();
+        repository.save();
+        assertEquals( 0, repository.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT,
+                                                  TEST_PROJECT_VERSION ).iterator().next().getSize() );
     }
 
-    @Override
-    @Ignore
-    public void testSearchArtifactsFullTextByFacet()
+    @Test
+    public void testPropertyIndexIsRebuilt()
         throws Exception
     {
-        // TODO not implemented
+        ArtifactMetadata artifact = createArtifact();
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, artifact );
+        ProjectVersionMetadata metadata =
+            repository.getProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION );
+        metadata.setName( "Test Project" );
+        repository.updateProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, metadata );
+        repository.save();
+
+        Path indexDirectory = Paths.get( "target/test-repositories", TEST_REPO_ID, ".archiva", "index" );
+        assertTrue( Files.exists( indexDirectory.resolve( "properties.dat" ) ) );
+
+        // a lost index is rebuilt from the content on the next query
+        PropertyIndex.forDirectory( indexRegistry, indexDirectory ).clear();
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByProperty( "name", "Test Project", TEST_REPO_ID ) );
+        assertTrue( repository.getArtifactsByProperty( "name", "Other Project", TEST_REPO_ID ).isEmpty() );
+        assertEquals( 1, PropertyIndex.forDirectory( indexRegistry, indexDirectory ).size() );
+
+        repository.removeProject( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT );
+        assertTrue( repository.getArtifactsByProperty( "name", "Test Project", TEST_REPO_ID ).isEmpty() );
+        assertEquals( 0, PropertyIndex.forDirectory( indexRegistry, indexDirectory ).size() );
+    }
+
+    @Test
+    public void testIndexesAreEvictedWithRepository()
+        throws Exception
+    {
+        ArtifactMetadata artifact = createArtifact();
+        artifact.setSha1( INDEX_TEST_SHA1 );
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, artifact );
+        repository.save();
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByChecksum( TEST_REPO_ID, INDEX_TEST_SHA1 ) );
+
+        Path indexDirectory = Paths.get( "target/test-repositories", TEST_REPO_ID, ".archiva", "index" );
+        ArtifactIndex artifactIndex = ArtifactIndex.forDirectory( indexRegistry, indexDirectory );
+        PropertyIndex propertyIndex = PropertyIndex.forDirectory( indexRegistry, indexDirectory );
+        Path content = Paths.get( "target/test-repositories", TEST_REPO_ID, ".archiva", "content" );
+        NamespaceTrie namespaceTrie =
+            NamespaceTrie.forDirectory( indexRegistry, content, "namespace-metadata.properties" );
+
+        repository.removeRepository( TEST_REPO_ID );
+        repository.save();
+        assertNotSame( artifactIndex, ArtifactIndex.forDirectory( indexRegistry, indexDirectory ) );
+        assertNotSame( propertyIndex, PropertyIndex.forDirectory( indexRegistry, indexDirectory ) );
+        assertNotSame( namespaceTrie,
+                       NamespaceTrie.forDirectory( indexRegistry, content, "namespace-metadata.properties" ) );
+        assertTrue( repository.getRootNamespaces( TEST_REPO_ID ).isEmpty() );
+        assertTrue( repository.getArtifactsByChecksum( TEST_REPO_ID, INDEX_TEST_SHA1 ).isEmpty() );
     }
 
     protected static ArchivaConfiguration createTestConfiguration( Path directory )
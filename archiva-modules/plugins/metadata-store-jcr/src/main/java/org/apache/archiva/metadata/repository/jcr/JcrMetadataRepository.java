@@ -34,9 +34,12 @@
 import org.apache.archiva.metadata.model.ProjectVersionReference;
 import org.apache.archiva.metadata.model.Scm;
 import org.apache.archiva.metadata.model.maven2.MavenArtifactFacet;
+import org.apache.archiva.metadata.repository.MetadataCursor;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
+import org.apache.archiva.metadata.repository.PagedMetadataCursor;
+import org.apache.archiva.metadata.repository.QueryParameter;
 import org.apache.archiva.metadata.repository.stats.model.RepositoryStatistics;
 import org.apache.archiva.metadata.repository.stats.model.RepositoryStatisticsProvider;
 import org.apache.commons.lang.StringUtils;
@@ -1431,17 +1434,114 @@ public List<ArtifactMetadata> searchArtifacts( String text, String repositoryId,
     @Override
     public List<ArtifactMetadata> searchArtifacts( String key, String text, String repositoryId, boolean e )
         throws MetadataRepositoryException
+    {
+        return runJcrQuery( repositoryId, getSearchQuery( key, e ), ImmutableMap.of( "value", text ) );
+    }
+
+    private static String getSearchQuery( String key, boolean e )
     {
         String theKey = key == null ? "*" : "[" + key + "]";
         String projectVersionCondition =
             e ? "(projectVersion." + theKey + " = $value)" : "contains([projectVersion]." + theKey + ", $value)";
         String facetCondition = e ? "(facet." + theKey + " = $value)" : "contains([facet]." + theKey + ", $value)";
-        String q =
+        return
             "SELECT * FROM [" + PROJECT_VERSION_NODE_TYPE + "] AS projectVersion LEFT OUTER JOIN [" + ARTIFACT_NODE_TYPE
                 + "] AS artifact ON ISCHILDNODE(artifact, projectVersion) LEFT OUTER JOIN [" + FACET_NODE_TYPE
                 + "] AS facet ON ISCHILDNODE(facet, projectVersion) WHERE (" + projectVersionCondition + " OR "
                 + facetCondition + ")";
-        return runJcrQuery( repositoryId, q, ImmutableMap.of( "value", text ) );
+    }
+
+    @Override
+    public MetadataCursor<ArtifactMetadata> streamArtifacts( String repositoryId, QueryParameter queryParameter )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            Query query = getJcrSession().getWorkspace().getQueryManager().createQuery( getArtifactQuery( repositoryId ),
+                                                                                      Query.JCR_SQL2 );
+            return new ArtifactCursor( repositoryId, query, queryParameter );
+        }
+        catch ( RepositoryException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public MetadataCursor<ArtifactMetadata> streamArtifactsByDateRange( String repositoryId, Date startTime,
+                                                                        Date endTime, QueryParameter queryParameter )
+        throws MetadataRepositoryException
+    {
+        String q = getArtifactQuery( repositoryId );
+        if ( startTime != null )
+        {
+            q += " AND [whenGathered] >= $start";
+        }
+        if ( endTime != null )
+        {
+            q += " AND [whenGathered] <= $end";
+        }
+
+        try
+        {
+            Query query = getJcrSession().getWorkspace().getQueryManager().createQuery( q, Query.JCR_SQL2 );
+            ValueFactory valueFactory = getJcrSession().getValueFactory();
+            if ( startTime != null )
+            {
+                query.bindValue( "start", valueFactory.createValue( createCalendar( startTime ) ) );
+            }
+            if ( endTime != null )
+            {
+                query.bindValue( "end", valueFactory.createValue( createCalendar( endTime ) ) );
+            }
+            return new ArtifactCursor( repositoryId, query, queryParameter );
+        }
+        catch ( RepositoryException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public MetadataCursor<ArtifactMetadata> streamArtifactsByChecksum( String repositoryId, String checksum,
+                                                                       QueryParameter queryParameter )
+        throws MetadataRepositoryException
+    {
+        String q = getArtifactQuery( repositoryId ) + " AND ([sha1] = $checksum OR [md5] = $checksum)";
+
+        try
+        {
+            Query query = getJcrSession().getWorkspace().getQueryManager().createQuery( q, Query.JCR_SQL2 );
+            query.bindValue( "checksum", getJcrSession().getValueFactory().createValue( checksum ) );
+            return new ArtifactCursor( repositoryId, query, queryParameter );
+        }
+        catch ( RepositoryException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public MetadataCursor<ArtifactMetadata> streamSearchArtifacts( String key, String text, String repositoryId,
+                                                                   boolean exact, QueryParameter queryParameter )
+        throws MetadataRepositoryException
+    {
+        String q = getSearchQuery( key, exact );
+        if ( repositoryId != null )
+        {
+            q += " AND ISDESCENDANTNODE(artifact,'/" + getRepositoryContentPath( repositoryId ) + "')";
+        }
+
+        try
+        {
+            Query query = getJcrSession().getWorkspace().getQueryManager().createQuery( q, Query.JCR_SQL2 );
+            query.bindValue( "value", getJcrSession().getValueFactory().createValue( text ) );
+            return new ArtifactCursor( repositoryId, query, queryParameter );
+        }
+        catch ( RepositoryException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
     }
 
     private ArtifactMetadata getArtifactFromNode( String repositoryId, Node artifactNode )
@@ -1785,4 +1885,69 @@ public void populateStatistics( MetadataRepository repository, String repository
         }
     }
 
+
+    /**
+     * Cursor over the rows of a query. The query is executed once, with the offset of the resume token, and the
+     * rows are fetched lazily by the JCR implementation, so the pages are just slices of the row iterator.
+     * The resume token is the offset of the next row, it is only valid as long as the content does not change.
+     */
+    private class ArtifactCursor
+        extends PagedMetadataCursor<ArtifactMetadata>
+    {
+        private final String repositoryId;
+
+        private final Query query;
+
+        private RowIterator rows;
+
+        private long position;
+
+        // the row offsets after the artifacts of the current page, rows without artifact are skipped
+        private final List<Long> positions = new ArrayList<>();
+
+        ArtifactCursor( String repositoryId, Query query, QueryParameter queryParameter )
+        {
+            super( queryParameter );
+            this.repositoryId = repositoryId;
+            this.query = query;
+        }
+
+        @Override
+        protected List<ArtifactMetadata> loadPage( String resumeToken, int pageSize )
+            throws MetadataRepositoryException
+        {
+            try
+            {
+                if ( rows == null )
+                {
+                    position = toOffset( resumeToken );
+                    query.setOffset( position );
+                    rows = query.execute().getRows();
+                }
+                positions.clear();
+                List<ArtifactMetadata> artifacts = new ArrayList<>();
+                while ( artifacts.size() < pageSize && rows.hasNext() )
+                {
+                    Node node = rows.nextRow().getNode( "artifact" );
+                    position++;
+                    if ( node != null )
+                    {
+                        artifacts.add( getArtifactFromNode( repositoryId, node ) );
+                        positions.add( position );
+                    }
+                }
+                return artifacts;
+            }
+            catch ( RepositoryException e )
+            {
+                throw new MetadataRepositoryException( e.getMessage(), e );
+            }
+        }
+
+        @Override
+        protected String getResumeToken( ArtifactMetadata artifact, String pageToken, int index )
+        {
+            return Long.toString( positions.get( index ) );
+        }
+    }
 }
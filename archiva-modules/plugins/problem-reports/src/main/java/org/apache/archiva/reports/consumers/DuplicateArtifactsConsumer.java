@@ -20,6 +20,7 @@
  */
 
 import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumCache;
 import org.apache.archiva.checksum.ChecksummedFile;
 import org.apache.archiva.configuration.ArchivaConfiguration;
 import org.apache.archiva.configuration.ConfigurationNames;
@@ -97,6 +98,10 @@
     @Named ( value = "repositoryPathTranslator#maven2" )
     private RepositoryPathTranslator pathTranslator;
 
+    @Inject
+    @Named ( value = "checksumCache#default" )
+    private ChecksumCache checksumCache;
+
     private RepositorySession repositorySession;
 
     @Override
@@ -150,7 +155,7 @@ public void processFile( String path )
         //  alternatively this could come straight from the storage resolver, which could populate the artifact metadata
         //  in the later parse call with the desired checksum and use that
         String checksumSha1;
-        ChecksummedFile checksummedFile = new ChecksummedFile( artifactFile);
+        ChecksummedFile checksummedFile = new ChecksummedFile( artifactFile, checksumCache );
         try
         {
             checksumSha1 = checksummedFile.calculateChecksum( ChecksumAlgorithm.SHA1 );